@@ -0,0 +1,116 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.*;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the registrations, feeds and installations shared by the benchmarks.
+ */
+final class BenchmarkData {
+    static final String CONNECTION_STRING = "Endpoint=sb://bench-namespace.servicebus.windows.net/;SharedAccessKeyName=DefaultFullSharedAccessSignature;SharedAccessKey=JHadkDHkdhi74jaHdakhy/rZ6KEdfhasYdahO8JOx/1sZXTUlc=";
+    static final String HUB_NAME = "bench-hub";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates one registration of every type, keyed by its simple class name.
+     */
+    @SuppressWarnings("deprecation")
+    static Map<String, Registration> registrationsByType() {
+        Map<String, Registration> registrations = new LinkedHashMap<>();
+        Map<String, String> wnsHeaders = new HashMap<>();
+        wnsHeaders.put("X-WNS-Type", "wns/toast");
+        Map<String, String> mpnsHeaders = new HashMap<>();
+        mpnsHeaders.put("X-WindowsPhone-Target", "toast");
+
+        URI wnsChannel = uri("https://bn1.notify.windows.com/?token=AgYAAADYej13M9aml3liD9nlfJw6FEgGXDvYmKDOfOwcS2ekCUm7hIrsJhGqkvU35pmJHFmXVbeUKJawqNHQKCtNJaI4z3uf3Gn04nrdSMUgzFapd%2fXYwzREnjz6%2fk9Pl6cy%2bdI%3d");
+        URI mpnsChannel = uri("http://dm2.notify.live.net/throttledthirdparty/01.00/AQG9Ed13-Lb5RbCii5fWzpFpAgAAAAADAQAAAAQUZm52OkJCMjg1QTg1QkZDMkUxREQFBlVTTkMwMQ");
+        String token = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyz0123";
+        BrowserPushSubscription subscription = new BrowserPushSubscription(
+            "https://fcm.googleapis.com/fcm/send/abc", "BNcRdreALRFXTkOOUHK1EtK2wtaz5Ry4YfYCA", "tBHItJI5svbpez7KI4CCXg");
+
+        add(registrations, new WindowsRegistration(wnsChannel));
+        add(registrations, new WindowsTemplateRegistration(wnsChannel, "<toast><visual><binding template=\"ToastText01\"><text id=\"1\">$(message)</text></binding></visual></toast>", wnsHeaders));
+        add(registrations, new AppleRegistration(token));
+        add(registrations, new AppleTemplateRegistration(token, "{\"aps\":{\"alert\":\"$(message)\"}}"));
+        add(registrations, new GcmRegistration(token));
+        add(registrations, new GcmTemplateRegistration(token, "{\"data\":{\"msg\":\"$(message)\"}}"));
+        add(registrations, new FcmRegistration(token));
+        add(registrations, new FcmTemplateRegistration(token, "{\"data\":{\"msg\":\"$(message)\"}}"));
+        add(registrations, new FcmV1Registration(token));
+        add(registrations, new FcmV1TemplateRegistration(token, "{\"message\":{\"notification\":{\"body\":\"$(message)\"}}}"));
+        add(registrations, new MpnsRegistration(mpnsChannel));
+        add(registrations, new MpnsTemplateRegistration(mpnsChannel, "<wp:Notification xmlns:wp=\"WPNotification\"><wp:Toast><wp:Text1>$(message)</wp:Text1></wp:Toast></wp:Notification>", mpnsHeaders));
+        add(registrations, new AdmRegistration(token));
+        add(registrations, new AdmTemplateRegistration(token, "{\"data\":{\"msg\":\"$(message)\"}}"));
+        add(registrations, new BaiduRegistration("baidu_user", "baidu_channel"));
+        add(registrations, new BaiduTemplateRegistration("baidu_user", "baidu_channel", "{\"title\":\"$(message)\"}"));
+        add(registrations, new BrowserRegistration(subscription));
+        add(registrations, new BrowserTemplateRegistration(subscription, "{\"title\":\"$(message)\"}"));
+
+        for (Registration registration : registrations.values()) {
+            registration.setRegistrationId("8372532420827572008-85883004107185159-4");
+            registration.getTags().add("myTag");
+            registration.getTags().add("myOtherTag");
+            registration.setExpirationTime(new Date(1409587066778L));
+        }
+        return registrations;
+    }
+
+    /**
+     * Creates an Atom feed with the given number of entries, cycling through every registration type.
+     */
+    static byte[] registrationFeed(int entries) {
+        List<Registration> registrations = new ArrayList<>(registrationsByType().values());
+        StringBuilder feed = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+            .append("<feed xmlns=\"http://www.w3.org/2005/Atom\"><title type=\"text\">Registrations</title>");
+        for (int i = 0; i < entries; i++) {
+            String xml = registrations.get(i % registrations.size()).getXml();
+            String entry = xml.substring(xml.indexOf("<entry"));
+            feed.append(entry.replace("<content type=\"application/xml\">",
+                "<id>https://bench-namespace.servicebus.windows.net/bench-hub/registrations/" + i + "</id>"
+                    + "<updated>2014-09-01T15:57:46Z</updated><content type=\"application/xml\">")
+                .replace("<Tags>", "<ETag>" + i + "</ETag><ExpirationTime>2014-09-01T15:57:46.778Z</ExpirationTime><Tags>"));
+        }
+        return feed.append("</feed>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates an installation with a typical number of tags and templates.
+     */
+    static Installation installation() {
+        Installation installation = new Installation("installation-0001", NotificationPlatform.FcmV1,
+            "fcm-token-ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyz", "tag1", "tag2", "user:alice");
+        installation.setUserId("alice");
+        installation.addTemplate("template1", new InstallationTemplate("{\"message\":{\"data\":{\"text\":\"$(message)\"}}}", Collections.singletonList("tag-for-template1")));
+        installation.addTemplate("template2", new InstallationTemplate("{\"message\":{\"data\":{\"count\":\"$(count)\"}}}", Collections.singletonList("tag-for-template2")));
+        return installation;
+    }
+
+    private static void add(Map<String, Registration> registrations, Registration registration) {
+        registrations.put(registration.getClass().getSimpleName(), registration);
+    }
+
+    private static URI uri(String value) {
+        try {
+            return new URI(value);
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
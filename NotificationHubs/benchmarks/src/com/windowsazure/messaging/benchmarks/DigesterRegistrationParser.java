@@ -0,0 +1,128 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.*;
+import org.apache.commons.digester3.Digester;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Commons Digester rules the SDK used to parse registrations before it moved to a StAX reader,
+ * kept as a baseline for {@link RegistrationParseBenchmark}.
+ */
+@SuppressWarnings("deprecation")
+final class DigesterRegistrationParser {
+    private static final ThreadLocal<Digester> SINGLE_REGISTRATION_PARSER = ThreadLocal.withInitial(() -> {
+        Digester digester = new Digester();
+        addRegistrationRules(digester);
+        return digester;
+    });
+
+    private static final ThreadLocal<Digester> MULTI_REGISTRATION_PARSER = ThreadLocal.withInitial(() -> {
+        Digester digester = new Digester();
+        addRegistrationRules(digester);
+        addCollectionRules(digester);
+        return digester;
+    });
+
+    private DigesterRegistrationParser() {
+    }
+
+    static Registration parse(InputStream content) throws IOException, SAXException {
+        return SINGLE_REGISTRATION_PARSER.get().parse(content);
+    }
+
+    static CollectionResult parseRegistrations(InputStream content) throws IOException, SAXException {
+        return MULTI_REGISTRATION_PARSER.get().parse(content);
+    }
+
+    private static void addRegistrationRules(Digester digester) {
+        digester.addFactoryCreate("*/RegistrationDescription", new Registration.RegistrationCreationFactory());
+        digester.addObjectCreate("*/WindowsRegistrationDescription", WindowsRegistration.class);
+        digester.addObjectCreate("*/WindowsTemplateRegistrationDescription", WindowsTemplateRegistration.class);
+        digester.addObjectCreate("*/AppleRegistrationDescription", AppleRegistration.class);
+        digester.addObjectCreate("*/AppleTemplateRegistrationDescription", AppleTemplateRegistration.class);
+        digester.addObjectCreate("*/GcmRegistrationDescription", GcmRegistration.class);
+        digester.addObjectCreate("*/GcmTemplateRegistrationDescription", GcmTemplateRegistration.class);
+        digester.addObjectCreate("*/FcmRegistrationDescription", FcmRegistration.class);
+        digester.addObjectCreate("*/FcmTemplateRegistrationDescription", FcmTemplateRegistration.class);
+        digester.addObjectCreate("*/FcmV1RegistrationDescription", FcmV1Registration.class);
+        digester.addObjectCreate("*/FcmV1TemplateRegistrationDescription", FcmV1TemplateRegistration.class);
+        digester.addObjectCreate("*/MpnsRegistrationDescription", MpnsRegistration.class);
+        digester.addObjectCreate("*/MpnsTemplateRegistrationDescription", MpnsTemplateRegistration.class);
+        digester.addObjectCreate("*/AdmRegistrationDescription", AdmRegistration.class);
+        digester.addObjectCreate("*/AdmTemplateRegistrationDescription", AdmTemplateRegistration.class);
+        digester.addObjectCreate("*/BaiduRegistrationDescription", BaiduRegistration.class);
+        digester.addObjectCreate("*/BaiduTemplateRegistrationDescription", BaiduTemplateRegistration.class);
+        digester.addObjectCreate("*/BrowserRegistrationDescription", BrowserRegistration.class);
+        digester.addObjectCreate("*/BrowserTemplateRegistrationDescription", BrowserTemplateRegistration.class);
+        digester.addCallMethod("*/RegistrationId", "setRegistrationId", 1);
+        digester.addCallParam("*/RegistrationId", 0);
+        digester.addCallMethod("*/ETag", "setEtag", 1);
+        digester.addCallParam("*/ETag", 0);
+        digester.addCallMethod("*/ChannelUri", "setChannelUri", 1);
+        digester.addCallParam("*/ChannelUri", 0);
+        digester.addCallMethod("*/DeviceToken", "setDeviceToken", 1);
+        digester.addCallParam("*/DeviceToken", 0);
+        digester.addCallMethod("*/GcmRegistrationId", "setGcmRegistrationId", 1);
+        digester.addCallParam("*/GcmRegistrationId", 0);
+        digester.addCallMethod("*/FcmRegistrationId", "setFcmRegistrationId", 1);
+        digester.addCallParam("*/FcmRegistrationId", 0);
+        digester.addCallMethod("*/FcmV1RegistrationId", "setFcmRegistrationId", 1);
+        digester.addCallParam("*/FcmV1RegistrationId", 0);
+        digester.addCallMethod("*/Tags", "setTagsFromString", 1);
+        digester.addCallParam("*/Tags", 0);
+        digester.addCallMethod("*/BodyTemplate", "setBodyTemplate", 1);
+        digester.addCallParam("*/BodyTemplate", 0);
+        digester.addCallMethod("*/Expiry", "setExpiry", 1);
+        digester.addCallParam("*/Expiry", 0);
+        digester.addCallMethod("*/ExpirationTime", "setExpirationTimeFromString", 1);
+        digester.addCallParam("*/ExpirationTime", 0);
+        digester.addCallMethod("*/AdmRegistrationId", "setAdmRegistrationId", 1);
+        digester.addCallParam("*/AdmRegistrationId", 0);
+        digester.addCallMethod("*/BaiduUserId", "setBaiduUserId", 1);
+        digester.addCallParam("*/BaiduUserId", 0);
+        digester.addCallMethod("*/BaiduChannelId", "setBaiduChannelId", 1);
+        digester.addCallParam("*/BaiduChannelId", 0);
+        digester.addCallMethod("*/Endpoint", "setEndpoint", 1);
+        digester.addCallParam("*/Endpoint", 0);
+        digester.addCallMethod("*/P256DH", "setP256dh", 1);
+        digester.addCallParam("*/P256DH", 0);
+        digester.addCallMethod("*/Auth", "setAuth", 1);
+        digester.addCallParam("*/Auth", 0);
+        digester.addCallMethod("*/WnsHeader", "addHeader", 2);
+        digester.addCallParam("*/WnsHeader/Header", 0);
+        digester.addCallParam("*/WnsHeader/Value", 1);
+        digester.addCallMethod("*/MpnsHeader", "addHeader", 2);
+        digester.addCallParam("*/MpnsHeader/Header", 0);
+        digester.addCallParam("*/MpnsHeader/Value", 1);
+    }
+
+    private static void addCollectionRules(Digester digester) {
+        digester.addObjectCreate("feed", CollectionResult.class);
+        digester.addSetNext("*/RegistrationDescription", "addRegistration");
+        digester.addSetNext("*/WindowsRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/WindowsTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/AppleRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/AppleTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/GcmRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/GcmTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/FcmRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/FcmTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/FcmV1RegistrationDescription", "addRegistration");
+        digester.addSetNext("*/FcmV1TemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/MpnsRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/MpnsTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/AdmRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/AdmTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/BaiduRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/BaiduTemplateRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/BrowserRegistrationDescription", "addRegistration");
+        digester.addSetNext("*/BrowserTemplateRegistrationDescription", "addRegistration");
+    }
+}
@@ -0,0 +1,56 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.BaseInstallation;
+import com.windowsazure.messaging.Installation;
+import com.windowsazure.messaging.PartialUpdateOperation;
+import com.windowsazure.messaging.UpdateOperationType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes installations and installation patches to JSON and parses installations back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InstallationJsonBenchmark {
+    private Installation installation;
+    private String installationJson;
+    private List<PartialUpdateOperation> operations;
+
+    @Setup
+    public void setup() {
+        installation = BenchmarkData.installation();
+        installationJson = installation.toJson();
+
+        operations = new ArrayList<>();
+        operations.add(new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag3"));
+        operations.add(new PartialUpdateOperation(UpdateOperationType.Replace, "/userId", "bob"));
+        operations.add(new PartialUpdateOperation(UpdateOperationType.Remove, "/templates/template2"));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return installation.toJson();
+    }
+
+    @Benchmark
+    public BaseInstallation fromJson() {
+        return BaseInstallation.fromJson(installationJson);
+    }
+
+    @Benchmark
+    public String partialUpdateToJson() {
+        return PartialUpdateOperation.toJson(operations);
+    }
+}
@@ -0,0 +1,140 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.BasicFuture;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncPushConsumer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.HandlerFactory;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * An HTTP client which never touches the network. Each request is produced in full on the calling
+ * thread, its body is written to a discarding channel, and the response consumer is handed an empty
+ * response with the configured status code. This isolates the cost of building requests in the SDK.
+ */
+final class NoOpHttpAsyncClient extends CloseableHttpAsyncClient {
+    private final int statusCode;
+    private volatile IOReactorStatus status = IOReactorStatus.INACTIVE;
+
+    NoOpHttpAsyncClient(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    @Override
+    public void start() {
+        status = IOReactorStatus.ACTIVE;
+    }
+
+    @Override
+    public IOReactorStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public void awaitShutdown(TimeValue waitTime) {
+    }
+
+    @Override
+    public void initiateShutdown() {
+        status = IOReactorStatus.SHUT_DOWN;
+    }
+
+    @Override
+    protected <T> Future<T> doExecute(
+        HttpHost target,
+        AsyncRequestProducer requestProducer,
+        AsyncResponseConsumer<T> responseConsumer,
+        HandlerFactory<AsyncPushConsumer> pushHandlerFactory,
+        HttpContext context,
+        FutureCallback<T> callback) {
+        BasicFuture<T> future = new BasicFuture<>(callback);
+        try {
+            requestProducer.sendRequest((request, entityDetails, requestContext) -> {
+                if (entityDetails != null) {
+                    DiscardingChannel channel = new DiscardingChannel();
+                    while (!channel.ended) {
+                        requestProducer.produce(channel);
+                    }
+                }
+            }, context);
+            requestProducer.releaseResources();
+
+            responseConsumer.consumeResponse(new BasicHttpResponse(statusCode), null, context, new FutureCallback<T>() {
+                @Override
+                public void completed(T result) {
+                    future.completed(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    future.failed(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel();
+                }
+            });
+        } catch (Exception e) {
+            future.failed(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void register(String hostname, String uriPattern, Supplier<AsyncPushConsumer> supplier) {
+    }
+
+    @Override
+    public void close(CloseMode closeMode) {
+        status = IOReactorStatus.SHUT_DOWN;
+    }
+
+    @Override
+    public void close() {
+        close(CloseMode.GRACEFUL);
+    }
+
+    private static final class DiscardingChannel implements DataStreamChannel {
+        private boolean ended;
+
+        @Override
+        public void requestOutput() {
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public void endStream() {
+            ended = true;
+        }
+
+        @Override
+        public void endStream(List<? extends Header> trailers) {
+            ended = true;
+        }
+    }
+}
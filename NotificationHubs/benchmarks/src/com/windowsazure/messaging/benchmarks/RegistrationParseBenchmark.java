@@ -0,0 +1,44 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.CollectionResult;
+import com.windowsazure.messaging.Registration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses registration feeds of increasing size, cycling through every registration type, with the
+ * SDK parser and with the Commons Digester rules it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationParseBenchmark {
+    @Param({ "10", "100", "1000" })
+    public int entries;
+
+    private byte[] feed;
+
+    @Setup
+    public void setup() {
+        feed = BenchmarkData.registrationFeed(entries);
+    }
+
+    @Benchmark
+    public CollectionResult parseRegistrations() throws Exception {
+        return Registration.parseRegistrations(feed);
+    }
+
+    @Benchmark
+    public CollectionResult parseRegistrationsDigester() throws Exception {
+        return DigesterRegistrationParser.parseRegistrations(new ByteArrayInputStream(feed));
+    }
+}
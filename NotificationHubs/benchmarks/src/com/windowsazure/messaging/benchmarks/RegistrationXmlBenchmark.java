@@ -0,0 +1,72 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.Registration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes each registration type to the XML sent when creating or updating a registration, both
+ * as the UTF-8 body the requests send and as a string encoded afterwards, and parses that XML back
+ * with the SDK parser and with the Commons Digester rules it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationXmlBenchmark {
+    @Param({
+        "WindowsRegistration", "WindowsTemplateRegistration",
+        "AppleRegistration", "AppleTemplateRegistration",
+        "GcmRegistration", "GcmTemplateRegistration",
+        "FcmRegistration", "FcmTemplateRegistration",
+        "FcmV1Registration", "FcmV1TemplateRegistration",
+        "MpnsRegistration", "MpnsTemplateRegistration",
+        "AdmRegistration", "AdmTemplateRegistration",
+        "BaiduRegistration", "BaiduTemplateRegistration",
+        "BrowserRegistration", "BrowserTemplateRegistration"
+    })
+    public String type;
+
+    private Registration registration;
+    private byte[] xml;
+
+    @Setup
+    public void setup() {
+        registration = BenchmarkData.registrationsByType().get(type);
+        xml = registration.getXml().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String getXml() {
+        return registration.getXml();
+    }
+
+    @Benchmark
+    public byte[] getXmlBytes() {
+        return registration.getXmlBytes();
+    }
+
+    @Benchmark
+    public byte[] getXmlEncoded() {
+        return registration.getXml().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Registration parse() throws Exception {
+        return Registration.parse(xml);
+    }
+
+    @Benchmark
+    public Registration parseDigester() throws Exception {
+        return DigesterRegistrationParser.parse(new ByteArrayInputStream(xml));
+    }
+}
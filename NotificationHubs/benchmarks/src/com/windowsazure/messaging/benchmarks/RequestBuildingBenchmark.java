@@ -0,0 +1,80 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.benchmarks;
+
+import com.windowsazure.messaging.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and dispatches send requests against a client that never touches the network, measuring
+ * the SDK's own cost per request: URI, SAS token, headers and body production. The prepared
+ * variants send a {@link PreparedNotification} whose body and headers were built once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBuildingBenchmark {
+    @Param({ "1000" })
+    public int deviceHandles;
+
+    private HttpClientTransport transport;
+    private NotificationHub hub;
+    private Notification notification;
+    private PreparedNotification prepared;
+    private Date scheduledTime;
+    private List<String> handles;
+
+    @Setup
+    public void setup() {
+        transport = new HttpClientTransport(new NoOpHttpAsyncClient(201));
+        hub = new NotificationHub(BenchmarkData.CONNECTION_STRING, BenchmarkData.HUB_NAME, transport);
+        notification = Notification.createFcmV1Notification("{\"message\":{\"notification\":{\"title\":\"Hello\",\"body\":\"World\"}}}");
+        prepared = notification.prepare();
+        scheduledTime = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+
+        handles = new ArrayList<>(deviceHandles);
+        for (int i = 0; i < deviceHandles; i++) {
+            handles.add(String.format("fcm-token-%08d-ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyz", i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.close();
+    }
+
+    @Benchmark
+    public NotificationOutcome sendNotification() throws NotificationHubsException {
+        return hub.sendNotification(notification, "tag1 || tag2");
+    }
+
+    @Benchmark
+    public NotificationOutcome sendPreparedNotification() throws NotificationHubsException {
+        return hub.sendNotification(prepared, "tag1 || tag2");
+    }
+
+    @Benchmark
+    public NotificationOutcome scheduleNotification() throws NotificationHubsException {
+        return hub.scheduleNotification(notification, "tag1 || tag2", scheduledTime);
+    }
+
+    @Benchmark
+    public NotificationOutcome schedulePreparedNotification() throws NotificationHubsException {
+        return hub.scheduleNotification(prepared, "tag1 || tag2", scheduledTime);
+    }
+
+    @Benchmark
+    public NotificationOutcome sendDirectNotificationBatch() throws NotificationHubsException {
+        return hub.sendDirectNotification(notification, handles);
+    }
+}
@@ -0,0 +1,221 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class bounds the number of operations in flight with a limit that adapts to throttling.
+ * The limit grows by one for every window of successful operations and is halved when the service
+ * throttles, at most once per window so that a burst of throttled responses from requests which
+ * were already in flight only counts once. A Retry-After hint pauses all new acquisitions until
+ * it has elapsed.
+ */
+class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private int limit;
+    private int inFlight;
+    private int successesSinceIncrease;
+    private long generation;
+    private long pausedUntilNanos;
+    private long throttleCount;
+
+    AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < minLimit <= maxLimit");
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits for a permit. The returned ticket must be passed back to one of the release methods.
+     */
+    long acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long waitNanos = getWaitNanos();
+                if (waitNanos == 0) {
+                    return grant();
+                }
+                if (waitNanos > 0) {
+                    changed.awaitNanos(waitNanos);
+                } else {
+                    changed.await();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the given timeout for a permit, returning a ticket or -1 if none became available.
+     */
+    long tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long waitNanos = getWaitNanos();
+                if (waitNanos == 0) {
+                    return grant();
+                }
+                if (remainingNanos <= 0) {
+                    return -1;
+                }
+
+                long slice = waitNanos > 0 ? Math.min(waitNanos, remainingNanos) : remainingNanos;
+                long before = System.nanoTime();
+                changed.awaitNanos(slice);
+                remainingNanos -= System.nanoTime() - before;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit for an operation which succeeded.
+     */
+    void releaseSuccess(long ticket) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (++successesSinceIncrease >= limit && limit < maxLimit) {
+                limit++;
+                successesSinceIncrease = 0;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit for an operation which was throttled by the service.
+     */
+    void releaseThrottled(long ticket, Duration retryAfter) {
+        lock.lock();
+        try {
+            inFlight--;
+            throttleCount++;
+            if (ticket == generation) {
+                limit = Math.max(minLimit, limit / 2);
+                successesSinceIncrease = 0;
+                generation++;
+            }
+            if (retryAfter != null && !retryAfter.isNegative() && !retryAfter.isZero()) {
+                long until = System.nanoTime() + retryAfter.toNanos();
+                if (pausedUntilNanos == 0 || until - pausedUntilNanos > 0) {
+                    pausedUntilNanos = until;
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit for an operation which failed for a reason other than throttling.
+     */
+    void releaseFailure(long ticket) {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit for the outcome of an operation, treating 429 responses as throttling.
+     */
+    void release(long ticket, Exception failure) {
+        if (failure == null) {
+            releaseSuccess(ticket);
+        } else if (isThrottled(failure)) {
+            releaseThrottled(ticket, ((NotificationHubsException) failure).retryAfter().orElse(null));
+        } else {
+            releaseFailure(ticket);
+        }
+    }
+
+    static boolean isThrottled(Exception failure) {
+        return failure instanceof NotificationHubsException
+            && ((NotificationHubsException) failure).httpStatusCode() == 429;
+    }
+
+    /**
+     * Waits until no operations are in flight.
+     */
+    void awaitIdle() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight > 0) {
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getThrottleCount() {
+        lock.lock();
+        try {
+            return throttleCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns 0 if a permit is available, the nanoseconds left in a Retry-After pause, or -1 if the
+    // window is full and the caller has to wait for a release.
+    private long getWaitNanos() {
+        if (pausedUntilNanos != 0) {
+            long remaining = pausedUntilNanos - System.nanoTime();
+            if (remaining > 0) {
+                return remaining;
+            }
+            pausedUntilNanos = 0;
+        }
+        return inFlight < limit ? 0 : -1;
+    }
+
+    private long grant() {
+        inFlight++;
+        return generation;
+    }
+}
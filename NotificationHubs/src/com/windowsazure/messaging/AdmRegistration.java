@@ -10,9 +10,9 @@ import java.util.Objects;
  * This class represents an Amazon device registration.
  */
 public class AdmRegistration extends Registration {
-    private static final String ADM_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AdmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String ADM_NATIVE_REGISTRATION2 = "<AdmRegistrationId>";
-    private static final String ADM_NATIVE_REGISTRATION3 = "</AdmRegistrationId></AdmRegistrationDescription></content></entry>";
+    private static final byte[] ADM_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AdmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] ADM_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<AdmRegistrationId>");
+    private static final byte[] ADM_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</AdmRegistrationId></AdmRegistrationDescription></content></entry>");
 
     protected String admRegistrationId;
 
@@ -81,11 +81,16 @@ public class AdmRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return ADM_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            ADM_NATIVE_REGISTRATION2 +
-            admRegistrationId +
-            ADM_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(ADM_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(ADM_NATIVE_REGISTRATION2);
+        writer.write(admRegistrationId);
+        writer.write(ADM_NATIVE_REGISTRATION3);
     }
 
 }
@@ -8,10 +8,10 @@ package com.windowsazure.messaging;
  * This class represents an Amazon device template registration.
  */
 public class AdmTemplateRegistration extends AdmRegistration implements TemplateRegistration {
-    private static final String ADM_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AdmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String ADM_TEMPLATE_REGISTRATION2 = "<AdmRegistrationId>";
-    private static final String ADM_TEMPLATE_REGISTRATION3 = "</AdmRegistrationId><BodyTemplate><![CDATA[";
-    private static final String ADM_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate></AdmTemplateRegistrationDescription></content></entry>";
+    private static final byte[] ADM_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AdmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] ADM_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<AdmRegistrationId>");
+    private static final byte[] ADM_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</AdmRegistrationId><BodyTemplate><![CDATA[");
+    private static final byte[] ADM_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate></AdmTemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -89,12 +89,17 @@ public class AdmTemplateRegistration extends AdmRegistration implements Template
 
     @Override
     public String getXml() {
-        return ADM_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            ADM_TEMPLATE_REGISTRATION2 +
-            getAdmRegistrationId() +
-            ADM_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            ADM_TEMPLATE_REGISTRATION4;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(ADM_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(ADM_TEMPLATE_REGISTRATION2);
+        writer.write(getAdmRegistrationId());
+        writer.write(ADM_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(ADM_TEMPLATE_REGISTRATION4);
     }
 }
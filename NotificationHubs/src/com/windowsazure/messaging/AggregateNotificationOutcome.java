@@ -0,0 +1,186 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the combined outcome of a send which was split into several requests,
+ * with one part per request in the order the parts were created. If reading the targets failed
+ * partway through, the outcome holds the parts sent before the failure along with its error.
+ */
+public class AggregateNotificationOutcome {
+    private final List<Part> parts;
+    private final Exception error;
+
+    /**
+     * Creates a new aggregate notification outcome.
+     *
+     * @param parts The outcomes of the individual requests.
+     */
+    public AggregateNotificationOutcome(List<Part> parts) {
+        this(parts, null);
+    }
+
+    /**
+     * Creates a new aggregate notification outcome of a send which may have stopped early.
+     *
+     * @param parts The outcomes of the individual requests.
+     * @param error The error which stopped reading the targets, or null if every target was read.
+     */
+    public AggregateNotificationOutcome(List<Part> parts, Exception error) {
+        this.parts = Collections.unmodifiableList(new ArrayList<>(parts));
+        this.error = error;
+    }
+
+    /**
+     * Gets the outcomes of the individual requests.
+     *
+     * @return The outcomes of the individual requests.
+     */
+    public List<Part> getParts() { return parts; }
+
+    /**
+     * Gets the notification outcomes of the requests which succeeded.
+     *
+     * @return The notification outcomes of the requests which succeeded.
+     */
+    public List<NotificationOutcome> getOutcomes() {
+        List<NotificationOutcome> outcomes = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.isSuccessful()) {
+                outcomes.add(part.getOutcome());
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Gets the tracking IDs of the requests which succeeded, e.g. for a support request.
+     *
+     * @return The tracking IDs of the requests which succeeded.
+     */
+    public List<String> getTrackingIds() {
+        List<String> trackingIds = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.isSuccessful()) {
+                trackingIds.add(part.getOutcome().getTrackingId());
+            }
+        }
+        return trackingIds;
+    }
+
+    /**
+     * Gets the parts whose requests failed.
+     *
+     * @return The parts whose requests failed.
+     */
+    public List<Part> getFailures() {
+        List<Part> failures = new ArrayList<>();
+        for (Part part : parts) {
+            if (!part.isSuccessful()) {
+                failures.add(part);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Gets the error which stopped reading the targets. The targets after the last part were not
+     * sent.
+     *
+     * @return The error which stopped the send early, or null if every target was read.
+     */
+    public Exception getError() { return error; }
+
+    /**
+     * Gets whether every target was read and every request succeeded.
+     *
+     * @return true if every request succeeded, false otherwise.
+     */
+    public boolean isSuccessful() {
+        if (error != null) {
+            return false;
+        }
+        for (Part part : parts) {
+            if (!part.isSuccessful()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This class represents the outcome of one request of an aggregate send. Only a failed part
+     * keeps its targets, for resending, so that a send to many targets does not hold them all.
+     */
+    public static class Part {
+        private final int index;
+        private final int size;
+        private final List<String> targets;
+        private final NotificationOutcome outcome;
+        private final Exception error;
+
+        /**
+         * Creates a new part of an aggregate notification outcome.
+         *
+         * @param index   The position of the part within the aggregate send.
+         * @param targets The device handles or tags targeted by the request, kept only if it failed.
+         * @param outcome The notification outcome if the request succeeded, otherwise null.
+         * @param error   The error if the request failed, otherwise null.
+         */
+        public Part(int index, List<String> targets, NotificationOutcome outcome, Exception error) {
+            this.index = index;
+            this.size = targets.size();
+            this.targets = error == null ? Collections.emptyList() : Collections.unmodifiableList(targets);
+            this.outcome = outcome;
+            this.error = error;
+        }
+
+        /**
+         * Gets the position of the part within the aggregate send.
+         *
+         * @return The position of the part within the aggregate send.
+         */
+        public int getIndex() { return index; }
+
+        /**
+         * Gets the number of device handles or tags targeted by the request.
+         *
+         * @return The number of device handles or tags targeted by the request.
+         */
+        public int getSize() { return size; }
+
+        /**
+         * Gets the device handles or tags targeted by a failed request, e.g. to resend it.
+         *
+         * @return The device handles or tags targeted by the request, or an empty list if it succeeded.
+         */
+        public List<String> getTargets() { return targets; }
+
+        /**
+         * Gets the notification outcome of the request.
+         *
+         * @return The notification outcome if the request succeeded, otherwise null.
+         */
+        public NotificationOutcome getOutcome() { return outcome; }
+
+        /**
+         * Gets the error of the request.
+         *
+         * @return The error if the request failed, otherwise null.
+         */
+        public Exception getError() { return error; }
+
+        /**
+         * Gets whether the request succeeded.
+         *
+         * @return true if the request succeeded, false otherwise.
+         */
+        public boolean isSuccessful() { return error == null; }
+    }
+}
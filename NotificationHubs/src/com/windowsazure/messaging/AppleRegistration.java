@@ -10,9 +10,9 @@ import java.util.Objects;
  * Class representing a native registration for a device using APNs.
  */
 public class AppleRegistration extends Registration {
-    private static final String APNS_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AppleRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String APNS_NATIVE_REGISTRATION2 = "<DeviceToken>";
-    private static final String APNS_NATIVE_REGISTRATION3 = "</DeviceToken></AppleRegistrationDescription></content></entry>";
+    private static final byte[] APNS_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AppleRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] APNS_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<DeviceToken>");
+    private static final byte[] APNS_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</DeviceToken></AppleRegistrationDescription></content></entry>");
 
     protected String deviceToken;
 
@@ -79,11 +79,16 @@ public class AppleRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return APNS_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            APNS_NATIVE_REGISTRATION2 +
-            deviceToken +
-            APNS_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(APNS_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(APNS_NATIVE_REGISTRATION2);
+        writer.write(deviceToken);
+        writer.write(APNS_NATIVE_REGISTRATION3);
     }
 
 }
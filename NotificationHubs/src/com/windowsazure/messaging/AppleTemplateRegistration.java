@@ -10,11 +10,13 @@ import java.util.Objects;
  * Class representing a registration for template notifications for devices using APNs.
  */
 public class AppleTemplateRegistration extends AppleRegistration implements TemplateRegistration {
-    private static final String APNS_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AppleTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String APNS_TEMPLATE_REGISTRATION2 = "<DeviceToken>";
-    private static final String APNS_TEMPLATE_REGISTRATION3 = "</DeviceToken><BodyTemplate><![CDATA[";
-    private static final String APNS_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate>";
-    private static final String APNS_TEMPLATE_REGISTRATION5 = "</AppleTemplateRegistrationDescription></content></entry>";
+    private static final byte[] APNS_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><AppleTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] APNS_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<DeviceToken>");
+    private static final byte[] APNS_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</DeviceToken><BodyTemplate><![CDATA[");
+    private static final byte[] APNS_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate>");
+    private static final byte[] APNS_TEMPLATE_REGISTRATION5 = Utf8XmlWriter.encode("</AppleTemplateRegistrationDescription></content></entry>");
+    private static final byte[] EXPIRY_START = Utf8XmlWriter.encode("<Expiry>");
+    private static final byte[] EXPIRY_END = Utf8XmlWriter.encode("</Expiry>");
 
     private String bodyTemplate;
     private String expiry;
@@ -93,20 +95,25 @@ public class AppleTemplateRegistration extends AppleRegistration implements Temp
 
     @Override
     public String getXml() {
-        return APNS_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            APNS_TEMPLATE_REGISTRATION2 +
-            deviceToken +
-            APNS_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            APNS_TEMPLATE_REGISTRATION4 +
-            getExpiryXml() +
-            APNS_TEMPLATE_REGISTRATION5;
+        return writeXmlToString();
     }
 
-    private String getExpiryXml() {
-        if (expiry == null) return "";
-        return "<Expiry>" + expiry + "</Expiry>";
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(APNS_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(APNS_TEMPLATE_REGISTRATION2);
+        writer.write(deviceToken);
+        writer.write(APNS_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(APNS_TEMPLATE_REGISTRATION4);
+        writeExpiryXml(writer);
+        writer.write(APNS_TEMPLATE_REGISTRATION5);
+    }
+
+    private void writeExpiryXml(Utf8XmlWriter writer) {
+        if (expiry == null) return;
+        writer.write(EXPIRY_START).write(expiry).write(EXPIRY_END);
     }
 
 }
@@ -10,10 +10,10 @@ import java.util.Objects;
  * Class representing a native registration for devices using Baidu PNS.
  */
 public class BaiduRegistration extends Registration {
-    private static final String BAIDU_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BaiduRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String BAIDU_NATIVE_REGISTRATION2 = "<BaiduUserId>";
-    private static final String BAIDU_NATIVE_REGISTRATION3 = "</BaiduUserId><BaiduChannelId>";
-    private static final String BAIDU_NATIVE_REGISTRATION4 = "</BaiduChannelId></BaiduRegistrationDescription></content></entry>";
+    private static final byte[] BAIDU_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BaiduRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<BaiduUserId>");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</BaiduUserId><BaiduChannelId>");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION4 = Utf8XmlWriter.encode("</BaiduChannelId></BaiduRegistrationDescription></content></entry>");
 
     protected String baiduUserId;
     protected String baiduChannelId;
@@ -95,12 +95,17 @@ public class BaiduRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return BAIDU_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            BAIDU_NATIVE_REGISTRATION2 +
-            baiduUserId +
-            BAIDU_NATIVE_REGISTRATION3 +
-            baiduChannelId +
-            BAIDU_NATIVE_REGISTRATION4;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(BAIDU_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(BAIDU_NATIVE_REGISTRATION2);
+        writer.write(baiduUserId);
+        writer.write(BAIDU_NATIVE_REGISTRATION3);
+        writer.write(baiduChannelId);
+        writer.write(BAIDU_NATIVE_REGISTRATION4);
     }
 }
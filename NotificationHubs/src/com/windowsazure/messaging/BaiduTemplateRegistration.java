@@ -10,11 +10,11 @@ import java.util.Objects;
  * Class representing a template registration for devices using Baidu PNS.
  */
 public class BaiduTemplateRegistration extends BaiduRegistration implements TemplateRegistration {
-    private static final String BAIDU_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BaiduTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String BAIDU_NATIVE_REGISTRATION2 = "<BaiduUserId>";
-    private static final String BAIDU_NATIVE_REGISTRATION3 = "</BaiduUserId><BaiduChannelId>";
-    private static final String BAIDU_NATIVE_REGISTRATION4 = "</BaiduChannelId><BodyTemplate><![CDATA[";
-    private static final String BAIDU_NATIVE_REGISTRATION5 = "]]></BodyTemplate></BaiduTemplateRegistrationDescription></content></entry>";
+    private static final byte[] BAIDU_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BaiduTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<BaiduUserId>");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</BaiduUserId><BaiduChannelId>");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION4 = Utf8XmlWriter.encode("</BaiduChannelId><BodyTemplate><![CDATA[");
+    private static final byte[] BAIDU_NATIVE_REGISTRATION5 = Utf8XmlWriter.encode("]]></BodyTemplate></BaiduTemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -83,14 +83,19 @@ public class BaiduTemplateRegistration extends BaiduRegistration implements Temp
 
     @Override
     public String getXml() {
-        return BAIDU_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            BAIDU_NATIVE_REGISTRATION2 +
-            baiduUserId +
-            BAIDU_NATIVE_REGISTRATION3 +
-            baiduChannelId +
-            BAIDU_NATIVE_REGISTRATION4 +
-            bodyTemplate +
-            BAIDU_NATIVE_REGISTRATION5;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(BAIDU_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(BAIDU_NATIVE_REGISTRATION2);
+        writer.write(baiduUserId);
+        writer.write(BAIDU_NATIVE_REGISTRATION3);
+        writer.write(baiduChannelId);
+        writer.write(BAIDU_NATIVE_REGISTRATION4);
+        writer.write(bodyTemplate);
+        writer.write(BAIDU_NATIVE_REGISTRATION5);
     }
 }
@@ -4,12 +4,12 @@
 
 package com.windowsazure.messaging;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.apache.commons.io.IOUtils;
+import com.google.gson.JsonIOException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -106,6 +106,10 @@ public abstract class BaseInstallation implements Cloneable {
         return pushChannelExpired;
     }
 
+    void setPushChannelExpired(boolean value) {
+        pushChannelExpired = value;
+    }
+
     /**
      * Gets the expiration time for the installation.
      *
@@ -125,6 +129,14 @@ public abstract class BaseInstallation implements Cloneable {
         expirationTime = formatter.format(value);
     }
 
+    String getExpirationTimeString() {
+        return expirationTime;
+    }
+
+    void setExpirationTimeString(String value) {
+        expirationTime = value;
+    }
+
     /**
      * Gets the platform for the installation.
      *
@@ -148,6 +160,11 @@ public abstract class BaseInstallation implements Cloneable {
         platform = value;
     }
 
+    // Keeps the platform read from the service as is, as Gson's reflective adapter did.
+    void setPlatformUnchecked(NotificationPlatform value) {
+        platform = value;
+    }
+
     /**
      * Gets the user ID for the installation.
      *
@@ -175,6 +192,10 @@ public abstract class BaseInstallation implements Cloneable {
         return tags;
     }
 
+    void setTags(List<String> value) {
+        tags = value;
+    }
+
     /**
      * Adds a tag to the installation.
      *
@@ -221,6 +242,10 @@ public abstract class BaseInstallation implements Cloneable {
         return templates;
     }
 
+    void setTemplates(Map<String, InstallationTemplate> value) {
+        templates = value;
+    }
+
     /**
      * Adds an installation template by name to the installation.
      *
@@ -265,18 +290,22 @@ public abstract class BaseInstallation implements Cloneable {
      * @return The JSON string representation of the installation.
      */
     public String toJson() {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(this);
+        return SharedGson.GSON.toJson(this);
     }
 
     /**
-     * Creates an installation from the JSON stream.
+     * Creates an installation from the JSON stream, reading it as UTF-8 in a single pass.
      *
-     * @param json The JSON string that represents the installation.
+     * @param json The JSON stream that represents the installation.
      * @return An installation created from the JSON stream.
      * @throws IOException An exception reading from the stream occurred.
      */
     public static <T extends BaseInstallation> T fromJson(InputStream json) throws IOException {
-        return BaseInstallation.fromJson(IOUtils.toString(json, StandardCharsets.UTF_8));
+        try (Reader reader = new InputStreamReader(json, StandardCharsets.UTF_8)) {
+            return BaseInstallation.fromJson(reader);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        }
     }
 
     /**
@@ -287,12 +316,11 @@ public abstract class BaseInstallation implements Cloneable {
      */
     @SuppressWarnings("unchecked")
     public static <T extends BaseInstallation> T fromJson(String jsonString) {
+        return (T) SharedGson.GSON.fromJson(jsonString, BaseInstallation.class);
+    }
 
-        Gson gson = new GsonBuilder()
-            .registerTypeAdapter(BaseInstallation.class, new BaseInstallationDeserializer())
-            .registerTypeAdapter(NotificationPlatform.class, new LowerCaseEnumDeserializer())
-            .create();
-
-        return (T)gson.fromJson(jsonString, BaseInstallation.class);
+    @SuppressWarnings("unchecked")
+    private static <T extends BaseInstallation> T fromJson(Reader reader) {
+        return (T) SharedGson.GSON.fromJson(reader, BaseInstallation.class);
     }
 }
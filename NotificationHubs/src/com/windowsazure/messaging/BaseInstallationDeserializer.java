@@ -14,7 +14,10 @@ import java.lang.reflect.Type;
 
 /**
  * This class represents a serializer for installations from JSON.
+ * @deprecated {@link BaseInstallation#fromJson(String)} now reads installations in a single pass
+ * without building a JSON tree first.
  */
+@Deprecated
 public class BaseInstallationDeserializer implements JsonDeserializer<BaseInstallation> {
 
     @Override
@@ -15,6 +15,7 @@ import javax.net.ssl.SSLException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
+import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.*;
 
@@ -22,8 +23,29 @@ import java.util.*;
  * This class represents a basic retry strategy for Azure Notification Hubs.
  */
 public class BasicRetryStrategy implements HttpRequestRetryStrategy {
+    static final List<Class<? extends IOException>> DEFAULT_NON_RETRIABLE_IO_EXCEPTION_CLASSES = Collections.unmodifiableList(Arrays.asList(
+        InterruptedIOException.class,
+        UnknownHostException.class,
+        ConnectException.class,
+        ConnectionClosedException.class,
+        SSLException.class));
+
+    static final List<Integer> DEFAULT_RETRIABLE_CODES = Collections.unmodifiableList(Arrays.asList(
+        HttpStatus.SC_GATEWAY_TIMEOUT,
+        HttpStatus.SC_INTERNAL_SERVER_ERROR,
+        HttpStatus.SC_REQUEST_TIMEOUT,
+        HttpStatus.SC_FORBIDDEN,
+        HttpStatus.SC_TOO_MANY_REQUESTS,
+        HttpStatus.SC_SERVICE_UNAVAILABLE));
+
     public static final BasicRetryStrategy INSTANCE = new BasicRetryStrategy();
 
+    /**
+     * The attribute which marks a request in its HTTP context as safe to repeat after a connection
+     * failure although its method is not idempotent, such as a send whose duplicates are acceptable.
+     */
+    static final String AT_LEAST_ONCE_ATTRIBUTE = "com.windowsazure.messaging.at-least-once";
+
     private final long maxRetries;
     private final TimeValue delay;
     private final Set<Class<? extends IOException>> nonRetriableIOExceptionClasses;
@@ -39,23 +61,7 @@ public class BasicRetryStrategy implements HttpRequestRetryStrategy {
      * Creates a new instance of the BasicRetryStrategy with default parameters.
      */
     public BasicRetryStrategy() {
-        this(
-            3L,
-            TimeValue.ofSeconds(1),
-            Arrays.asList(
-                InterruptedIOException.class,
-                UnknownHostException.class,
-                ConnectException.class,
-                ConnectionClosedException.class,
-                SSLException.class),
-            Arrays.asList(
-                HttpStatus.SC_GATEWAY_TIMEOUT,
-                HttpStatus.SC_INTERNAL_SERVER_ERROR,
-                HttpStatus.SC_REQUEST_TIMEOUT,
-                HttpStatus.SC_FORBIDDEN,
-                HttpStatus.SC_TOO_MANY_REQUESTS,
-                HttpStatus.SC_SERVICE_UNAVAILABLE)
-        );
+        this(3L, TimeValue.ofSeconds(1), DEFAULT_NON_RETRIABLE_IO_EXCEPTION_CLASSES, DEFAULT_RETRIABLE_CODES);
     }
 
     /**
@@ -81,6 +87,12 @@ public class BasicRetryStrategy implements HttpRequestRetryStrategy {
         if (i > this.maxRetries) {
             return false;
         }
+        if (httpContext != null && Boolean.TRUE.equals(httpContext.getAttribute(AT_LEAST_ONCE_ATTRIBUTE))
+            && (e instanceof ConnectionClosedException || e instanceof SocketException)) {
+            // The connection failed, so an at-least-once request is repeated whether or not it
+            // reached the service
+            return !(httpRequest instanceof CancellableDependency && ((CancellableDependency) httpRequest).isCancelled());
+        }
         if (this.nonRetriableIOExceptionClasses.contains(e.getClass())) {
             return false;
         } else {
@@ -94,7 +106,8 @@ public class BasicRetryStrategy implements HttpRequestRetryStrategy {
             return false;
         }
 
-        return handleAsIdempotent(httpRequest);
+        return handleAsIdempotent(httpRequest)
+            || httpContext != null && Boolean.TRUE.equals(httpContext.getAttribute(AT_LEAST_ONCE_ATTRIBUTE));
     }
 
     @Override
@@ -104,31 +117,36 @@ public class BasicRetryStrategy implements HttpRequestRetryStrategy {
 
     @Override
     public TimeValue getRetryInterval(final HttpResponse httpResponse, final int i, final HttpContext httpContext) {
+        final TimeValue retryAfter = parseRetryAfter(httpResponse);
+        if (retryAfter != null) {
+            return retryAfter;
+        }
+
+        double jitterFactor = 0.08;
+        long delayMillis = delay.toMilliseconds();
+        return TimeValue.ofMilliseconds(delayMillis + (long) (randomNumberGenerator.get().nextDouble() * delayMillis * jitterFactor));
+    }
+
+    /**
+     * Gets the positive delay of the Retry-After header of a response, given in seconds or as a date.
+     */
+    static TimeValue parseRetryAfter(final HttpResponse httpResponse) {
         final Header header = httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER);
-        TimeValue retryAfter = null;
-        if (header != null) {
-            final String value = header.getValue();
-            try {
-                retryAfter = TimeValue.ofSeconds(Long.parseLong(value));
-            } catch (final NumberFormatException ignore) {
-                final Date retryAfterDate = DateUtils.parseDate(value);
-                if (retryAfterDate != null) {
-                    retryAfter =
-                        TimeValue.ofMilliseconds(retryAfterDate.getTime() - System.currentTimeMillis());
-                }
-            }
+        if (header == null) {
+            return null;
+        }
 
-            if (TimeValue.isPositive(retryAfter)) {
-                return retryAfter;
+        final String value = header.getValue();
+        TimeValue retryAfter = null;
+        try {
+            retryAfter = TimeValue.ofSeconds(Long.parseLong(value));
+        } catch (final NumberFormatException ignore) {
+            final Date retryAfterDate = DateUtils.parseDate(value);
+            if (retryAfterDate != null) {
+                retryAfter = TimeValue.ofMilliseconds(retryAfterDate.getTime() - System.currentTimeMillis());
             }
-        } else {
-            double jitterFactor = 0.08;
-            double baseJitterSeconds = delay.toSeconds() * jitterFactor;
-            double retryDelayValue = delay.toSeconds() + randomNumberGenerator.get().nextDouble() * baseJitterSeconds;
-            return TimeValue.ofSeconds((long)retryDelayValue);
         }
-
-        return TimeValue.ofSeconds(1);
+        return TimeValue.isPositive(retryAfter) ? retryAfter : null;
     }
 
     protected boolean handleAsIdempotent(final HttpRequest request) {
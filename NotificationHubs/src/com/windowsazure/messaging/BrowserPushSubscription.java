@@ -4,8 +4,6 @@
 
 package com.windowsazure.messaging;
 
-import com.google.gson.GsonBuilder;
-
 /**
  * This class represents a Browser Push subscription.
  */
@@ -75,7 +73,7 @@ public final class BrowserPushSubscription {
      * @return JSON-serialized representation of the browser push subscription.
      */
     public String toJson() {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(this);
+        return SharedGson.GSON.toJson(this);
     }
 
     @Override
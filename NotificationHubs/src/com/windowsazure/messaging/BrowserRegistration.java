@@ -10,11 +10,11 @@ import java.util.Objects;
  * Class representing a native registration for devices using browser push.
  */
 public class BrowserRegistration extends Registration {
-    private static final String BROWSER_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BrowserRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String BROWSER_NATIVE_REGISTRATION2 = "<Endpoint>";
-    private static final String BROWSER_NATIVE_REGISTRATION3 = "</Endpoint><P256DH>";
-    private static final String BROWSER_NATIVE_REGISTRATION4 = "</P256DH><Auth>";
-    private static final String BROWSER_NATIVE_REGISTRATION5 = "</Auth></BrowserRegistrationDescription></content></entry>";
+    private static final byte[] BROWSER_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BrowserRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] BROWSER_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<Endpoint>");
+    private static final byte[] BROWSER_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</Endpoint><P256DH>");
+    private static final byte[] BROWSER_NATIVE_REGISTRATION4 = Utf8XmlWriter.encode("</P256DH><Auth>");
+    private static final byte[] BROWSER_NATIVE_REGISTRATION5 = Utf8XmlWriter.encode("</Auth></BrowserRegistrationDescription></content></entry>");
 
     protected BrowserPushSubscription browserPushSubscription;
 
@@ -98,15 +98,20 @@ public class BrowserRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return BROWSER_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            BROWSER_NATIVE_REGISTRATION2 +
-            browserPushSubscription.getEndpoint() +
-            BROWSER_NATIVE_REGISTRATION3 +
-            browserPushSubscription.getP256dh() +
-            BROWSER_NATIVE_REGISTRATION4 +
-            browserPushSubscription.getAuth() +
-            BROWSER_NATIVE_REGISTRATION5;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(BROWSER_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(BROWSER_NATIVE_REGISTRATION2);
+        writer.write(browserPushSubscription.getEndpoint());
+        writer.write(BROWSER_NATIVE_REGISTRATION3);
+        writer.write(browserPushSubscription.getP256dh());
+        writer.write(BROWSER_NATIVE_REGISTRATION4);
+        writer.write(browserPushSubscription.getAuth());
+        writer.write(BROWSER_NATIVE_REGISTRATION5);
     }
 
 }
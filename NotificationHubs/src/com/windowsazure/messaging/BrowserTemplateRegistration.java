@@ -10,12 +10,12 @@ import java.util.Objects;
  * This class represents a browser push device template registration.
  */
 public class BrowserTemplateRegistration extends BrowserRegistration implements TemplateRegistration {
-    private static final String BROWSER_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BrowserTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String BROWSER_TEMPLATE_REGISTRATION2 = "<Endpoint>";
-    private static final String BROWSER_TEMPLATE_REGISTRATION3 = "</Endpoint><P256DH>";
-    private static final String BROWSER_TEMPLATE_REGISTRATION4 = "</P256DH><Auth>";
-    private static final String BROWSER_TEMPLATE_REGISTRATION5 = "</Auth><BodyTemplate><![CDATA[";
-    private static final String BROWSER_TEMPLATE_REGISTRATION6 = "]]></BodyTemplate></BrowserTemplateRegistrationDescription></content></entry>";
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><BrowserTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<Endpoint>");
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</Endpoint><P256DH>");
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("</P256DH><Auth>");
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION5 = Utf8XmlWriter.encode("</Auth><BodyTemplate><![CDATA[");
+    private static final byte[] BROWSER_TEMPLATE_REGISTRATION6 = Utf8XmlWriter.encode("]]></BodyTemplate></BrowserTemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -84,16 +84,21 @@ public class BrowserTemplateRegistration extends BrowserRegistration implements
 
     @Override
     public String getXml() {
-        return BROWSER_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            BROWSER_TEMPLATE_REGISTRATION2 +
-            browserPushSubscription.getEndpoint() +
-            BROWSER_TEMPLATE_REGISTRATION3 +
-            browserPushSubscription.getP256dh() +
-            BROWSER_TEMPLATE_REGISTRATION4 +
-            browserPushSubscription.getAuth() +
-            BROWSER_TEMPLATE_REGISTRATION5 +
-            bodyTemplate +
-            BROWSER_TEMPLATE_REGISTRATION6;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(BROWSER_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(BROWSER_TEMPLATE_REGISTRATION2);
+        writer.write(browserPushSubscription.getEndpoint());
+        writer.write(BROWSER_TEMPLATE_REGISTRATION3);
+        writer.write(browserPushSubscription.getP256dh());
+        writer.write(BROWSER_TEMPLATE_REGISTRATION4);
+        writer.write(browserPushSubscription.getAuth());
+        writer.write(BROWSER_TEMPLATE_REGISTRATION5);
+        writer.write(bodyTemplate);
+        writer.write(BROWSER_TEMPLATE_REGISTRATION6);
     }
 }
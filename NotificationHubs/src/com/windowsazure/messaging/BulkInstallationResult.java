@@ -0,0 +1,65 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+/**
+ * This class represents the totals of a bulk create or update of installations.
+ */
+public class BulkInstallationResult {
+    private final long succeededCount;
+    private final long failedCount;
+    private final long supersededCount;
+    private final long throttledCount;
+
+    /**
+     * Creates a new bulk installation result.
+     *
+     * @param succeededCount  The number of installations which were stored.
+     * @param failedCount     The number of installations which could not be stored.
+     * @param supersededCount The number of installations skipped for a later one with the same ID.
+     * @param throttledCount  The number of requests the hub throttled.
+     */
+    public BulkInstallationResult(long succeededCount, long failedCount, long supersededCount, long throttledCount) {
+        this.succeededCount = succeededCount;
+        this.failedCount = failedCount;
+        this.supersededCount = supersededCount;
+        this.throttledCount = throttledCount;
+    }
+
+    /**
+     * Gets the number of installations which were stored.
+     *
+     * @return The number of installations which were stored.
+     */
+    public long getSucceededCount() { return succeededCount; }
+
+    /**
+     * Gets the number of installations which could not be stored.
+     *
+     * @return The number of installations which could not be stored.
+     */
+    public long getFailedCount() { return failedCount; }
+
+    /**
+     * Gets the number of installations skipped because a later one with the same installation ID
+     * arrived before they could be sent.
+     *
+     * @return The number of superseded installations.
+     */
+    public long getSupersededCount() { return supersededCount; }
+
+    /**
+     * Gets the number of requests the hub throttled, including ones which were tried again.
+     *
+     * @return The number of throttled requests.
+     */
+    public long getThrottledCount() { return throttledCount; }
+
+    @Override
+    public String toString() {
+        return "BulkInstallationResult{succeeded=" + succeededCount + ", failed=" + failedCount
+            + ", superseded=" + supersededCount + ", throttled=" + throttledCount + "}";
+    }
+}
@@ -0,0 +1,261 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class creates or updates a sequence of installations with a bounded number of requests in
+ * flight, using an {@link AdaptiveConcurrencyLimiter} so the window follows the hub's throttling.
+ * Installations are read from the iterator on the calling thread only when there is room for
+ * another request. At most one request per installation ID is in flight, so that updates to the
+ * same installation cannot overtake each other: an installation whose ID is in flight waits, and
+ * a later one with the same ID replaces it, so the last one read wins. Throttled installations are
+ * sent again, ahead of new ones, up to the given number of attempts. An installation queued to be
+ * sent keeps its ID claimed, so a later one read meanwhile waits behind it.
+ */
+class BulkInstallationUpserter {
+    private static final InstallationResultSink NO_OP_SINK = new InstallationResultSink() {
+        @Override
+        public void succeeded(BaseInstallation installation) {
+        }
+
+        @Override
+        public void failed(BaseInstallation installation, Exception exception) {
+        }
+    };
+
+    private final NotificationHubClient hub;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final int maxAttempts;
+    private final InstallationResultSink sink;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Set<String> inFlightIds = new HashSet<>();
+    private final Map<String, Item> waiting = new HashMap<>();
+    private final ArrayDeque<Item> ready = new ArrayDeque<>();
+    private long succeededCount;
+    private long failedCount;
+    private long supersededCount;
+
+    BulkInstallationUpserter(NotificationHubClient hub, int maxInFlight, int maxAttempts, InstallationResultSink sink) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be greater than zero");
+        }
+
+        this.hub = hub;
+        this.limiter = new AdaptiveConcurrencyLimiter(1, maxInFlight);
+        this.maxAttempts = maxAttempts;
+        this.sink = sink == null ? NO_OP_SINK : sink;
+    }
+
+    /**
+     * Sends every installation and waits until each has been stored, failed or been superseded.
+     * If reading the installations fails, the requests in flight are awaited before the error is
+     * thrown. If interrupted, the requests in flight still complete and report to the sink.
+     */
+    BulkInstallationResult run(Iterator<? extends BaseInstallation> installations) throws InterruptedException {
+        try {
+            while (true) {
+                Item item = nextReady(installations.hasNext());
+                if (item == null) {
+                    if (!installations.hasNext()) {
+                        break;
+                    }
+
+                    BaseInstallation installation = installations.next();
+                    if (installation == null) {
+                        throw new IllegalArgumentException("installations cannot contain null");
+                    }
+                    item = new Item(installation);
+                    if (!claim(item)) {
+                        continue;
+                    }
+                }
+
+                dispatch(limiter.acquire(), item);
+            }
+        } catch (RuntimeException e) {
+            awaitIdle();
+            throw e;
+        }
+
+        return getResult();
+    }
+
+    BulkInstallationResult getResult() {
+        lock.lock();
+        try {
+            return new BulkInstallationResult(succeededCount, failedCount, supersededCount, limiter.getThrottleCount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns an installation to send again, whose ID is already claimed, or null to read the next
+    // one. Once the source is exhausted, waits for installations to be handed back until nothing
+    // is in flight.
+    private Item nextReady(boolean moreToRead) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Item item = ready.poll();
+                if (item != null || moreToRead || inFlightIds.isEmpty()) {
+                    return item;
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Abandons the installations queued to be sent, which hold their IDs, and waits for the
+    // requests in flight.
+    private void awaitIdle() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                for (Item item = ready.poll(); item != null; item = ready.poll()) {
+                    inFlightIds.remove(item.installation.getInstallationId());
+                }
+                if (inFlightIds.isEmpty()) {
+                    break;
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Marks the installation ID as in flight, or parks the item behind the request in flight.
+    private boolean claim(Item item) {
+        Item replaced;
+        lock.lock();
+        try {
+            String installationId = item.installation.getInstallationId();
+            if (inFlightIds.add(installationId)) {
+                return true;
+            }
+
+            replaced = waiting.put(installationId, item);
+            if (replaced != null) {
+                supersededCount++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (replaced != null) {
+            sink.superseded(replaced.installation);
+        }
+        return false;
+    }
+
+    private void dispatch(final long ticket, final Item item) {
+        FutureCallback<Object> callback = new FutureCallback<Object>() {
+            @Override
+            public void completed(Object result) {
+                limiter.releaseSuccess(ticket);
+                finish(item, null);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                limiter.release(ticket, ex);
+                if (AdaptiveConcurrencyLimiter.isThrottled(ex) && ++item.attempts < maxAttempts) {
+                    retry(item);
+                } else {
+                    finish(item, ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                limiter.releaseFailure(ticket);
+                finish(item, new RuntimeException("Operation was cancelled."));
+            }
+        };
+
+        try {
+            hub.createOrUpdateInstallationAsync(item.installation, callback);
+        } catch (RuntimeException e) {
+            limiter.releaseFailure(ticket);
+            finish(item, e);
+        }
+    }
+
+    private void finish(Item item, Exception error) {
+        lock.lock();
+        try {
+            if (error == null) {
+                succeededCount++;
+            } else {
+                failedCount++;
+            }
+            release(item.installation.getInstallationId());
+        } finally {
+            lock.unlock();
+        }
+
+        if (error == null) {
+            sink.succeeded(item.installation);
+        } else {
+            sink.failed(item.installation, error);
+        }
+    }
+
+    // Queues the installation to be sent again without freeing its ID, so that a later one with
+    // the same ID cannot be sent first. A later one already waiting is sent instead.
+    private void retry(Item item) {
+        Item next;
+        lock.lock();
+        try {
+            next = waiting.remove(item.installation.getInstallationId());
+            if (next != null) {
+                supersededCount++;
+            }
+            ready.addFirst(next != null ? next : item);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (next != null) {
+            sink.superseded(item.installation);
+        }
+    }
+
+    // Hands the installation ID to the installation waiting on it, if any, or else frees it.
+    private void release(String installationId) {
+        Item next = waiting.remove(installationId);
+        if (next != null) {
+            ready.add(next);
+        } else {
+            inFlightIds.remove(installationId);
+        }
+        changed.signalAll();
+    }
+
+    private static final class Item {
+        private final BaseInstallation installation;
+        private int attempts;
+
+        Item(BaseInstallation installation) {
+            this.installation = installation;
+        }
+    }
+}
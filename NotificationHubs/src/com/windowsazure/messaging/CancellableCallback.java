@@ -0,0 +1,216 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class wraps the callback of an asynchronous operation so that the caller can cancel the
+ * operation, or give it a deadline. Cancelling aborts the request in flight, including a retry
+ * waiting to be sent, and tells the wrapped callback the operation was cancelled. The deadline is
+ * counted from the creation of the callback; once it has passed, the request is aborted the same
+ * way and the wrapped callback fails with a {@link TimeoutException}. The wrapped callback is told
+ * the first outcome only. Operations made of several requests, such as batched sends, end at the
+ * deadline too, but their requests already in flight finish in the background. A send which waits
+ * for an identical at-least-once send already in flight ends at its own deadline, but only the
+ * operation which started the send can abort it. Pass a new instance to every operation.
+ * @param <T> The type returned from the asynchronous operation.
+ */
+public class CancellableCallback<T> implements FutureCallback<T>, Cancellable {
+    static final String ATTRIBUTE = "com.windowsazure.messaging.cancellable";
+
+    // Aborting a request does not stop the transport from sending a retry over a connection it
+    // kept, so every attempt checks the operation is still running before it is sent.
+    private static final AsyncExecChainHandler ATTEMPT_STARTED = (request, entityProducer, scope, chain, callback) -> {
+        Object operation = scope.clientContext.getAttribute(ATTRIBUTE);
+        if (operation instanceof CancellableCallback && ((CancellableCallback<?>) operation).isDone()) {
+            callback.failed(new CancellationException("The operation ended before the request was sent."));
+            return;
+        }
+        chain.proceed(request, entityProducer, scope, callback);
+    };
+
+    private final FutureCallback<T> delegate;
+    private final Duration deadline;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final ScheduledFuture<?> timer;
+    private volatile Cancellable request;
+
+    /**
+     * Creates a callback without a deadline, which only ends early when cancelled.
+     * @param delegate The callback told the outcome of the operation.
+     */
+    public CancellableCallback(FutureCallback<T> delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Creates a callback whose operation fails once the deadline has passed.
+     * @param delegate The callback told the outcome of the operation.
+     * @param deadline The time the operation may take, including its retries, or null for none.
+     */
+    public CancellableCallback(FutureCallback<T> delegate, Duration deadline) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (deadline != null && deadline.isNegative()) {
+            throw new IllegalArgumentException("deadline cannot be negative");
+        }
+
+        this.delegate = delegate;
+        this.deadline = deadline;
+        this.timer = deadline == null
+            ? null
+            : Scheduler.INSTANCE.schedule(this::expire, deadline.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the time the operation may take.
+     * @return The deadline, or null if the operation has none.
+     */
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets whether the operation has ended, by completing, failing, being cancelled or passing
+     * its deadline.
+     * @return true if the wrapped callback was told the outcome.
+     */
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * Cancels the operation, aborting its request and any retry waiting to be sent.
+     * @return true if the operation was cancelled, false if it had already ended.
+     */
+    @Override
+    public boolean cancel() {
+        if (!finish()) {
+            return false;
+        }
+
+        abort();
+        delegate.cancelled();
+        return true;
+    }
+
+    @Override
+    public void completed(T result) {
+        if (finish()) {
+            delegate.completed(result);
+        }
+    }
+
+    @Override
+    public void failed(Exception ex) {
+        if (finish()) {
+            delegate.failed(ex);
+        }
+    }
+
+    @Override
+    public void cancelled() {
+        if (finish()) {
+            delegate.cancelled();
+        }
+    }
+
+    /**
+     * Remembers the request in flight for the operation, so that cancelling aborts it. A request
+     * attached after the operation ended is aborted at once.
+     */
+    void attach(Cancellable request) {
+        this.request = request;
+        if (done.get()) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Finds the cancellable callback of the operation a callback reports to, looking through the
+     * callbacks with which the SDK wraps the caller's.
+     */
+    static CancellableCallback<?> find(FutureCallback<?> callback) {
+        if (callback instanceof CancellableCallback) {
+            return (CancellableCallback<?>) callback;
+        }
+        return callback instanceof Forwarding ? ((Forwarding) callback).getCancellable() : null;
+    }
+
+    static void install(HttpAsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-cancellation", ATTEMPT_STARTED);
+    }
+
+    static void install(H2AsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-cancellation", ATTEMPT_STARTED);
+    }
+
+    private void expire() {
+        if (finish()) {
+            abort();
+            delegate.failed(new TimeoutException("The operation did not complete within " + deadline));
+        }
+    }
+
+    private boolean finish() {
+        if (!done.compareAndSet(false, true)) {
+            return false;
+        }
+
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        return true;
+    }
+
+    // Aborting the request reports its cancellation through the request's own callback, which
+    // this callback then ignores.
+    private void abort() {
+        Cancellable current = request;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * This interface is implemented by the callbacks with which the SDK wraps the caller's, so
+     * that the request they send can still be aborted through the caller's cancellable callback.
+     */
+    interface Forwarding {
+        CancellableCallback<?> getCancellable();
+    }
+
+    // One daemon thread expires the deadlines of every operation; expiring only aborts a request
+    // and hands the failure to the wrapped callback.
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "CancellableCallback");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * This class sends a sequence of chunks with a bounded number of requests in flight and combines
+ * their outcomes. Chunks are pulled from the iterator only when there is room for another request,
+ * and only failed chunks are kept, so the whole sequence never has to be held in memory. Sends are expected to be asynchronous; a
+ * send which completes inline is handled without growing the stack.
+ */
+class ChunkDispatcher {
+    private final Iterator<List<String>> chunks;
+    private final BiConsumer<List<String>, FutureCallback<NotificationOutcome>> sender;
+    private final int maxConcurrency;
+    private final FutureCallback<AggregateNotificationOutcome> callback;
+
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final List<AggregateNotificationOutcome.Part> parts = new ArrayList<>();
+    private int inFlight;
+    private int nextIndex;
+    private boolean exhausted;
+    private boolean finished;
+    private RuntimeException iterationError;
+
+    ChunkDispatcher(
+        Iterator<List<String>> chunks,
+        BiConsumer<List<String>, FutureCallback<NotificationOutcome>> sender,
+        int maxConcurrency,
+        FutureCallback<AggregateNotificationOutcome> callback
+    ) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than zero");
+        }
+
+        this.chunks = chunks;
+        this.sender = sender;
+        this.maxConcurrency = maxConcurrency;
+        this.callback = callback;
+    }
+
+    /**
+     * Starts sending the chunks; the callback is invoked once every chunk has completed.
+     */
+    void start() {
+        drain();
+    }
+
+    /**
+     * Splits the values into consecutive lists of at most the given size, reading the values lazily.
+     */
+    static Iterator<List<String>> chunk(final Iterable<String> values, final int size) {
+        final Iterator<String> source = values.iterator();
+        return new Iterator<List<String>>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public List<String> next() {
+                if (!source.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                List<String> chunk = new ArrayList<>(Math.min(size, 64));
+                while (chunk.size() < size && source.hasNext()) {
+                    chunk.add(source.next());
+                }
+                return chunk;
+            }
+        };
+    }
+
+    private void drain() {
+        // Only one thread drains at a time; a completion that arrives while draining just asks
+        // the active drainer to go around again.
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        do {
+            while (true) {
+                final List<String> chunk;
+                final int index;
+                synchronized (this) {
+                    if (exhausted || inFlight >= maxConcurrency) {
+                        break;
+                    }
+
+                    try {
+                        if (!chunks.hasNext()) {
+                            exhausted = true;
+                            break;
+                        }
+                        chunk = chunks.next();
+                    } catch (RuntimeException e) {
+                        iterationError = e;
+                        exhausted = true;
+                        break;
+                    }
+
+                    index = nextIndex++;
+                    inFlight++;
+                }
+
+                send(index, chunk);
+            }
+
+            completeIfDone();
+        } while (drainRequests.decrementAndGet() != 0);
+    }
+
+    private void send(final int index, final List<String> chunk) {
+        try {
+            sender.accept(chunk, new FutureCallback<NotificationOutcome>() {
+                @Override
+                public void completed(NotificationOutcome outcome) {
+                    onPartDone(new AggregateNotificationOutcome.Part(index, chunk, outcome, null));
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    onPartDone(new AggregateNotificationOutcome.Part(index, chunk, null, ex));
+                }
+
+                @Override
+                public void cancelled() {
+                    onPartDone(new AggregateNotificationOutcome.Part(index, chunk, null,
+                        new RuntimeException("Operation was cancelled.")));
+                }
+            });
+        } catch (RuntimeException e) {
+            onPartDone(new AggregateNotificationOutcome.Part(index, chunk, null, e));
+        }
+    }
+
+    private void onPartDone(AggregateNotificationOutcome.Part part) {
+        synchronized (this) {
+            parts.add(part);
+            inFlight--;
+        }
+        drain();
+    }
+
+    private void completeIfDone() {
+        List<AggregateNotificationOutcome.Part> completed;
+        RuntimeException error;
+        synchronized (this) {
+            if (finished || !exhausted || inFlight > 0) {
+                return;
+            }
+
+            finished = true;
+            completed = new ArrayList<>(parts);
+            error = iterationError;
+        }
+
+        // Parts already sent are reported along with an iteration error, so that the caller knows
+        // which targets were notified before resending the rest.
+        completed.sort(Comparator.comparingInt(AggregateNotificationOutcome.Part::getIndex));
+        callback.completed(new AggregateNotificationOutcome(completed, error));
+    }
+}
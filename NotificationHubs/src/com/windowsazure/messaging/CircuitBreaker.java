@@ -0,0 +1,407 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * This class stops requests to an endpoint which keeps failing, so that callers fail fast with a
+ * {@link CircuitBreakerOpenException} instead of waiting for timeouts and retries. Each endpoint,
+ * i.e. each namespace, has its own circuit. A closed circuit records the outcome of the last
+ * requests, and opens once enough of them failed, with an I/O error or a 408 or 5xx response, or
+ * were slow. An open circuit rejects every request until the open duration has passed, then lets a
+ * few trial requests through while half open, and closes again if few enough of them failed or
+ * were slow, or opens again otherwise. Share one breaker between all the clients of a namespace.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of the circuit of an endpoint.
+     */
+    public enum State {
+        /**
+         * Requests are sent and their outcomes recorded.
+         */
+        CLOSED,
+        /**
+         * Requests fail without being sent.
+         */
+        OPEN,
+        /**
+         * A few trial requests are sent to decide whether to close the circuit again.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * This interface is told when the circuit of an endpoint changes state, e.g. to shed or queue
+     * work while it is open. It is called on the thread which completed or started the request
+     * causing the change, so it should return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the circuit of an endpoint changes state.
+         *
+         * @param endpoint The endpoint, as the host and any port of its URI.
+         * @param from     The previous state.
+         * @param to       The new state.
+         */
+        void stateChanged(String endpoint, State from, State to);
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    CircuitBreaker(Builder builder) {
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = builder.slowCallDuration.toNanos();
+        this.openNanos = builder.openDuration.toNanos();
+        this.halfOpenCalls = Math.min(builder.halfOpenCalls, builder.windowSize);
+        this.nanoClock = builder.nanoClock;
+    }
+
+    /**
+     * Creates a builder for a circuit breaker.
+     *
+     * @return A new builder for a circuit breaker.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the state of the circuit of an endpoint.
+     *
+     * @param endpoint The endpoint, as the host and any port of its URI, e.g.
+     *                 {@code mynamespace.servicebus.windows.net}.
+     * @return The state of the circuit, closed if no request was made to the endpoint.
+     */
+    public State getState(String endpoint) {
+        Circuit circuit = circuits.get(endpoint);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * Adds a listener which is told when the circuit of an endpoint changes state.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Lets a request to the endpoint through, or fails if the circuit is open.
+     */
+    Call acquire(String endpoint) throws CircuitBreakerOpenException {
+        return circuits.computeIfAbsent(endpoint, Circuit::new).acquire();
+    }
+
+    /**
+     * Gets whether a request with the given outcome counts as a failure of the endpoint. Other
+     * errors from the service, such as 404 or 429, show the endpoint is up.
+     */
+    static boolean isFailure(int statusCode, Exception error) {
+        if (error instanceof NotificationHubsException || error == null) {
+            return statusCode == 408 || statusCode >= 500;
+        }
+        return true;
+    }
+
+    private void notifyListeners(String endpoint, State from, State to) {
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(endpoint, from, to);
+            } catch (RuntimeException ignored) {
+                // Listener errors are not the caller's concern
+            }
+        }
+    }
+
+    /**
+     * This class represents a request let through by a circuit, whose outcome is recorded once.
+     */
+    final class Call {
+        private final Circuit circuit;
+        private final long generation;
+        private volatile long startNanos;
+
+        private Call(Circuit circuit, long generation, long startNanos) {
+            this.circuit = circuit;
+            this.generation = generation;
+            this.startNanos = startNanos;
+        }
+
+        // Restarts the clock of a request which waited before being sent, e.g. for a rate limiter
+        void sent() {
+            startNanos = nanoClock.getAsLong();
+        }
+
+        void completed(int statusCode, Exception error) {
+            circuit.record(this, isFailure(statusCode, error));
+        }
+
+        void cancelled() {
+            circuit.release(this);
+        }
+    }
+
+    // The outcomes of the last calls are kept in a ring, as two bits each: failed, and slow
+    private final class Circuit {
+        private static final byte FAILED = 1;
+        private static final byte SLOW = 2;
+
+        private final String endpoint;
+        private final byte[] outcomes = new byte[windowSize];
+        private int next;
+        private int calls;
+        private int failedCalls;
+        private int slowCalls;
+        private State state = State.CLOSED;
+        private long generation;
+        private long openedNanos;
+        private int trialsStarted;
+
+        private Circuit(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        Call acquire() throws CircuitBreakerOpenException {
+            State from;
+            State to;
+            Call call;
+            long now = nanoClock.getAsLong();
+            synchronized (this) {
+                from = state;
+                if (state == State.OPEN) {
+                    long remaining = openedNanos + openNanos - now;
+                    if (remaining > 0) {
+                        throw new CircuitBreakerOpenException(endpoint, Duration.ofNanos(remaining));
+                    }
+                    transition(State.HALF_OPEN);
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialsStarted >= halfOpenCalls) {
+                        throw new CircuitBreakerOpenException(endpoint, Duration.ZERO);
+                    }
+                    trialsStarted++;
+                }
+                call = new Call(this, generation, now);
+                to = state;
+            }
+
+            if (from != to) {
+                notifyListeners(endpoint, from, to);
+            }
+            return call;
+        }
+
+        void record(Call call, boolean failed) {
+            long now = nanoClock.getAsLong();
+            State from;
+            State to;
+            synchronized (this) {
+                // Calls started before the last change of state no longer count
+                if (call.generation != generation) {
+                    return;
+                }
+
+                if (calls == windowSize) {
+                    byte evicted = outcomes[next];
+                    failedCalls -= evicted & FAILED;
+                    slowCalls -= (evicted & SLOW) >> 1;
+                } else {
+                    calls++;
+                }
+                byte outcome = (byte) ((failed ? FAILED : 0) | (now - call.startNanos >= slowCallNanos ? SLOW : 0));
+                outcomes[next] = outcome;
+                next = (next + 1) % windowSize;
+                failedCalls += outcome & FAILED;
+                slowCalls += (outcome & SLOW) >> 1;
+
+                from = state;
+                if (state == State.CLOSED && calls >= minimumCalls && isOverThreshold()) {
+                    transition(State.OPEN);
+                    openedNanos = now;
+                } else if (state == State.HALF_OPEN && calls >= halfOpenCalls) {
+                    transition(isOverThreshold() ? State.OPEN : State.CLOSED);
+                    openedNanos = now;
+                }
+                to = state;
+            }
+
+            if (from != to) {
+                notifyListeners(endpoint, from, to);
+            }
+        }
+
+        synchronized void release(Call call) {
+            if (call.generation == generation && state == State.HALF_OPEN) {
+                trialsStarted--;
+            }
+        }
+
+        private boolean isOverThreshold() {
+            return failedCalls >= failureRateThreshold * calls || slowCalls >= slowCallRateThreshold * calls;
+        }
+
+        // Every state starts with an empty window
+        private void transition(State to) {
+            state = to;
+            generation++;
+            calls = 0;
+            next = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+            trialsStarted = 0;
+        }
+    }
+
+    /**
+     * This class builds a circuit breaker.
+     */
+    public static class Builder {
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 0.5;
+        private Duration slowCallDuration = Duration.ofSeconds(10);
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenCalls = 5;
+        private LongSupplier nanoClock = System::nanoTime;
+
+        Builder() {
+        }
+
+        /**
+         * Sets the number of the last requests whose outcomes are recorded, 100 by default.
+         * @param value The size of the sliding window.
+         * @return This builder.
+         */
+        public Builder setWindowSize(int value) {
+            windowSize = requirePositive(value, "windowSize");
+            return this;
+        }
+
+        /**
+         * Sets the number of requests recorded before the circuit may open, 20 by default.
+         * @param value The minimum number of requests.
+         * @return This builder.
+         */
+        public Builder setMinimumCalls(int value) {
+            minimumCalls = requirePositive(value, "minimumCalls");
+            return this;
+        }
+
+        /**
+         * Sets the share of failed requests which opens the circuit, 0.5 by default.
+         * @param value The failure rate, between 0 and 1.
+         * @return This builder.
+         */
+        public Builder setFailureRateThreshold(double value) {
+            failureRateThreshold = requireRate(value, "failureRateThreshold");
+            return this;
+        }
+
+        /**
+         * Sets the share of slow requests which opens the circuit, 0.5 by default.
+         * @param value The slow call rate, between 0 and 1.
+         * @return This builder.
+         */
+        public Builder setSlowCallRateThreshold(double value) {
+            slowCallRateThreshold = requireRate(value, "slowCallRateThreshold");
+            return this;
+        }
+
+        /**
+         * Sets the time after which a request counts as slow, including its retries, 10 seconds
+         * by default.
+         * @param value The slow call duration.
+         * @return This builder.
+         */
+        public Builder setSlowCallDuration(Duration value) {
+            slowCallDuration = value;
+            return this;
+        }
+
+        /**
+         * Sets how long an open circuit rejects requests before letting trial requests through,
+         * 30 seconds by default.
+         * @param value The open duration.
+         * @return This builder.
+         */
+        public Builder setOpenDuration(Duration value) {
+            openDuration = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of trial requests let through while half open, 5 by default.
+         * @param value The number of trial requests.
+         * @return This builder.
+         */
+        public Builder setHalfOpenCalls(int value) {
+            halfOpenCalls = requirePositive(value, "halfOpenCalls");
+            return this;
+        }
+
+        Builder setNanoClock(LongSupplier value) {
+            nanoClock = value;
+            return this;
+        }
+
+        /**
+         * Builds the circuit breaker.
+         * @return A new circuit breaker.
+         */
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return value;
+        }
+
+        private static double requireRate(double value, String name) {
+            if (!(value > 0 && value <= 1)) {
+                throw new IllegalArgumentException(name + " must be greater than 0 and at most 1");
+            }
+            return value;
+        }
+    }
+}
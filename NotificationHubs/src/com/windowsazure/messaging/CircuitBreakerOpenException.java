@@ -0,0 +1,38 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+
+/**
+ * This class represents the failure of a request which was not sent because the circuit breaker
+ * of its endpoint is open. It is transient, with the status code 503 Service Unavailable although
+ * no response was received, and retryAfter gives the time left until the circuit lets a trial
+ * request through.
+ */
+@SuppressWarnings("serial")
+public class CircuitBreakerOpenException extends NotificationHubsException {
+    private final String endpoint;
+
+    /**
+     * Creates an exception for a request to an endpoint whose circuit is open.
+     *
+     * @param endpoint   The endpoint of the request.
+     * @param retryAfter The time left until the circuit lets a trial request through.
+     */
+    public CircuitBreakerOpenException(String endpoint, Duration retryAfter) {
+        super("The circuit breaker for " + endpoint + " is open", 503, true, retryAfter);
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Gets the endpoint whose circuit is open.
+     *
+     * @return The endpoint, as the host and any port of its URI.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
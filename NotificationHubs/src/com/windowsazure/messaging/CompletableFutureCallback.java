@@ -0,0 +1,117 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * This class adapts a callback based operation to a {@link CompletableFuture}. The future is
+ * completed on the given executor rather than on the I/O thread that invoked the callback, so
+ * dependent stages added without an explicit executor run there too.
+ * @param <T> The type returned from the asynchronous operation.
+ */
+final class CompletableFutureCallback<T> implements FutureCallback<T> {
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final Executor executor;
+
+    private CompletableFutureCallback(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts an operation with a callback that completes the returned future on the executor.
+     * An exception thrown while starting the operation completes the future exceptionally.
+     */
+    static <T> CompletableFuture<T> call(Executor executor, Consumer<FutureCallback<T>> operation) {
+        return call(executor, null, operation);
+    }
+
+    /**
+     * Starts an operation with a callback that completes the returned future on the executor, or
+     * fails it with a {@link java.util.concurrent.TimeoutException} once the deadline, if any, has
+     * passed. Cancelling or completing the future first aborts the operation.
+     */
+    static <T> CompletableFuture<T> call(Executor executor, Duration deadline, Consumer<FutureCallback<T>> operation) {
+        CompletableFutureCallback<T> callback = new CompletableFutureCallback<>(executor);
+        start(callback, new CancellableCallback<>(callback, deadline), operation);
+        return callback.future;
+    }
+
+    /**
+     * Starts an operation that returns nothing with a callback that completes the returned future
+     * on the executor.
+     */
+    static CompletableFuture<Void> callVoid(Executor executor, Consumer<FutureCallback<Object>> operation) {
+        return callVoid(executor, null, operation);
+    }
+
+    /**
+     * Starts an operation that returns nothing, with a deadline as for
+     * {@link #call(Executor, Duration, Consumer)}.
+     */
+    static CompletableFuture<Void> callVoid(Executor executor, Duration deadline, Consumer<FutureCallback<Object>> operation) {
+        CompletableFutureCallback<Void> callback = new CompletableFutureCallback<>(executor);
+        start(callback, new CancellableCallback<>(new FutureCallback<Object>() {
+            @Override
+            public void completed(Object result) {
+                callback.completed(null);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                callback.cancelled();
+            }
+        }, deadline), operation);
+        return callback.future;
+    }
+
+    private static <R> void start(
+        CompletableFutureCallback<?> callback,
+        CancellableCallback<R> cancellable,
+        Consumer<FutureCallback<R>> operation) {
+        // The future may be cancelled or completed by the caller, which ends the operation
+        callback.future.whenComplete((result, error) -> cancellable.cancel());
+        try {
+            operation.accept(cancellable);
+        } catch (RuntimeException e) {
+            callback.future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void completed(T result) {
+        complete(() -> future.complete(result));
+    }
+
+    @Override
+    public void failed(Exception ex) {
+        complete(() -> future.completeExceptionally(ex));
+    }
+
+    @Override
+    public void cancelled() {
+        complete(() -> future.cancel(false));
+    }
+
+    private void complete(Runnable completion) {
+        try {
+            executor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            // The executor is shutting down, complete here rather than leave the future pending
+            completion.run();
+        }
+    }
+}
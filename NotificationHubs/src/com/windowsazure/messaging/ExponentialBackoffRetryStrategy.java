@@ -0,0 +1,351 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This class represents a retry strategy which backs off exponentially with random jitter, so
+ * that clients which failed together do not retry together, and which bounds the retries it makes.
+ * A retry budget allows retries only up to a share of the recent requests, so an outage is not
+ * amplified by retry traffic, and a deadline stops retrying an operation which has taken too
+ * long. A Retry-After hint from the service is honored instead of the backoff. The budget is kept
+ * by the strategy, so give each transport its own strategy for a budget per client. Create one
+ * with {@link #builder()} and pass it to {@link HttpClientManager#setRetryStrategy} or
+ * {@link HttpClientTransport.Builder#setRetryStrategy}.
+ */
+public class ExponentialBackoffRetryStrategy extends BasicRetryStrategy {
+    private static final String STARTED_ATTRIBUTE = "com.windowsazure.messaging.retry-started";
+    private static final String DELAY_ATTRIBUTE = "com.windowsazure.messaging.retry-delay";
+    private static final String PREVIOUS_DELAY_ATTRIBUTE = "com.windowsazure.messaging.retry-previous-delay";
+
+    /**
+     * The ways of spreading out the delays of clients retrying at the same time.
+     */
+    public enum Jitter {
+        /**
+         * Waits exactly the exponential backoff.
+         */
+        NONE,
+        /**
+         * Waits a random time between zero and the exponential backoff.
+         */
+        FULL,
+        /**
+         * Waits a random time between the base delay and three times the previous delay, or three
+         * times the base delay before the first retry.
+         */
+        DECORRELATED
+    }
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Jitter jitter;
+    private final long deadlineNanos;
+    private final RetryBudget budget;
+    private final LongSupplier nanoClock;
+
+    ExponentialBackoffRetryStrategy(Builder builder) {
+        super(builder.maxRetries, builder.baseDelay, builder.nonRetriableIOExceptionClasses, builder.retriableCodes);
+        this.baseDelayMillis = builder.baseDelay.toMilliseconds();
+        this.maxDelayMillis = builder.maxDelay.toMilliseconds();
+        this.jitter = builder.jitter;
+        this.deadlineNanos = builder.deadline == null ? 0 : builder.deadline.toNanoseconds();
+        this.budget = builder.budgetRatio > 0 || builder.minRetriesPerSecond > 0
+            ? new RetryBudget(builder.budgetRatio, builder.minRetriesPerSecond, builder.nanoClock)
+            : null;
+        this.nanoClock = builder.nanoClock;
+    }
+
+    /**
+     * Creates a builder for the retry strategy.
+     * @return A new builder for the retry strategy.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean retryRequest(final HttpRequest httpRequest, final IOException e, final int i, final HttpContext httpContext) {
+        attempted(i, httpContext);
+        return super.retryRequest(httpRequest, e, i, httpContext) && admitRetry(null, i, httpContext);
+    }
+
+    @Override
+    public boolean retryRequest(final HttpResponse httpResponse, final int i, final HttpContext httpContext) {
+        attempted(i, httpContext);
+        return super.retryRequest(httpResponse, i, httpContext)
+            && admitRetry(parseRetryAfter(httpResponse), i, httpContext);
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpRequest httpRequest, final IOException e, final int i, final HttpContext httpContext) {
+        return takeDelay(i, httpContext);
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpResponse httpResponse, final int i, final HttpContext httpContext) {
+        TimeValue retryAfter = parseRetryAfter(httpResponse);
+        return retryAfter != null ? retryAfter : takeDelay(i, httpContext);
+    }
+
+    /**
+     * Gets the backoff before the given retry, in milliseconds, without jitter.
+     */
+    long getBackoffMillis(int retry) {
+        long backoff = baseDelayMillis << Math.min(retry - 1, 30);
+        return backoff < 0 || backoff > maxDelayMillis ? maxDelayMillis : backoff;
+    }
+
+    // The first attempt of a request is counted towards the budget, and starts the deadline
+    private void attempted(int execCount, HttpContext context) {
+        if (execCount == 1) {
+            if (budget != null) {
+                budget.deposit();
+            }
+            if (context != null) {
+                context.setAttribute(STARTED_ATTRIBUTE, nanoClock.getAsLong());
+            }
+        }
+    }
+
+    // Decides on the delay before the retry, so that a retry which would end after the deadline is
+    // not made, and keeps the delay for getRetryInterval.
+    private boolean admitRetry(TimeValue retryAfter, int execCount, HttpContext context) {
+        long delayMillis = retryAfter != null ? retryAfter.toMilliseconds() : nextDelayMillis(execCount, context);
+        if (deadlineNanos > 0 && context != null) {
+            Object started = context.getAttribute(STARTED_ATTRIBUTE);
+            if (started instanceof Long
+                && nanoClock.getAsLong() - (Long) started + TimeUnit.MILLISECONDS.toNanos(delayMillis) > deadlineNanos) {
+                return false;
+            }
+        }
+        if (budget != null && !budget.tryWithdraw()) {
+            return false;
+        }
+
+        if (context != null) {
+            context.setAttribute(DELAY_ATTRIBUTE, delayMillis);
+        }
+        return true;
+    }
+
+    private TimeValue takeDelay(int execCount, HttpContext context) {
+        Object delay = context == null ? null : context.removeAttribute(DELAY_ATTRIBUTE);
+        return TimeValue.ofMilliseconds(delay instanceof Long ? (Long) delay : nextDelayMillis(execCount, context));
+    }
+
+    private long nextDelayMillis(int execCount, HttpContext context) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (jitter) {
+            case FULL:
+                return random.nextLong(getBackoffMillis(execCount) + 1);
+            case DECORRELATED:
+                Object previous = context == null ? null : context.getAttribute(PREVIOUS_DELAY_ATTRIBUTE);
+                long upper = Math.min(maxDelayMillis, 3 * (previous instanceof Long ? (Long) previous : baseDelayMillis));
+                long delay = baseDelayMillis + random.nextLong(Math.max(0, upper - baseDelayMillis) + 1);
+                if (context != null) {
+                    context.setAttribute(PREVIOUS_DELAY_ATTRIBUTE, delay);
+                }
+                return delay;
+            default:
+                return getBackoffMillis(execCount);
+        }
+    }
+
+    /**
+     * This class keeps the retries of a client to a share of its recent requests. Every request
+     * earns a fraction of a retry, up to the retries earned by the last hundred requests, and
+     * every retry spends one. A small reserve, refilled every second, lets a client which sends
+     * few requests still retry.
+     */
+    static final class RetryBudget {
+        private static final int REMEMBERED_REQUESTS = 100;
+
+        private final double ratio;
+        private final double minRetriesPerSecond;
+        private final LongSupplier nanoClock;
+        private double balance;
+        private double reserve;
+        private long refilledNanos;
+
+        RetryBudget(double ratio, double minRetriesPerSecond, LongSupplier nanoClock) {
+            this.ratio = ratio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+            this.nanoClock = nanoClock;
+            this.reserve = minRetriesPerSecond;
+            this.refilledNanos = nanoClock.getAsLong();
+        }
+
+        synchronized void deposit() {
+            balance = Math.min(Math.max(1, ratio * REMEMBERED_REQUESTS), balance + ratio);
+        }
+
+        synchronized boolean tryWithdraw() {
+            long now = nanoClock.getAsLong();
+            reserve = Math.min(minRetriesPerSecond, reserve + (now - refilledNanos) / 1e9 * minRetriesPerSecond);
+            refilledNanos = now;
+
+            if (balance >= 1) {
+                balance -= 1;
+                return true;
+            }
+            if (reserve >= 1) {
+                reserve -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This class builds an exponential backoff retry strategy.
+     */
+    public static class Builder {
+        private long maxRetries = 3;
+        private TimeValue baseDelay = TimeValue.ofMilliseconds(500);
+        private TimeValue maxDelay = TimeValue.ofSeconds(30);
+        private Jitter jitter = Jitter.FULL;
+        private TimeValue deadline;
+        private double budgetRatio = 0.2;
+        private double minRetriesPerSecond = 10;
+        private List<Class<? extends IOException>> nonRetriableIOExceptionClasses = DEFAULT_NON_RETRIABLE_IO_EXCEPTION_CLASSES;
+        private List<Integer> retriableCodes = DEFAULT_RETRIABLE_CODES;
+        private LongSupplier nanoClock = System::nanoTime;
+
+        Builder() {
+        }
+
+        /**
+         * Sets the most retries of a request, three by default.
+         * @param value The maximum number of retries.
+         * @return This builder.
+         */
+        public Builder setMaxRetries(long value) {
+            maxRetries = value;
+            return this;
+        }
+
+        /**
+         * Sets the backoff before the first retry, which doubles for every retry after it, 500
+         * milliseconds by default.
+         * @param value The base delay.
+         * @return This builder.
+         */
+        public Builder setBaseDelay(TimeValue value) {
+            baseDelay = requirePositive(value, "baseDelay");
+            return this;
+        }
+
+        /**
+         * Sets the longest backoff, 30 seconds by default. A Retry-After hint may be longer.
+         * @param value The maximum delay.
+         * @return This builder.
+         */
+        public Builder setMaxDelay(TimeValue value) {
+            maxDelay = requirePositive(value, "maxDelay");
+            return this;
+        }
+
+        /**
+         * Sets how the backoff is spread out, {@link Jitter#FULL} by default.
+         * @param value The jitter.
+         * @return This builder.
+         */
+        public Builder setJitter(Jitter value) {
+            jitter = value;
+            return this;
+        }
+
+        /**
+         * Sets the time after which an operation is no longer retried, counted from the end of its
+         * first attempt and including the delay before the next retry. There is no deadline by
+         * default.
+         * @param value The deadline, or null for no deadline.
+         * @return This builder.
+         */
+        public Builder setDeadline(TimeValue value) {
+            deadline = value == null ? null : requirePositive(value, "deadline");
+            return this;
+        }
+
+        /**
+         * Sets the retry budget, by default 20% of the recent requests plus 10 retries a second.
+         * @param ratio The retries allowed per request, e.g. 0.2 for 20% of the requests.
+         * @param minRetriesPerSecond The retries allowed every second whatever the number of requests.
+         * @return This builder.
+         */
+        public Builder setRetryBudget(double ratio, double minRetriesPerSecond) {
+            if (ratio < 0 || minRetriesPerSecond < 0) {
+                throw new IllegalArgumentException("The retry budget must not be negative");
+            }
+            budgetRatio = ratio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+            return this;
+        }
+
+        /**
+         * Removes the retry budget, so that every request may be retried up to the maximum.
+         * @return This builder.
+         */
+        public Builder disableRetryBudget() {
+            return setRetryBudget(0, 0);
+        }
+
+        /**
+         * Sets the HTTP status codes which are retried.
+         * @param value The retriable HTTP status codes.
+         * @return This builder.
+         */
+        public Builder setRetriableCodes(Collection<Integer> value) {
+            retriableCodes = new ArrayList<>(value);
+            return this;
+        }
+
+        /**
+         * Sets the IOException classes which are not retried.
+         * @param value The non-retriable IOException classes.
+         * @return This builder.
+         */
+        public Builder setNonRetriableIOExceptionClasses(Collection<Class<? extends IOException>> value) {
+            nonRetriableIOExceptionClasses = new ArrayList<>(value);
+            return this;
+        }
+
+        Builder setNanoClock(LongSupplier value) {
+            nanoClock = value;
+            return this;
+        }
+
+        /**
+         * Builds the retry strategy.
+         * @return A new retry strategy.
+         */
+        public ExponentialBackoffRetryStrategy build() {
+            if (maxDelay.compareTo(baseDelay) < 0) {
+                throw new IllegalArgumentException("maxDelay must not be shorter than baseDelay");
+            }
+            return new ExponentialBackoffRetryStrategy(this);
+        }
+
+        private static TimeValue requirePositive(TimeValue value, String name) {
+            if (!TimeValue.isPositive(value)) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return value;
+        }
+    }
+}
@@ -11,9 +11,9 @@ import java.util.Objects;
  * @deprecated use {@link com.windowsazure.messaging.FcmV1Registration#FcmV1Registration()} instead.
  */
 public class FcmRegistration extends Registration {
-    private static final String FCM_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String FCM_NATIVE_REGISTRATION2 = "<GcmRegistrationId>";
-    private static final String FCM_NATIVE_REGISTRATION3 = "</GcmRegistrationId></GcmRegistrationDescription></content></entry>";
+    private static final byte[] FCM_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] FCM_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<GcmRegistrationId>");
+    private static final byte[] FCM_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</GcmRegistrationId></GcmRegistrationDescription></content></entry>");
 
     protected String fcmRegistrationId;
 
@@ -78,11 +78,16 @@ public class FcmRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return FCM_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            FCM_NATIVE_REGISTRATION2 +
-            fcmRegistrationId +
-            FCM_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(FCM_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(FCM_NATIVE_REGISTRATION2);
+        writer.write(fcmRegistrationId);
+        writer.write(FCM_NATIVE_REGISTRATION3);
     }
 
 }
@@ -11,10 +11,10 @@ import java.util.Objects;
  * @deprecated use {@link com.windowsazure.messaging.FcmV1TemplateRegistration#FcmV1TemplateRegistration()} instead.
  */
 public class FcmTemplateRegistration extends FcmRegistration implements TemplateRegistration {
-    private static final String FCM_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String FCM_TEMPLATE_REGISTRATION2 = "<GcmRegistrationId>";
-    private static final String FCM_TEMPLATE_REGISTRATION3 = "</GcmRegistrationId><BodyTemplate><![CDATA[";
-    private static final String FCM_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate></GcmTemplateRegistrationDescription></content></entry>";
+    private static final byte[] FCM_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] FCM_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<GcmRegistrationId>");
+    private static final byte[] FCM_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</GcmRegistrationId><BodyTemplate><![CDATA[");
+    private static final byte[] FCM_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate></GcmTemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -83,12 +83,17 @@ public class FcmTemplateRegistration extends FcmRegistration implements Template
 
     @Override
     public String getXml() {
-        return FCM_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            FCM_TEMPLATE_REGISTRATION2 +
-            fcmRegistrationId +
-            FCM_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            FCM_TEMPLATE_REGISTRATION4;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(FCM_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(FCM_TEMPLATE_REGISTRATION2);
+        writer.write(fcmRegistrationId);
+        writer.write(FCM_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(FCM_TEMPLATE_REGISTRATION4);
     }
 }
@@ -10,9 +10,9 @@ import java.util.Objects;
  * Class representing a native registration for devices using FCM V1.
  */
 public class FcmV1Registration extends Registration {
-    private static final String FCM_V1_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><FcmV1RegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String FCM_V1_NATIVE_REGISTRATION2 = "<FcmV1RegistrationId>";
-    private static final String FCM_V1_NATIVE_REGISTRATION3 = "</FcmV1RegistrationId></FcmV1RegistrationDescription></content></entry>";
+    private static final byte[] FCM_V1_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><FcmV1RegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] FCM_V1_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<FcmV1RegistrationId>");
+    private static final byte[] FCM_V1_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</FcmV1RegistrationId></FcmV1RegistrationDescription></content></entry>");
 
     protected String fcmRegistrationId;
 
@@ -77,11 +77,16 @@ public class FcmV1Registration extends Registration {
 
     @Override
     public String getXml() {
-        return FCM_V1_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            FCM_V1_NATIVE_REGISTRATION2 +
-            fcmRegistrationId +
-            FCM_V1_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(FCM_V1_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(FCM_V1_NATIVE_REGISTRATION2);
+        writer.write(fcmRegistrationId);
+        writer.write(FCM_V1_NATIVE_REGISTRATION3);
     }
 
 }
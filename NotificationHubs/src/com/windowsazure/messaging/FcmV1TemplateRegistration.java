@@ -10,10 +10,10 @@ import java.util.Objects;
  * This class represents a Firebase Messaging V1 device template registration.
  */
 public class FcmV1TemplateRegistration extends FcmV1Registration implements TemplateRegistration {
-    private static final String FCM_V1_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><FcmV1TemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String FCM_V1_TEMPLATE_REGISTRATION2 = "<FcmV1RegistrationId>";
-    private static final String FCM_V1_TEMPLATE_REGISTRATION3 = "</FcmV1RegistrationId><BodyTemplate><![CDATA[";
-    private static final String FCM_V1_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate></FcmV1TemplateRegistrationDescription></content></entry>";
+    private static final byte[] FCM_V1_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><FcmV1TemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] FCM_V1_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<FcmV1RegistrationId>");
+    private static final byte[] FCM_V1_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</FcmV1RegistrationId><BodyTemplate><![CDATA[");
+    private static final byte[] FCM_V1_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate></FcmV1TemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -82,12 +82,17 @@ public class FcmV1TemplateRegistration extends FcmV1Registration implements Temp
 
     @Override
     public String getXml() {
-        return FCM_V1_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            FCM_V1_TEMPLATE_REGISTRATION2 +
-            fcmRegistrationId +
-            FCM_V1_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            FCM_V1_TEMPLATE_REGISTRATION4;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(FCM_V1_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(FCM_V1_TEMPLATE_REGISTRATION2);
+        writer.write(fcmRegistrationId);
+        writer.write(FCM_V1_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(FCM_V1_TEMPLATE_REGISTRATION4);
     }
 }
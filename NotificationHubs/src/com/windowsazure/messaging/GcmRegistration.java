@@ -14,9 +14,9 @@ import java.util.Objects;
 
 @Deprecated
 public class GcmRegistration extends Registration {
-    private static final String GCM_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String GCM_NATIVE_REGISTRATION2 = "<GcmRegistrationId>";
-    private static final String GCM_NATIVE_REGISTRATION3 = "</GcmRegistrationId></GcmRegistrationDescription></content></entry>";
+    private static final byte[] GCM_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] GCM_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<GcmRegistrationId>");
+    private static final byte[] GCM_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</GcmRegistrationId></GcmRegistrationDescription></content></entry>");
 
     protected String gcmRegistrationId;
 
@@ -81,10 +81,15 @@ public class GcmRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return GCM_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            GCM_NATIVE_REGISTRATION2 +
-            gcmRegistrationId +
-            GCM_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(GCM_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(GCM_NATIVE_REGISTRATION2);
+        writer.write(gcmRegistrationId);
+        writer.write(GCM_NATIVE_REGISTRATION3);
     }
 }
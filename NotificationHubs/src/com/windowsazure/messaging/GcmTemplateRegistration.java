@@ -11,10 +11,10 @@ import java.util.Objects;
  */
 @Deprecated
 public class GcmTemplateRegistration extends GcmRegistration implements TemplateRegistration {
-    private static final String GCM_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String GCM_TEMPLATE_REGISTRATION2 = "<GcmRegistrationId>";
-    private static final String GCM_TEMPLATE_REGISTRATION3 = "</GcmRegistrationId><BodyTemplate><![CDATA[";
-    private static final String GCM_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate></GcmTemplateRegistrationDescription></content></entry>";
+    private static final byte[] GCM_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><GcmTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] GCM_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<GcmRegistrationId>");
+    private static final byte[] GCM_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</GcmRegistrationId><BodyTemplate><![CDATA[");
+    private static final byte[] GCM_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate></GcmTemplateRegistrationDescription></content></entry>");
 
     private String bodyTemplate;
 
@@ -80,12 +80,17 @@ public class GcmTemplateRegistration extends GcmRegistration implements Template
 
     @Override
     public String getXml() {
-        return GCM_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            GCM_TEMPLATE_REGISTRATION2 +
-            gcmRegistrationId +
-            GCM_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            GCM_TEMPLATE_REGISTRATION4;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(GCM_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(GCM_TEMPLATE_REGISTRATION2);
+        writer.write(gcmRegistrationId);
+        writer.write(GCM_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(GCM_TEMPLATE_REGISTRATION4);
     }
 }
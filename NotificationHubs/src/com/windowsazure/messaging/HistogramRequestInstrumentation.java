@@ -0,0 +1,156 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps request counts, status codes, sizes, retries and latency histograms per
+ * operation, for a metrics exporter to read. Operations are keyed by name only, so share an
+ * instance between hubs to aggregate them or give each hub its own to keep them apart. Updates
+ * are lock free, and the statistics are live: reading them while requests complete may see one
+ * counter updated before another.
+ */
+public class HistogramRequestInstrumentation implements RequestInstrumentation {
+    private final ConcurrentHashMap<String, OperationStatistics> operations = new ConcurrentHashMap<>();
+
+    @Override
+    public void requestCompleted(RequestMetrics metrics) {
+        OperationStatistics statistics = operations.get(metrics.getOperation());
+        if (statistics == null) {
+            statistics = operations.computeIfAbsent(metrics.getOperation(), operation -> new OperationStatistics());
+        }
+        statistics.record(metrics);
+    }
+
+    /**
+     * Gets the statistics of every operation seen so far, keyed by operation.
+     * @return A live, read-only view of the statistics per operation.
+     */
+    public Map<String, OperationStatistics> getStatistics() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    /**
+     * Gets the statistics of an operation.
+     * @param operation The operation, such as "PUT installations/{id}".
+     * @return The statistics of the operation, or null if it was not seen.
+     */
+    public OperationStatistics getStatistics(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * This class holds the statistics of one operation.
+     */
+    public static final class OperationStatistics {
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder retryCount = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final LatencyHistogram totalLatency = new LatencyHistogram();
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram connectLatency = new LatencyHistogram();
+        private final LatencyHistogram serverLatency = new LatencyHistogram();
+
+        OperationStatistics() {
+        }
+
+        void record(RequestMetrics metrics) {
+            requestCount.increment();
+            if (metrics.getError() != null) {
+                errorCount.increment();
+            }
+            if (metrics.getRetryCount() > 0) {
+                retryCount.add(metrics.getRetryCount());
+            }
+            if (metrics.getBytesSent() > 0) {
+                bytesSent.add(metrics.getBytesSent());
+            }
+            bytesReceived.add(metrics.getBytesReceived());
+
+            LongAdder statusCount = statusCodes.get(metrics.getStatusCode());
+            if (statusCount == null) {
+                statusCount = statusCodes.computeIfAbsent(metrics.getStatusCode(), code -> new LongAdder());
+            }
+            statusCount.increment();
+
+            totalLatency.record(metrics.getTotalNanos());
+            queueLatency.record(metrics.getQueueNanos());
+            connectLatency.record(metrics.getConnectNanos());
+            serverLatency.record(metrics.getServerNanos());
+        }
+
+        /**
+         * Gets the number of requests completed.
+         * @return The number of requests completed.
+         */
+        public long getRequestCount() { return requestCount.sum(); }
+
+        /**
+         * Gets the number of requests which failed, including unexpected status codes.
+         * @return The number of requests which failed.
+         */
+        public long getErrorCount() { return errorCount.sum(); }
+
+        /**
+         * Gets the number of retries made by the transport.
+         * @return The number of retries made by the transport.
+         */
+        public long getRetryCount() { return retryCount.sum(); }
+
+        /**
+         * Gets the number of request body bytes sent, leaving out streamed bodies of unknown length.
+         * @return The number of bytes sent.
+         */
+        public long getBytesSent() { return bytesSent.sum(); }
+
+        /**
+         * Gets the number of response body bytes received.
+         * @return The number of bytes received.
+         */
+        public long getBytesReceived() { return bytesReceived.sum(); }
+
+        /**
+         * Gets the number of responses per status code, with 0 counting requests without a response.
+         * @return A snapshot of the number of responses per status code.
+         */
+        public Map<Integer, Long> getStatusCodeCounts() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statusCodes.forEach((code, count) -> counts.put(code, count.sum()));
+            return counts;
+        }
+
+        /**
+         * Gets the histogram of the total time of requests.
+         * @return The histogram of the total time of requests.
+         */
+        public LatencyHistogram getTotalLatency() { return totalLatency; }
+
+        /**
+         * Gets the histogram of the time requests waited for a pooled connection.
+         * @return The histogram of the queue time of requests.
+         */
+        public LatencyHistogram getQueueLatency() { return queueLatency; }
+
+        /**
+         * Gets the histogram of the time requests spent connecting.
+         * @return The histogram of the connect time of requests.
+         */
+        public LatencyHistogram getConnectLatency() { return connectLatency; }
+
+        /**
+         * Gets the histogram of the time from sending requests until their response was received.
+         * @return The histogram of the server time of requests.
+         */
+        public LatencyHistogram getServerLatency() { return serverLatency; }
+    }
+}
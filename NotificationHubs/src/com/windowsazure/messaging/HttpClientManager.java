@@ -7,6 +7,7 @@ package com.windowsazure.messaging;
 import org.apache.hc.client5.http.HttpRequestRetryStrategy;
 import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
 import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.reactor.IOReactorStatus;
@@ -21,6 +22,7 @@ public class HttpClientManager {
 
     private static final int DEFAULT_WAIT_TIMEOUT_MILLISECONDS = (60 * 1000);
     private static final int DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS = (60 * 1000);
+    private static final int DEFAULT_SOCKET_TIMEOUT_MILLISECONDS = (5 * 1000);
 
     // The timeout in milliseconds used when requesting a connection from the connection manager.
     private static int connectionRequestTimeout = DEFAULT_WAIT_TIMEOUT_MILLISECONDS;
@@ -28,13 +30,16 @@ public class HttpClientManager {
     // The timeout in milliseconds until a connection is established.
     private static int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS;
 
+    // The timeout in milliseconds of inactivity on a connection before a request fails.
+    private static int socketTimeout = DEFAULT_SOCKET_TIMEOUT_MILLISECONDS;
+
     private static HttpRequestRetryStrategy retryStrategy = BasicRetryStrategy.INSTANCE;
 
     private static void initializeHttpAsyncClient() {
         synchronized (HttpClientManager.class) {
             if (httpAsyncClient == null) {
                 final IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
-                    .setSoTimeout(Timeout.ofSeconds(5))
+                    .setSoTimeout(Timeout.ofMilliseconds(socketTimeout))
                     .build();
 
                 final RequestConfig config = RequestConfig.custom()
@@ -42,11 +47,15 @@ public class HttpClientManager {
                     .setConnectTimeout(Timeout.ofMilliseconds(connectionTimeout))
                     .build();
 
-                final CloseableHttpAsyncClient client = HttpAsyncClients.customHttp2()
+                final H2AsyncClientBuilder builder = HttpAsyncClients.customHttp2()
                     .setIOReactorConfig(ioReactorConfig)
                     .setDefaultRequestConfig(config)
-                    .setRetryStrategy(retryStrategy)
-                    .build();
+                    .setRetryStrategy(retryStrategy);
+                RequestTimings.install(builder);
+                HubRateLimiter.install(builder);
+                CancellableCallback.install(builder);
+
+                final CloseableHttpAsyncClient client = builder.build();
 
                 client.start();
                 httpAsyncClient = client;
@@ -107,6 +116,19 @@ public class HttpClientManager {
         }
     }
 
+    /**
+     * Sets the timeout in milliseconds of inactivity on a connection before a request fails, 5
+     * seconds by default. A deadline on an operation is set with a {@link CancellableCallback}.
+     * @param timeout The timeout in milliseconds to set.
+     */
+    public static void setSocketTimeout(int timeout) {
+        if (HttpClientManager.httpAsyncClient == null) {
+            socketTimeout = timeout;
+        } else {
+            throw new RuntimeException("Cannot setSocketTimeout after previously setting httpAsyncClient, or after default already initialized from earlier call to getHttpAsyncClient.");
+        }
+    }
+
     /**
      * Sets the retry strategy for the HTTP client.
      * @param strategy The retry strategy for the HTTP client.
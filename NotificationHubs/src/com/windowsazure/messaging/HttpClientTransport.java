@@ -0,0 +1,296 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.Closeable;
+
+/**
+ * This class represents the HTTP transport used by a notification hub or namespace manager client.
+ * Unlike the process-wide client kept by {@link HttpClientManager}, each transport owns its own
+ * connection pool, I/O reactor, timeouts and retry strategy so that clients can be isolated and
+ * tuned independently, and shut down once they are no longer needed.
+ */
+public class HttpClientTransport implements Closeable {
+
+    private static final HttpClientTransport SHARED = new HttpClientTransport(null, false);
+
+    private final CloseableHttpAsyncClient httpAsyncClient;
+    private final boolean ownsClient;
+    private final TimeValue shutdownTimeout;
+    private final boolean connectsTimed;
+
+    /**
+     * Creates a new instance of the HttpClientTransport class wrapping an existing HTTP async client.
+     * The client is started if needed and is closed when this transport is closed.
+     * @param httpAsyncClient The HTTP async client to use for this transport.
+     */
+    public HttpClientTransport(CloseableHttpAsyncClient httpAsyncClient) {
+        this(requireClient(httpAsyncClient), true);
+    }
+
+    private HttpClientTransport(CloseableHttpAsyncClient httpAsyncClient, boolean ownsClient) {
+        this(httpAsyncClient, ownsClient, Builder.DEFAULT_SHUTDOWN_TIMEOUT, false);
+    }
+
+    private HttpClientTransport(
+        CloseableHttpAsyncClient httpAsyncClient,
+        boolean ownsClient,
+        TimeValue shutdownTimeout,
+        boolean connectsTimed) {
+        this.httpAsyncClient = httpAsyncClient;
+        this.ownsClient = ownsClient;
+        this.shutdownTimeout = shutdownTimeout;
+        this.connectsTimed = connectsTimed;
+
+        if (httpAsyncClient != null && httpAsyncClient.getStatus() == IOReactorStatus.INACTIVE) {
+            httpAsyncClient.start();
+        }
+    }
+
+    private static CloseableHttpAsyncClient requireClient(CloseableHttpAsyncClient httpAsyncClient) {
+        if (httpAsyncClient == null) {
+            throw new IllegalArgumentException("httpAsyncClient cannot be null");
+        }
+        return httpAsyncClient;
+    }
+
+    /**
+     * Gets the transport backed by the process-wide client from {@link HttpClientManager}. This is
+     * the transport used by clients which were not given one explicitly. Closing it has no effect.
+     * @return The shared HTTP transport.
+     */
+    public static HttpClientTransport shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates a builder for a transport with its own connection pool and I/O reactor.
+     * @return A new builder for an HTTP transport.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the HTTP async client for this transport.
+     * @return The HTTP async client for this transport.
+     */
+    public CloseableHttpAsyncClient getHttpAsyncClient() {
+        return httpAsyncClient != null ? httpAsyncClient : HttpClientManager.getHttpAsyncClient();
+    }
+
+    /**
+     * Gets whether this transport is the shared transport from {@link HttpClientManager}.
+     * @return True if this is the shared transport, false otherwise.
+     */
+    public boolean isShared() {
+        return httpAsyncClient == null;
+    }
+
+    // Whether the connection manager reports connects to RequestTimings, so that a request
+    // without a connect reused a connection.
+    boolean isConnectTimed() {
+        return connectsTimed;
+    }
+
+    /**
+     * Shuts down the transport, waiting up to the configured shutdown timeout for in-flight
+     * requests to complete before the connections are closed.
+     */
+    @Override
+    public void close() {
+        if (!ownsClient) {
+            return;
+        }
+
+        httpAsyncClient.initiateShutdown();
+        try {
+            httpAsyncClient.awaitShutdown(shutdownTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        httpAsyncClient.close(CloseMode.IMMEDIATE);
+    }
+
+    /**
+     * This class builds an HTTP transport with its own connection pool and I/O reactor.
+     */
+    public static class Builder {
+        private static final int DEFAULT_WAIT_TIMEOUT_MILLISECONDS = (60 * 1000);
+        private static final int DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS = (60 * 1000);
+        private static final int DEFAULT_SOCKET_TIMEOUT_MILLISECONDS = (5 * 1000);
+        private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 25;
+        private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+        private static final TimeValue DEFAULT_SHUTDOWN_TIMEOUT = TimeValue.ofSeconds(30);
+
+        private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        private int ioThreadCount = IOReactorConfig.DEFAULT.getIoThreadCount();
+        private int connectionRequestTimeout = DEFAULT_WAIT_TIMEOUT_MILLISECONDS;
+        private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS;
+        private int socketTimeout = DEFAULT_SOCKET_TIMEOUT_MILLISECONDS;
+        private HttpVersionPolicy versionPolicy = HttpVersionPolicy.NEGOTIATE;
+        private HttpRequestRetryStrategy retryStrategy = BasicRetryStrategy.INSTANCE;
+        private TimeValue shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+        Builder() {
+        }
+
+        /**
+         * Sets the maximum number of connections in the pool across all routes.
+         * @param value The maximum number of pooled connections.
+         * @return This builder.
+         */
+        public Builder setMaxConnectionsTotal(int value) {
+            maxConnectionsTotal = requirePositive(value, "maxConnectionsTotal");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections per route, i.e. per namespace endpoint.
+         * @param value The maximum number of pooled connections per route.
+         * @return This builder.
+         */
+        public Builder setMaxConnectionsPerRoute(int value) {
+            maxConnectionsPerRoute = requirePositive(value, "maxConnectionsPerRoute");
+            return this;
+        }
+
+        /**
+         * Sets the number of I/O dispatch threads used by the I/O reactor.
+         * @param value The number of I/O dispatch threads.
+         * @return This builder.
+         */
+        public Builder setIoThreadCount(int value) {
+            ioThreadCount = requirePositive(value, "ioThreadCount");
+            return this;
+        }
+
+        /**
+         * Sets the timeout in milliseconds used when requesting a connection from the connection pool.
+         * @param timeout The timeout in milliseconds.
+         * @return This builder.
+         */
+        public Builder setConnectionRequestTimeout(int timeout) {
+            connectionRequestTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the timeout in milliseconds until a connection is established.
+         * @param timeout The timeout in milliseconds.
+         * @return This builder.
+         */
+        public Builder setConnectTimeout(int timeout) {
+            connectionTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the socket timeout in milliseconds for inactivity on an established connection.
+         * @param timeout The timeout in milliseconds.
+         * @return This builder.
+         */
+        public Builder setSocketTimeout(int timeout) {
+            socketTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP protocol version policy, which defaults to negotiating HTTP/2 over TLS.
+         * @param value The HTTP protocol version policy.
+         * @return This builder.
+         */
+        public Builder setVersionPolicy(HttpVersionPolicy value) {
+            versionPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the retry strategy for the HTTP client.
+         * @param strategy The retry strategy for the HTTP client.
+         * @return This builder.
+         */
+        public Builder setRetryStrategy(HttpRequestRetryStrategy strategy) {
+            retryStrategy = strategy;
+            return this;
+        }
+
+        /**
+         * Sets how long {@link HttpClientTransport#close()} waits for in-flight requests to complete.
+         * @param timeout The shutdown timeout.
+         * @return This builder.
+         */
+        public Builder setShutdownTimeout(TimeValue timeout) {
+            shutdownTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Builds and starts the HTTP transport.
+         * @return A new HTTP transport.
+         */
+        public HttpClientTransport build() {
+            final IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreadCount)
+                .setSoTimeout(Timeout.ofMilliseconds(socketTimeout))
+                .build();
+
+            final ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectionTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(socketTimeout))
+                .build();
+
+            final TlsConfig tlsConfig = TlsConfig.custom()
+                .setVersionPolicy(versionPolicy)
+                .build();
+
+            final AsyncClientConnectionManager connectionManager = RequestTimings.instrument(PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnectionsTotal)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .setDefaultTlsConfig(tlsConfig)
+                .build());
+
+            final RequestConfig config = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout))
+                .build();
+
+            final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                .setIOReactorConfig(ioReactorConfig)
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(config)
+                .setRetryStrategy(retryStrategy);
+            RequestTimings.install(builder);
+            HubRateLimiter.install(builder);
+            CancellableCallback.install(builder);
+
+            return new HttpClientTransport(builder.build(), true, shutdownTimeout, true);
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be greater than zero");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This class limits the rate of requests to a hub and adapts the rate to throttling, so that all
+ * the senders sharing it slow down together instead of each running into 429 responses. Requests
+ * are spaced evenly at the current rate, allowing a burst of up to 100 milliseconds worth after
+ * an idle period. A request beyond the rate is delayed rather than rejected, so callers never
+ * block. On the HTTP clients built by this SDK, every retry of a request by the transport waits
+ * for a slot too. A 429 response cuts the rate by a quarter, once for the requests admitted
+ * before the cut, and a Retry-After hint holds back every request until it has elapsed,
+ * including those already waiting. Every other response raises the rate by a twentieth of a
+ * request per second, so the rate grows back by about 5% a second. Share one limiter between all
+ * the clients of a hub.
+ */
+public class HubRateLimiter {
+    static final String ATTRIBUTE = "com.windowsazure.messaging.rate-limiter";
+
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double INCREASE_PER_RESPONSE = 0.05;
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final AsyncExecChainHandler ATTEMPT_RESPONDED = (request, entityProducer, scope, chain, callback) -> {
+        final Admission admission = Admission.get(scope.clientContext);
+        if (admission == null) {
+            chain.proceed(request, entityProducer, scope, callback);
+            return;
+        }
+
+        final AsyncExecCallback observer = new AsyncExecCallback() {
+            @Override
+            public AsyncDataConsumer handleResponse(HttpResponse response, EntityDetails entityDetails) throws HttpException, IOException {
+                admission.responded(response.getCode(), parseRetryAfter(response));
+                return callback.handleResponse(response, entityDetails);
+            }
+
+            @Override
+            public void handleInformationResponse(HttpResponse response) throws HttpException, IOException {
+                callback.handleInformationResponse(response);
+            }
+
+            @Override
+            public void completed() {
+                callback.completed();
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                callback.failed(cause);
+            }
+        };
+
+        // The first attempt was admitted with the request; a retry by the transport is another
+        // request to the hub, so it waits for a slot of its own.
+        if (admission.attemptsObserved) {
+            admission.limiter.execute(() -> {
+                try {
+                    admission.readmitted();
+                    chain.proceed(request, entityProducer, scope, observer);
+                } catch (HttpException | IOException | RuntimeException e) {
+                    callback.failed(e);
+                }
+            });
+            return;
+        }
+
+        admission.attemptsObserved = true;
+        chain.proceed(request, entityProducer, scope, observer);
+    };
+
+    private final double minRate;
+    private final double maxRate;
+    private final LongSupplier nanoClock;
+
+    private double rate;
+    private long nextFreeNanos;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+    private long requestCount;
+    private long delayedCount;
+    private long throttledCount;
+
+    /**
+     * Creates a limiter which starts at the given rate and never goes below one request per second.
+     * @param maxRequestsPerSecond The highest rate, such as the hub's quota.
+     */
+    public HubRateLimiter(double maxRequestsPerSecond) {
+        this(Math.min(1, maxRequestsPerSecond), maxRequestsPerSecond);
+    }
+
+    /**
+     * Creates a limiter which starts at the highest rate.
+     * @param minRequestsPerSecond The lowest rate throttling may bring the limiter down to.
+     * @param maxRequestsPerSecond The highest rate, such as the hub's quota.
+     */
+    public HubRateLimiter(double minRequestsPerSecond, double maxRequestsPerSecond) {
+        this(minRequestsPerSecond, maxRequestsPerSecond, System::nanoTime);
+    }
+
+    HubRateLimiter(double minRequestsPerSecond, double maxRequestsPerSecond, LongSupplier nanoClock) {
+        if (!(minRequestsPerSecond > 0) || maxRequestsPerSecond < minRequestsPerSecond) {
+            throw new IllegalArgumentException("Rates must satisfy 0 < minRequestsPerSecond <= maxRequestsPerSecond");
+        }
+
+        this.minRate = minRequestsPerSecond;
+        this.maxRate = maxRequestsPerSecond;
+        this.rate = maxRequestsPerSecond;
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.nextFreeNanos = now;
+        this.pausedUntilNanos = now;
+        this.lastDecreaseNanos = now;
+    }
+
+    /**
+     * Gets the current rate, which throttling lowers and successful responses raise again.
+     * @return The current rate in requests per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets the lowest rate throttling may bring the limiter down to.
+     * @return The lowest rate in requests per second.
+     */
+    public double getMinRate() {
+        return minRate;
+    }
+
+    /**
+     * Gets the highest rate the limiter grows back to.
+     * @return The highest rate in requests per second.
+     */
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Gets how much longer requests are held back by a Retry-After hint.
+     * @return The time left in the pause, zero if requests are not paused.
+     */
+    public synchronized Duration getPauseRemaining() {
+        return Duration.ofNanos(getPauseNanos());
+    }
+
+    /**
+     * Gets the number of requests admitted, counting a request again when it is held back by a
+     * pause that started while it was waiting, and counting every retry by the transport.
+     * @return The number of requests admitted.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Gets the number of requests which had to wait for the rate or for a pause.
+     * @return The number of requests delayed.
+     */
+    public synchronized long getDelayedCount() {
+        return delayedCount;
+    }
+
+    /**
+     * Gets the number of 429 responses seen, including those of attempts the transport retried.
+     * @return The number of throttled responses.
+     */
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("HubRateLimiter{rate=%.2f/s, max=%.2f/s, pause=%dms, requests=%d, delayed=%d, throttled=%d}",
+            rate, maxRate, TimeUnit.NANOSECONDS.toMillis(getPauseNanos()), requestCount, delayedCount, throttledCount);
+    }
+
+    /**
+     * Runs the task now if the rate allows, or later on a shared scheduler thread. A delayed task
+     * which finds a pause started while it was waiting waits again.
+     */
+    void execute(Runnable task) {
+        long delayNanos = reserve();
+        if (delayNanos <= 0) {
+            task.run();
+            return;
+        }
+
+        Scheduler.INSTANCE.schedule(() -> {
+            if (isPaused()) {
+                execute(task);
+            } else {
+                task.run();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Reserves the next slot, in the manner of a generic cell rate algorithm: slots follow one
+    // another at the current interval, and a slot up to the burst ahead of now is free to use.
+    synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        long slot = Math.max(nextFreeNanos, now);
+        // The first slot after a pause leaves no burst, so requests resume at the current rate
+        if (pausedUntilNanos - now > 0 && pausedUntilNanos + BURST_NANOS - slot > 0) {
+            slot = pausedUntilNanos + BURST_NANOS;
+        }
+        nextFreeNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        requestCount++;
+
+        long delayNanos = slot - BURST_NANOS - now;
+        if (delayNanos > 0) {
+            delayedCount++;
+            return delayNanos;
+        }
+        return 0;
+    }
+
+    synchronized boolean isPaused() {
+        return getPauseNanos() > 0;
+    }
+
+    /**
+     * Learns from a response to a request admitted at the given time.
+     */
+    synchronized void onResponse(long admittedNanos, int statusCode, Duration retryAfter) {
+        long now = nanoClock.getAsLong();
+        if (statusCode == 429 || statusCode == 503) {
+            if (retryAfter != null && !retryAfter.isNegative() && !retryAfter.isZero()) {
+                long until = now + retryAfter.toNanos();
+                if (until - pausedUntilNanos > 0) {
+                    pausedUntilNanos = until;
+                }
+            }
+        }
+
+        if (statusCode == 429) {
+            throttledCount++;
+            // Requests admitted before the last cut were sent at the old rate, so their 429s do
+            // not cut the rate again.
+            if (admittedNanos - lastDecreaseNanos >= 0) {
+                rate = Math.max(minRate, rate * DECREASE_FACTOR);
+                lastDecreaseNanos = now;
+            }
+        } else if (statusCode < 500 && getPauseNanos() <= 0) {
+            rate = Math.min(maxRate, rate + INCREASE_PER_RESPONSE);
+        }
+    }
+
+    Admission admit() {
+        return new Admission(this, nanoClock.getAsLong());
+    }
+
+    static void install(HttpAsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-rate-limiter", ATTEMPT_RESPONDED);
+    }
+
+    static void install(H2AsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-rate-limiter", ATTEMPT_RESPONDED);
+    }
+
+    // Shares the retry strategy's parsing, so a Retry-After given as a date pauses requests too
+    static Duration parseRetryAfter(HttpResponse response) {
+        TimeValue retryAfter = BasicRetryStrategy.parseRetryAfter(response);
+        return retryAfter == null ? null : Duration.ofMillis(retryAfter.toMilliseconds());
+    }
+
+    private long getPauseNanos() {
+        long remaining = pausedUntilNanos - nanoClock.getAsLong();
+        return remaining > 0 ? remaining : 0;
+    }
+
+    /**
+     * This class travels in the HTTP context of a request admitted by a limiter. The exec chain
+     * interceptor, which only the HTTP clients built by this SDK have, admits every retry by the
+     * transport and reports the response of every attempt, so throttled attempts retried by the
+     * transport count too. Otherwise only the final response is reported.
+     */
+    static final class Admission {
+        private final HubRateLimiter limiter;
+        private volatile long admittedNanos;
+        private volatile boolean attemptsObserved;
+
+        private Admission(HubRateLimiter limiter, long admittedNanos) {
+            this.limiter = limiter;
+            this.admittedNanos = admittedNanos;
+        }
+
+        static Admission get(HttpContext context) {
+            Object admission = context == null ? null : context.getAttribute(ATTRIBUTE);
+            return admission instanceof Admission ? (Admission) admission : null;
+        }
+
+        // A retry sent after a cut is sent at the new rate, so its 429 cuts the rate again
+        void readmitted() {
+            admittedNanos = limiter.nanoClock.getAsLong();
+        }
+
+        void responded(int statusCode, Duration retryAfter) {
+            limiter.onResponse(admittedNanos, statusCode, retryAfter);
+        }
+
+        void completed(HttpResponse response) {
+            if (!attemptsObserved && response != null) {
+                responded(response.getCode(), parseRetryAfter(response));
+            }
+        }
+    }
+
+    // One daemon thread starts the delayed requests of every limiter; starting a request only
+    // hands it to the I/O reactor.
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "HubRateLimiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
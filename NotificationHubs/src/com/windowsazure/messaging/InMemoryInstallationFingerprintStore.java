@@ -0,0 +1,87 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * This class keeps installation fingerprints in memory, evicting the least recently used entry
+ * once the maximum number of entries is reached and ignoring entries older than the time to live.
+ */
+public class InMemoryInstallationFingerprintStore implements InstallationFingerprintStore {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Creates a new instance of the InMemoryInstallationFingerprintStore class.
+     * @param maxEntries The maximum number of fingerprints to keep.
+     * @param ttl How long a fingerprint is trusted after it was stored, or null to trust it until evicted.
+     */
+    public InMemoryInstallationFingerprintStore(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, System::nanoTime);
+    }
+
+    InMemoryInstallationFingerprintStore(int maxEntries, Duration ttl, LongSupplier nanoClock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > InMemoryInstallationFingerprintStore.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized byte[] get(String installationId) {
+        Entry entry = entries.get(installationId);
+        if (entry == null) {
+            return null;
+        }
+        if (ttlNanos > 0 && nanoClock.getAsLong() - entry.storedAtNanos >= ttlNanos) {
+            entries.remove(installationId);
+            return null;
+        }
+        return entry.fingerprint.clone();
+    }
+
+    @Override
+    public synchronized void put(String installationId, byte[] fingerprint) {
+        entries.put(installationId, new Entry(fingerprint.clone(), nanoClock.getAsLong()));
+    }
+
+    @Override
+    public synchronized void remove(String installationId) {
+        entries.remove(installationId);
+    }
+
+    /**
+     * Gets the number of fingerprints held, including expired ones not yet evicted.
+     * @return The number of fingerprints held.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final byte[] fingerprint;
+        private final long storedAtNanos;
+
+        Entry(byte[] fingerprint, long storedAtNanos) {
+            this.fingerprint = fingerprint;
+            this.storedAtNanos = storedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+/**
+ * This interface stores the fingerprint of the installation last written for each installation
+ * ID, so that writing an unchanged installation again can be skipped. A fingerprint is the 32 byte
+ * SHA-256 hash of the installation's canonical JSON. Implementations must be thread safe and may
+ * forget entries at any time, which only costs a write that could have been skipped.
+ *
+ * @see NotificationHub#setInstallationFingerprintStore(InstallationFingerprintStore)
+ */
+public interface InstallationFingerprintStore {
+    /**
+     * Gets the fingerprint of the installation last written with the installation ID.
+     *
+     * @param installationId The installation ID.
+     * @return The fingerprint, or null if there is none.
+     */
+    byte[] get(String installationId);
+
+    /**
+     * Stores the fingerprint of the installation written with the installation ID.
+     *
+     * @param installationId The installation ID.
+     * @param fingerprint    The fingerprint of the installation.
+     */
+    void put(String installationId, byte[] fingerprint);
+
+    /**
+     * Forgets the fingerprint for the installation ID, for example after the installation was
+     * patched or deleted.
+     *
+     * @param installationId The installation ID.
+     */
+    void remove(String installationId);
+}
@@ -0,0 +1,78 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class computes installation fingerprints: the SHA-256 hash of the installation's JSON with
+ * the members of every object sorted by name, so that the iteration order of the template and
+ * header maps does not change the fingerprint.
+ */
+final class InstallationFingerprints {
+    static final int LENGTH = 32;
+
+    private InstallationFingerprints() {
+    }
+
+    static byte[] of(BaseInstallation installation) {
+        MessageDigest digest = sha256();
+        StringBuilder canonical = new StringBuilder(512);
+        appendCanonical(SharedGson.GSON.toJsonTree(installation), canonical);
+        return digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendCanonical(JsonElement element, StringBuilder out) {
+        if (element.isJsonObject()) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonElement> member : sortedMembers(element.getAsJsonObject()).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                out.append(SharedGson.GSON.toJson(member.getKey())).append(':');
+                appendCanonical(member.getValue(), out);
+            }
+            out.append('}');
+        } else if (element.isJsonArray()) {
+            out.append('[');
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(array.get(i), out);
+            }
+            out.append(']');
+        } else {
+            out.append(element.toString());
+        }
+    }
+
+    private static Map<String, JsonElement> sortedMembers(JsonObject object) {
+        Map<String, JsonElement> members = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+            members.put(member.getKey(), member.getValue());
+        }
+        return members;
+    }
+}
@@ -0,0 +1,302 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class buffers partial updates per installation and sends them as one PATCH per
+ * installation, after a linger time or once enough operations are pending. Redundant operations
+ * are merged as they arrive: when an operation targets the same path as a pending one, for
+ * example a remove of "/tags/foo" after an add of "foo" to "/tags", the later operation replaces
+ * the earlier one, keeping an add over a replace so that the member is still created. Operations
+ * are only merged when no pending operation between them touches a parent or child path, so the
+ * combined patch has the same effect as sending the operations one by one.
+ *
+ * At most one PATCH per installation is in flight; operations added meanwhile are sent once it
+ * completes. Each call gets a future which completes, on the given executor, with the outcome of
+ * the PATCH that carried its operations. Closing the buffer flushes everything and waits for it.
+ */
+public class InstallationPatchBuffer implements Closeable {
+    private final NotificationHubClient hub;
+    private final long lingerNanos;
+    private final int maxOperations;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Creates a new instance of the InstallationPatchBuffer class which completes futures on the
+     * common fork join pool.
+     * @param hub The notification hub to patch installations on.
+     * @param linger How long to wait for more operations after the first one for an installation.
+     * @param maxOperations The number of pending operations for an installation which triggers a flush.
+     */
+    public InstallationPatchBuffer(NotificationHubClient hub, Duration linger, int maxOperations) {
+        this(hub, linger, maxOperations, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new instance of the InstallationPatchBuffer class.
+     * @param hub The notification hub to patch installations on.
+     * @param linger How long to wait for more operations after the first one for an installation.
+     * @param maxOperations The number of pending operations for an installation which triggers a flush.
+     * @param executor The executor to complete futures and run their continuations on.
+     */
+    public InstallationPatchBuffer(NotificationHubClient hub, Duration linger, int maxOperations, Executor executor) {
+        if (hub == null) {
+            throw new IllegalArgumentException("hub cannot be null");
+        }
+        if (linger == null || linger.isNegative()) {
+            throw new IllegalArgumentException("linger must not be negative");
+        }
+        if (maxOperations <= 0) {
+            throw new IllegalArgumentException("maxOperations must be greater than zero");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+
+        this.hub = hub;
+        this.lingerNanos = linger.toNanos();
+        this.maxOperations = maxOperations;
+        this.executor = executor;
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "InstallationPatchBuffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds operations for an installation to the buffer.
+     *
+     * @param installationId The installation ID to patch.
+     * @param operations     The operations to perform on the installation.
+     * @return A future completed when the PATCH carrying the operations completes.
+     */
+    public CompletableFuture<Void> patch(String installationId, PartialUpdateOperation... operations) {
+        return patch(installationId, Arrays.asList(operations));
+    }
+
+    /**
+     * Adds operations for an installation to the buffer.
+     *
+     * @param installationId The installation ID to patch.
+     * @param operations     The list of operations to perform on the installation.
+     * @return A future completed when the PATCH carrying the operations completes.
+     */
+    public CompletableFuture<Void> patch(String installationId, List<PartialUpdateOperation> operations) {
+        if (installationId == null) {
+            throw new IllegalArgumentException("installationId cannot be null");
+        }
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalArgumentException("operations cannot be empty");
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The buffer is closed.");
+            }
+
+            Batch batch = batches.computeIfAbsent(installationId, Batch::new);
+            for (PartialUpdateOperation operation : operations) {
+                batch.add(operation);
+            }
+            batch.waiters.add(future);
+
+            if (batch.operations.size() >= maxOperations) {
+                flush(batch);
+            } else if (batch.timer == null && !batch.inFlight) {
+                batch.timer = scheduler.schedule(() -> flush(installationId), lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Sends the pending operations of every installation without waiting for the linger time.
+     *
+     * @return A future completed when every PATCH which was pending or in flight has completed.
+     */
+    public CompletableFuture<Void> flush() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (Batch batch : new ArrayList<>(batches.values())) {
+                futures.addAll(batch.waiters);
+                flush(batch);
+            }
+            futures.addAll(inFlight);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Gets the number of installations with operations pending or in flight.
+     * @return The number of installations with operations pending or in flight.
+     */
+    public synchronized int getPendingInstallationCount() {
+        return batches.size();
+    }
+
+    /**
+     * Flushes the pending operations, waits for every PATCH to complete and stops the buffer.
+     * Failed patches are reported through their futures, not by this method.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            flush().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // Reported through the futures of the callers
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private synchronized void flush(String installationId) {
+        Batch batch = batches.get(installationId);
+        if (batch != null) {
+            batch.timer = null;
+            flush(batch);
+        }
+    }
+
+    // Must be called while holding the lock.
+    private void flush(Batch batch) {
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+            batch.timer = null;
+        }
+        if (batch.inFlight) {
+            batch.flushRequested = true;
+            return;
+        }
+        if (batch.operations.isEmpty()) {
+            return;
+        }
+
+        final List<PartialUpdateOperation> operations = batch.operations;
+        final List<CompletableFuture<Void>> waiters = batch.waiters;
+        batch.operations = new ArrayList<>();
+        batch.waiters = new ArrayList<>();
+        batch.inFlight = true;
+
+        final CompletableFuture<Void> patch = CompletableFutureCallback.callVoid(executor,
+            callback -> hub.patchInstallationAsync(batch.installationId, operations, callback));
+        // Flushes wait for the buffer to have settled after the PATCH, not just for the PATCH
+        final CompletableFuture<Void> settled = new CompletableFuture<>();
+        inFlight.add(settled);
+        patch.whenComplete((result, error) -> {
+            onPatchDone(batch, settled);
+            for (CompletableFuture<Void> waiter : waiters) {
+                if (error == null) {
+                    waiter.complete(null);
+                } else {
+                    waiter.completeExceptionally(error);
+                }
+            }
+            if (error == null) {
+                settled.complete(null);
+            } else {
+                settled.completeExceptionally(error);
+            }
+        });
+    }
+
+    private synchronized void onPatchDone(Batch batch, CompletableFuture<Void> settled) {
+        inFlight.remove(settled);
+        batch.inFlight = false;
+        if (batch.operations.isEmpty()) {
+            batches.remove(batch.installationId);
+        } else if (batch.flushRequested || closed || batch.operations.size() >= maxOperations) {
+            batch.flushRequested = false;
+            flush(batch);
+        } else if (batch.timer == null) {
+            batch.timer = scheduler.schedule(() -> flush(batch.installationId), lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final class Batch {
+        private final String installationId;
+        private List<PartialUpdateOperation> operations = new ArrayList<>();
+        private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+        private boolean inFlight;
+        private boolean flushRequested;
+
+        Batch(String installationId) {
+            this.installationId = installationId;
+        }
+
+        // Replaces the last pending operation on the same target, unless an operation after it
+        // touches a parent or child path, in which case the order has to be kept.
+        void add(PartialUpdateOperation operation) {
+            String target = getTarget(operation);
+            for (int i = operations.size() - 1; i >= 0; i--) {
+                PartialUpdateOperation pending = operations.get(i);
+                String pendingTarget = getTarget(pending);
+                if (pendingTarget.equals(target)) {
+                    operations.remove(i);
+                    operations.add(merge(pending, operation));
+                    return;
+                }
+                if (isRelated(pendingTarget, target)) {
+                    break;
+                }
+            }
+            operations.add(operation);
+        }
+
+        private static PartialUpdateOperation merge(PartialUpdateOperation earlier, PartialUpdateOperation later) {
+            if (earlier.getOperation() == UpdateOperationType.Add && later.getOperation() == UpdateOperationType.Replace) {
+                return new PartialUpdateOperation(UpdateOperationType.Add, later.getPath(), later.getValue());
+            }
+            return later;
+        }
+
+        // Adding a value to "/tags" appends it, so it targets the same tag as a remove of "/tags/{value}".
+        private static String getTarget(PartialUpdateOperation operation) {
+            String path = operation.getPath() == null ? "" : operation.getPath();
+            if (operation.getOperation() == UpdateOperationType.Add && path.equalsIgnoreCase("/tags") && operation.getValue() != null) {
+                return "/tags/" + operation.getValue();
+            }
+            return path;
+        }
+
+        private static boolean isRelated(String first, String second) {
+            return first.startsWith(second + "/") || second.startsWith(first + "/");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+/**
+ * This interface receives the outcome of each installation in a bulk create or update. Methods
+ * may be invoked concurrently from the HTTP client's I/O threads, so they should return quickly
+ * and must not block.
+ */
+public interface InstallationResultSink {
+    /**
+     * Invoked when an installation was created or updated.
+     *
+     * @param installation The installation which was stored.
+     */
+    void succeeded(BaseInstallation installation);
+
+    /**
+     * Invoked when an installation could not be created or updated.
+     *
+     * @param installation The installation which was not stored.
+     * @param exception    The error from the last attempt.
+     */
+    void failed(BaseInstallation installation, Exception exception);
+
+    /**
+     * Invoked when an installation was skipped because a later installation with the same
+     * installation ID arrived before it could be sent.
+     *
+     * @param installation The installation which was skipped.
+     */
+    default void superseded(BaseInstallation installation) {
+    }
+}
@@ -9,9 +9,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 /**
  * Represents an installation template.
  */
@@ -184,7 +181,7 @@ public class InstallationTemplate {
      * @return An installation template created from JSON.
      */
     public static InstallationTemplate fromJson(String json) {
-        return new Gson().fromJson(json, InstallationTemplate.class);
+        return SharedGson.GSON.fromJson(json, InstallationTemplate.class);
     }
 
     /**
@@ -193,6 +190,6 @@ public class InstallationTemplate {
      * @return The JSON representation of the installation template.
      */
     public String toJson() {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(this);
+        return SharedGson.GSON.toJson(this);
     }
 }
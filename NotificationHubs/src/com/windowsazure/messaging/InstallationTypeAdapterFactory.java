@@ -0,0 +1,242 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class creates streaming type adapters for the installation classes of this package. An
+ * installation is read in a single pass: the fields are collected as they come and the class is
+ * picked from the platform once the object ends, so the platform may appear anywhere in it. The
+ * classes are written with the same fields, in the same order, as Gson's reflective adapter.
+ * Subclasses defined outside this package are left to the reflective adapter.
+ */
+final class InstallationTypeAdapterFactory implements TypeAdapterFactory {
+    private static final Map<Class<?>, Function<String, ? extends BaseInstallation>> CONSTRUCTORS = createConstructors();
+
+    @SuppressWarnings("deprecation")
+    private static Map<Class<?>, Function<String, ? extends BaseInstallation>> createConstructors() {
+        Map<Class<?>, Function<String, ? extends BaseInstallation>> constructors = new HashMap<>();
+        constructors.put(Installation.class, Installation::new);
+        constructors.put(AdmInstallation.class, AdmInstallation::new);
+        constructors.put(AppleInstallation.class, AppleInstallation::new);
+        constructors.put(BaiduInstallation.class, BaiduInstallation::new);
+        constructors.put(FcmInstallation.class, FcmInstallation::new);
+        constructors.put(FcmV1Installation.class, FcmV1Installation::new);
+        constructors.put(MpnsInstallation.class, MpnsInstallation::new);
+        constructors.put(WindowsInstallation.class, WindowsInstallation::new);
+        constructors.put(BrowserInstallation.class, BrowserInstallation::new);
+        return constructors;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType != BaseInstallation.class && !CONSTRUCTORS.containsKey(rawType)) {
+            return null;
+        }
+
+        return (TypeAdapter<T>) new InstallationTypeAdapter(gson, rawType);
+    }
+
+    /**
+     * Gets the installation class for the platform. The mapping is the one the tree based
+     * {@link BaseInstallationDeserializer} used, plus "apns", the name the service uses for Apple.
+     */
+    @SuppressWarnings("deprecation")
+    static Class<? extends BaseInstallation> getInstallationClass(String platform) {
+        if (platform == null) {
+            return Installation.class;
+        }
+
+        switch (platform.toLowerCase()) {
+            case "adm":
+                return AdmInstallation.class;
+            case "apns":
+            case "apple":
+                return AppleInstallation.class;
+            case "baidu":
+                return BaiduInstallation.class;
+            case "fcm":
+                return FcmInstallation.class;
+            case "fcmv1":
+                return FcmV1Installation.class;
+            case "mpns":
+                return MpnsInstallation.class;
+            case "wns":
+                return WindowsInstallation.class;
+            case "browser":
+                return BrowserInstallation.class;
+            default:
+                return Installation.class;
+        }
+    }
+
+    private static NotificationPlatform parsePlatform(String platform) {
+        for (NotificationPlatform value : NotificationPlatform.values()) {
+            if (value.name().equalsIgnoreCase(platform)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static final class InstallationTypeAdapter extends TypeAdapter<BaseInstallation> {
+        private static final TypeToken<List<String>> TAGS_TYPE = new TypeToken<List<String>>() { };
+        private static final TypeToken<Map<String, InstallationTemplate>> TEMPLATES_TYPE =
+            new TypeToken<Map<String, InstallationTemplate>>() { };
+        private static final TypeToken<Map<String, WnsSecondaryTile>> SECONDARY_TILES_TYPE =
+            new TypeToken<Map<String, WnsSecondaryTile>>() { };
+
+        private final Class<?> rawType;
+        private final TypeAdapter<NotificationPlatform> platformAdapter;
+        private final TypeAdapter<List<String>> tagsAdapter;
+        private final TypeAdapter<Map<String, InstallationTemplate>> templatesAdapter;
+        private final TypeAdapter<Map<String, WnsSecondaryTile>> secondaryTilesAdapter;
+
+        InstallationTypeAdapter(Gson gson, Class<?> rawType) {
+            this.rawType = rawType;
+            this.platformAdapter = gson.getAdapter(NotificationPlatform.class);
+            this.tagsAdapter = gson.getAdapter(TAGS_TYPE);
+            this.templatesAdapter = gson.getAdapter(TEMPLATES_TYPE);
+            this.secondaryTilesAdapter = gson.getAdapter(SECONDARY_TILES_TYPE);
+        }
+
+        @Override
+        public void write(JsonWriter out, BaseInstallation installation) throws IOException {
+            if (installation == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (installation instanceof WindowsInstallation) {
+                Map<String, WnsSecondaryTile> secondaryTiles = ((WindowsInstallation) installation).getSecondaryTiles();
+                if (secondaryTiles != null) {
+                    out.name("secondaryTiles");
+                    secondaryTilesAdapter.write(out, secondaryTiles);
+                }
+            }
+            if (installation instanceof Installation) {
+                writeString(out, "pushChannel", ((Installation) installation).getPushChannel());
+            }
+            writeString(out, "installationId", installation.getInstallationId());
+            writeString(out, "userId", installation.getUserId());
+            if (installation.getPlatform() != null) {
+                out.name("platform");
+                platformAdapter.write(out, installation.getPlatform());
+            }
+            out.name("pushChannelExpired").value(installation.isPushChannelExpired());
+            writeString(out, "expirationTime", installation.getExpirationTimeString());
+            if (installation.getTags() != null) {
+                out.name("tags");
+                tagsAdapter.write(out, installation.getTags());
+            }
+            if (installation.getTemplates() != null) {
+                out.name("templates");
+                templatesAdapter.write(out, installation.getTemplates());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public BaseInstallation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String installationId = null;
+            String userId = null;
+            String platform = null;
+            String pushChannel = null;
+            boolean pushChannelExpired = false;
+            String expirationTime = null;
+            List<String> tags = null;
+            Map<String, InstallationTemplate> templates = null;
+            Map<String, WnsSecondaryTile> secondaryTiles = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "installationId":
+                        installationId = in.nextString();
+                        break;
+                    case "userId":
+                        userId = in.nextString();
+                        break;
+                    case "platform":
+                        platform = in.nextString();
+                        break;
+                    case "pushChannel":
+                        pushChannel = in.nextString();
+                        break;
+                    case "pushChannelExpired":
+                        pushChannelExpired = in.peek() == JsonToken.STRING
+                            ? Boolean.parseBoolean(in.nextString())
+                            : in.nextBoolean();
+                        break;
+                    case "expirationTime":
+                        expirationTime = in.nextString();
+                        break;
+                    case "tags":
+                        tags = tagsAdapter.read(in);
+                        break;
+                    case "templates":
+                        templates = templatesAdapter.read(in);
+                        break;
+                    case "secondaryTiles":
+                        secondaryTiles = secondaryTilesAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            Class<?> installationClass = rawType == BaseInstallation.class ? getInstallationClass(platform) : rawType;
+            BaseInstallation installation = CONSTRUCTORS.get(installationClass).apply(installationId);
+            installation.setUserId(userId);
+            installation.setPlatformUnchecked(parsePlatform(platform));
+            installation.setPushChannelExpired(pushChannelExpired);
+            installation.setExpirationTimeString(expirationTime);
+            installation.setTags(tags);
+            installation.setTemplates(templates);
+            if (installation instanceof Installation) {
+                ((Installation) installation).setPushChannel(pushChannel);
+            }
+            if (installation instanceof WindowsInstallation) {
+                ((WindowsInstallation) installation).setSecondaryTiles(secondaryTiles);
+            }
+            return installation;
+        }
+
+        private static void writeString(JsonWriter out, String name, String value) throws IOException {
+            if (value != null) {
+                out.name(name).value(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts latencies in log-linear buckets, in the manner of an HDR histogram: values
+ * up to 128 microseconds are counted exactly, and above that every power of two is split into 64
+ * buckets, so a percentile is reported within 2% of the recorded value. Values above about 71
+ * minutes are counted in the last bucket. Recording is lock free and does not allocate, and reads
+ * may run concurrently with recording.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final long MAX_MICROS = (1L << 32) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * @param nanos The latency in nanoseconds, ignored if negative.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        long micros = Math.min(nanos / 1000, MAX_MICROS);
+        counts.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the highest latency recorded.
+     * @return The highest latency recorded, zero if none was.
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    /**
+     * Gets the mean of the latencies recorded, to the microsecond.
+     * @return The mean latency, zero if none was recorded.
+     */
+    public Duration getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? Duration.ZERO : Duration.ofNanos(totalMicros.sum() / recorded * 1000);
+    }
+
+    /**
+     * Gets the latency which the given percentage of the recorded latencies do not exceed.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The highest latency in the bucket of the percentile, zero if none was recorded.
+     */
+    public Duration getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(highestMicros(i) * 1000 + 999, maxNanos.get()));
+            }
+        }
+        return getMax();
+    }
+
+    // Values below 2^7 map to themselves. Above, a value with its highest bit at position e
+    // keeps its top 7 bits, which select one of 64 buckets in group e - 6.
+    static int bucketIndex(long micros) {
+        if (micros < (1 << SUB_BUCKET_BITS)) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int group = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (micros >>> group);
+        return group * SUB_BUCKET_HALF + subBucket;
+    }
+
+    static long highestMicros(int index) {
+        if (index < (1 << SUB_BUCKET_BITS)) {
+            return index;
+        }
+
+        int group = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) group * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << group) - 1;
+    }
+}
@@ -0,0 +1,223 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * This class keeps installation fingerprints in a memory-mapped file so that they survive
+ * restarts. The file is a fixed size hash table: each installation ID hashes to a window of
+ * slots, and when every slot in the window is taken the oldest entry there is replaced, which
+ * approximates least recently written eviction without any bookkeeping beyond a timestamp per
+ * slot. Installation IDs are stored as 16 byte hashes, so the file size depends only on the
+ * capacity. A file written with a different capacity or format is cleared when opened.
+ */
+public class MappedFileInstallationFingerprintStore implements InstallationFingerprintStore, Closeable {
+    private static final int MAGIC = 0x4E484650;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int KEY_SIZE = 16;
+    private static final int SLOT_SIZE = KEY_SIZE + InstallationFingerprints.LENGTH + 8;
+    private static final int PROBES = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private boolean closed;
+
+    /**
+     * Creates a new instance of the MappedFileInstallationFingerprintStore class, opening or
+     * creating the file.
+     * @param file The file to keep the fingerprints in.
+     * @param capacity The number of slots in the file, at least 8.
+     * @param ttl How long a fingerprint is trusted after it was stored, or null to trust it until evicted.
+     * @throws IOException Thrown if the file cannot be opened or mapped.
+     */
+    public MappedFileInstallationFingerprintStore(Path file, int capacity, Duration ttl) throws IOException {
+        this(file, capacity, ttl, System::currentTimeMillis);
+    }
+
+    MappedFileInstallationFingerprintStore(Path file, int capacity, Duration ttl, LongSupplier clock) throws IOException {
+        if (capacity < PROBES) {
+            throw new IllegalArgumentException("capacity must be at least " + PROBES);
+        }
+
+        this.capacity = capacity;
+        this.ttlMillis = ttl == null ? 0 : ttl.toMillis();
+        this.clock = clock;
+
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is too large to map");
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                channel.truncate(0);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity) {
+                // A truncated file is mapped as zeros, only a file of the right size needs clearing
+                for (int i = 0; valid && i < size; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, capacity);
+                buffer.putInt(12, SLOT_SIZE);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized byte[] get(String installationId) {
+        checkOpen();
+        byte[] key = key(installationId);
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        int offset = offset(slot);
+        if (isExpired(buffer.getLong(offset + KEY_SIZE + InstallationFingerprints.LENGTH))) {
+            return null;
+        }
+
+        byte[] fingerprint = new byte[InstallationFingerprints.LENGTH];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = buffer.get(offset + KEY_SIZE + i);
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public synchronized void put(String installationId, byte[] fingerprint) {
+        checkOpen();
+        if (fingerprint.length != InstallationFingerprints.LENGTH) {
+            throw new IllegalArgumentException("fingerprint must be " + InstallationFingerprints.LENGTH + " bytes");
+        }
+
+        byte[] key = key(installationId);
+        int slot = find(key);
+        if (slot < 0) {
+            slot = chooseVictim(key);
+        }
+
+        int offset = offset(slot);
+        for (int i = 0; i < KEY_SIZE; i++) {
+            buffer.put(offset + i, key[i]);
+        }
+        for (int i = 0; i < fingerprint.length; i++) {
+            buffer.put(offset + KEY_SIZE + i, fingerprint[i]);
+        }
+        // Zero marks an empty slot, so never store it as a time
+        buffer.putLong(offset + KEY_SIZE + InstallationFingerprints.LENGTH, Math.max(1, clock.getAsLong()));
+    }
+
+    @Override
+    public synchronized void remove(String installationId) {
+        checkOpen();
+        int slot = find(key(installationId));
+        if (slot >= 0) {
+            buffer.putLong(offset(slot) + KEY_SIZE + InstallationFingerprints.LENGTH, 0);
+        }
+    }
+
+    /**
+     * Writes the fingerprints to the file and closes it.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        buffer.force();
+        channel.close();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The store is closed.");
+        }
+    }
+
+    private int find(byte[] key) {
+        int start = bucket(key);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (start + probe) % capacity;
+            int offset = offset(slot);
+            if (buffer.getLong(offset + KEY_SIZE + InstallationFingerprints.LENGTH) != 0 && keyMatches(offset, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Picks an empty slot in the window, then an expired one, then the oldest.
+    private int chooseVictim(byte[] key) {
+        int start = bucket(key);
+        int victim = start;
+        long oldest = Long.MAX_VALUE;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (start + probe) % capacity;
+            long storedAt = buffer.getLong(offset(slot) + KEY_SIZE + InstallationFingerprints.LENGTH);
+            if (storedAt == 0 || isExpired(storedAt)) {
+                return slot;
+            }
+            if (storedAt < oldest) {
+                oldest = storedAt;
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private boolean isExpired(long storedAt) {
+        return ttlMillis > 0 && clock.getAsLong() - storedAt >= ttlMillis;
+    }
+
+    private boolean keyMatches(int offset, byte[] key) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bucket(byte[] key) {
+        int hash = ((key[0] & 0xFF) << 24) | ((key[1] & 0xFF) << 16) | ((key[2] & 0xFF) << 8) | (key[3] & 0xFF);
+        return (hash & 0x7FFFFFFF) % capacity;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static byte[] key(String installationId) {
+        byte[] hash = InstallationFingerprints.sha256().digest(installationId.getBytes(StandardCharsets.UTF_8));
+        byte[] key = new byte[KEY_SIZE];
+        System.arraycopy(hash, 0, key, 0, KEY_SIZE);
+        return key;
+    }
+}
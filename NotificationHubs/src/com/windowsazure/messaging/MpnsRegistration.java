@@ -12,9 +12,9 @@ import java.util.Objects;
  * Class representing a native registration for a device using MPNS.
  */
 public class MpnsRegistration extends Registration {
-    private static final String MPNS_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><MpnsRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String MPNS_NATIVE_REGISTRATION2 = "<ChannelUri>";
-    private static final String MPNS_NATIVE_REGISTRATION3 = "</ChannelUri></MpnsRegistrationDescription></content></entry>";
+    private static final byte[] MPNS_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><MpnsRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] MPNS_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<ChannelUri>");
+    private static final byte[] MPNS_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</ChannelUri></MpnsRegistrationDescription></content></entry>");
 
     protected URI channelUri;
 
@@ -84,10 +84,15 @@ public class MpnsRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return MPNS_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            MPNS_NATIVE_REGISTRATION2 +
-            channelUri.toString() +
-            MPNS_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(MPNS_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(MPNS_NATIVE_REGISTRATION2);
+        writer.write(channelUri.toString());
+        writer.write(MPNS_NATIVE_REGISTRATION3);
     }
 }
@@ -13,11 +13,16 @@ import java.util.Objects;
  * Class representing a registration for template notifications for devices using MPNS.
  */
 public class MpnsTemplateRegistration extends MpnsRegistration implements TemplateRegistration {
-    private static final String MPNS_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><MpnsTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String MPNS_TEMPLATE_REGISTRATION2 = "<ChannelUri>";
-    private static final String MPNS_TEMPLATE_REGISTRATION3 = "</ChannelUri><BodyTemplate><![CDATA[";
-    private static final String MPNS_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate>";
-    private static final String MPNS_TEMPLATE_REGISTRATION5 = "</MpnsTemplateRegistrationDescription></content></entry>";
+    private static final byte[] MPNS_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><MpnsTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] MPNS_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<ChannelUri>");
+    private static final byte[] MPNS_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</ChannelUri><BodyTemplate><![CDATA[");
+    private static final byte[] MPNS_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate>");
+    private static final byte[] MPNS_TEMPLATE_REGISTRATION5 = Utf8XmlWriter.encode("</MpnsTemplateRegistrationDescription></content></entry>");
+    private static final byte[] HEADERS_START = Utf8XmlWriter.encode("<MpnsHeaders>");
+    private static final byte[] HEADER_START = Utf8XmlWriter.encode("<MpnsHeader><Header>");
+    private static final byte[] HEADER_VALUE = Utf8XmlWriter.encode("</Header><Value>");
+    private static final byte[] HEADER_END = Utf8XmlWriter.encode("</Value></MpnsHeader>");
+    private static final byte[] HEADERS_END = Utf8XmlWriter.encode("</MpnsHeaders>");
 
     private String bodyTemplate;
     private Map<String, String> headers = new HashMap<>();
@@ -144,28 +149,30 @@ public class MpnsTemplateRegistration extends MpnsRegistration implements Templa
 
     @Override
     public String getXml() {
-        return MPNS_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            MPNS_TEMPLATE_REGISTRATION2 +
-            channelUri.toString() +
-            MPNS_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            MPNS_TEMPLATE_REGISTRATION4 +
-            getHeadersXml() +
-            MPNS_TEMPLATE_REGISTRATION5;
+        return writeXmlToString();
     }
 
-    private String getHeadersXml() {
-        StringBuilder buf = new StringBuilder();
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(MPNS_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(MPNS_TEMPLATE_REGISTRATION2);
+        writer.write(channelUri.toString());
+        writer.write(MPNS_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(MPNS_TEMPLATE_REGISTRATION4);
+        writeHeadersXml(writer);
+        writer.write(MPNS_TEMPLATE_REGISTRATION5);
+    }
+
+    private void writeHeadersXml(Utf8XmlWriter writer) {
         if (!headers.isEmpty()) {
-            buf.append("<MpnsHeaders>");
-            for (String key : headers.keySet()) {
-                buf.append("<MpnsHeader><Header>");
-                buf.append(key).append("</Header><Value>");
-                buf.append(headers.get(key)).append("</Value></MpnsHeader>");
+            writer.write(HEADERS_START);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writer.write(HEADER_START).write(header.getKey());
+                writer.write(HEADER_VALUE).write(header.getValue()).write(HEADER_END);
             }
-            buf.append("</MpnsHeaders>");
+            writer.write(HEADERS_END);
         }
-        return buf.toString();
     }
 }
@@ -0,0 +1,234 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class streams the multipart/mixed body of a direct batch send. The notification part is
+ * encoded once, while the device handles are encoded into JSON one at a time as the socket accepts
+ * them, so a request only holds a small fixed buffer no matter how many handles it targets. The
+ * content length is computed up front and the body can be produced again when a request is retried.
+ */
+class MultipartBatchEntityProducer implements AsyncEntityProducer {
+    static final String BOUNDARY = "nh-batch-multipart-boundary";
+    static final ContentType CONTENT_TYPE = ContentType.create("multipart/mixed")
+        .withParameters(new BasicNameValuePair("boundary", BOUNDARY));
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String CRLF = "\r\n";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final List<String> deviceHandles;
+    private final long contentLength;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder scratch = new StringBuilder();
+
+    private ByteBuffer segment;
+    private int nextSegment;
+
+    MultipartBatchEntityProducer(Notification notification, List<String> deviceHandles) {
+        ContentType notificationType = notification.getContentType();
+        Charset charset = Notification.getCharset(notificationType);
+
+        String notificationHeader = "--" + BOUNDARY + CRLF
+            + "Content-Disposition: inline; name=notification" + CRLF
+            + "Content-Type: " + notificationType + CRLF
+            + CRLF;
+        byte[] headerBytes = notificationHeader.getBytes(StandardCharsets.US_ASCII);
+        byte[] bodyBytes = notification.getBodyBytes(charset);
+        byte[] devicesHeaderBytes = (CRLF
+            + "--" + BOUNDARY + CRLF
+            + "Content-Disposition: inline; name=devices" + CRLF
+            + "Content-Type: " + ContentType.APPLICATION_JSON + CRLF
+            + CRLF
+            + "[").getBytes(StandardCharsets.US_ASCII);
+
+        this.head = new byte[headerBytes.length + bodyBytes.length + devicesHeaderBytes.length];
+        System.arraycopy(headerBytes, 0, head, 0, headerBytes.length);
+        System.arraycopy(bodyBytes, 0, head, headerBytes.length, bodyBytes.length);
+        System.arraycopy(devicesHeaderBytes, 0, head, headerBytes.length + bodyBytes.length, devicesHeaderBytes.length);
+        this.tail = ("]" + CRLF + "--" + BOUNDARY + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+
+        this.deviceHandles = deviceHandles;
+
+        long length = head.length + tail.length;
+        for (int i = 0; i < deviceHandles.size(); i++) {
+            length += (i > 0 ? 1 : 0) + 2 + jsonStringLength(deviceHandles.get(i));
+        }
+        this.contentLength = length;
+
+        buffer.flip();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE.toString();
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getTrailerNames() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public synchronized int available() {
+        fill();
+        return buffer.remaining();
+    }
+
+    @Override
+    public synchronized void produce(DataStreamChannel channel) throws IOException {
+        while (true) {
+            fill();
+            if (!buffer.hasRemaining()) {
+                channel.endStream();
+                return;
+            }
+            if (channel.write(buffer) == 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void failed(Exception cause) {
+    }
+
+    @Override
+    public synchronized void releaseResources() {
+        segment = null;
+        nextSegment = 0;
+        buffer.clear();
+        buffer.flip();
+    }
+
+    // Tops up the buffer from the head, one handle at a time, and then the tail.
+    private void fill() {
+        buffer.compact();
+        try {
+            while (buffer.hasRemaining()) {
+                if (segment == null || !segment.hasRemaining()) {
+                    segment = nextSegment();
+                    if (segment == null) {
+                        return;
+                    }
+                }
+
+                int count = Math.min(buffer.remaining(), segment.remaining());
+                buffer.put(segment.array(), segment.arrayOffset() + segment.position(), count);
+                segment.position(segment.position() + count);
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private ByteBuffer nextSegment() {
+        int index = nextSegment++;
+        if (index == 0) {
+            return ByteBuffer.wrap(head);
+        }
+
+        int handle = index - 1;
+        if (handle < deviceHandles.size()) {
+            scratch.setLength(0);
+            if (handle > 0) {
+                scratch.append(',');
+            }
+            appendJsonString(scratch, deviceHandles.get(handle));
+            return ByteBuffer.wrap(scratch.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return handle == deviceHandles.size() ? ByteBuffer.wrap(tail) : null;
+    }
+
+    // Escapes the same characters as Gson with HTML escaping disabled.
+    static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\t': builder.append("\\t"); break;
+                case '\b': builder.append("\\b"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\f': builder.append("\\f"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        builder.append("\\u")
+                            .append(HEX[(c >> 12) & 0xf])
+                            .append(HEX[(c >> 8) & 0xf])
+                            .append(HEX[(c >> 4) & 0xf])
+                            .append(HEX[c & 0xf]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    // The UTF-8 length of the escaped value without its quotes, matching appendJsonString followed by
+    // String.getBytes, which encodes an unpaired surrogate as a single '?'.
+    static long jsonStringLength(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == '\t' || c == '\b' || c == '\n' || c == '\r' || c == '\f') {
+                length += 2;
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                length += 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -29,6 +29,20 @@ public class NamespaceManager extends NotificationHubsService implements Namespa
      * @param connectionString The connection string from the Azure Notification Hubs namespace access policies.
      */
     public NamespaceManager(String connectionString) {
+        this(connectionString, HttpClientTransport.shared());
+    }
+
+    /**
+     * Creates a new instance of the NamespaceManager class with an HTTP transport.
+     * @param connectionString The connection string from the Azure Notification Hubs namespace access policies.
+     * @param transport The HTTP transport to use for all management operations.
+     */
+    public NamespaceManager(String connectionString, HttpClientTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+
+        this.transport = transport;
         String sasKeyName = null;
         String sasKeyValue = null;
 
@@ -38,7 +52,7 @@ public class NamespaceManager extends NotificationHubsService implements Namespa
 
         for (String part : parts) {
             if (part.startsWith("Endpoint")) {
-                this.endpoint = "https" + part.substring(11);
+                this.endpoint = parseEndpoint(part.substring(9));
             } else if (part.startsWith("SharedAccessKeyName")) {
                 sasKeyName = part.substring(20);
             } else if (part.startsWith("SharedAccessKey")) {
@@ -0,0 +1,95 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class exposes the notification hub management operations as {@link CompletableFuture}
+ * instances. Futures are completed on the executor given at construction, so continuations added
+ * without an explicit executor never run on the HTTP client's I/O threads.
+ */
+public class NamespaceManagerAsyncClient {
+    private final NamespaceManagerClient namespaceManager;
+    private final Executor executor;
+
+    /**
+     * Creates a new instance of the NamespaceManagerAsyncClient class which completes futures on
+     * the common fork join pool.
+     * @param namespaceManager The namespace manager to perform the operations on.
+     */
+    public NamespaceManagerAsyncClient(NamespaceManagerClient namespaceManager) {
+        this(namespaceManager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new instance of the NamespaceManagerAsyncClient class.
+     * @param namespaceManager The namespace manager to perform the operations on.
+     * @param executor The executor to complete futures and run their continuations on.
+     */
+    public NamespaceManagerAsyncClient(NamespaceManagerClient namespaceManager, Executor executor) {
+        if (namespaceManager == null) {
+            throw new IllegalArgumentException("namespaceManager cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+
+        this.namespaceManager = namespaceManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets a notification hub by the hub path.
+     *
+     * @param hubPath The path of the notification hub.
+     * @return A future of the notification hub description.
+     */
+    public CompletableFuture<NotificationHubDescription> getNotificationHub(String hubPath) {
+        return CompletableFutureCallback.call(executor, callback -> namespaceManager.getNotificationHubAsync(hubPath, callback));
+    }
+
+    /**
+     * Gets all notification hubs for the namespace.
+     *
+     * @return A future of the descriptions of all the namespace's notification hubs.
+     */
+    public CompletableFuture<List<NotificationHubDescription>> getNotificationHubs() {
+        return CompletableFutureCallback.call(executor, namespaceManager::getNotificationHubsAsync);
+    }
+
+    /**
+     * Creates a notification hub with the given notification hub description.
+     *
+     * @param hubDescription The notification hub description containing the information for the notification hub.
+     * @return A future of the populated notification hub description.
+     */
+    public CompletableFuture<NotificationHubDescription> createNotificationHub(NotificationHubDescription hubDescription) {
+        return CompletableFutureCallback.call(executor, callback -> namespaceManager.createNotificationHubAsync(hubDescription, callback));
+    }
+
+    /**
+     * Updates a notification hub via the notification hub description.
+     *
+     * @param hubDescription The notification hub description to update.
+     * @return A future of the populated notification hub description.
+     */
+    public CompletableFuture<NotificationHubDescription> updateNotificationHub(NotificationHubDescription hubDescription) {
+        return CompletableFutureCallback.call(executor, callback -> namespaceManager.updateNotificationHubAsync(hubDescription, callback));
+    }
+
+    /**
+     * Deletes the notification hub with the given hub name.
+     *
+     * @param hubPath The name of the notification hub.
+     * @return A future completed when the notification hub is deleted.
+     */
+    public CompletableFuture<Void> deleteNotificationHub(String hubPath) {
+        return CompletableFutureCallback.callVoid(executor, callback -> namespaceManager.deleteNotificationHubAsync(hubPath, callback));
+    }
+}
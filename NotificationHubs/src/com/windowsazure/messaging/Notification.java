@@ -4,8 +4,12 @@
 
 package com.windowsazure.messaging;
 
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpRequest;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -180,6 +184,19 @@ public class Notification {
         return new TemplateNotification(properties);
     }
 
+    /**
+     * Creates an immutable copy of this notification whose body is encoded and whose headers are
+     * built once, for sending the same notification many times. Later changes to this
+     * notification do not affect the copy.
+     *
+     * @return a prepared copy of this notification.
+     * @throws IllegalArgumentException if the body cannot be encoded in the charset of its
+     *                                  Content-Type, or in US-ASCII if it has none.
+     */
+    public PreparedNotification prepare() {
+        return new PreparedNotification(this);
+    }
+
     /**
      * Gets the headers for the notification.
      *
@@ -233,4 +250,25 @@ public class Notification {
     public void setContentType(ContentType contentType) {
         this.contentType = contentType;
     }
+
+    SimpleRequestBuilder writeBody(SimpleRequestBuilder builder) {
+        return builder.setBody(body, contentType);
+    }
+
+    void writeHeaders(HttpRequest request) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.setHeader(header.getKey(), header.getValue());
+        }
+    }
+
+    byte[] getBodyBytes(Charset charset) {
+        return body.getBytes(charset);
+    }
+
+    // The charset the HTTP client encodes a text body with
+    static Charset getCharset(ContentType contentType) {
+        return contentType != null && contentType.getCharset() != null
+            ? contentType.getCharset()
+            : StandardCharsets.US_ASCII;
+    }
 }
@@ -4,31 +4,29 @@
 
 package com.windowsazure.messaging;
 
-import com.google.gson.GsonBuilder;
 import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
 import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
-import org.apache.hc.client5.http.entity.mime.FormBodyPart;
-import org.apache.hc.client5.http.entity.mime.FormBodyPartBuilder;
-import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
-import org.apache.hc.client5.http.entity.mime.StringBody;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.*;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * This class represents all actions that can be done on an Azure Notification Hub.
@@ -37,8 +35,19 @@ public class NotificationHub extends NotificationHubsService implements Notifica
 
     private static final String API_VERSION = "?api-version=2020-06";
     private static final String CONTENT_LOCATION_HEADER = "Location";
+    private static final int MAX_DIRECT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_BATCH_CONCURRENCY = 4;
+    private static final int DEFAULT_BULK_INSTALLATION_CONCURRENCY = 16;
+    private static final int MAX_BULK_INSTALLATION_ATTEMPTS = 3;
+    private static final int REMEMBERED_SENDS = 10000;
+    private static final DateTimeFormatter SCHEDULE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
     private String endpoint;
     private final String hubPath;
+    private volatile InstallationFingerprintStore installationFingerprintStore;
+    // Counts fingerprints forgotten, so that a PUT overlapping a PATCH or DELETE is not remembered
+    private final AtomicLong forgottenFingerprints = new AtomicLong();
+    private volatile NotificationHubReadCache readCache;
+    private volatile SendRecord sendRecord;
 
     /**
      * Creates a new instance of the NotificationHub class with connection string and hub path.
@@ -46,7 +55,22 @@ public class NotificationHub extends NotificationHubsService implements Notifica
      * @param hubPath The name of the Azure Notification Hub name.
      */
     public NotificationHub(String connectionString, String hubPath) {
+        this(connectionString, hubPath, HttpClientTransport.shared());
+    }
+
+    /**
+     * Creates a new instance of the NotificationHub class with connection string, hub path and HTTP transport.
+     * @param connectionString The connection string from the Azure Notification Hub access policies.
+     * @param hubPath The name of the Azure Notification Hub name.
+     * @param transport The HTTP transport to use for all operations on this hub.
+     */
+    public NotificationHub(String connectionString, String hubPath, HttpClientTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+
         this.hubPath = hubPath;
+        this.transport = transport;
 
         String sasKeyName = null;
         String sasKeyValue = null;
@@ -58,7 +82,7 @@ public class NotificationHub extends NotificationHubsService implements Notifica
 
         for (String part : parts) {
             if (part.startsWith("Endpoint")) {
-                this.endpoint = "https" + part.substring(11);
+                this.endpoint = parseEndpoint(part.substring(9));
             } else if (part.startsWith("SharedAccessKeyName")) {
                 sasKeyName = part.substring(20);
             } else if (part.startsWith("SharedAccessKey")) {
@@ -69,6 +93,117 @@ public class NotificationHub extends NotificationHubsService implements Notifica
         tokenProvider = new SasTokenProvider(sasKeyName, sasKeyValue);
     }
 
+    /**
+     * Sets the store of fingerprints of the installations written by this client. With a store,
+     * creating or updating an installation whose canonical JSON matches the last one written with
+     * the same installation ID completes without a request, while patching or deleting an
+     * installation forgets its fingerprint, both when the request is sent and when it completes.
+     * An installation written while a patch or delete was in flight is not remembered. Only writes made through clients sharing the store
+     * are known to it, so use a time to live that bounds how long changes made elsewhere, or
+     * installations expiring on the service, can go unnoticed.
+     *
+     * @param store The fingerprint store, or null to always send installations.
+     */
+    public void setInstallationFingerprintStore(InstallationFingerprintStore store) {
+        this.installationFingerprintStore = store;
+    }
+
+    /**
+     * Gets the store of fingerprints of the installations written by this client.
+     *
+     * @return The fingerprint store, or null if installations are always sent.
+     */
+    public InstallationFingerprintStore getInstallationFingerprintStore() {
+        return installationFingerprintStore;
+    }
+
+    /**
+     * Sets the cache for getInstallation and getRegistration. Creating, updating, patching or
+     * deleting an installation or registration through this client drops its entry, both when
+     * the request is sent and when it completes, so a read served in between is not kept.
+     *
+     * @param cache The read cache, or null to always ask the service.
+     */
+    public void setReadCache(NotificationHubReadCache cache) {
+        this.readCache = cache;
+    }
+
+    /**
+     * Gets the cache for getInstallation and getRegistration.
+     *
+     * @return The read cache, or null if the service is always asked.
+     */
+    public NotificationHubReadCache getReadCache() {
+        return readCache;
+    }
+
+    /**
+     * Turns at-least-once sends on or off. Sends are then repeated by the retry strategy after a
+     * connection failure, although the notification may already have reached the service, so a
+     * device may receive it twice. To send a notification again safely, e.g. from a retry loop of
+     * your own, set the same TrackingId header on it: a send with the same tracking ID, target
+     * and schedule as one of the last 10,000 sends which succeeded, or as one still in flight,
+     * gets the outcome of that send instead of being sent again. Sends to a list of device
+     * handles are repeated on connection failures but are not remembered.
+     *
+     * @param enabled Whether sends are at least once rather than at most once.
+     */
+    public void setAtLeastOnceSends(boolean enabled) {
+        if (!enabled) {
+            sendRecord = null;
+        } else if (sendRecord == null) {
+            sendRecord = new SendRecord(REMEMBERED_SENDS);
+        }
+    }
+
+    /**
+     * Gets whether sends are repeated after a connection failure.
+     *
+     * @return Whether sends are at least once rather than at most once.
+     */
+    public boolean isAtLeastOnceSends() {
+        return sendRecord != null;
+    }
+
+    // Runs the action once the write has completed, whatever its outcome, before the callback.
+    // The caller's cancellable callback still aborts the write.
+    private static <T> FutureCallback<T> whenWritten(final FutureCallback<T> callback, final Runnable action) {
+        return new WrittenCallback<T>() {
+            @Override
+            public CancellableCallback<?> getCancellable() {
+                return CancellableCallback.find(callback);
+            }
+
+            @Override
+            public void completed(T result) {
+                action.run();
+                callback.completed(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                action.run();
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                action.run();
+                callback.cancelled();
+            }
+        };
+    }
+
+    private interface WrittenCallback<T> extends FutureCallback<T>, CancellableCallback.Forwarding {
+    }
+
+    private void invalidateCached(String key) {
+        NotificationHubReadCache cache = readCache;
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
     /**
      * This method creates a new registration
      *
@@ -89,7 +224,7 @@ public class NotificationHub extends NotificationHubsService implements Notifica
         }
 
         final SimpleHttpRequest post = createRequest(uri, Method.POST)
-            .setBody(registration.getXml(), ContentType.APPLICATION_ATOM_XML)
+            .setBody(registration.getXmlBytes(), ContentType.APPLICATION_ATOM_XML)
             .build();
 
         executeRequest(post, callback, 200, response -> {
@@ -186,16 +321,20 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        invalidateCached(NotificationHubReadCache.registrationKey(registration.getRegistrationId()));
+
         final SimpleHttpRequest put = createRequest(uri, Method.PUT)
             .setHeader("If-Match", registration.getEtag() == null ? "*" : "W/\"" + registration.getEtag() + "\"")
-            .setBody(registration.getXml(), ContentType.APPLICATION_ATOM_XML)
+            .setBody(registration.getXmlBytes(), ContentType.APPLICATION_ATOM_XML)
             .build();
 
-        executeRequest(put, callback, 200, response -> {
+        final FutureCallback<T> written = whenWritten(callback,
+            () -> invalidateCached(NotificationHubReadCache.registrationKey(registration.getRegistrationId())));
+        executeRequest(put, written, 200, response -> {
             try {
-                callback.completed(Registration.parse(response.getBodyBytes()));
+                written.completed(Registration.parse(response.getBodyBytes()));
             } catch (Exception e) {
-                callback.failed(e);
+                written.failed(e);
             }
         });
     }
@@ -239,15 +378,19 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        invalidateCached(NotificationHubReadCache.registrationKey(registration.getRegistrationId()));
+
         final SimpleHttpRequest put = createRequest(uri, Method.PUT)
-            .setBody(registration.getXml(), ContentType.APPLICATION_ATOM_XML)
+            .setBody(registration.getXmlBytes(), ContentType.APPLICATION_ATOM_XML)
             .build();
 
-        executeRequest(put, callback, 200, response -> {
+        final FutureCallback<T> written = whenWritten(callback,
+            () -> invalidateCached(NotificationHubReadCache.registrationKey(registration.getRegistrationId())));
+        executeRequest(put, written, 200, response -> {
             try {
-                callback.completed(Registration.parse(response.getBodyBytes()));
+                written.completed(Registration.parse(response.getBodyBytes()));
             } catch (Exception e) {
-                callback.failed(e);
+                written.failed(e);
             }
         });
     }
@@ -314,11 +457,15 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        invalidateCached(NotificationHubReadCache.registrationKey(registrationId));
+
         final SimpleHttpRequest delete = createRequest(uri, Method.DELETE)
             .setHeader("If-Match", "*")
             .build();
 
-        executeRequest(delete, callback, new int[] { 200, 404 }, response -> callback.completed(null));
+        final FutureCallback<Object> written = whenWritten(callback,
+            () -> invalidateCached(NotificationHubReadCache.registrationKey(registrationId)));
+        executeRequest(delete, written, new int[] { 200, 404 }, response -> written.completed(null));
     }
 
     /**
@@ -351,12 +498,38 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
-        final SimpleHttpRequest get = createRequest(uri, Method.GET)
-            .build();
+        final NotificationHubReadCache cache = readCache;
+        final String key = NotificationHubReadCache.registrationKey(registrationId);
+        final NotificationHubReadCache.Lookup cached = cache == null ? null : cache.lookup(key);
+        if (cached != null && cached.isFresh()) {
+            try {
+                callback.completed(Registration.parse(cached.getBody()));
+            } catch (Exception e) {
+                callback.failed(e);
+            }
+            return;
+        }
 
-        executeRequest(get, callback, 200, response -> {
+        SimpleRequestBuilder builder = createRequest(uri, Method.GET);
+        if (cached != null && cached.getEtag() != null) {
+            builder.setHeader("If-None-Match", "W/\"" + cached.getEtag() + "\"");
+        }
+        final SimpleHttpRequest get = builder.build();
+
+        executeRequest(get, callback, new int[] { 200, 304 }, response -> {
             try {
-                callback.completed(Registration.parse(response.getBodyBytes()));
+                if (response.getCode() == 304 && cached != null && cached.getBody() != null) {
+                    cache.revalidated(key, cached);
+                    callback.completed(Registration.parse(cached.getBody()));
+                    return;
+                }
+
+                byte[] body = response.getBodyBytes();
+                T registration = Registration.parse(body);
+                if (cache != null) {
+                    cache.put(key, cached, body, registration.getEtag());
+                }
+                callback.completed(registration);
             } catch (Exception e) {
                 callback.failed(e);
             }
@@ -571,6 +744,84 @@ public class NotificationHub extends NotificationHubsService implements Notifica
         return callback.getResult();
     }
 
+    /**
+     * Iterates over all registrations in this hub, fetching pages lazily and
+     * prefetching the next page while the current one is consumed.
+     *
+     * @return A pager over all registrations.
+     */
+    @Override
+    public RegistrationPager iterateRegistrations() {
+        return iterateRegistrations(0);
+    }
+
+    /**
+     * Iterates over all registrations in this hub, fetching pages lazily and
+     * prefetching the next page while the current one is consumed.
+     *
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over all registrations.
+     */
+    @Override
+    public RegistrationPager iterateRegistrations(final int pageSize) {
+        return new RegistrationPager((continuationToken, callback) ->
+            getRegistrationsAsync(pageSize, continuationToken, callback));
+    }
+
+    /**
+     * Iterates over all registrations with a specific tag, fetching pages lazily
+     * and prefetching the next page while the current one is consumed.
+     *
+     * @param tag The tag to search for registrations.
+     * @return A pager over the registrations with the given tag.
+     */
+    @Override
+    public RegistrationPager iterateRegistrationsByTag(String tag) {
+        return iterateRegistrationsByTag(tag, 0);
+    }
+
+    /**
+     * Iterates over all registrations with a specific tag, fetching pages lazily
+     * and prefetching the next page while the current one is consumed.
+     *
+     * @param tag      The tag to search for registrations.
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over the registrations with the given tag.
+     */
+    @Override
+    public RegistrationPager iterateRegistrationsByTag(final String tag, final int pageSize) {
+        return new RegistrationPager((continuationToken, callback) ->
+            getRegistrationsByTagAsync(tag, pageSize, continuationToken, callback));
+    }
+
+    /**
+     * Iterates over all registrations with a specific channel (e.g. ChannelURI,
+     * device token), fetching pages lazily and prefetching the next page while
+     * the current one is consumed.
+     *
+     * @param channel The channel URI, device token or other unique PNS identifier.
+     * @return A pager over the registrations with matching channels.
+     */
+    @Override
+    public RegistrationPager iterateRegistrationsByChannel(String channel) {
+        return iterateRegistrationsByChannel(channel, 0);
+    }
+
+    /**
+     * Iterates over all registrations with a specific channel (e.g. ChannelURI,
+     * device token), fetching pages lazily and prefetching the next page while
+     * the current one is consumed.
+     *
+     * @param channel  The channel URI, device token or other unique PNS identifier.
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over the registrations with matching channels.
+     */
+    @Override
+    public RegistrationPager iterateRegistrationsByChannel(final String channel, final int pageSize) {
+        return new RegistrationPager((continuationToken, callback) ->
+            getRegistrationsByChannelAsync(channel, pageSize, continuationToken, callback));
+    }
+
     private String getQueryString(int top, String continuationToken) {
         StringBuilder buf = new StringBuilder();
         if (top > 0) {
@@ -791,26 +1042,51 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
-        final SimpleHttpRequest post = createRequest(uri, Method.POST)
-            .setBody(notification.getBody(), notification.getContentType())
+        final SimpleHttpRequest post = notification.writeBody(createRequest(uri, Method.POST))
             .build();
 
         if (scheduledTime != null) {
-            DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-            df.setTimeZone(TimeZone.getTimeZone("UTC"));
-            String scheduledTimeHeader = df.format(scheduledTime);
-            post.setHeader("ServiceBusNotification-ScheduleTime", scheduledTimeHeader);
+            post.setHeader("ServiceBusNotification-ScheduleTime", SCHEDULE_TIME_FORMAT.format(scheduledTime.toInstant()));
         }
 
         if (tagExpression != null && !"".equals(tagExpression)) {
             post.setHeader("ServiceBusNotification-Tags", tagExpression);
         }
 
-        for (String header : notification.getHeaders().keySet()) {
-            post.setHeader(header, notification.getHeaders().get(header));
+        notification.writeHeaders(post);
+
+        String target = (scheduledTime == null ? "" : scheduledTime.getTime()) + "\n" + tagExpression;
+        sendOnce(notification, post, null, target, callback);
+    }
+
+    // Sends at most once, unless at-least-once sends are on, in which case a send with a tracking
+    // ID chosen by the caller is remembered under that ID and its target
+    private void sendOnce(
+        Notification notification,
+        SimpleHttpRequest post,
+        AsyncEntityProducer entityProducer,
+        String target,
+        FutureCallback<NotificationOutcome> callback) {
+        SendRecord record = sendRecord;
+        if (record == null) {
+            if (entityProducer == null) {
+                executeRequest(post, callback, 201, response -> sendNotificationOutcome(callback, post, response));
+            } else {
+                executeRequest(post, entityProducer, callback, new int[] { 201 }, response -> sendNotificationOutcome(callback, post, response));
+            }
+            return;
+        }
+
+        String trackingId = notification.getHeaders().get(TRACKING_ID_HEADER);
+        if (trackingId == null || target == null) {
+            executeAtLeastOnceRequest(post, entityProducer, callback, new int[] { 201 },
+                response -> sendNotificationOutcome(callback, post, response));
+            return;
         }
 
-        executeRequest(post, callback, 201, response -> sendNotificationOutcome(callback, post, response));
+        record.send(trackingId + "\n" + post.getPath() + "\n" + target, callback, sendCallback ->
+            executeAtLeastOnceRequest(post, entityProducer, sendCallback, new int[] { 201 },
+                response -> sendNotificationOutcome(sendCallback, post, response)));
     }
 
     private void sendNotificationOutcome(FutureCallback<NotificationOutcome> callback, SimpleHttpRequest post, SimpleHttpResponse response) {
@@ -934,16 +1210,13 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
-        final SimpleHttpRequest post = createRequest(uri, Method.POST)
-            .setHeader("ServiceBusNotification-DeviceHandle", deviceHandle)
-            .setBody(notification.getBody(), notification.getContentType())
+        final SimpleHttpRequest post = notification.writeBody(createRequest(uri, Method.POST)
+            .setHeader("ServiceBusNotification-DeviceHandle", deviceHandle))
             .build();
 
-        for (String header : notification.getHeaders().keySet()) {
-            post.setHeader(header, notification.getHeaders().get(header));
-        }
+        notification.writeHeaders(post);
 
-        executeRequest(post, callback, 201, response -> sendNotificationOutcome(callback, post, response));
+        sendOnce(notification, post, null, deviceHandle, callback);
     }
 
     /**
@@ -966,40 +1239,148 @@ public class NotificationHub extends NotificationHubsService implements Notifica
         final SimpleHttpRequest post = createRequest(uri, Method.POST)
             .build();
 
-        for (String header : notification.getHeaders().keySet()) {
-            post.setHeader(header, notification.getHeaders().get(header));
-        }
+        notification.writeHeaders(post);
 
-        FormBodyPart notificationPart = FormBodyPartBuilder.create()
-            .setName("notification")
-            .addField("Content-Disposition", "inline; name=notification")
-            .setBody(new StringBody(notification.getBody(), notification.getContentType()))
-            .build();
+        sendOnce(notification, post, new MultipartBatchEntityProducer(notification, deviceHandles), null, callback);
+    }
 
-        String deviceHandlesJson = new GsonBuilder().disableHtmlEscaping().create().toJson(deviceHandles);
-        FormBodyPart devicesPart = FormBodyPartBuilder.create()
-            .setName("devices")
-            .addField("Content-Disposition", "inline; name=devices")
-            .setBody(new StringBody(deviceHandlesJson, ContentType.APPLICATION_JSON))
-            .build();
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request, with a few batches in
+     * flight at once. Note that this is not available on the free SKU.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @return An aggregate outcome with the notification outcome or error of each batch.
+     * @throws NotificationHubsException Thrown if there is a client error.
+     */
+    @Override
+    public AggregateNotificationOutcome sendDirectNotificationBatch(
+        Notification notification,
+        Iterable<String> deviceHandles
+    ) throws NotificationHubsException {
+        SyncCallback<AggregateNotificationOutcome> callback = new SyncCallback<>();
+        sendDirectNotificationBatchAsync(notification, deviceHandles, callback);
+        return callback.getResult();
+    }
 
-        HttpEntity entity = MultipartEntityBuilder.create()
-            .setMimeSubtype("mixed")
-            .setBoundary("nh-batch-multipart-boundary")
-            .addPart(notificationPart)
-            .addPart(devicesPart)
-            .build();
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request, with a few batches in
+     * flight at once. Note that this is not available on the free SKU.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @param callback      A callback, when invoked, returns an aggregate outcome with the
+     *                      notification outcome or error of each batch.
+     */
+    @Override
+    public void sendDirectNotificationBatchAsync(
+        Notification notification,
+        Iterable<String> deviceHandles,
+        FutureCallback<AggregateNotificationOutcome> callback
+    ) {
+        sendDirectNotificationBatchAsync(notification, deviceHandles, DEFAULT_BATCH_CONCURRENCY, callback);
+    }
 
-        ByteArrayOutputStream baoStream = new ByteArrayOutputStream();
-        try {
-            entity.writeTo(baoStream);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request. Note that this is not
+     * available on the free SKU.
+     *
+     * @param notification          The notification to send directly to the device handles.
+     * @param deviceHandles         The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @param maxConcurrentRequests The maximum number of batches in flight at once.
+     * @param callback              A callback, when invoked, returns an aggregate outcome with the
+     *                              notification outcome or error of each batch.
+     */
+    @Override
+    public void sendDirectNotificationBatchAsync(
+        Notification notification,
+        Iterable<String> deviceHandles,
+        int maxConcurrentRequests,
+        FutureCallback<AggregateNotificationOutcome> callback
+    ) {
+        // Every batch sends the same notification, so encode it once
+        final PreparedNotification prepared = notification.prepare();
+        new ChunkDispatcher(
+            ChunkDispatcher.chunk(deviceHandles, MAX_DIRECT_BATCH_SIZE),
+            (chunk, chunkCallback) -> sendDirectNotificationAsync(prepared, chunk, chunkCallback),
+            maxConcurrentRequests,
+            callback
+        ).start();
+    }
+
+    /**
+     * Sends a notification to any number of tags. The tags are read lazily, repeated tags are
+     * skipped, and they are sent as expressions which OR together up to 20 tags each, the most the
+     * service accepts, with a few expressions in flight at once. A device registered for tags in
+     * different expressions receives the notification once per expression. Use
+     * {@link TagExpressions#splitOr(String)} to send a large OR expression.
+     *
+     * @param notification The notification to send to the tags.
+     * @param tags         The tags to target, e.g. {@code stream::iterator}.
+     * @return An aggregate outcome with the notification outcome or error of each expression.
+     * @throws NotificationHubsException Thrown if there is a client error.
+     */
+    @Override
+    public AggregateNotificationOutcome sendNotificationToTags(
+        Notification notification,
+        Iterable<String> tags
+    ) throws NotificationHubsException {
+        SyncCallback<AggregateNotificationOutcome> callback = new SyncCallback<>();
+        sendNotificationToTagsAsync(notification, tags, callback);
+        return callback.getResult();
+    }
 
-        post.setBody(baoStream.toByteArray(), ContentType.parse(entity.getContentType()));
+    /**
+     * Sends a notification to any number of tags. The tags are read lazily, repeated tags are
+     * skipped, and they are sent as expressions which OR together up to 20 tags each, the most the
+     * service accepts, with a few expressions in flight at once. A device registered for tags in
+     * different expressions receives the notification once per expression.
+     *
+     * @param notification The notification to send to the tags.
+     * @param tags         The tags to target, e.g. {@code stream::iterator}.
+     * @param callback     A callback, when invoked, returns an aggregate outcome with the
+     *                     notification outcome or error of each expression.
+     */
+    @Override
+    public void sendNotificationToTagsAsync(
+        Notification notification,
+        Iterable<String> tags,
+        FutureCallback<AggregateNotificationOutcome> callback
+    ) {
+        sendNotificationToTagsAsync(notification, tags, null, DEFAULT_BATCH_CONCURRENCY, callback);
+    }
 
-        executeRequest(post, callback, 201, response -> sendNotificationOutcome(callback, post, response));
+    /**
+     * Sends or schedules a notification to any number of tags. The tags are read lazily, repeated
+     * tags are skipped, and they are sent as expressions which OR together up to 20 tags each, the
+     * most the service accepts. A device registered for tags in different expressions receives the
+     * notification once per expression. Note that scheduling is not available on the free SKU.
+     *
+     * @param notification          The notification to send to the tags.
+     * @param tags                  The tags to target, e.g. {@code stream::iterator}.
+     * @param scheduledTime         The scheduled time for the notification, or null to send it now.
+     * @param maxConcurrentRequests The maximum number of expressions in flight at once.
+     * @param callback              A callback, when invoked, returns an aggregate outcome with the
+     *                              notification outcome or error of each expression.
+     */
+    @Override
+    public void sendNotificationToTagsAsync(
+        Notification notification,
+        Iterable<String> tags,
+        Date scheduledTime,
+        int maxConcurrentRequests,
+        FutureCallback<AggregateNotificationOutcome> callback
+    ) {
+        final PreparedNotification prepared = notification.prepare();
+        new ChunkDispatcher(
+            TagExpressions.shard(tags, TagExpressions.MAX_OR_TAGS),
+            (chunk, chunkCallback) -> scheduleNotificationAsync(prepared, TagExpressions.joinOr(chunk), scheduledTime, chunkCallback),
+            maxConcurrentRequests,
+            callback
+        ).start();
     }
 
     /**
@@ -1060,11 +1441,29 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        invalidateCached(NotificationHubReadCache.installationKey(installation.getInstallationId()));
+
+        final InstallationFingerprintStore store = installationFingerprintStore;
+        final byte[] fingerprint = store == null ? null : InstallationFingerprints.of(installation);
+        if (fingerprint != null && Arrays.equals(fingerprint, store.get(installation.getInstallationId()))) {
+            callback.completed(null);
+            return;
+        }
+        final long forgotten = forgottenFingerprints.get();
+
         final SimpleHttpRequest put = createRequest(uri, Method.PUT)
             .setBody(installation.toJson(), ContentType.APPLICATION_JSON)
             .build();
 
-        executeRequest(put, callback, 200, response -> callback.completed(null));
+        final FutureCallback<Object> written = whenWritten(callback,
+            () -> invalidateCached(NotificationHubReadCache.installationKey(installation.getInstallationId())));
+        executeRequest(put, written, 200, response -> {
+            // The service may have applied a patch or delete after this PUT
+            if (fingerprint != null && forgottenFingerprints.get() == forgotten) {
+                store.put(installation.getInstallationId(), fingerprint);
+            }
+            written.completed(null);
+        });
     }
 
     /**
@@ -1080,6 +1479,45 @@ public class NotificationHub extends NotificationHubsService implements Notifica
         callback.getResult();
     }
 
+    /**
+     * Creates or updates any number of installations, with up to 16 requests in flight at once.
+     *
+     * @param installations The installations to create or update.
+     * @param sink          The sink which receives the outcome of each installation, or null.
+     * @return The totals of the bulk operation.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    @Override
+    public BulkInstallationResult createOrUpdateInstallations(
+        Stream<? extends BaseInstallation> installations,
+        InstallationResultSink sink
+    ) throws InterruptedException {
+        return createOrUpdateInstallations(installations, DEFAULT_BULK_INSTALLATION_CONCURRENCY, sink);
+    }
+
+    /**
+     * Creates or updates any number of installations with a bounded number of requests in flight.
+     *
+     * @param installations The installations to create or update.
+     * @param maxInFlight   The maximum number of requests in flight at once.
+     * @param sink          The sink which receives the outcome of each installation, or null.
+     * @return The totals of the bulk operation.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    @Override
+    public BulkInstallationResult createOrUpdateInstallations(
+        Stream<? extends BaseInstallation> installations,
+        int maxInFlight,
+        InstallationResultSink sink
+    ) throws InterruptedException {
+        if (installations == null) {
+            throw new IllegalArgumentException("installations cannot be null");
+        }
+
+        return new BulkInstallationUpserter(this, maxInFlight, MAX_BULK_INSTALLATION_ATTEMPTS, sink)
+            .run(installations.iterator());
+    }
+
     /**
      * Patches an installation with the given installation ID.
      *
@@ -1140,11 +1578,18 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        forgetInstallationFingerprint(installationId);
+        invalidateCached(NotificationHubReadCache.installationKey(installationId));
+
         final SimpleHttpRequest patch = createRequest(uri, Method.PATCH)
             .setBody(operationsJson, ContentType.APPLICATION_JSON)
             .build();
 
-        executeRequest(patch, callback, 200, response -> callback.completed(null));
+        final FutureCallback<Object> written = whenWritten(callback, () -> {
+            forgetInstallationFingerprint(installationId);
+            invalidateCached(NotificationHubReadCache.installationKey(installationId));
+        });
+        executeRequest(patch, written, 200, response -> written.completed(null));
     }
 
     /**
@@ -1162,10 +1607,25 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        forgetInstallationFingerprint(installationId);
+        invalidateCached(NotificationHubReadCache.installationKey(installationId));
+
         final SimpleHttpRequest delete = createRequest(uri, Method.DELETE)
             .build();
 
-        executeRequest(delete, callback, 204, response -> callback.completed(null));
+        final FutureCallback<Object> written = whenWritten(callback, () -> {
+            forgetInstallationFingerprint(installationId);
+            invalidateCached(NotificationHubReadCache.installationKey(installationId));
+        });
+        executeRequest(delete, written, 204, response -> written.completed(null));
+    }
+
+    private void forgetInstallationFingerprint(String installationId) {
+        InstallationFingerprintStore store = installationFingerprintStore;
+        if (store != null) {
+            forgottenFingerprints.incrementAndGet();
+            store.remove(installationId);
+        }
     }
 
     /**
@@ -1198,12 +1658,28 @@ public class NotificationHub extends NotificationHubsService implements Notifica
             throw new RuntimeException(e);
         }
 
+        final NotificationHubReadCache cache = readCache;
+        final String key = NotificationHubReadCache.installationKey(installationId);
+        final NotificationHubReadCache.Lookup cached = cache == null ? null : cache.lookup(key);
+        if (cached != null && cached.isFresh()) {
+            try {
+                callback.completed(BaseInstallation.fromJson(new ByteArrayInputStream(cached.getBody())));
+            } catch (Exception e) {
+                callback.failed(e);
+            }
+            return;
+        }
+
         final SimpleHttpRequest get = createRequest(uri, Method.GET)
             .build();
 
         executeRequest(get, callback, 200, response -> {
             try {
-                callback.completed(BaseInstallation.fromJson(response.getBodyText()));
+                byte[] body = response.getBodyBytes();
+                if (cache != null) {
+                    cache.put(key, cached, body, null);
+                }
+                callback.completed(body == null ? null : BaseInstallation.fromJson(new ByteArrayInputStream(body)));
             } catch (Exception e) {
                 callback.failed(e);
             }
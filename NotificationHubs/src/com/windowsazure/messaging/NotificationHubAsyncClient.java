@@ -0,0 +1,503 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class exposes the operations of a notification hub as {@link CompletableFuture} instances,
+ * which compose without nesting callbacks or blocking a thread per call. Futures are completed on
+ * the executor given at construction, so continuations added without an explicit executor never
+ * run on the HTTP client's I/O threads. A failed operation completes its future exceptionally with
+ * the {@link NotificationHubsException} or other exception the callback based method reports.
+ * Cancelling a future aborts its request and any retry waiting to be sent. A client may give every
+ * operation a deadline, after which the future fails with a
+ * {@link java.util.concurrent.TimeoutException}; use {@link #withDeadline(Duration)} to make
+ * latency sensitive calls and bulk work with different deadlines through the same hub.
+ */
+public class NotificationHubAsyncClient {
+    private final NotificationHubClient hub;
+    private final Executor executor;
+    private final Duration deadline;
+
+    /**
+     * Creates a new instance of the NotificationHubAsyncClient class which completes futures on
+     * the common fork join pool.
+     * @param hub The notification hub to perform the operations on.
+     */
+    public NotificationHubAsyncClient(NotificationHubClient hub) {
+        this(hub, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new instance of the NotificationHubAsyncClient class.
+     * @param hub The notification hub to perform the operations on.
+     * @param executor The executor to complete futures and run their continuations on.
+     */
+    public NotificationHubAsyncClient(NotificationHubClient hub, Executor executor) {
+        this(hub, executor, null);
+    }
+
+    /**
+     * Creates a new instance of the NotificationHubAsyncClient class whose operations fail once
+     * the deadline has passed.
+     * @param hub The notification hub to perform the operations on.
+     * @param executor The executor to complete futures and run their continuations on.
+     * @param deadline The time each operation may take, including its retries, or null for none.
+     */
+    public NotificationHubAsyncClient(NotificationHubClient hub, Executor executor, Duration deadline) {
+        if (hub == null) {
+            throw new IllegalArgumentException("hub cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (deadline != null && deadline.isNegative()) {
+            throw new IllegalArgumentException("deadline cannot be negative");
+        }
+
+        this.hub = hub;
+        this.executor = executor;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a client for the same hub and executor whose operations have the given deadline.
+     * @param deadline The time each operation may take, including its retries, or null for none.
+     * @return A new client with the deadline.
+     */
+    public NotificationHubAsyncClient withDeadline(Duration deadline) {
+        return new NotificationHubAsyncClient(hub, executor, deadline);
+    }
+
+    /**
+     * Gets the notification hub the operations are performed on.
+     * @return The notification hub the operations are performed on.
+     */
+    public NotificationHubClient getNotificationHub() {
+        return hub;
+    }
+
+    /**
+     * Gets the executor futures are completed on.
+     * @return The executor futures are completed on.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the time each operation may take.
+     * @return The deadline, or null if operations have none.
+     */
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Creates or updates an installation.
+     *
+     * @param installation The installation to create or update.
+     * @return A future completed when the installation is stored.
+     */
+    public CompletableFuture<Void> createOrUpdateInstallation(BaseInstallation installation) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.createOrUpdateInstallationAsync(installation, callback));
+    }
+
+    /**
+     * Patches an installation with the given installation ID.
+     *
+     * @param installationId The installation ID to patch.
+     * @param operations     The operations to perform on the installation.
+     * @return A future completed when the installation is patched.
+     */
+    public CompletableFuture<Void> patchInstallation(String installationId, PartialUpdateOperation... operations) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.patchInstallationAsync(installationId, callback, operations));
+    }
+
+    /**
+     * Patches an installation with the given installation ID.
+     *
+     * @param installationId The installation ID to patch.
+     * @param operations     The list of operations to perform on the installation.
+     * @return A future completed when the installation is patched.
+     */
+    public CompletableFuture<Void> patchInstallation(String installationId, List<PartialUpdateOperation> operations) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.patchInstallationAsync(installationId, operations, callback));
+    }
+
+    /**
+     * Deletes an installation with the given installation ID.
+     *
+     * @param installationId The installation ID to delete.
+     * @return A future completed when the installation is deleted.
+     */
+    public CompletableFuture<Void> deleteInstallation(String installationId) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.deleteInstallationAsync(installationId, callback));
+    }
+
+    /**
+     * Gets an installation by the given installation ID.
+     *
+     * @param installationId The installation ID for the installation to get.
+     * @param <T>            The type of installation.
+     * @return A future of the matching installation.
+     */
+    public <T extends BaseInstallation> CompletableFuture<T> getInstallation(String installationId) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.<T>getInstallationAsync(installationId, callback));
+    }
+
+    /**
+     * Submits a notification hub job such as import or export.
+     *
+     * @param job The notification hub job to submit.
+     * @return A future of the notification hub job with status.
+     */
+    public CompletableFuture<NotificationHubJob> submitNotificationHubJob(NotificationHubJob job) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.submitNotificationHubJobAsync(job, callback));
+    }
+
+    /**
+     * Gets a notification hub job by the job ID.
+     *
+     * @param jobId The job ID of the notification hub job.
+     * @return A future of the notification hub job with status.
+     */
+    public CompletableFuture<NotificationHubJob> getNotificationHubJob(String jobId) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getNotificationHubJobAsync(jobId, callback));
+    }
+
+    /**
+     * Gets all notification hub jobs for this namespace.
+     *
+     * @return A future of all notification hub jobs for this namespace.
+     */
+    public CompletableFuture<List<NotificationHubJob>> getAllNotificationHubJobs() {
+        return CompletableFutureCallback.call(executor, deadline, hub::getAllNotificationHubJobsAsync);
+    }
+
+    /**
+     * Gets notification telemetry by the notification ID.
+     *
+     * @param notificationId The ID of the notification.
+     * @return A future of the notification telemetry for the notification.
+     */
+    public CompletableFuture<NotificationTelemetry> getNotificationTelemetry(String notificationId) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getNotificationTelemetryAsync(notificationId, callback));
+    }
+
+    /**
+     * Creates a registration ID, without creating an actual registration.
+     *
+     * @return A future of the registration ID.
+     */
+    public CompletableFuture<String> createRegistrationId() {
+        return CompletableFutureCallback.call(executor, deadline, hub::createRegistrationIdAsync);
+    }
+
+    /**
+     * Creates a new registration.
+     *
+     * @param registration The registration to create.
+     * @param <T>          The type of registration.
+     * @return A future of the created registration.
+     */
+    public <T extends Registration> CompletableFuture<T> createRegistration(T registration) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.createRegistrationAsync(registration, callback));
+    }
+
+    /**
+     * Updates an existing registration.
+     *
+     * @param registration The registration to update.
+     * @param <T>          The type of registration.
+     * @return A future of the updated registration.
+     */
+    public <T extends Registration> CompletableFuture<T> updateRegistration(T registration) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.updateRegistrationAsync(registration, callback));
+    }
+
+    /**
+     * Updates or creates a registration with the registration ID specified.
+     *
+     * @param registration The registration to upsert.
+     * @param <T>          The type of registration.
+     * @return A future of the upserted registration.
+     */
+    public <T extends Registration> CompletableFuture<T> upsertRegistration(T registration) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.upsertRegistrationAsync(registration, callback));
+    }
+
+    /**
+     * Deletes a registration with a populated registration ID.
+     *
+     * @param registration The registration to delete.
+     * @return A future completed when the registration is deleted.
+     */
+    public CompletableFuture<Void> deleteRegistration(Registration registration) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.deleteRegistrationAsync(registration, callback));
+    }
+
+    /**
+     * Deletes a registration by the given registration ID.
+     *
+     * @param registrationId The registration ID of the registration to delete.
+     * @return A future completed when the registration is deleted.
+     */
+    public CompletableFuture<Void> deleteRegistration(String registrationId) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.deleteRegistrationAsync(registrationId, callback));
+    }
+
+    /**
+     * Gets a registration by the given registration ID.
+     *
+     * @param registrationId The registration ID of the registration to get.
+     * @param <T>            The type of registration.
+     * @return A future of the registration.
+     */
+    public <T extends Registration> CompletableFuture<T> getRegistration(String registrationId) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.<T>getRegistrationAsync(registrationId, callback));
+    }
+
+    /**
+     * Gets all registrations in the notification hub.
+     *
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrations() {
+        return CompletableFutureCallback.call(executor, deadline, hub::getRegistrationsAsync);
+    }
+
+    /**
+     * Gets a page of the registrations in the notification hub.
+     *
+     * @param top               The number of registrations to return, up to 100.
+     * @param continuationToken The continuation token from the previous page, or null for the first page.
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrations(int top, String continuationToken) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getRegistrationsAsync(top, continuationToken, callback));
+    }
+
+    /**
+     * Gets all registrations with a specific tag.
+     *
+     * @param tag The tag to query.
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrationsByTag(String tag) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getRegistrationsByTagAsync(tag, callback));
+    }
+
+    /**
+     * Gets a page of the registrations with a specific tag.
+     *
+     * @param tag               The tag to query.
+     * @param top               The number of registrations to return, up to 100.
+     * @param continuationToken The continuation token from the previous page, or null for the first page.
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrationsByTag(String tag, int top, String continuationToken) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getRegistrationsByTagAsync(tag, top, continuationToken, callback));
+    }
+
+    /**
+     * Gets all registrations with a specific channel (e.g. ChannelURI, device token).
+     *
+     * @param channel The PNS handle to query.
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrationsByChannel(String channel) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getRegistrationsByChannelAsync(channel, callback));
+    }
+
+    /**
+     * Gets a page of the registrations with a specific channel (e.g. ChannelURI, device token).
+     *
+     * @param channel           The PNS handle to query.
+     * @param top               The number of registrations to return, up to 100.
+     * @param continuationToken The continuation token from the previous page, or null for the first page.
+     * @return A future of the registrations and a continuation token.
+     */
+    public CompletableFuture<CollectionResult> getRegistrationsByChannel(String channel, int top, String continuationToken) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.getRegistrationsByChannelAsync(channel, top, continuationToken, callback));
+    }
+
+    /**
+     * Sends a notification to all eligible registrations.
+     *
+     * @param notification The notification to send.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> sendNotification(Notification notification) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendNotificationAsync(notification, callback));
+    }
+
+    /**
+     * Sends a notification to all eligible registrations with at least one of the specified tags.
+     *
+     * @param notification The notification to send.
+     * @param tags         The tags to target.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> sendNotification(Notification notification, Set<String> tags) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendNotificationAsync(notification, tags, callback));
+    }
+
+    /**
+     * Sends a notification to all eligible registrations that satisfy the tag expression.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> sendNotification(Notification notification, String tagExpression) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendNotificationAsync(notification, tagExpression, callback));
+    }
+
+    /**
+     * Schedules a notification at the given scheduled time.
+     *
+     * @param notification  The notification to send.
+     * @param scheduledTime The scheduled time for the notification.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> scheduleNotification(Notification notification, Date scheduledTime) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.scheduleNotificationAsync(notification, scheduledTime, callback));
+    }
+
+    /**
+     * Schedules a notification to registrations with at least one of the specified tags.
+     *
+     * @param notification  The notification to send.
+     * @param tags          The tags to target.
+     * @param scheduledTime The scheduled time for the notification.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> scheduleNotification(
+        Notification notification,
+        Set<String> tags,
+        Date scheduledTime
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.scheduleNotificationAsync(notification, tags, scheduledTime, callback));
+    }
+
+    /**
+     * Schedules a notification to registrations that satisfy the tag expression.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification.
+     * @param scheduledTime The scheduled time for the notification.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> scheduleNotification(
+        Notification notification,
+        String tagExpression,
+        Date scheduledTime
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.scheduleNotificationAsync(notification, tagExpression, scheduledTime, callback));
+    }
+
+    /**
+     * Sends a direct notification to a given device handle.
+     *
+     * @param notification The notification to send directly to the device handle.
+     * @param deviceHandle The device handle to target.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> sendDirectNotification(Notification notification, String deviceHandle) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendDirectNotificationAsync(notification, deviceHandle, callback));
+    }
+
+    /**
+     * Sends a direct notification to the given device handles.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target.
+     * @return A future of the notification outcome with the tracking ID and notification ID.
+     */
+    public CompletableFuture<NotificationOutcome> sendDirectNotification(Notification notification, List<String> deviceHandles) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendDirectNotificationAsync(notification, deviceHandles, callback));
+    }
+
+    /**
+     * Sends a direct notification to any number of device handles in batches of up to 1000.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target, e.g. {@code stream::iterator}.
+     * @return A future of the aggregate outcome with the notification outcome or error of each batch.
+     */
+    public CompletableFuture<AggregateNotificationOutcome> sendDirectNotificationBatch(
+        Notification notification,
+        Iterable<String> deviceHandles
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendDirectNotificationBatchAsync(notification, deviceHandles, callback));
+    }
+
+    /**
+     * Sends a direct notification to any number of device handles in batches of up to 1000.
+     *
+     * @param notification          The notification to send directly to the device handles.
+     * @param deviceHandles         The device handles to target, e.g. {@code stream::iterator}.
+     * @param maxConcurrentRequests The maximum number of batches in flight at once.
+     * @return A future of the aggregate outcome with the notification outcome or error of each batch.
+     */
+    public CompletableFuture<AggregateNotificationOutcome> sendDirectNotificationBatch(
+        Notification notification,
+        Iterable<String> deviceHandles,
+        int maxConcurrentRequests
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendDirectNotificationBatchAsync(notification, deviceHandles, maxConcurrentRequests, callback));
+    }
+
+    /**
+     * Sends a notification to any number of tags as expressions which OR together up to 20 tags each.
+     *
+     * @param notification The notification to send to the tags.
+     * @param tags         The tags to target, e.g. {@code stream::iterator}.
+     * @return A future of the aggregate outcome with the notification outcome or error of each expression.
+     */
+    public CompletableFuture<AggregateNotificationOutcome> sendNotificationToTags(
+        Notification notification,
+        Iterable<String> tags
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendNotificationToTagsAsync(notification, tags, callback));
+    }
+
+    /**
+     * Sends or schedules a notification to any number of tags as expressions which OR together up
+     * to 20 tags each.
+     *
+     * @param notification          The notification to send to the tags.
+     * @param tags                  The tags to target, e.g. {@code stream::iterator}.
+     * @param scheduledTime         The scheduled time for the notification, or null to send it now.
+     * @param maxConcurrentRequests The maximum number of expressions in flight at once.
+     * @return A future of the aggregate outcome with the notification outcome or error of each expression.
+     */
+    public CompletableFuture<AggregateNotificationOutcome> sendNotificationToTags(
+        Notification notification,
+        Iterable<String> tags,
+        Date scheduledTime,
+        int maxConcurrentRequests
+    ) {
+        return CompletableFutureCallback.call(executor, deadline, callback -> hub.sendNotificationToTagsAsync(notification, tags, scheduledTime, maxConcurrentRequests, callback));
+    }
+
+    /**
+     * Cancels the scheduled notification with the given notification ID.
+     *
+     * @param notificationId The notification ID of the notification to cancel.
+     * @return A future completed when the notification is cancelled.
+     */
+    public CompletableFuture<Void> cancelScheduledNotification(String notificationId) {
+        return CompletableFutureCallback.callVoid(executor, deadline, callback -> hub.cancelScheduledNotificationAsync(notificationId, callback));
+    }
+}
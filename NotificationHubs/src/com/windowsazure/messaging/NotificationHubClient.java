@@ -9,6 +9,7 @@ import org.apache.hc.core5.concurrent.FutureCallback;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * This interface represents all actions that can be done on an Azure Notification Hub.
@@ -30,6 +31,42 @@ public interface NotificationHubClient {
      */
     void createOrUpdateInstallationAsync(BaseInstallation installation, FutureCallback<Object> callback);
 
+    /**
+     * Creates or updates any number of installations, with up to 16 requests in flight at once.
+     * The installations are read lazily, the window shrinks while the hub throttles, and only the
+     * last of several installations with the same installation ID that arrive while one is in
+     * flight is sent. Blocks until every installation has completed.
+     *
+     * @param installations The installations to create or update.
+     * @param sink          The sink which receives the outcome of each installation, or null.
+     * @return The totals of the bulk operation.
+     * @throws InterruptedException Thrown if interrupted while waiting; requests in flight still
+     *                              complete and report to the sink.
+     */
+    BulkInstallationResult createOrUpdateInstallations(
+        Stream<? extends BaseInstallation> installations,
+        InstallationResultSink sink
+    ) throws InterruptedException;
+
+    /**
+     * Creates or updates any number of installations with a bounded number of requests in flight.
+     * The installations are read lazily, the window shrinks while the hub throttles, and only the
+     * last of several installations with the same installation ID that arrive while one is in
+     * flight is sent. Blocks until every installation has completed.
+     *
+     * @param installations The installations to create or update.
+     * @param maxInFlight   The maximum number of requests in flight at once.
+     * @param sink          The sink which receives the outcome of each installation, or null.
+     * @return The totals of the bulk operation.
+     * @throws InterruptedException Thrown if interrupted while waiting; requests in flight still
+     *                              complete and report to the sink.
+     */
+    BulkInstallationResult createOrUpdateInstallations(
+        Stream<? extends BaseInstallation> installations,
+        int maxInFlight,
+        InstallationResultSink sink
+    ) throws InterruptedException;
+
     /**
      * Patches an installation with the given installation ID.
      *
@@ -425,6 +462,63 @@ public interface NotificationHubClient {
      */
     CollectionResult getRegistrationsByChannel(String channel) throws NotificationHubsException;
 
+    /**
+     * Iterates over all registrations in this hub, fetching pages lazily and
+     * prefetching the next page while the current one is consumed.
+     *
+     * @return A pager over all registrations.
+     */
+    RegistrationPager iterateRegistrations();
+
+    /**
+     * Iterates over all registrations in this hub, fetching pages lazily and
+     * prefetching the next page while the current one is consumed.
+     *
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over all registrations.
+     */
+    RegistrationPager iterateRegistrations(int pageSize);
+
+    /**
+     * Iterates over all registrations with a specific tag, fetching pages lazily
+     * and prefetching the next page while the current one is consumed.
+     *
+     * @param tag The tag to search for registrations.
+     * @return A pager over the registrations with the given tag.
+     */
+    RegistrationPager iterateRegistrationsByTag(String tag);
+
+    /**
+     * Iterates over all registrations with a specific tag, fetching pages lazily
+     * and prefetching the next page while the current one is consumed.
+     *
+     * @param tag      The tag to search for registrations.
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over the registrations with the given tag.
+     */
+    RegistrationPager iterateRegistrationsByTag(String tag, int pageSize);
+
+    /**
+     * Iterates over all registrations with a specific channel (e.g. ChannelURI,
+     * device token), fetching pages lazily and prefetching the next page while
+     * the current one is consumed.
+     *
+     * @param channel The channel URI, device token or other unique PNS identifier.
+     * @return A pager over the registrations with matching channels.
+     */
+    RegistrationPager iterateRegistrationsByChannel(String channel);
+
+    /**
+     * Iterates over all registrations with a specific channel (e.g. ChannelURI,
+     * device token), fetching pages lazily and prefetching the next page while
+     * the current one is consumed.
+     *
+     * @param channel  The channel URI, device token or other unique PNS identifier.
+     * @param pageSize The number of registrations to fetch per page (max 100).
+     * @return A pager over the registrations with matching channels.
+     */
+    RegistrationPager iterateRegistrationsByChannel(String channel, int pageSize);
+
     /**
      * Returns all registration with a specific channel (e.g. ChannelURI, device
      * token)
@@ -676,6 +770,110 @@ public interface NotificationHubClient {
         FutureCallback<NotificationOutcome> callback
     );
 
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request, with a few batches in
+     * flight at once. Note that this is not available on the free SKU.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @return An aggregate outcome with the notification outcome or error of each batch.
+     * @throws NotificationHubsException Thrown if there is a client error.
+     */
+    AggregateNotificationOutcome sendDirectNotificationBatch(
+        Notification notification,
+        Iterable<String> deviceHandles
+    ) throws NotificationHubsException;
+
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request, with a few batches in
+     * flight at once. Note that this is not available on the free SKU.
+     *
+     * @param notification  The notification to send directly to the device handles.
+     * @param deviceHandles The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @param callback      A callback, when invoked, returns an aggregate outcome with the
+     *                      notification outcome or error of each batch.
+     */
+    void sendDirectNotificationBatchAsync(
+        Notification notification,
+        Iterable<String> deviceHandles,
+        FutureCallback<AggregateNotificationOutcome> callback
+    );
+
+    /**
+     * Sends a direct notification to any number of device handles. The handles are read lazily and
+     * sent in batches of up to 1000, the most the service accepts per request. Note that this is not
+     * available on the free SKU.
+     *
+     * @param notification          The notification to send directly to the device handles.
+     * @param deviceHandles         The device handles to target for the notification, e.g. {@code stream::iterator}.
+     * @param maxConcurrentRequests The maximum number of batches in flight at once.
+     * @param callback              A callback, when invoked, returns an aggregate outcome with the
+     *                              notification outcome or error of each batch.
+     */
+    void sendDirectNotificationBatchAsync(
+        Notification notification,
+        Iterable<String> deviceHandles,
+        int maxConcurrentRequests,
+        FutureCallback<AggregateNotificationOutcome> callback
+    );
+
+    /**
+     * Sends a notification to any number of tags. The tags are read lazily, repeated tags are
+     * skipped, and they are sent as expressions which OR together up to 20 tags each, the most the
+     * service accepts, with a few expressions in flight at once. A device registered for tags in
+     * different expressions receives the notification once per expression. Use
+     * {@link TagExpressions#splitOr(String)} to send a large OR expression.
+     *
+     * @param notification The notification to send to the tags.
+     * @param tags         The tags to target, e.g. {@code stream::iterator}.
+     * @return An aggregate outcome with the notification outcome or error of each expression.
+     * @throws NotificationHubsException Thrown if there is a client error.
+     */
+    AggregateNotificationOutcome sendNotificationToTags(
+        Notification notification,
+        Iterable<String> tags
+    ) throws NotificationHubsException;
+
+    /**
+     * Sends a notification to any number of tags. The tags are read lazily, repeated tags are
+     * skipped, and they are sent as expressions which OR together up to 20 tags each, the most the
+     * service accepts, with a few expressions in flight at once. A device registered for tags in
+     * different expressions receives the notification once per expression.
+     *
+     * @param notification The notification to send to the tags.
+     * @param tags         The tags to target, e.g. {@code stream::iterator}.
+     * @param callback     A callback, when invoked, returns an aggregate outcome with the
+     *                     notification outcome or error of each expression.
+     */
+    void sendNotificationToTagsAsync(
+        Notification notification,
+        Iterable<String> tags,
+        FutureCallback<AggregateNotificationOutcome> callback
+    );
+
+    /**
+     * Sends or schedules a notification to any number of tags. The tags are read lazily, repeated
+     * tags are skipped, and they are sent as expressions which OR together up to 20 tags each, the
+     * most the service accepts. A device registered for tags in different expressions receives the
+     * notification once per expression. Note that scheduling is not available on the free SKU.
+     *
+     * @param notification          The notification to send to the tags.
+     * @param tags                  The tags to target, e.g. {@code stream::iterator}.
+     * @param scheduledTime         The scheduled time for the notification, or null to send it now.
+     * @param maxConcurrentRequests The maximum number of expressions in flight at once.
+     * @param callback              A callback, when invoked, returns an aggregate outcome with the
+     *                              notification outcome or error of each expression.
+     */
+    void sendNotificationToTagsAsync(
+        Notification notification,
+        Iterable<String> tags,
+        Date scheduledTime,
+        int maxConcurrentRequests,
+        FutureCallback<AggregateNotificationOutcome> callback
+    );
+
     /**
      * Cancels the scheduled notification with the given notification ID.
      *
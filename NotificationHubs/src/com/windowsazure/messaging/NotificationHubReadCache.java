@@ -0,0 +1,198 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * This class caches the responses of getInstallation and getRegistration for a notification hub,
+ * evicting the least recently used entry once the maximum number of entries is reached. Entries
+ * younger than the time to live are served without a request. An older registration is
+ * revalidated with its ETag, so that an unchanged registration costs a 304 response without a
+ * body, while an older installation, which has no ETag, is fetched again. Response bodies are
+ * cached rather than parsed objects, so every caller gets its own copy to modify.
+ *
+ * Writes made through a hub using the cache invalidate the entries they touch when they are sent
+ * and again when they complete. Changes made by other clients are only seen once an entry is
+ * older than the time to live.
+ */
+public class NotificationHubReadCache {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation;
+    private long hitCount;
+    private long missCount;
+    private long revalidationCount;
+    private long evictionCount;
+
+    /**
+     * Creates a new instance of the NotificationHubReadCache class.
+     * @param maxEntries The maximum number of installations and registrations to keep.
+     * @param ttl How long an entry is served without asking the service.
+     */
+    public NotificationHubReadCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, System::nanoTime);
+    }
+
+    NotificationHubReadCache(int maxEntries, Duration ttl, LongSupplier nanoClock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        }
+        if (ttl == null || ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > NotificationHubReadCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the number of lookups served from the cache without a request.
+     * @return The number of lookups served from the cache without a request.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups which fetched the body from the service.
+     * @return The number of lookups which fetched the body from the service.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of lookups for which the service confirmed the cached registration.
+     * @return The number of lookups answered with a 304 response.
+     */
+    public synchronized long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    /**
+     * Gets the number of entries dropped to stay within the maximum number of entries.
+     * @return The number of entries evicted.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the number of entries held, including ones older than the time to live.
+     * @return The number of entries held.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops every entry, for example after changes made by another client.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    static String installationKey(String installationId) {
+        return "installations/" + installationId;
+    }
+
+    static String registrationKey(String registrationId) {
+        return "registrations/" + registrationId;
+    }
+
+    /**
+     * Looks up an entry, counting a hit when it is fresh. A stale entry is returned so that its
+     * ETag can be revalidated, the caller then reports the outcome with {@link #revalidated} or
+     * {@link #put}.
+     */
+    synchronized Lookup lookup(String key) {
+        Entry entry = entries.get(key);
+        boolean fresh = entry != null && nanoClock.getAsLong() - entry.storedAtNanos < ttlNanos;
+        if (fresh) {
+            hitCount++;
+        }
+        return new Lookup(entry, fresh, generation);
+    }
+
+    /**
+     * Stores a body fetched from the service, unless an invalidation happened since the lookup,
+     * in which case the body may predate a local write.
+     */
+    synchronized void put(String key, Lookup lookup, byte[] body, String etag) {
+        missCount++;
+        if (lookup.generation == generation && body != null) {
+            entries.put(key, new Entry(body, etag, nanoClock.getAsLong()));
+        }
+    }
+
+    /**
+     * Restarts the time to live of an entry the service answered with a 304.
+     */
+    synchronized void revalidated(String key, Lookup lookup) {
+        revalidationCount++;
+        if (lookup.generation == generation && entries.get(key) == lookup.entry) {
+            entries.put(key, new Entry(lookup.entry.body, lookup.entry.etag, nanoClock.getAsLong()));
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    static final class Lookup {
+        private final Entry entry;
+        private final boolean fresh;
+        private final long generation;
+
+        Lookup(Entry entry, boolean fresh, long generation) {
+            this.entry = entry;
+            this.fresh = fresh;
+            this.generation = generation;
+        }
+
+        boolean isFresh() {
+            return fresh;
+        }
+
+        byte[] getBody() {
+            return entry == null ? null : entry.body;
+        }
+
+        String getEtag() {
+            return entry == null ? null : entry.etag;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final long storedAtNanos;
+
+        Entry(byte[] body, String etag, long storedAtNanos) {
+            this.body = body;
+            this.etag = etag;
+            this.storedAtNanos = storedAtNanos;
+        }
+    }
+}
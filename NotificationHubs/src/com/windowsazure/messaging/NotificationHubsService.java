@@ -5,11 +5,20 @@
 package com.windowsazure.messaging;
 
 import org.apache.hc.client5.http.async.methods.*;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
 
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 public abstract class NotificationHubsService {
@@ -17,8 +26,84 @@ public abstract class NotificationHubsService {
     protected static final String USER_AGENT_HEADER_NAME = "User-Agent";
     protected static final String USER_AGENT = "NHub/2020-06 (api-origin=JavaSDK;os=%s;os-version=%s)";
     protected static final String TRACKING_ID_HEADER = "TrackingId";
+    private static final String USER_AGENT_VALUE = String.format(USER_AGENT, System.getProperty("os.name"), System.getProperty("os.version"));
 
     protected SasTokenProvider tokenProvider;
+    protected HttpClientTransport transport = HttpClientTransport.shared();
+    private volatile RequestInstrumentation instrumentation = RequestInstrumentation.NO_OP;
+    private volatile HubRateLimiter rateLimiter;
+    private volatile CircuitBreaker circuitBreaker;
+
+    /**
+     * Gets the HTTP transport used by this client.
+     * @return The HTTP transport used by this client.
+     */
+    public HttpClientTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the instrumentation which is told about every request made by this client.
+     * @param instrumentation The instrumentation, or null to stop reporting requests.
+     */
+    public void setRequestInstrumentation(RequestInstrumentation instrumentation) {
+        this.instrumentation = instrumentation == null ? RequestInstrumentation.NO_OP : instrumentation;
+    }
+
+    /**
+     * Gets the instrumentation which is told about every request made by this client.
+     * @return The instrumentation, {@link RequestInstrumentation#NO_OP} by default.
+     */
+    public RequestInstrumentation getRequestInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Sets the rate limiter which paces the requests of this client and learns from the hub's
+     * throttling. Give every client of the same hub the same limiter, so that they slow down
+     * together.
+     * @param rateLimiter The rate limiter, or null to send requests as soon as they are made.
+     */
+    public void setRateLimiter(HubRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets the rate limiter which paces the requests of this client.
+     * @return The rate limiter, null by default.
+     */
+    public HubRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the circuit breaker which fails requests fast while their endpoint keeps failing.  Give
+     * every client of the same namespace the same breaker, so that they stop together.
+     * @param circuitBreaker The circuit breaker, or null to always send requests.
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Gets the circuit breaker which fails requests fast while their endpoint keeps failing.
+     * @return The circuit breaker, null by default.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Gets the base URI for the endpoint of a connection string.  Service Bus endpoints such as
+     * sb://namespace.servicebus.windows.net/ are called over HTTPS, while http:// and https://
+     * endpoints, such as a local emulator, are used as they are.
+     */
+    protected static String parseEndpoint(String endpoint) {
+        if (endpoint.startsWith("http://") || endpoint.startsWith("https://")) {
+            return endpoint.endsWith("/") ? endpoint : endpoint + "/";
+        }
+        return "https" + endpoint.substring(2);
+    }
 
     protected SimpleRequestBuilder createRequest(URI uri, Method method) {
         return addBaseHeaders(SimpleRequestBuilder.create(method), uri);
@@ -29,15 +114,9 @@ public abstract class NotificationHubsService {
 
         return builder
             .setUri(uri)
-            .setHeader(AUTHORIZATION_HEADER_NAME, tokenProvider.generateSasToken(uri))
+            .setHeader(AUTHORIZATION_HEADER_NAME, tokenProvider.getSasToken(uri))
             .setHeader(TRACKING_ID_HEADER, trackingId)
-            .setHeader(USER_AGENT_HEADER_NAME, getUserAgent());
-    }
-
-    private String getUserAgent() {
-        String os = System.getProperty("os.name");
-        String osVersion = System.getProperty("os.version");
-        return String.format(USER_AGENT, os, osVersion);
+            .setHeader(USER_AGENT_HEADER_NAME, USER_AGENT_VALUE);
     }
 
     protected String getTrackingId(SimpleHttpRequest request) {
@@ -57,31 +136,298 @@ public abstract class NotificationHubsService {
         final FutureCallback<T> callback,
         final int[] statusCodes,
         Consumer<SimpleHttpResponse> consumer) {
-        HttpClientManager.getHttpAsyncClient().execute(
-            SimpleRequestProducer.create(request),
-            SimpleResponseConsumer.create(),
-            new FutureCallback<SimpleHttpResponse>() {
-
-                @Override
-                public void completed(SimpleHttpResponse simpleHttpResponse) {
-                    final int statusCode = simpleHttpResponse.getCode();
-                    if (Arrays.stream(statusCodes).noneMatch(x -> x == statusCode)) {
-                        callback.failed(NotificationHubsException.create(simpleHttpResponse, statusCode, getTrackingId(request)));
-                        return;
+        dispatchRequest(SimpleRequestProducer.create(request), request, null, false, callback, statusCodes, consumer);
+    }
+
+    /**
+     * Executes a request whose body is streamed by the given entity producer rather than held in
+     * the request.  The request supplies the method, URI and headers.
+     */
+    protected <T> void executeRequest(
+        final SimpleHttpRequest request,
+        final AsyncEntityProducer entityProducer,
+        final FutureCallback<T> callback,
+        final int[] statusCodes,
+        Consumer<SimpleHttpResponse> consumer) {
+        dispatchRequest(new BasicRequestProducer(request, entityProducer), request, entityProducer, false, callback, statusCodes, consumer);
+    }
+
+    /**
+     * Executes a request which the retry strategy may repeat after a connection failure although
+     * its method is not idempotent, for requests whose duplicates are acceptable.  The body is
+     * streamed by the entity producer, if any, or else held in the request.
+     */
+    protected <T> void executeAtLeastOnceRequest(
+        final SimpleHttpRequest request,
+        final AsyncEntityProducer entityProducer,
+        final FutureCallback<T> callback,
+        final int[] statusCodes,
+        Consumer<SimpleHttpResponse> consumer) {
+        AsyncRequestProducer requestProducer = entityProducer == null
+            ? SimpleRequestProducer.create(request)
+            : new BasicRequestProducer(request, entityProducer);
+        dispatchRequest(requestProducer, request, entityProducer, true, callback, statusCodes, consumer);
+    }
+
+    private <T> void dispatchRequest(
+        final AsyncRequestProducer requestProducer,
+        final SimpleHttpRequest request,
+        final AsyncEntityProducer entityProducer,
+        final boolean atLeastOnce,
+        final FutureCallback<T> callback,
+        final int[] statusCodes,
+        Consumer<SimpleHttpResponse> consumer) {
+        // A cancellable callback keeps hold of the request in flight, so that cancelling it or
+        // passing its deadline aborts the exchange and any retry waiting to be sent. A callback
+        // wrapping it is still told the operation ended, which the cancellable callback ignores.
+        final CancellableCallback<?> cancellable = CancellableCallback.find(callback);
+        if (cancellable != null && cancellable.isDone()) {
+            callback.cancelled();
+            return;
+        }
+
+        final RequestInstrumentation instrumentation = this.instrumentation;
+        final RequestReporter reporter = instrumentation == RequestInstrumentation.NO_OP
+            ? null
+            : new RequestReporter(instrumentation, request, getBodyLength(request, entityProducer), transport.isConnectTimed());
+        final HubRateLimiter rateLimiter = this.rateLimiter;
+        final HttpClientContext context = reporter != null
+            ? reporter.context
+            : rateLimiter != null || atLeastOnce || cancellable != null ? HttpClientContext.create() : null;
+        if (atLeastOnce) {
+            context.setAttribute(BasicRetryStrategy.AT_LEAST_ONCE_ATTRIBUTE, Boolean.TRUE);
+        }
+        if (cancellable != null) {
+            context.setAttribute(CancellableCallback.ATTRIBUTE, cancellable);
+        }
+
+        final CircuitBreaker circuitBreaker = this.circuitBreaker;
+        final CircuitBreaker.Call call;
+        try {
+            call = circuitBreaker == null ? null : circuitBreaker.acquire(request.getAuthority().toString());
+        } catch (CircuitBreakerOpenException e) {
+            if (reporter != null) {
+                reporter.completed(null, e);
+            }
+            callback.failed(e);
+            return;
+        }
+
+        final FutureCallback<SimpleHttpResponse> responseCallback = new FutureCallback<SimpleHttpResponse>() {
+
+            @Override
+            public void completed(SimpleHttpResponse simpleHttpResponse) {
+                HubRateLimiter.Admission admission = HubRateLimiter.Admission.get(context);
+                if (admission != null) {
+                    admission.completed(simpleHttpResponse);
+                }
+
+                final int statusCode = simpleHttpResponse.getCode();
+                if (call != null) {
+                    call.completed(statusCode, null);
+                }
+                if (Arrays.stream(statusCodes).noneMatch(x -> x == statusCode)) {
+                    NotificationHubsException error = NotificationHubsException.create(simpleHttpResponse, statusCode, getTrackingId(request));
+                    if (reporter != null) {
+                        reporter.completed(simpleHttpResponse, error);
                     }
+                    callback.failed(error);
+                    return;
+                }
 
-                    consumer.accept(simpleHttpResponse);
+                if (reporter != null) {
+                    reporter.completed(simpleHttpResponse, null);
                 }
+                consumer.accept(simpleHttpResponse);
+            }
 
-                @Override
-                public void failed(Exception e) {
-                    callback.failed(e);
+            @Override
+            public void failed(Exception e) {
+                if (call != null) {
+                    call.completed(0, e);
+                }
+                if (reporter != null) {
+                    reporter.completed(null, e);
                 }
+                callback.failed(e);
+            }
 
-                @Override
-                public void cancelled() {
-                    callback.cancelled();
+            @Override
+            public void cancelled() {
+                if (call != null) {
+                    call.cancelled();
                 }
-            });
+                if (reporter != null) {
+                    reporter.completed(null, new CancellationException("The request was cancelled."));
+                }
+                callback.cancelled();
+            }
+        };
+
+        // A failure to start the request must still reach the callback, which also hands back the
+        // circuit breaker call.
+        if (rateLimiter == null) {
+            try {
+                send(requestProducer, context, responseCallback, cancellable);
+            } catch (RuntimeException e) {
+                responseCallback.failed(e);
+            }
+            return;
+        }
+
+        // A delayed request is sent from the limiter's scheduler, where a failure to send must
+        // still reach the callback, unless the operation ended while it waited.
+        rateLimiter.execute(() -> {
+            if (cancellable != null && cancellable.isDone()) {
+                responseCallback.cancelled();
+                return;
+            }
+            context.setAttribute(HubRateLimiter.ATTRIBUTE, rateLimiter.admit());
+            if (call != null) {
+                call.sent();
+            }
+            try {
+                send(requestProducer, context, responseCallback, cancellable);
+            } catch (RuntimeException e) {
+                responseCallback.failed(e);
+            }
+        });
+    }
+
+    private void send(
+        final AsyncRequestProducer requestProducer,
+        final HttpClientContext context,
+        final FutureCallback<SimpleHttpResponse> responseCallback,
+        final CancellableCallback<?> cancellable) {
+        final Future<SimpleHttpResponse> future = context == null
+            ? transport.getHttpAsyncClient().execute(requestProducer, SimpleResponseConsumer.create(), responseCallback)
+            : transport.getHttpAsyncClient().execute(
+                requestProducer, SimpleResponseConsumer.create(), null, context, responseCallback);
+        if (cancellable != null) {
+            cancellable.attach(() -> future.cancel(true));
+        }
+    }
+
+    private static long getBodyLength(SimpleHttpRequest request, AsyncEntityProducer entityProducer) {
+        if (entityProducer != null) {
+            return entityProducer.getContentLength();
+        }
+
+        SimpleBody body = request.getBody();
+        if (body == null) {
+            return 0;
+        }
+        if (body.isBytes()) {
+            return body.getBodyBytes().length;
+        }
+
+        ContentType contentType = body.getContentType();
+        Charset charset = contentType == null || contentType.getCharset() == null
+            ? StandardCharsets.ISO_8859_1
+            : contentType.getCharset();
+        return body.getBodyText().getBytes(charset).length;
+    }
+
+    /**
+     * Gets the operation of a request, its method and its path below the hub, in which the
+     * segments naming a resource are replaced by "{id}". Below the hub, the path alternates
+     * between collections and resource IDs, except for names such as "$batch". Paths of the
+     * namespace, such as "$Resources/NotificationHubs", are kept as they are.
+     */
+    static String getOperation(String method, String path) {
+        String trimmed = trimPath(path);
+        StringBuilder operation = new StringBuilder(method).append(' ');
+        if (trimmed.startsWith("$")) {
+            return operation.append(trimmed).toString();
+        }
+
+        String[] segments = trimmed.split("/");
+        if (segments.length <= 1) {
+            return operation.append("hub").toString();
+        }
+
+        for (int i = 1; i < segments.length; i++) {
+            if (i > 1) {
+                operation.append('/');
+            }
+            boolean isId = i % 2 == 0 && !segments[i].startsWith("$");
+            operation.append(isId ? "{id}" : segments[i]);
+        }
+        return operation.toString();
+    }
+
+    static String getHubPath(String path) {
+        String trimmed = trimPath(path);
+        int end = trimmed.indexOf('/');
+        String hubPath = end < 0 ? trimmed : trimmed.substring(0, end);
+        return hubPath.isEmpty() || hubPath.startsWith("$") ? null : hubPath;
+    }
+
+    private static String trimPath(String path) {
+        int query = path.indexOf('?');
+        String trimmed = query < 0 ? path : path.substring(0, query);
+        int start = 0;
+        int end = trimmed.length();
+        while (start < end && trimmed.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && trimmed.charAt(end - 1) == '/') {
+            end--;
+        }
+        return trimmed.substring(start, end);
+    }
+
+    // Measures one request for the instrumentation, which must never fail the request.
+    private final class RequestReporter {
+        private final RequestInstrumentation instrumentation;
+        private final HttpClientContext context = HttpClientContext.create();
+        private final RequestTimings timings = new RequestTimings();
+        private final String operation;
+        private final String hubPath;
+        private final String trackingId;
+        private final long bytesSent;
+        private final boolean connectsTimed;
+        private final long startNanos;
+
+        RequestReporter(RequestInstrumentation instrumentation, SimpleHttpRequest request, long bytesSent, boolean connectsTimed) {
+            this.instrumentation = instrumentation;
+            this.operation = getOperation(request.getMethod(), request.getPath());
+            this.hubPath = getHubPath(request.getPath());
+            this.trackingId = getTrackingId(request);
+            this.bytesSent = bytesSent;
+            this.connectsTimed = connectsTimed;
+            context.setAttribute(RequestTimings.ATTRIBUTE, timings);
+
+            try {
+                instrumentation.requestStarted(operation, hubPath, trackingId);
+            } catch (RuntimeException ignored) {
+                // Instrumentation errors are not the caller's concern
+            }
+            this.startNanos = System.nanoTime();
+        }
+
+        void completed(SimpleHttpResponse response, Exception error) {
+            long endNanos = System.nanoTime();
+            byte[] body = response == null ? null : response.getBodyBytes();
+            RequestMetrics metrics = new RequestMetrics(
+                operation,
+                hubPath,
+                trackingId,
+                response == null ? 0 : response.getCode(),
+                error,
+                endNanos - startNanos,
+                timings.getQueueNanos(),
+                timings.getConnectNanos(connectsTimed),
+                timings.getServerNanos(endNanos),
+                bytesSent,
+                body == null ? 0 : body.length,
+                timings.getRetryCount());
+
+            try {
+                instrumentation.requestCompleted(metrics);
+            } catch (RuntimeException ignored) {
+                // Instrumentation errors are not the caller's concern
+            }
+        }
     }
 }
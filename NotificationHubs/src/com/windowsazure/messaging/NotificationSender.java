@@ -0,0 +1,201 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sends notifications through a notification hub with a bounded number of sends in
+ * flight. Submitting blocks, or is rejected, while the window is full, which keeps bursts of sends
+ * from queueing without bound inside the HTTP client. The window shrinks when the hub responds with
+ * 429 Too Many Requests, pauses for any Retry-After the hub asks for, and grows back as sends
+ * succeed, so throughput settles at the hub's quota.
+ *
+ * Callbacks run on the HTTP client's I/O threads, so they should not call the blocking
+ * {@link #submit} methods; use {@link #trySubmit} from callbacks instead.
+ */
+public class NotificationSender {
+    private final NotificationHubClient hub;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    /**
+     * Creates a new instance of the NotificationSender class.
+     * @param hub The notification hub to send notifications through.
+     * @param maxInFlight The maximum number of sends in flight.
+     */
+    public NotificationSender(NotificationHubClient hub, int maxInFlight) {
+        this(hub, 1, maxInFlight);
+    }
+
+    /**
+     * Creates a new instance of the NotificationSender class.
+     * @param hub The notification hub to send notifications through.
+     * @param minInFlight The number of sends in flight the window never shrinks below when throttled.
+     * @param maxInFlight The maximum number of sends in flight.
+     */
+    public NotificationSender(NotificationHubClient hub, int minInFlight, int maxInFlight) {
+        if (hub == null) {
+            throw new IllegalArgumentException("hub cannot be null");
+        }
+
+        this.hub = hub;
+        this.limiter = new AdaptiveConcurrencyLimiter(minInFlight, maxInFlight);
+    }
+
+    /**
+     * Sends a notification to the audience that matches the tag expression, waiting for room in
+     * the in-flight window.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification, or null to broadcast.
+     * @param callback      A callback, when invoked, returns a notification outcome
+     *                      with the tracking ID and notification ID.
+     * @throws InterruptedException Thrown if interrupted while waiting for room in the window.
+     */
+    public void submit(Notification notification, String tagExpression, FutureCallback<NotificationOutcome> callback)
+        throws InterruptedException {
+        submit(notification, tagExpression, null, callback);
+    }
+
+    /**
+     * Schedules a notification to the audience that matches the tag expression, waiting for room
+     * in the in-flight window.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification, or null to broadcast.
+     * @param scheduledTime The scheduled time for the notification, or null to send immediately.
+     * @param callback      A callback, when invoked, returns a notification outcome
+     *                      with the tracking ID and notification ID.
+     * @throws InterruptedException Thrown if interrupted while waiting for room in the window.
+     */
+    public void submit(
+        Notification notification,
+        String tagExpression,
+        Date scheduledTime,
+        FutureCallback<NotificationOutcome> callback
+    ) throws InterruptedException {
+        dispatch(limiter.acquire(), notification, tagExpression, scheduledTime, callback);
+    }
+
+    /**
+     * Sends a notification to the audience that matches the tag expression if there is room in the
+     * in-flight window, without waiting.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification, or null to broadcast.
+     * @param callback      A callback, when invoked, returns a notification outcome
+     *                      with the tracking ID and notification ID.
+     * @return True if the notification was submitted, false if the window was full.
+     */
+    public boolean trySubmit(Notification notification, String tagExpression, FutureCallback<NotificationOutcome> callback) {
+        try {
+            return trySubmit(notification, tagExpression, null, 0, TimeUnit.NANOSECONDS, callback);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Schedules a notification to the audience that matches the tag expression, waiting up to the
+     * given timeout for room in the in-flight window.
+     *
+     * @param notification  The notification to send.
+     * @param tagExpression The tag expression for targeting the notification, or null to broadcast.
+     * @param scheduledTime The scheduled time for the notification, or null to send immediately.
+     * @param timeout       The maximum time to wait for room in the window.
+     * @param unit          The unit of the timeout.
+     * @param callback      A callback, when invoked, returns a notification outcome
+     *                      with the tracking ID and notification ID.
+     * @return True if the notification was submitted, false if the window stayed full.
+     * @throws InterruptedException Thrown if interrupted while waiting for room in the window.
+     */
+    public boolean trySubmit(
+        Notification notification,
+        String tagExpression,
+        Date scheduledTime,
+        long timeout,
+        TimeUnit unit,
+        FutureCallback<NotificationOutcome> callback
+    ) throws InterruptedException {
+        long ticket = limiter.tryAcquire(timeout, unit);
+        if (ticket < 0) {
+            return false;
+        }
+
+        dispatch(ticket, notification, tagExpression, scheduledTime, callback);
+        return true;
+    }
+
+    /**
+     * Waits until every submitted notification has completed.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        limiter.awaitIdle();
+    }
+
+    /**
+     * Gets the number of sends currently in flight.
+     * @return The number of sends currently in flight.
+     */
+    public int getInFlightCount() {
+        return limiter.getInFlight();
+    }
+
+    /**
+     * Gets the current size of the in-flight window as adjusted by throttling.
+     * @return The current size of the in-flight window.
+     */
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    /**
+     * Gets the number of sends which were throttled by the hub.
+     * @return The number of throttled sends.
+     */
+    public long getThrottledCount() {
+        return limiter.getThrottleCount();
+    }
+
+    private void dispatch(
+        final long ticket,
+        Notification notification,
+        String tagExpression,
+        Date scheduledTime,
+        final FutureCallback<NotificationOutcome> callback
+    ) {
+        FutureCallback<NotificationOutcome> releasingCallback = new FutureCallback<NotificationOutcome>() {
+            @Override
+            public void completed(NotificationOutcome outcome) {
+                limiter.releaseSuccess(ticket);
+                callback.completed(outcome);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                limiter.release(ticket, ex);
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                limiter.releaseFailure(ticket);
+                callback.cancelled();
+            }
+        };
+
+        try {
+            hub.scheduleNotificationAsync(notification, tagExpression == null ? "" : tagExpression, scheduledTime, releasingCallback);
+        } catch (RuntimeException e) {
+            limiter.releaseFailure(ticket);
+            throw e;
+        }
+    }
+}
@@ -6,7 +6,6 @@ package com.windowsazure.messaging;
 
 import java.util.List;
 
-import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -84,10 +83,10 @@ public class PartialUpdateOperation {
     public void setValue(String value) { this.value = value; }
 
     public static String toJson(PartialUpdateOperation... operations) {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(operations);
+        return SharedGson.GSON.toJson(operations);
     }
 
     public static String toJson(List<PartialUpdateOperation> operations) {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(operations);
+        return SharedGson.GSON.toJson(operations);
     }
 }
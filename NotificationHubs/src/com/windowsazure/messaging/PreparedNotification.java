@@ -0,0 +1,118 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.message.BasicHeader;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents a notification whose body is encoded and whose headers are built once,
+ * for sending the same notification many times, e.g. to many tag expressions in a campaign. Each
+ * send then adds only its own tags, schedule and tracking headers. A prepared notification is
+ * immutable and may be sent from many threads at once. Create one with
+ * {@link Notification#prepare()}.
+ */
+public final class PreparedNotification extends Notification {
+    private final byte[] bodyBytes;
+    private final Header[] headerArray;
+
+    PreparedNotification(Notification notification) {
+        this.body = notification.getBody();
+        this.contentType = notification.getContentType();
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(notification.getHeaders()));
+        this.bodyBytes = body == null ? null : encode(body, getCharset(contentType));
+
+        this.headerArray = new Header[headers.size()];
+        int i = 0;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            headerArray[i++] = new BasicHeader(header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * Returns this notification, which is already prepared.
+     * @return This notification.
+     */
+    @Override
+    public PreparedNotification prepare() {
+        return this;
+    }
+
+    /**
+     * Gets the headers for the notification.
+     * @return A read-only view of the headers for the notification.
+     */
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Always throws, as a prepared notification is immutable.
+     * @param headers Ignored.
+     */
+    @Override
+    public void setHeaders(Map<String, String> headers) {
+        throw new UnsupportedOperationException("A prepared notification is immutable");
+    }
+
+    /**
+     * Always throws, as a prepared notification is immutable.
+     * @param body Ignored.
+     */
+    @Override
+    public void setBody(String body) {
+        throw new UnsupportedOperationException("A prepared notification is immutable");
+    }
+
+    /**
+     * Always throws, as a prepared notification is immutable.
+     * @param contentType Ignored.
+     */
+    @Override
+    public void setContentType(ContentType contentType) {
+        throw new UnsupportedOperationException("A prepared notification is immutable");
+    }
+
+    @Override
+    SimpleRequestBuilder writeBody(SimpleRequestBuilder builder) {
+        return bodyBytes == null ? builder : builder.setBody(bodyBytes, contentType);
+    }
+
+    @Override
+    void writeHeaders(HttpRequest request) {
+        for (Header header : headerArray) {
+            request.setHeader(header);
+        }
+    }
+
+    @Override
+    byte[] getBodyBytes(Charset charset) {
+        return charset.equals(getCharset(contentType)) ? bodyBytes : super.getBodyBytes(charset);
+    }
+
+    // Fails on characters the charset cannot encode, as the HTTP client would when sending the body
+    private static byte[] encode(String body, Charset charset) {
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(body));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("The notification body cannot be encoded as " + charset, e);
+        }
+    }
+}
@@ -12,35 +12,22 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * Abstract class representing a registration.
  */
 public abstract class Registration implements Cloneable {
+    private static final byte[] TAGS_START = Utf8XmlWriter.encode("<Tags>");
+    private static final byte[] TAGS_SEPARATOR = Utf8XmlWriter.encode(",");
+    private static final byte[] TAGS_END = Utf8XmlWriter.encode("</Tags>");
+
     protected String registrationId;
     protected Set<String> tags = new HashSet<>();
     protected String etag;
     protected Date expirationTime;
 
-    private static final ThreadLocal<Digester> singleRegParser;
-    private static final ThreadLocal<Digester> multiRegParser;
-
-    static {
-        singleRegParser = ThreadLocal.withInitial(() -> {
-            Digester instance = new Digester();
-            addRegistrationRules(instance);
-            return instance;
-        });
-
-        multiRegParser = ThreadLocal.withInitial(() -> {
-            Digester instance = new Digester();
-            addRegistrationRules(instance);
-            addCollectionRules(instance);
-            return instance;
-        });
-    }
-
     /**
      * Creates a new instance of the Registration class.
      */
@@ -157,6 +144,57 @@ public abstract class Registration implements Cloneable {
      */
     public abstract String getXml();
 
+    /**
+     * Gets the UTF-8 encoded XML representation of the current object, as sent to the service.
+     * The registrations of this SDK write it straight into a per-thread buffer, so that only the
+     * returned array is allocated.
+     * @return The UTF-8 encoded XML representation of the current object.
+     */
+    public byte[] getXmlBytes() {
+        // Subclasses from elsewhere may override getXml, which then has to be used
+        if (getClass().getPackage() != Registration.class.getPackage()) {
+            return getXml().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Utf8XmlWriter writer = Utf8XmlWriter.acquire();
+        try {
+            writeXml(writer);
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * Writes the XML representation of the current object. The registrations of this SDK
+     * override this method and build {@link #getXml()} on it.
+     */
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(getXml());
+    }
+
+    String writeXmlToString() {
+        Utf8XmlWriter writer = Utf8XmlWriter.acquire();
+        try {
+            writeXml(writer);
+            return writer.toString();
+        } finally {
+            writer.release();
+        }
+    }
+
+    void writeTagsXml(Utf8XmlWriter writer) {
+        if (!tags.isEmpty()) {
+            writer.write(TAGS_START);
+            for (Iterator<String> i = tags.iterator(); i.hasNext(); ) {
+                writer.write(i.next());
+                if (i.hasNext())
+                    writer.write(TAGS_SEPARATOR);
+            }
+            writer.write(TAGS_END);
+        }
+    }
+
     protected String getTagsXml() {
         StringBuilder buf = new StringBuilder();
         if (!tags.isEmpty()) {
@@ -184,209 +222,43 @@ public abstract class Registration implements Cloneable {
         return Objects.hash(getRegistrationId(), getTags(), getEtag(), getExpirationTime());
     }
 
+    @SuppressWarnings("unchecked")
     public static <T extends Registration> T parse(InputStream inputStream) throws IOException, SAXException {
-        return singleRegParser.get().parse(inputStream);
+        return (T) RegistrationParser.parseRegistration(inputStream);
     }
 
     public static <T extends Registration> T parse(byte[] bodyBytes) throws IOException,
         SAXException {
-        return singleRegParser.get().parse(new ByteArrayInputStream(bodyBytes));
-    }
-
-    private static void addRegistrationRules(Digester digester) {
-        digester.addFactoryCreate("*/RegistrationDescription",
-            new Registration.RegistrationCreationFactory());
-        digester.addObjectCreate("*/WindowsRegistrationDescription",
-            WindowsRegistration.class);
-        digester.addObjectCreate("*/WindowsTemplateRegistrationDescription",
-            WindowsTemplateRegistration.class);
-        digester.addObjectCreate("*/AppleRegistrationDescription",
-            AppleRegistration.class);
-        digester.addObjectCreate("*/AppleTemplateRegistrationDescription",
-            AppleTemplateRegistration.class);
-        digester.addObjectCreate("*/GcmRegistrationDescription",
-            GcmRegistration.class);
-        digester.addObjectCreate("*/GcmTemplateRegistrationDescription",
-            GcmTemplateRegistration.class);
-        digester.addObjectCreate("*/FcmRegistrationDescription",
-            FcmRegistration.class);
-        digester.addObjectCreate("*/FcmTemplateRegistrationDescription",
-            FcmTemplateRegistration.class);
-        digester.addObjectCreate("*/FcmV1RegistrationDescription",
-            FcmV1Registration.class);
-        digester.addObjectCreate("*/FcmV1TemplateRegistrationDescription",
-            FcmV1TemplateRegistration.class);
-        digester.addObjectCreate("*/MpnsRegistrationDescription",
-            MpnsRegistration.class);
-        digester.addObjectCreate("*/MpnsTemplateRegistrationDescription",
-            MpnsTemplateRegistration.class);
-        digester.addObjectCreate("*/AdmRegistrationDescription",
-            AdmRegistration.class);
-        digester.addObjectCreate("*/AdmTemplateRegistrationDescription",
-            AdmTemplateRegistration.class);
-        digester.addObjectCreate("*/BaiduRegistrationDescription",
-            BaiduRegistration.class);
-        digester.addObjectCreate("*/BaiduTemplateRegistrationDescription",
-            BaiduTemplateRegistration.class);
-        digester.addObjectCreate("*/BrowserRegistrationDescription",
-            BrowserRegistration.class);
-        digester.addObjectCreate("*/BrowserTemplateRegistrationDescription",
-            BrowserTemplateRegistration.class);
-        digester.addCallMethod("*/RegistrationId", "setRegistrationId", 1);
-        digester.addCallParam("*/RegistrationId", 0);
-        digester.addCallMethod("*/ETag", "setEtag", 1);
-        digester.addCallParam("*/ETag", 0);
-        digester.addCallMethod("*/ChannelUri", "setChannelUri", 1);
-        digester.addCallParam("*/ChannelUri", 0);
-        digester.addCallMethod("*/DeviceToken", "setDeviceToken", 1);
-        digester.addCallParam("*/DeviceToken", 0);
-        digester.addCallMethod("*/GcmRegistrationId", "setGcmRegistrationId", 1);
-        digester.addCallParam("*/GcmRegistrationId", 0);
-        digester.addCallMethod("*/FcmRegistrationId", "setFcmRegistrationId", 1);
-        digester.addCallParam("*/FcmRegistrationId", 0);
-        digester.addCallMethod("*/FcmV1RegistrationId", "setFcmRegistrationId", 1);
-        digester.addCallParam("*/FcmV1RegistrationId", 0);
-        digester.addCallMethod("*/Tags", "setTagsFromString", 1);
-        digester.addCallParam("*/Tags", 0);
-        digester.addCallMethod("*/BodyTemplate", "setBodyTemplate", 1);
-        digester.addCallParam("*/BodyTemplate", 0);
-        digester.addCallMethod("*/WnsHeader", "addHeader", 2);
-        digester.addCallParam("*/WnsHeader/Header", 0);
-        digester.addCallParam("*/WnsHeader/Value", 1);
-        digester.addCallMethod("*/MpnsHeader", "addHeader", 2);
-        digester.addCallParam("*/MpnsHeader/Header", 0);
-        digester.addCallParam("*/MpnsHeader/Value", 1);
-        digester.addCallMethod("*/Expiry", "setExpiry", 1);
-        digester.addCallParam("*/Expiry", 0);
-        digester.addCallMethod("*/ExpirationTime", "setExpirationTimeFromString", 1);
-        digester.addCallParam("*/ExpirationTime", 0);
-        digester.addCallMethod("*/AdmRegistrationId", "setAdmRegistrationId", 1);
-        digester.addCallParam("*/AdmRegistrationId", 0);
-        digester.addCallMethod("*/BaiduUserId", "setBaiduUserId", 1);
-        digester.addCallParam("*/BaiduUserId", 0);
-        digester.addCallMethod("*/BaiduChannelId", "setBaiduChannelId", 1);
-        digester.addCallParam("*/BaiduChannelId", 0);
-        digester.addCallMethod("*/Endpoint", "setEndpoint", 1);
-        digester.addCallParam("*/Endpoint", 0);
-        digester.addCallMethod("*/P256DH", "setP256dh", 1);
-        digester.addCallParam("*/P256DH", 0);
-        digester.addCallMethod("*/Auth", "setAuth", 1);
-        digester.addCallParam("*/Auth", 0);
+        return parse(new ByteArrayInputStream(bodyBytes));
     }
 
     public static CollectionResult parseRegistrations(InputStream inputStream)
         throws IOException, SAXException {
-        return multiRegParser.get().parse(inputStream);
+        return RegistrationParser.parseCollection(inputStream);
     }
 
     public static CollectionResult parseRegistrations(byte[] bodyBytes)
         throws IOException, SAXException {
-        return multiRegParser.get().parse(new ByteArrayInputStream(bodyBytes));
-    }
-
-    private static void addCollectionRules(Digester digester) {
-        digester.addObjectCreate("feed", CollectionResult.class);
-        digester.addSetNext("*/RegistrationDescription", "addRegistration");
-        digester.addSetNext("*/WindowsRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/WindowsTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/AppleRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/AppleTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/GcmRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/GcmTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/FcmRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/FcmTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/FcmV1RegistrationDescription", "addRegistration");
-        digester.addSetNext("*/FcmV1TemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/MpnsRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/MpnsTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/AdmRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/AdmTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/BaiduRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/BaiduTemplateRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/BrowserRegistrationDescription", "addRegistration");
-        digester.addSetNext("*/BrowserTemplateRegistrationDescription", "addRegistration");
+        return parseRegistrations(new ByteArrayInputStream(bodyBytes));
     }
 
+    /**
+     * Creates registrations from the i:type attribute of a RegistrationDescription element.
+     * @deprecated Registrations are no longer parsed with Commons Digester; use {@link #parse(InputStream)}.
+     */
+    @Deprecated
     public static class RegistrationCreationFactory implements
         ObjectCreationFactory<Object> {
         private Digester digester;
 
         @Override
         public Object createObject(Attributes attributes) {
-            if ("WindowsRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new WindowsRegistration();
-            }
-            if ("WindowsTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new WindowsTemplateRegistration();
-            }
-            if ("AppleRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new AppleRegistration();
-            }
-            if ("AppleTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new AppleTemplateRegistration();
-            }
-            if ("GcmRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new GcmRegistration();
-            }
-            if ("GcmTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new GcmTemplateRegistration();
-            }
-            if ("FcmRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new FcmRegistration();
-            }
-            if ("FcmTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new FcmTemplateRegistration();
-            }
-            if ("FcmV1RegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new FcmV1Registration();
-            }
-            if ("FcmV1TemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new FcmV1TemplateRegistration();
-            }
-            if ("MpnsRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new MpnsRegistration();
-            }
-            if ("MpnsTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new MpnsTemplateRegistration();
-            }
-            if ("AdmRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new AdmRegistration();
-            }
-            if ("AdmTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new AdmTemplateRegistration();
-            }
-            if ("BaiduRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new BaiduRegistration();
-            }
-            if ("BaiduTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new BaiduTemplateRegistration();
-            }
-            if ("BrowserRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new BrowserRegistration();
-            }
-            if ("BrowserTemplateRegistrationDescription".equals(attributes
-                .getValue("i:type"))) {
-                return new BrowserTemplateRegistration();
+            Registration registration = RegistrationParser.createRegistration(String.valueOf(attributes.getValue("i:type")));
+            if (registration == null) {
+                throw new UnsupportedOperationException("unknown type: "
+                    + attributes.getValue("i:type"));
             }
-            throw new UnsupportedOperationException("unknown type: "
-                + attributes.getValue("i:type"));
+            return registration;
         }
 
         @Override
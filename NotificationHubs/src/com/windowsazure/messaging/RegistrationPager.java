@@ -0,0 +1,126 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class iterates over every registration matching a query, following the continuation token
+ * from page to page. Pages are fetched lazily, and the next page is requested as soon as the current
+ * one arrives so that fetching overlaps with processing, keeping at most two pages in memory.
+ *
+ * Each call to {@link #iterator()} or {@link #stream()} starts a new scan from the first page.
+ * Errors while fetching a page are thrown from the iterator as a RuntimeException wrapping the
+ * {@link NotificationHubsException}.
+ */
+public class RegistrationPager implements Iterable<Registration> {
+    private final PageFetcher fetcher;
+
+    /**
+     * Fetches one page of registrations for a continuation token.
+     */
+    interface PageFetcher {
+        void fetch(String continuationToken, FutureCallback<CollectionResult> callback);
+    }
+
+    RegistrationPager(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Gets an iterator which fetches the registrations page by page.
+     * @return An iterator over all matching registrations.
+     */
+    @Override
+    public Iterator<Registration> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * Gets a sequential stream which fetches the registrations page by page.
+     * @return A stream of all matching registrations.
+     */
+    public Stream<Registration> stream() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL),
+            false);
+    }
+
+    private CompletableFuture<CollectionResult> fetch(String continuationToken) {
+        final CompletableFuture<CollectionResult> future = new CompletableFuture<>();
+        try {
+            fetcher.fetch(continuationToken, new FutureCallback<CollectionResult>() {
+                @Override
+                public void completed(CollectionResult result) {
+                    future.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.completeExceptionally(new RuntimeException("Operation was cancelled."));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private class PageIterator implements Iterator<Registration> {
+        private Iterator<Registration> current = Collections.emptyIterator();
+        private CompletableFuture<CollectionResult> next = fetch(null);
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next == null) {
+                    return false;
+                }
+
+                CollectionResult page = await(next);
+                String continuationToken = page.getContinuationToken();
+                next = continuationToken == null || continuationToken.isEmpty() ? null : fetch(continuationToken);
+                current = page.getRegistrations().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Registration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private CollectionResult await(CompletableFuture<CollectionResult> page) {
+            try {
+                return page.join();
+            } catch (CompletionException e) {
+                next = null;
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+}
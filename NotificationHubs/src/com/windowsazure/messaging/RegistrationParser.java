@@ -0,0 +1,310 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class parses registration descriptions and Atom feeds of registrations with a StAX reader,
+ * dispatching on element names. It follows the rules the Digester based parser used: elements are
+ * matched by name at any depth, element text is trimmed, and a setter is only called for elements
+ * that are present.
+ */
+final class RegistrationParser {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final XMLStreamReader reader;
+    private final boolean collection;
+    private final List<StringBuilder> textStack = new ArrayList<>();
+    private int depth;
+
+    private Registration registration;
+    private int registrationDepth;
+    private String headerName;
+    private String headerValue;
+
+    private RegistrationParser(XMLStreamReader reader, boolean collection) {
+        this.reader = reader;
+        this.collection = collection;
+    }
+
+    /**
+     * Parses the registration in the document, or returns null if there is none. As with the
+     * Digester based parser, the last one wins if the document holds several.
+     */
+    static Registration parseRegistration(InputStream inputStream) throws SAXException {
+        CollectionResult result = parse(inputStream, false);
+        return result.getRegistrations().isEmpty() ? null : result.getRegistrations().get(result.getRegistrations().size() - 1);
+    }
+
+    /**
+     * Parses every registration in the document.
+     */
+    static CollectionResult parseCollection(InputStream inputStream) throws SAXException {
+        return parse(inputStream, true);
+    }
+
+    /**
+     * Creates an empty registration for a registration description element or i:type name.
+     */
+    static Registration createRegistration(String typeName) {
+        switch (typeName) {
+            case "WindowsRegistrationDescription": return new WindowsRegistration();
+            case "WindowsTemplateRegistrationDescription": return new WindowsTemplateRegistration();
+            case "AppleRegistrationDescription": return new AppleRegistration();
+            case "AppleTemplateRegistrationDescription": return new AppleTemplateRegistration();
+            case "GcmRegistrationDescription": return new GcmRegistration();
+            case "GcmTemplateRegistrationDescription": return new GcmTemplateRegistration();
+            case "FcmRegistrationDescription": return new FcmRegistration();
+            case "FcmTemplateRegistrationDescription": return new FcmTemplateRegistration();
+            case "FcmV1RegistrationDescription": return new FcmV1Registration();
+            case "FcmV1TemplateRegistrationDescription": return new FcmV1TemplateRegistration();
+            case "MpnsRegistrationDescription": return new MpnsRegistration();
+            case "MpnsTemplateRegistrationDescription": return new MpnsTemplateRegistration();
+            case "AdmRegistrationDescription": return new AdmRegistration();
+            case "AdmTemplateRegistrationDescription": return new AdmTemplateRegistration();
+            case "BaiduRegistrationDescription": return new BaiduRegistration();
+            case "BaiduTemplateRegistrationDescription": return new BaiduTemplateRegistration();
+            case "BrowserRegistrationDescription": return new BrowserRegistration();
+            case "BrowserTemplateRegistrationDescription": return new BrowserTemplateRegistration();
+            default: return null;
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // The feeds use prefixes such as metadata:etag without declaring them, so parse by raw name
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static CollectionResult parse(InputStream inputStream, boolean collection) throws SAXException {
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            RegistrationParser parser = new RegistrationParser(reader, collection);
+            return parser.read();
+        } catch (XMLStreamException e) {
+            throw new SAXException(e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    private CollectionResult read() throws XMLStreamException, SAXException {
+        List<Registration> registrations = new ArrayList<>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(getName());
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth > 0) {
+                        textStack.get(depth - 1).append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    boolean registrationEnd = registration != null && depth == registrationDepth;
+                    String text = textStack.get(--depth).toString().trim();
+                    Registration completed = registrationEnd ? endRegistration() : endElement(getName(), text);
+                    if (completed != null) {
+                        if (!collection) {
+                            registrations.clear();
+                        }
+                        registrations.add(completed);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new CollectionResult(registrations, null);
+    }
+
+    private void startElement(String name) throws SAXException {
+        if (textStack.size() == depth) {
+            textStack.add(new StringBuilder());
+        } else {
+            textStack.get(depth).setLength(0);
+        }
+        depth++;
+
+        if (name.endsWith("RegistrationDescription")) {
+            Registration created;
+            if (name.equals("RegistrationDescription")) {
+                String typeName = getAttribute("i:type");
+                created = typeName == null ? null : createRegistration(typeName);
+                if (created == null) {
+                    throw new SAXException("unknown type: " + typeName);
+                }
+            } else {
+                created = createRegistration(name);
+            }
+
+            if (created != null) {
+                registration = created;
+                registrationDepth = depth;
+            }
+        } else if (name.equals("WnsHeader") || name.equals("MpnsHeader")) {
+            headerName = null;
+            headerValue = null;
+        }
+    }
+
+    private Registration endRegistration() {
+        Registration completed = registration;
+        registration = null;
+        return completed;
+    }
+
+    private Registration endElement(String name, String text) throws SAXException {
+        if (registration == null) {
+            return null;
+        }
+
+        try {
+            setProperty(name, text);
+        } catch (RuntimeException e) {
+            throw new SAXException(e);
+        }
+        return null;
+    }
+
+    private void setProperty(String name, String text) {
+        switch (name) {
+            case "RegistrationId":
+                registration.setRegistrationId(text);
+                break;
+            case "ETag":
+                registration.setEtag(text);
+                break;
+            case "Tags":
+                registration.setTagsFromString(text);
+                break;
+            case "ExpirationTime":
+                registration.setExpirationTimeFromString(text);
+                break;
+            case "ChannelUri":
+                if (registration instanceof WindowsRegistration) {
+                    ((WindowsRegistration) registration).setChannelUri(text);
+                } else if (registration instanceof MpnsRegistration) {
+                    ((MpnsRegistration) registration).setChannelUri(text);
+                }
+                break;
+            case "DeviceToken":
+                if (registration instanceof AppleRegistration) {
+                    ((AppleRegistration) registration).setDeviceToken(text);
+                }
+                break;
+            case "GcmRegistrationId":
+                if (registration instanceof GcmRegistration) {
+                    ((GcmRegistration) registration).setGcmRegistrationId(text);
+                }
+                break;
+            case "FcmRegistrationId":
+            case "FcmV1RegistrationId":
+                if (registration instanceof FcmRegistration) {
+                    ((FcmRegistration) registration).setFcmRegistrationId(text);
+                } else if (registration instanceof FcmV1Registration) {
+                    ((FcmV1Registration) registration).setFcmRegistrationId(text);
+                }
+                break;
+            case "AdmRegistrationId":
+                if (registration instanceof AdmRegistration) {
+                    ((AdmRegistration) registration).setAdmRegistrationId(text);
+                }
+                break;
+            case "BaiduUserId":
+                if (registration instanceof BaiduRegistration) {
+                    ((BaiduRegistration) registration).setBaiduUserId(text);
+                }
+                break;
+            case "BaiduChannelId":
+                if (registration instanceof BaiduRegistration) {
+                    ((BaiduRegistration) registration).setBaiduChannelId(text);
+                }
+                break;
+            case "Endpoint":
+                if (registration instanceof BrowserRegistration) {
+                    ((BrowserRegistration) registration).setEndpoint(text);
+                }
+                break;
+            case "P256DH":
+                if (registration instanceof BrowserRegistration) {
+                    ((BrowserRegistration) registration).setP256dh(text);
+                }
+                break;
+            case "Auth":
+                if (registration instanceof BrowserRegistration) {
+                    ((BrowserRegistration) registration).setAuth(text);
+                }
+                break;
+            case "BodyTemplate":
+                if (registration instanceof TemplateRegistration) {
+                    ((TemplateRegistration) registration).setBodyTemplate(text);
+                }
+                break;
+            case "Expiry":
+                if (registration instanceof AppleTemplateRegistration) {
+                    ((AppleTemplateRegistration) registration).setExpiry(text);
+                }
+                break;
+            case "Header":
+                headerName = text;
+                break;
+            case "Value":
+                headerValue = text;
+                break;
+            case "WnsHeader":
+                if (registration instanceof WindowsTemplateRegistration) {
+                    ((WindowsTemplateRegistration) registration).addHeader(headerName, headerValue);
+                }
+                break;
+            case "MpnsHeader":
+                if (registration instanceof MpnsTemplateRegistration) {
+                    ((MpnsTemplateRegistration) registration).addHeader(headerName, headerValue);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String getName() {
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private String getAttribute(String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            String qualifiedName = prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+            if (name.equals(qualifiedName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
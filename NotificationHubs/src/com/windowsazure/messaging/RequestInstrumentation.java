@@ -0,0 +1,39 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+/**
+ * This interface receives an event when a client starts a request to the service and another
+ * when the request completes, for exporting metrics or tracing. The events are raised on the
+ * calling thread and on the I/O thread which completes the request, so implementations must be
+ * thread safe and should not block. Exceptions thrown by an implementation are ignored.
+ */
+public interface RequestInstrumentation {
+    /**
+     * The instrumentation which ignores every event, used by clients by default.
+     */
+    RequestInstrumentation NO_OP = new RequestInstrumentation() {
+        @Override
+        public void requestCompleted(RequestMetrics metrics) {
+        }
+    };
+
+    /**
+     * Called before a request is handed to the HTTP transport.
+     *
+     * @param operation  The operation, such as "PUT installations/{id}".
+     * @param hubPath    The hub the request is made for, or null for namespace operations.
+     * @param trackingId The tracking ID sent with the request.
+     */
+    default void requestStarted(String operation, String hubPath, String trackingId) {
+    }
+
+    /**
+     * Called once the request has completed, failed or been cancelled, before its callback.
+     *
+     * @param metrics The measurements of the request.
+     */
+    void requestCompleted(RequestMetrics metrics);
+}
@@ -0,0 +1,138 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+/**
+ * This class holds the measurements of a request to the service. The total time covers every
+ * attempt and the back-off between them, while the queue, connect and server times cover the
+ * last attempt. They are -1 when the transport cannot tell them apart, which is the case for
+ * HTTP clients not built by this SDK, and the connect time is also -1 on the shared HTTP/2
+ * transport, where it is part of the queue time.
+ */
+public final class RequestMetrics {
+    private final String operation;
+    private final String hubPath;
+    private final String trackingId;
+    private final int statusCode;
+    private final Exception error;
+    private final long totalNanos;
+    private final long queueNanos;
+    private final long connectNanos;
+    private final long serverNanos;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final int retryCount;
+
+    RequestMetrics(
+        String operation,
+        String hubPath,
+        String trackingId,
+        int statusCode,
+        Exception error,
+        long totalNanos,
+        long queueNanos,
+        long connectNanos,
+        long serverNanos,
+        long bytesSent,
+        long bytesReceived,
+        int retryCount) {
+        this.operation = operation;
+        this.hubPath = hubPath;
+        this.trackingId = trackingId;
+        this.statusCode = statusCode;
+        this.error = error;
+        this.totalNanos = totalNanos;
+        this.queueNanos = queueNanos;
+        this.connectNanos = connectNanos;
+        this.serverNanos = serverNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.retryCount = retryCount;
+    }
+
+    /**
+     * Gets the operation, the method and the path below the hub with IDs replaced by "{id}".
+     * @return The operation, such as "PUT installations/{id}".
+     */
+    public String getOperation() { return operation; }
+
+    /**
+     * Gets the hub the request was made for.
+     * @return The hub path, or null for namespace operations.
+     */
+    public String getHubPath() { return hubPath; }
+
+    /**
+     * Gets the tracking ID sent with the request.
+     * @return The tracking ID sent with the request.
+     */
+    public String getTrackingId() { return trackingId; }
+
+    /**
+     * Gets the status code of the response.
+     * @return The status code of the response, or 0 if there was none.
+     */
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * Gets the error the request failed with, including unexpected status codes.
+     * @return The error the request failed with, or null if it succeeded.
+     */
+    public Exception getError() { return error; }
+
+    /**
+     * Gets the time from handing the request to the transport until it completed.
+     * @return The total time in nanoseconds.
+     */
+    public long getTotalNanos() { return totalNanos; }
+
+    /**
+     * Gets the time the last attempt waited for a connection from the pool.
+     * @return The queue time in nanoseconds, or -1 if unknown.
+     */
+    public long getQueueNanos() { return queueNanos; }
+
+    /**
+     * Gets the time the last attempt spent opening a connection, 0 if it reused one.
+     * @return The connect time in nanoseconds, or -1 if unknown.
+     */
+    public long getConnectNanos() { return connectNanos; }
+
+    /**
+     * Gets the time from sending the last attempt until its response was received.
+     * @return The server time in nanoseconds, or -1 if unknown.
+     */
+    public long getServerNanos() { return serverNanos; }
+
+    /**
+     * Gets the size of the request body.
+     * @return The number of bytes sent, or -1 if the body was streamed with an unknown length.
+     */
+    public long getBytesSent() { return bytesSent; }
+
+    /**
+     * Gets the size of the response body.
+     * @return The number of bytes received.
+     */
+    public long getBytesReceived() { return bytesReceived; }
+
+    /**
+     * Gets the number of times the transport retried the request.
+     * @return The number of retries, or -1 if unknown.
+     */
+    public int getRetryCount() { return retryCount; }
+
+    @Override
+    public String toString() {
+        return operation + " " + statusCode + " in " + micros(totalNanos)
+            + " (queue=" + micros(queueNanos) + ", connect=" + micros(connectNanos) + ", server=" + micros(serverNanos)
+            + ", sent=" + bytesSent + ", received=" + bytesReceived + ", retries=" + retryCount
+            + ", hub=" + hubPath + ", trackingId=" + trackingId + ")";
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 0 ? "?" : nanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,184 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncConnectionEndpoint;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * This class records when each attempt of a request starts, connects and is sent. It travels in
+ * the HTTP context of the request and is filled in by exec chain interceptors and a connection
+ * manager wrapper, which only the HTTP clients built by this SDK have. The interceptor before the
+ * connect element runs once per attempt, as retries re-enter the chain below the retry element.
+ */
+final class RequestTimings {
+    static final String ATTRIBUTE = "com.windowsazure.messaging.request-timings";
+
+    private static final AsyncExecChainHandler ATTEMPT_STARTED = (request, entityProducer, scope, chain, callback) -> {
+        RequestTimings timings = get(scope.clientContext);
+        if (timings != null) {
+            timings.attemptStarted();
+        }
+        chain.proceed(request, entityProducer, scope, callback);
+    };
+
+    private static final AsyncExecChainHandler TRANSPORT_STARTED = (request, entityProducer, scope, chain, callback) -> {
+        RequestTimings timings = get(scope.clientContext);
+        if (timings != null) {
+            timings.transportStartNanos = System.nanoTime();
+        }
+        chain.proceed(request, entityProducer, scope, callback);
+    };
+
+    private volatile int attempts;
+    private volatile long attemptStartNanos;
+    private volatile long connectStartNanos;
+    private volatile long connectEndNanos;
+    private volatile long transportStartNanos;
+
+    static void install(HttpAsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.CONNECT.name(), "nh-attempt-started", ATTEMPT_STARTED);
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-transport-started", TRANSPORT_STARTED);
+    }
+
+    static void install(H2AsyncClientBuilder builder) {
+        builder.addExecInterceptorBefore(ChainElement.CONNECT.name(), "nh-attempt-started", ATTEMPT_STARTED);
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "nh-transport-started", TRANSPORT_STARTED);
+    }
+
+    static AsyncClientConnectionManager instrument(AsyncClientConnectionManager manager) {
+        return new TimedConnectionManager(manager);
+    }
+
+    static RequestTimings get(HttpContext context) {
+        Object timings = context == null ? null : context.getAttribute(ATTRIBUTE);
+        return timings instanceof RequestTimings ? (RequestTimings) timings : null;
+    }
+
+    private void attemptStarted() {
+        connectStartNanos = 0;
+        connectEndNanos = 0;
+        transportStartNanos = 0;
+        attemptStartNanos = System.nanoTime();
+        attempts++;
+    }
+
+    int getRetryCount() {
+        return attempts == 0 ? -1 : attempts - 1;
+    }
+
+    long getQueueNanos() {
+        long end = connectStartNanos != 0 ? connectStartNanos : transportStartNanos;
+        return attemptStartNanos == 0 || end == 0 ? -1 : end - attemptStartNanos;
+    }
+
+    // Connecting is only seen through the connection manager wrapper, so without it the connect
+    // time is part of the queue time.
+    long getConnectNanos(boolean connectionsTracked) {
+        if (connectStartNanos != 0) {
+            return connectEndNanos == 0 ? -1 : connectEndNanos - connectStartNanos;
+        }
+        return connectionsTracked && transportStartNanos != 0 ? 0 : -1;
+    }
+
+    long getServerNanos(long endNanos) {
+        return transportStartNanos == 0 ? -1 : endNanos - transportStartNanos;
+    }
+
+    private static final class TimedConnectionManager implements AsyncClientConnectionManager {
+        private final AsyncClientConnectionManager delegate;
+
+        TimedConnectionManager(AsyncClientConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Future<AsyncConnectionEndpoint> lease(
+            String id, HttpRoute route, Object state, Timeout requestTimeout, FutureCallback<AsyncConnectionEndpoint> callback) {
+            return delegate.lease(id, route, state, requestTimeout, callback);
+        }
+
+        @Override
+        public void release(AsyncConnectionEndpoint endpoint, Object newState, TimeValue validDuration) {
+            delegate.release(endpoint, newState, validDuration);
+        }
+
+        @Override
+        public Future<AsyncConnectionEndpoint> connect(
+            AsyncConnectionEndpoint endpoint,
+            ConnectionInitiator connectionInitiator,
+            Timeout connectTimeout,
+            Object attachment,
+            HttpContext context,
+            FutureCallback<AsyncConnectionEndpoint> callback) {
+            final RequestTimings timings = get(context);
+            if (timings == null) {
+                return delegate.connect(endpoint, connectionInitiator, connectTimeout, attachment, context, callback);
+            }
+
+            timings.connectStartNanos = System.nanoTime();
+            return delegate.connect(endpoint, connectionInitiator, connectTimeout, attachment, context,
+                new FutureCallback<AsyncConnectionEndpoint>() {
+                    @Override
+                    public void completed(AsyncConnectionEndpoint result) {
+                        timings.connectEndNanos = System.nanoTime();
+                        if (callback != null) {
+                            callback.completed(result);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        timings.connectEndNanos = System.nanoTime();
+                        if (callback != null) {
+                            callback.failed(ex);
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        if (callback != null) {
+                            callback.cancelled();
+                        }
+                    }
+                });
+        }
+
+        @Override
+        public void upgrade(AsyncConnectionEndpoint endpoint, Object attachment, HttpContext context) {
+            delegate.upgrade(endpoint, attachment, context);
+        }
+
+        @Override
+        public void upgrade(
+            AsyncConnectionEndpoint endpoint, Object attachment, HttpContext context, FutureCallback<AsyncConnectionEndpoint> callback) {
+            delegate.upgrade(endpoint, attachment, context, callback);
+        }
+
+        @Override
+        public void close(CloseMode closeMode) {
+            delegate.close(closeMode);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
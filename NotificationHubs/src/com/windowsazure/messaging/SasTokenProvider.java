@@ -8,9 +8,15 @@ import org.apache.commons.codec.binary.Base64;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
 
 /**
  * This class handles the creation of the SAS tokens.
@@ -18,7 +24,10 @@ import java.nio.charset.StandardCharsets;
 public class SasTokenProvider {
 
     private final String sasKeyName;
-    private final String sasKeyValue;
+    private final SecretKeySpec signingKey;
+    private final ThreadLocal<Mac> macs;
+    private final ConcurrentMap<String, CachedToken> tokenCache = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
 
     /**
      * Creates a new instance of the SasTokenProvider class.
@@ -26,8 +35,26 @@ public class SasTokenProvider {
      * @param sasKeyValue The SAS key value from the access policy connection string.
      */
     public SasTokenProvider(String sasKeyName, String sasKeyValue) {
+        this(sasKeyName, sasKeyValue, System::currentTimeMillis);
+    }
+
+    SasTokenProvider(String sasKeyName, String sasKeyValue, LongSupplier clock) {
         this.sasKeyName = sasKeyName;
-        this.sasKeyValue = sasKeyValue;
+        this.signingKey = sasKeyValue == null ? null : new SecretKeySpec(sasKeyValue.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.clock = clock;
+        this.macs = ThreadLocal.withInitial(() -> {
+            if (signingKey == null) {
+                throw new RuntimeException("The SAS key value is missing from the connection string.");
+            }
+
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(signingKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
     }
 
     /**
@@ -36,37 +63,94 @@ public class SasTokenProvider {
      * @return The SAS token which is good for one hour.
      */
     public String generateSasToken(URI uri) {
-        String targetUri;
-        try {
-            targetUri = URLEncoder
-                .encode(uri.toString().toLowerCase(), "UTF-8")
-                .toLowerCase();
+        return createToken(uri.toString(), getExpiresOnSeconds()).token;
+    }
 
-            long expiresOnDate = System.currentTimeMillis();
-            expiresOnDate += (long)SdkGlobalSettings.getAuthorizationTokenExpirationInMinutes() * 60 * 1000;
-            long expires = expiresOnDate / 1000;
-            String toSign = targetUri + "\n" + expires;
+    /**
+     * Gets a SAS token for the hub or management resource targeted by the URI. Tokens are scoped to
+     * the audience of the URI, i.e. the scheme, host and first path segment, so one token covers every
+     * request to the same hub. A cached token is reused until it is within the refresh margin
+     * configured in {@link SdkGlobalSettings} of its expiration.
+     * @param uri The target URI for the request.
+     * @return A SAS token valid for the audience of the URI.
+     */
+    public String getSasToken(URI uri) {
+        String audience = getAudience(uri);
+        long now = clock.getAsLong();
+
+        CachedToken cached = tokenCache.get(audience);
+        if (cached != null && now < cached.refreshAtMillis) {
+            return cached.token;
+        }
+
+        CachedToken created = createToken(audience, getExpiresOnSeconds());
+        tokenCache.put(audience, created);
+        return created.token;
+    }
+
+    static String getAudience(URI uri) {
+        String path = uri.getRawPath();
+        int segmentEnd = -1;
+        if (path != null && path.length() > 1) {
+            segmentEnd = path.indexOf('/', 1);
+            if (segmentEnd < 0) {
+                segmentEnd = path.length();
+            }
+        }
 
-            // Get a hmac_sha1 key from the raw key bytes
-            byte[] keyBytes = sasKeyValue.getBytes(StandardCharsets.UTF_8);
-            SecretKeySpec signingKey = new SecretKeySpec(keyBytes, "HmacSHA256");
+        StringBuilder audience = new StringBuilder()
+            .append(uri.getScheme())
+            .append("://")
+            .append(uri.getRawAuthority());
+        if (segmentEnd > 0) {
+            audience.append(path, 0, segmentEnd);
+        } else {
+            audience.append('/');
+        }
+        return audience.toString();
+    }
 
-            // Get a hmac_sha1 Mac instance and initialize with the signing key
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(signingKey);
+    private long getExpiresOnSeconds() {
+        long expiresOnDate = clock.getAsLong();
+        expiresOnDate += (long)SdkGlobalSettings.getAuthorizationTokenExpirationInMinutes() * 60 * 1000;
+        return expiresOnDate / 1000;
+    }
 
-            // Compute the hmac on input data bytes
-            byte[] rawHmac = mac.doFinal(toSign.getBytes(StandardCharsets.UTF_8));
+    private CachedToken createToken(String resource, long expires) {
+        try {
+            String targetUri = URLEncoder
+                .encode(resource.toLowerCase(Locale.ROOT), "UTF-8")
+                .toLowerCase(Locale.ROOT);
+
+            String toSign = targetUri + "\n" + expires;
+
+            // Compute the hmac on input data bytes with the per-thread Mac instance
+            byte[] rawHmac = macs.get().doFinal(toSign.getBytes(StandardCharsets.UTF_8));
 
-            // Convert raw bytes to Hex
             String signature = URLEncoder.encode(
                 Base64.encodeBase64String(rawHmac), "UTF-8");
 
             // construct authorization string
-            return "SharedAccessSignature sr=" + targetUri + "&sig="
+            String token = "SharedAccessSignature sr=" + targetUri + "&sig="
                 + signature + "&se=" + expires + "&skn=" + sasKeyName;
-        } catch (Exception e) {
+
+            long lifetimeMillis = expires * 1000 - clock.getAsLong();
+            long marginMillis = Math.min(
+                (long)SdkGlobalSettings.getAuthorizationTokenRefreshMarginInSeconds() * 1000,
+                lifetimeMillis / 2);
+            return new CachedToken(token, expires * 1000 - marginMillis);
+        } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static final class CachedToken {
+        private final String token;
+        private final long refreshAtMillis;
+
+        CachedToken(String token, long refreshAtMillis) {
+            this.token = token;
+            this.refreshAtMillis = refreshAtMillis;
+        }
+    }
 }
@@ -6,6 +6,7 @@ package com.windowsazure.messaging;
 
 public class SdkGlobalSettings {
     private static int authorizationTokenExpirationInMinutes = 60;
+    private static int authorizationTokenRefreshMarginInSeconds = 5 * 60;
 
     public static int getAuthorizationTokenExpirationInMinutes() {
         return SdkGlobalSettings.authorizationTokenExpirationInMinutes;
@@ -14,4 +15,12 @@ public class SdkGlobalSettings {
     public static void setAuthorizationTokenExpirationInMinutes(int value) {
         SdkGlobalSettings.authorizationTokenExpirationInMinutes = value;
     }
+
+    public static int getAuthorizationTokenRefreshMarginInSeconds() {
+        return SdkGlobalSettings.authorizationTokenRefreshMarginInSeconds;
+    }
+
+    public static void setAuthorizationTokenRefreshMarginInSeconds(int value) {
+        SdkGlobalSettings.authorizationTokenRefreshMarginInSeconds = value;
+    }
 }
@@ -0,0 +1,104 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * This class remembers the outcomes of recent sends by key, so that a send repeated with the same
+ * key gets the outcome of the first instead of being sent again, and a send repeated while the
+ * first is in flight waits for its outcome. Failed and cancelled sends are forgotten, so that they
+ * can be repeated. Once full, the record forgets the sends used least recently.
+ */
+final class SendRecord {
+    private final Map<String, CompletableFuture<NotificationOutcome>> outcomes;
+
+    SendRecord(final int capacity) {
+        this.outcomes = new LinkedHashMap<String, CompletableFuture<NotificationOutcome>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<NotificationOutcome>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Completes the callback with the outcome of the send with the given key, starting the send
+     * only if it is neither remembered nor in flight.
+     */
+    void send(String key, FutureCallback<NotificationOutcome> callback, Consumer<FutureCallback<NotificationOutcome>> send) {
+        final CompletableFuture<NotificationOutcome> outcome;
+        final boolean first;
+        synchronized (this) {
+            CompletableFuture<NotificationOutcome> remembered = outcomes.get(key);
+            first = remembered == null;
+            outcome = first ? new CompletableFuture<>() : remembered;
+            if (first) {
+                outcomes.put(key, outcome);
+            }
+        }
+
+        outcome.whenComplete((result, error) -> {
+            if (error == null) {
+                callback.completed(result);
+            } else if (error instanceof CancellationException) {
+                callback.cancelled();
+            } else {
+                callback.failed(error instanceof Exception ? (Exception) error : new RuntimeException(error));
+            }
+        });
+        if (!first) {
+            return;
+        }
+
+        // The send is aborted through the cancellable callback of the operation which started it
+        final CancellableCallback<?> cancellable = CancellableCallback.find(callback);
+        try {
+            send.accept(new SendCallback() {
+                @Override
+                public CancellableCallback<?> getCancellable() {
+                    return cancellable;
+                }
+
+                @Override
+                public void completed(NotificationOutcome result) {
+                    outcome.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    forget(key, outcome);
+                    outcome.completeExceptionally(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    forget(key, outcome);
+                    outcome.cancel(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            forget(key, outcome);
+            outcome.completeExceptionally(e);
+        }
+    }
+
+    synchronized int size() {
+        return outcomes.size();
+    }
+
+    private interface SendCallback extends FutureCallback<NotificationOutcome>, CancellableCallback.Forwarding {
+    }
+
+    private synchronized void forget(String key, CompletableFuture<NotificationOutcome> outcome) {
+        outcomes.remove(key, outcome);
+    }
+}
@@ -0,0 +1,27 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * This class holds the Gson instance used to read and write the JSON payloads of this package.
+ * Gson is thread safe and caches the type adapters it creates, so sharing one instance saves
+ * building them again on every call.
+ */
+final class SharedGson {
+    /**
+     * The Gson instance, which does not escape HTML characters and reads installations with
+     * {@link InstallationTypeAdapterFactory}.
+     */
+    static final Gson GSON = new GsonBuilder()
+        .disableHtmlEscaping()
+        .registerTypeAdapterFactory(new InstallationTypeAdapterFactory())
+        .create();
+
+    private SharedGson() {
+    }
+}
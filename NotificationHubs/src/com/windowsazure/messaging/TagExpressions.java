@@ -0,0 +1,104 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class splits large audiences into tag expressions the service accepts. An expression which
+ * only ORs tags together may hold at most {@link #MAX_OR_TAGS} tags, so a larger set of tags is
+ * sent as several expressions of up to that many tags each.
+ */
+public final class TagExpressions {
+    /**
+     * The most tags the service accepts in an expression which only ORs tags together.
+     */
+    public static final int MAX_OR_TAGS = 20;
+
+    private static final String OR = " || ";
+
+    private TagExpressions() {
+    }
+
+    /**
+     * Splits an expression which only ORs tags together, such as {@code "a || b || (c)"}, into its
+     * tags, e.g. to send it with {@link NotificationHub#sendNotificationToTags(Notification, Iterable)}.
+     *
+     * @param expression The tag expression to split.
+     * @return The tags of the expression, in order.
+     * @throws IllegalArgumentException if the expression uses any operator other than ||.
+     */
+    public static List<String> splitOr(String expression) {
+        List<String> tags = new ArrayList<>();
+        for (String operand : expression.split("\\|\\|", -1)) {
+            String tag = operand.trim();
+            while (tag.length() > 1 && tag.charAt(0) == '(' && tag.charAt(tag.length() - 1) == ')') {
+                tag = tag.substring(1, tag.length() - 1).trim();
+            }
+
+            if (tag.isEmpty() || !isTag(tag)) {
+                throw new IllegalArgumentException("Only expressions which OR tags together can be split: " + expression);
+            }
+            tags.add(tag);
+        }
+        return tags;
+    }
+
+    static String joinOr(List<String> tags) {
+        return String.join(OR, tags);
+    }
+
+    /**
+     * Splits the tags into consecutive lists of at most the given size, reading the tags lazily
+     * and skipping tags seen before, so that no device is targeted twice for the same tag.
+     */
+    static Iterator<List<String>> shard(final Iterable<String> tags, final int size) {
+        final Iterator<String> source = tags.iterator();
+        final Set<String> seen = new HashSet<>();
+        Iterable<String> distinct = () -> new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && source.hasNext()) {
+                    String tag = source.next();
+                    if (tag == null || tag.isEmpty()) {
+                        throw new IllegalArgumentException("Tags must not be null or empty");
+                    }
+                    if (seen.add(tag)) {
+                        next = tag;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String tag = next;
+                next = null;
+                return tag;
+            }
+        };
+        return ChunkDispatcher.chunk(distinct, size);
+    }
+
+    private static boolean isTag(String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (c == '&' || c == '|' || c == '!' || c == '(' || c == ')' || Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
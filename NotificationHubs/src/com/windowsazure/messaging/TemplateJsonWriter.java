@@ -0,0 +1,108 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.util.Map;
+
+/**
+ * This class writes template properties as a flat JSON object of strings. Keys and values are
+ * escaped as RFC 8259 requires, and strings without anything to escape are copied in one go. Each
+ * thread reuses one buffer from one body to the next, and buffers which grew beyond 64 KiB of
+ * characters are dropped so that one large payload does not pin memory per thread.
+ */
+final class TemplateJsonWriter {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private TemplateJsonWriter() {
+    }
+
+    /**
+     * Writes the properties as a JSON object, in the iteration order of the map. A null value is
+     * written as JSON null.
+     */
+    static String write(Map<String, String> properties) {
+        StringBuilder buffer = BUFFERS.get();
+        buffer.setLength(0);
+        buffer.append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            appendQuoted(buffer, requireKey(property.getKey()));
+            buffer.append(':');
+            appendValue(buffer, property.getValue());
+        }
+        buffer.append('}');
+
+        String json = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFERS.set(new StringBuilder(INITIAL_CAPACITY));
+        }
+        return json;
+    }
+
+    static String requireKey(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Template property names must not be null");
+        }
+        return key;
+    }
+
+    static void appendValue(StringBuilder buffer, String value) {
+        if (value == null) {
+            buffer.append("null");
+        } else {
+            appendQuoted(buffer, value);
+        }
+    }
+
+    static void appendQuoted(StringBuilder buffer, String value) {
+        buffer.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            buffer.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    buffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    break;
+            }
+        }
+        buffer.append(value, start, length);
+        buffer.append('"');
+    }
+}
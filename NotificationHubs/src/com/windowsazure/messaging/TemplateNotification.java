@@ -6,8 +6,8 @@ package com.windowsazure.messaging;
 
 import org.apache.hc.core5.http.ContentType;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Iterator;
 
 /**
  * This class represents a template notification.
@@ -15,23 +15,110 @@ import java.util.Iterator;
 public class TemplateNotification extends Notification {
 
     /**
-     * Creates a new instance of the TemplateNotification class.
+     * Creates a new instance of the TemplateNotification class. The properties are escaped as
+     * JSON strings, and a null value is sent as JSON null.
      * @param properties The properties for the template notification.
      */
     public TemplateNotification(Map<String, String> properties) {
-        StringBuilder buf = new StringBuilder();
-        buf.append("{");
-        for (Iterator<String> iterator = properties.keySet().iterator(); iterator.hasNext(); ) {
-            String key = iterator.next();
-            buf.append("\"").append(key).append("\":\"").append(properties.get(key)).append("\"");
-            if (iterator.hasNext())
-                buf.append(",");
-        }
-        buf.append("}");
-        this.body = buf.toString();
+        this(TemplateJsonWriter.write(properties));
+    }
+
+    TemplateNotification(String body) {
+        this.body = body;
 
         this.contentType = ContentType.APPLICATION_JSON;
 
         this.headers.put("ServiceBusNotification-Format", "template");
     }
+
+    /**
+     * Creates a builder for template notifications which is reused from one notification to the
+     * next, for sending personalized templates in a loop.
+     * @return A new builder for template notifications.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * This class builds template notifications from properties which are set again for every
+     * notification. The property names are escaped once, when first set, and the body is written
+     * into a buffer kept by the builder, so building a notification allocates little more than
+     * its body and headers. Properties keep the order in which they were first set. A builder is
+     * not thread safe; give each sending thread its own.
+     */
+    public static class Builder {
+        private final Map<String, Property> properties = new LinkedHashMap<>();
+        private final StringBuilder buffer = new StringBuilder(256);
+
+        Builder() {
+        }
+
+        /**
+         * Sets a property of the template, replacing its previous value.
+         * @param name The name of the property.
+         * @param value The value of the property, sent as JSON null if null.
+         * @return This builder.
+         */
+        public Builder setProperty(String name, String value) {
+            Property property = properties.get(name);
+            if (property == null) {
+                property = new Property(TemplateJsonWriter.requireKey(name));
+                properties.put(name, property);
+            }
+            property.value = value;
+            return this;
+        }
+
+        /**
+         * Removes a property from the template.
+         * @param name The name of the property.
+         * @return This builder.
+         */
+        public Builder removeProperty(String name) {
+            properties.remove(name);
+            return this;
+        }
+
+        /**
+         * Removes every property from the template.
+         * @return This builder.
+         */
+        public Builder clear() {
+            properties.clear();
+            return this;
+        }
+
+        /**
+         * Builds a template notification from the properties currently set. The builder keeps its
+         * properties, so only those which differ need to be set for the next notification.
+         * @return A new template notification.
+         */
+        public TemplateNotification build() {
+            buffer.setLength(0);
+            buffer.append('{');
+            boolean first = true;
+            for (Property property : properties.values()) {
+                if (!first) {
+                    buffer.append(',');
+                }
+                first = false;
+                buffer.append(property.prefix);
+                TemplateJsonWriter.appendValue(buffer, property.value);
+            }
+            buffer.append('}');
+            return new TemplateNotification(buffer.toString());
+        }
+
+        private static final class Property {
+            private final String prefix;
+            private String value;
+
+            private Property(String name) {
+                StringBuilder prefix = new StringBuilder(name.length() + 3);
+                TemplateJsonWriter.appendQuoted(prefix, name);
+                this.prefix = prefix.append(':').toString();
+            }
+        }
+    }
 }
@@ -0,0 +1,137 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class writes XML straight into a growable UTF-8 byte buffer. Each thread keeps one writer
+ * whose buffer is reused from one payload to the next, so serializing a registration allocates
+ * only the array handed to the request. Text is written as it is, the same as the string
+ * concatenation it replaces, so callers escape or wrap it in CDATA as before. Buffers which grew
+ * beyond 64 KiB are dropped on release so that one large payload does not pin memory per thread.
+ */
+final class Utf8XmlWriter {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<Utf8XmlWriter> WRITERS = ThreadLocal.withInitial(Utf8XmlWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+    private boolean inUse;
+
+    private Utf8XmlWriter() {
+    }
+
+    /**
+     * Gets the writer of the calling thread, or a new writer if it is already in use further up
+     * the stack. The writer must be released once its contents have been copied out.
+     */
+    static Utf8XmlWriter acquire() {
+        Utf8XmlWriter writer = WRITERS.get();
+        if (writer.inUse) {
+            writer = new Utf8XmlWriter();
+        }
+        writer.inUse = true;
+        writer.size = 0;
+        return writer;
+    }
+
+    void release() {
+        inUse = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Encodes a constant once, for writing with {@link #write(byte[])}.
+     */
+    static byte[] encode(String constant) {
+        return constant.getBytes(StandardCharsets.UTF_8);
+    }
+
+    Utf8XmlWriter write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Writes text as UTF-8, and null as "null" in the manner of string concatenation.
+     */
+    Utf8XmlWriter write(String text) {
+        if (text == null) {
+            text = "null";
+        }
+
+        int length = text.length();
+        ensureCapacity(length);
+        int i = 0;
+        // ASCII needs no encoding and the buffer has room for it
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buffer[size++] = (byte) c;
+            i++;
+        }
+
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced, as String.getBytes does
+                ensureCapacity(1);
+                buffer[size++] = (byte) '?';
+            } else {
+                ensureCapacity(3);
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    Utf8XmlWriter write(Object value) {
+        return write(String.valueOf(value));
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
@@ -62,6 +62,10 @@ public class WindowsInstallation extends Installation {
         return secondaryTiles;
     }
 
+    void setSecondaryTiles(Map<String, WnsSecondaryTile> value) {
+        secondaryTiles = value;
+    }
+
     /**
      * Adds a secondary tile to the installation template.
      *
@@ -12,9 +12,9 @@ import java.util.Objects;
  * Class representing a native registration for a device using WNS.
  */
 public class WindowsRegistration extends Registration {
-    private static final String WNS_NATIVE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><WindowsRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String WNS_NATIVE_REGISTRATION2 = "<ChannelUri>";
-    private static final String WNS_NATIVE_REGISTRATION3 = "</ChannelUri></WindowsRegistrationDescription></content></entry>";
+    private static final byte[] WNS_NATIVE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><WindowsRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] WNS_NATIVE_REGISTRATION2 = Utf8XmlWriter.encode("<ChannelUri>");
+    private static final byte[] WNS_NATIVE_REGISTRATION3 = Utf8XmlWriter.encode("</ChannelUri></WindowsRegistrationDescription></content></entry>");
 
     protected URI channelUri;
 
@@ -85,11 +85,16 @@ public class WindowsRegistration extends Registration {
 
     @Override
     public String getXml() {
-        return WNS_NATIVE_REGISTRATION1 +
-            getTagsXml() +
-            WNS_NATIVE_REGISTRATION2 +
-            channelUri.toString() +
-            WNS_NATIVE_REGISTRATION3;
+        return writeXmlToString();
+    }
+
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(WNS_NATIVE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(WNS_NATIVE_REGISTRATION2);
+        writer.write(channelUri.toString());
+        writer.write(WNS_NATIVE_REGISTRATION3);
     }
 
 }
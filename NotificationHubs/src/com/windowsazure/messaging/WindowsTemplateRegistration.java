@@ -13,11 +13,16 @@ import java.util.Objects;
  * Class representing a registration for template notifications for devices using WNS.
  */
 public class WindowsTemplateRegistration extends WindowsRegistration implements TemplateRegistration {
-    private static final String WNS_TEMPLATE_REGISTRATION1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><WindowsTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">";
-    private static final String WNS_TEMPLATE_REGISTRATION2 = "<ChannelUri>";
-    private static final String WNS_TEMPLATE_REGISTRATION3 = "</ChannelUri><BodyTemplate><![CDATA[";
-    private static final String WNS_TEMPLATE_REGISTRATION4 = "]]></BodyTemplate>";
-    private static final String WNS_TEMPLATE_REGISTRATION5 = "</WindowsTemplateRegistrationDescription></content></entry>";
+    private static final byte[] WNS_TEMPLATE_REGISTRATION1 = Utf8XmlWriter.encode("<?xml version=\"1.0\" encoding=\"utf-8\"?><entry xmlns=\"http://www.w3.org/2005/Atom\"><content type=\"application/xml\"><WindowsTemplateRegistrationDescription xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://schemas.microsoft.com/netservices/2010/10/servicebus/connect\">");
+    private static final byte[] WNS_TEMPLATE_REGISTRATION2 = Utf8XmlWriter.encode("<ChannelUri>");
+    private static final byte[] WNS_TEMPLATE_REGISTRATION3 = Utf8XmlWriter.encode("</ChannelUri><BodyTemplate><![CDATA[");
+    private static final byte[] WNS_TEMPLATE_REGISTRATION4 = Utf8XmlWriter.encode("]]></BodyTemplate>");
+    private static final byte[] WNS_TEMPLATE_REGISTRATION5 = Utf8XmlWriter.encode("</WindowsTemplateRegistrationDescription></content></entry>");
+    private static final byte[] HEADERS_START = Utf8XmlWriter.encode("<WnsHeaders>");
+    private static final byte[] HEADER_START = Utf8XmlWriter.encode("<WnsHeader><Header>");
+    private static final byte[] HEADER_VALUE = Utf8XmlWriter.encode("</Header><Value>");
+    private static final byte[] HEADER_END = Utf8XmlWriter.encode("</Value></WnsHeader>");
+    private static final byte[] HEADERS_END = Utf8XmlWriter.encode("</WnsHeaders>");
 
     private String bodyTemplate;
     private Map<String, String> headers = new HashMap<String, String>();
@@ -147,28 +152,30 @@ public class WindowsTemplateRegistration extends WindowsRegistration implements
 
     @Override
     public String getXml() {
-        return WNS_TEMPLATE_REGISTRATION1 +
-            getTagsXml() +
-            WNS_TEMPLATE_REGISTRATION2 +
-            channelUri.toString() +
-            WNS_TEMPLATE_REGISTRATION3 +
-            bodyTemplate +
-            WNS_TEMPLATE_REGISTRATION4 +
-            getHeadersXml() +
-            WNS_TEMPLATE_REGISTRATION5;
+        return writeXmlToString();
     }
 
-    private String getHeadersXml() {
-        StringBuilder buf = new StringBuilder();
+    @Override
+    void writeXml(Utf8XmlWriter writer) {
+        writer.write(WNS_TEMPLATE_REGISTRATION1);
+        writeTagsXml(writer);
+        writer.write(WNS_TEMPLATE_REGISTRATION2);
+        writer.write(channelUri.toString());
+        writer.write(WNS_TEMPLATE_REGISTRATION3);
+        writer.write(bodyTemplate);
+        writer.write(WNS_TEMPLATE_REGISTRATION4);
+        writeHeadersXml(writer);
+        writer.write(WNS_TEMPLATE_REGISTRATION5);
+    }
+
+    private void writeHeadersXml(Utf8XmlWriter writer) {
         if (!headers.isEmpty()) {
-            buf.append("<WnsHeaders>");
-            for (String key : headers.keySet()) {
-                buf.append("<WnsHeader><Header>");
-                buf.append(key).append("</Header><Value>");
-                buf.append(headers.get(key)).append("</Value></WnsHeader>");
+            writer.write(HEADERS_START);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writer.write(HEADER_START).write(header.getKey());
+                writer.write(HEADER_VALUE).write(header.getValue()).write(HEADER_END);
             }
+            writer.write(HEADERS_END);
         }
-        buf.append("</WnsHeaders>");
-        return buf.toString();
     }
 }
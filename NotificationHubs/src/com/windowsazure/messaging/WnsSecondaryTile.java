@@ -14,9 +14,6 @@ import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 /**
  * This class represents a WNS secondary tile.
  */
@@ -160,7 +157,7 @@ public class WnsSecondaryTile {
     }
 
     public static WnsSecondaryTile fromJson(String json) {
-        return new Gson().fromJson(json, WnsSecondaryTile.class);
+        return SharedGson.GSON.fromJson(json, WnsSecondaryTile.class);
     }
 
     public static WnsSecondaryTile fromJson(InputStream json) throws IOException {
@@ -168,6 +165,6 @@ public class WnsSecondaryTile {
     }
 
     public String toJson() {
-        return new GsonBuilder().disableHtmlEscaping().create().toJson(this);
+        return SharedGson.GSON.toJson(this);
     }
 }
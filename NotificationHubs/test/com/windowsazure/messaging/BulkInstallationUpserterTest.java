@@ -0,0 +1,204 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class BulkInstallationUpserterTest {
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private NotificationHubClient hub;
+
+    private static final class Request {
+        private final BaseInstallation installation;
+        private final FutureCallback<Object> callback;
+
+        Request(BaseInstallation installation, FutureCallback<Object> callback) {
+            this.installation = installation;
+            this.callback = callback;
+        }
+    }
+
+    private final InstallationResultSink sink = new InstallationResultSink() {
+        @Override
+        public void succeeded(BaseInstallation installation) {
+            events.add("succeeded " + installation.getUserId());
+        }
+
+        @Override
+        public void failed(BaseInstallation installation, Exception exception) {
+            events.add("failed " + installation.getUserId());
+        }
+
+        @Override
+        public void superseded(BaseInstallation installation) {
+            events.add("superseded " + installation.getUserId());
+        }
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        hub = mock(NotificationHubClient.class);
+        doAnswer(invocation -> {
+            requests.add(new Request(invocation.getArgument(0), (FutureCallback<Object>) invocation.getArguments()[1]));
+            return null;
+        }).when(hub).createOrUpdateInstallationAsync(any(BaseInstallation.class), any());
+    }
+
+    private static Installation installation(String installationId, String version) {
+        Installation installation = new Installation(installationId, NotificationPlatform.FcmV1, "token");
+        installation.setUserId(version);
+        return installation;
+    }
+
+    private Request nextRequest() throws InterruptedException {
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Expected a request", request);
+        return request;
+    }
+
+    private Future<BulkInstallationResult> start(int maxInFlight, BaseInstallation... installations) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Callable<BulkInstallationResult> task = () ->
+            new BulkInstallationUpserter(hub, maxInFlight, 3, sink).run(Arrays.asList(installations).iterator());
+        Future<BulkInstallationResult> result = executor.submit(task);
+        executor.shutdown();
+        return result;
+    }
+
+    @Test
+    public void testSameInstallationIdIsNeverInFlightTwiceAndLastWins() throws Exception {
+        Future<BulkInstallationResult> future = start(4,
+            installation("a", "a1"), installation("a", "a2"), installation("a", "a3"), installation("b", "b1"));
+
+        Request first = nextRequest();
+        Request second = nextRequest();
+        assertEquals("a1", first.installation.getUserId());
+        assertEquals("b1", second.installation.getUserId());
+        assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+
+        first.callback.completed(null);
+        Request third = nextRequest();
+        assertEquals("a3", third.installation.getUserId());
+        second.callback.completed(null);
+        third.callback.completed(null);
+
+        BulkInstallationResult result = future.get(5, TimeUnit.SECONDS);
+        assertEquals(3, result.getSucceededCount());
+        assertEquals(1, result.getSupersededCount());
+        assertEquals(0, result.getFailedCount());
+        assertTrue(events.contains("superseded a2"));
+    }
+
+    @Test
+    public void testThrottledInstallationIsSentAgain() throws Exception {
+        Future<BulkInstallationResult> future = start(2, installation("a", "a1"));
+
+        nextRequest().callback.failed(new NotificationHubsException("throttled", 429, true));
+        nextRequest().callback.completed(null);
+
+        BulkInstallationResult result = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getSucceededCount());
+        assertEquals(1, result.getThrottledCount());
+        assertEquals(Collections.singletonList("succeeded a1"), events);
+    }
+
+    @Test
+    public void testRetryKeepsInstallationIdFromLaterInstallation() throws Exception {
+        CountDownLatch throttled = new CountDownLatch(1);
+        NotificationHubsException error = new NotificationHubsException("throttled", 429, true);
+        Iterator<Installation> installations = new Iterator<Installation>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return read < 2;
+            }
+
+            @Override
+            public Installation next() {
+                if (read++ == 0) {
+                    return installation("a", "a1");
+                }
+                // The first send is throttled while the newer installation is being read
+                try {
+                    nextRequest().callback.failed(error);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                throttled.countDown();
+                return installation("a", "a2");
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<BulkInstallationResult> future = executor.submit(() ->
+            new BulkInstallationUpserter(hub, 4, 3, sink).run(installations));
+        executor.shutdown();
+
+        assertTrue(throttled.await(5, TimeUnit.SECONDS));
+        Request retried = nextRequest();
+        assertEquals("a1", retried.installation.getUserId());
+        assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+        retried.callback.completed(null);
+        Request last = nextRequest();
+        assertEquals("a2", last.installation.getUserId());
+        last.callback.completed(null);
+
+        BulkInstallationResult result = future.get(5, TimeUnit.SECONDS);
+        assertEquals(2, result.getSucceededCount());
+        assertEquals(Arrays.asList("succeeded a1", "succeeded a2"), events);
+    }
+
+    @Test
+    public void testThrottledInstallationIsSupersededByWaitingOne() throws Exception {
+        Future<BulkInstallationResult> future = start(4, installation("a", "a1"), installation("a", "a2"));
+
+        Request first = nextRequest();
+        assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+        first.callback.failed(new NotificationHubsException("throttled", 429, true));
+        Request second = nextRequest();
+        assertEquals("a2", second.installation.getUserId());
+        second.callback.completed(null);
+
+        BulkInstallationResult result = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getSucceededCount());
+        assertEquals(1, result.getSupersededCount());
+        assertEquals(Arrays.asList("superseded a1", "succeeded a2"), events);
+    }
+
+    @Test
+    public void testFailuresAreReportedAndDoNotStopTheRest() throws Exception {
+        Future<BulkInstallationResult> future = start(1, installation("a", "a1"), installation("b", "b1"));
+
+        nextRequest().callback.failed(new NotificationHubsException("bad request", 400, false));
+        nextRequest().callback.completed(null);
+
+        BulkInstallationResult result = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getSucceededCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(Arrays.asList("failed a1", "succeeded b1"), events);
+    }
+}
@@ -0,0 +1,91 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CancellableCallbackTest {
+    private final List<String> outcomes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger aborts = new AtomicInteger();
+
+    private final FutureCallback<String> delegate = new FutureCallback<String>() {
+        @Override
+        public void completed(String result) {
+            outcomes.add("completed:" + result);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            outcomes.add("failed:" + ex.getClass().getSimpleName());
+        }
+
+        @Override
+        public void cancelled() {
+            outcomes.add("cancelled");
+        }
+    };
+
+    private boolean abort() {
+        aborts.incrementAndGet();
+        return true;
+    }
+
+    @Test
+    public void testDeadlineFailsOperationAndAbortsRequest() throws Exception {
+        CancellableCallback<String> callback = new CancellableCallback<>(delegate, Duration.ofMillis(50));
+        callback.attach(this::abort);
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (outcomes.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // The request reports its own cancellation, and a late response, which are both ignored
+        callback.cancelled();
+        callback.completed("late");
+        assertEquals(1, aborts.get());
+        assertEquals(1, outcomes.size());
+        assertEquals("failed:" + TimeoutException.class.getSimpleName(), outcomes.get(0));
+        assertFalse(callback.cancel());
+    }
+
+    @Test
+    public void testCancelAbortsCurrentAndLaterRequests() {
+        CancellableCallback<String> callback = new CancellableCallback<>(delegate);
+        callback.attach(this::abort);
+
+        assertTrue(callback.cancel());
+        assertFalse(callback.cancel());
+        assertEquals(1, aborts.get());
+
+        // A request started after the cancellation is aborted at once
+        callback.attach(this::abort);
+        assertEquals(2, aborts.get());
+        assertEquals(1, outcomes.size());
+        assertEquals("cancelled", outcomes.get(0));
+    }
+
+    @Test
+    public void testCompletionStopsDeadline() throws Exception {
+        CancellableCallback<String> callback = new CancellableCallback<>(delegate, Duration.ofMillis(50));
+        callback.attach(this::abort);
+        callback.completed("result");
+
+        Thread.sleep(150);
+        assertEquals(0, aborts.get());
+        assertEquals(1, outcomes.size());
+        assertEquals("completed:result", outcomes.get(0));
+        assertNull(new CancellableCallback<>(delegate).getDeadline());
+    }
+}
@@ -0,0 +1,189 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.nio.AsyncPushConsumer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.HandlerFactory;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+    private static final String ENDPOINT = "test.servicebus.windows.net";
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<String> transitions = new ArrayList<>();
+
+    private CircuitBreaker createBreaker() {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+            .setWindowSize(10)
+            .setMinimumCalls(4)
+            .setFailureRateThreshold(0.5)
+            .setSlowCallRateThreshold(0.5)
+            .setSlowCallDuration(Duration.ofSeconds(1))
+            .setOpenDuration(Duration.ofSeconds(30))
+            .setHalfOpenCalls(2)
+            .setNanoClock(clock::get)
+            .build();
+        breaker.addListener((endpoint, from, to) -> transitions.add(endpoint + " " + from + "->" + to));
+        return breaker;
+    }
+
+    @Test
+    public void testFailuresOpenAndTrialsCloseTheCircuit() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        breaker.acquire(ENDPOINT).completed(200, null);
+        breaker.acquire(ENDPOINT).completed(404, null);
+        breaker.acquire(ENDPOINT).completed(429, null);
+        breaker.acquire(ENDPOINT).completed(503, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT));
+
+        CircuitBreaker.Call late = breaker.acquire(ENDPOINT);
+        breaker.acquire(ENDPOINT).completed(0, new IOException("Connection reset"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT));
+        breaker.acquire(ENDPOINT).completed(504, null);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("other.servicebus.windows.net"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        CircuitBreakerOpenException e = assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(ENDPOINT));
+        assertTrue(e.isTransient());
+        assertEquals(503, e.httpStatusCode());
+        assertEquals(Duration.ofSeconds(20), e.retryAfter().orElse(null));
+        assertEquals(ENDPOINT, e.getEndpoint());
+
+        // A call started before the circuit opened no longer counts
+        late.completed(0, new IOException("Connection reset"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        CircuitBreaker.Call first = breaker.acquire(ENDPOINT);
+        CircuitBreaker.Call second = breaker.acquire(ENDPOINT);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT));
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(ENDPOINT));
+
+        second.cancelled();
+        CircuitBreaker.Call third = breaker.acquire(ENDPOINT);
+        first.completed(201, null);
+        third.completed(200, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT));
+
+        String prefix = ENDPOINT + " ";
+        assertEquals(Arrays.asList(
+            prefix + "CLOSED->OPEN", prefix + "OPEN->HALF_OPEN", prefix + "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    public void testSlowCallsOpenTheCircuitAndFailedTrialsReopenIt() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 4; i++) {
+            CircuitBreaker.Call call = breaker.acquire(ENDPOINT);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(i < 2 ? 1500 : 10));
+            call.completed(200, null);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        breaker.acquire(ENDPOINT).completed(500, null);
+        breaker.acquire(ENDPOINT).completed(200, null);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+        assertEquals(3, transitions.size());
+        assertTrue(transitions.get(2).endsWith("HALF_OPEN->OPEN"));
+    }
+
+    @Test
+    public void testRequestsWhichFailToStartCountAsFailures() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        NotificationHub hub = new NotificationHub(
+            "Endpoint=sb://" + ENDPOINT + "/;SharedAccessKeyName=Full;SharedAccessKey=key", "hub",
+            new HttpClientTransport(new FailingHttpAsyncClient()));
+        hub.setCircuitBreaker(breaker);
+
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        FutureCallback<NotificationOutcome> callback = new FutureCallback<NotificationOutcome>() {
+            @Override
+            public void completed(NotificationOutcome result) {
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                failures.add(ex);
+            }
+
+            @Override
+            public void cancelled() {
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            hub.sendNotificationAsync(Notification.createFcmV1Notification("{}"), callback);
+        }
+
+        assertEquals(4, failures.size());
+        assertTrue(failures.get(0) instanceof IllegalStateException);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+    }
+
+    // A client which cannot start any request, such as one whose I/O reactor was shut down
+    private static class FailingHttpAsyncClient extends CloseableHttpAsyncClient {
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public IOReactorStatus getStatus() {
+            return IOReactorStatus.ACTIVE;
+        }
+
+        @Override
+        public void awaitShutdown(TimeValue waitTime) {
+        }
+
+        @Override
+        public void initiateShutdown() {
+        }
+
+        @Override
+        protected <T> Future<T> doExecute(
+            HttpHost target,
+            AsyncRequestProducer requestProducer,
+            AsyncResponseConsumer<T> responseConsumer,
+            HandlerFactory<AsyncPushConsumer> pushHandlerFactory,
+            HttpContext context,
+            FutureCallback<T> callback) {
+            throw new IllegalStateException("The client cannot start requests.");
+        }
+
+        @Override
+        public void register(String hostname, String uriPattern, Supplier<AsyncPushConsumer> supplier) {
+        }
+
+        @Override
+        public void close(CloseMode closeMode) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Test;
+
+public class ExponentialBackoffRetryStrategyTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testBackoffDoublesUpToMaxDelay() {
+        ExponentialBackoffRetryStrategy strategy = ExponentialBackoffRetryStrategy.builder()
+            .setMaxRetries(10)
+            .setBaseDelay(TimeValue.ofMilliseconds(100))
+            .setMaxDelay(TimeValue.ofMilliseconds(1000))
+            .setJitter(ExponentialBackoffRetryStrategy.Jitter.NONE)
+            .disableRetryBudget()
+            .build();
+        HttpResponse unavailable = new BasicHttpResponse(503);
+        HttpClientContext context = HttpClientContext.create();
+
+        long[] expected = { 100, 200, 400, 800, 1000, 1000 };
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(strategy.retryRequest(unavailable, i + 1, context));
+            assertEquals(TimeValue.ofMilliseconds(expected[i]), strategy.getRetryInterval(unavailable, i + 1, context));
+        }
+        assertEquals(1000, strategy.getBackoffMillis(64));
+        assertFalse(strategy.retryRequest(new BasicHttpResponse(400), 1, context));
+
+        HttpResponse throttled = new BasicHttpResponse(429);
+        throttled.setHeader("Retry-After", "7");
+        assertTrue(strategy.retryRequest(throttled, 1, context));
+        assertEquals(TimeValue.ofSeconds(7), strategy.getRetryInterval(throttled, 1, context));
+    }
+
+    @Test
+    public void testJitterStaysWithinBounds() {
+        for (ExponentialBackoffRetryStrategy.Jitter jitter : new ExponentialBackoffRetryStrategy.Jitter[] {
+            ExponentialBackoffRetryStrategy.Jitter.FULL, ExponentialBackoffRetryStrategy.Jitter.DECORRELATED }) {
+            ExponentialBackoffRetryStrategy strategy = ExponentialBackoffRetryStrategy.builder()
+                .setMaxRetries(5)
+                .setBaseDelay(TimeValue.ofMilliseconds(100))
+                .setMaxDelay(TimeValue.ofMilliseconds(2000))
+                .setJitter(jitter)
+                .disableRetryBudget()
+                .build();
+            HttpResponse unavailable = new BasicHttpResponse(503);
+
+            for (int request = 0; request < 200; request++) {
+                HttpClientContext context = HttpClientContext.create();
+                long previous = 100;
+                for (int i = 1; i <= 5; i++) {
+                    assertTrue(strategy.retryRequest(unavailable, i, context));
+                    long delay = strategy.getRetryInterval(unavailable, i, context).toMilliseconds();
+                    if (jitter == ExponentialBackoffRetryStrategy.Jitter.FULL) {
+                        assertTrue(delay >= 0 && delay <= strategy.getBackoffMillis(i));
+                    } else {
+                        assertTrue(delay >= 100 && delay <= Math.min(2000, previous * 3));
+                        previous = delay;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRetryBudgetLimitsRetries() {
+        ExponentialBackoffRetryStrategy strategy = ExponentialBackoffRetryStrategy.builder()
+            .setRetryBudget(0.5, 1)
+            .setNanoClock(clock::get)
+            .build();
+        HttpResponse unavailable = new BasicHttpResponse(503);
+
+        // Four requests earn two retries, on top of the reserve of one a second
+        for (int i = 0; i < 4; i++) {
+            strategy.retryRequest(new BasicHttpResponse(200), 1, HttpClientContext.create());
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(strategy.retryRequest(unavailable, 2, HttpClientContext.create()));
+        }
+        assertFalse(strategy.retryRequest(unavailable, 2, HttpClientContext.create()));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(strategy.retryRequest(unavailable, 2, HttpClientContext.create()));
+        assertFalse(strategy.retryRequest(unavailable, 2, HttpClientContext.create()));
+    }
+
+    @Test
+    public void testDeadlineStopsRetries() {
+        ExponentialBackoffRetryStrategy strategy = ExponentialBackoffRetryStrategy.builder()
+            .setMaxRetries(10)
+            .setBaseDelay(TimeValue.ofMilliseconds(100))
+            .setJitter(ExponentialBackoffRetryStrategy.Jitter.NONE)
+            .setDeadline(TimeValue.ofSeconds(1))
+            .disableRetryBudget()
+            .setNanoClock(clock::get)
+            .build();
+        HttpResponse unavailable = new BasicHttpResponse(503);
+        HttpClientContext context = HttpClientContext.create();
+
+        assertTrue(strategy.retryRequest(unavailable, 1, context));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(strategy.retryRequest(unavailable, 2, context));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        // The third retry would start 400 milliseconds later, past the deadline
+        assertFalse(strategy.retryRequest(unavailable, 3, context));
+    }
+
+    @Test
+    public void testBasicRetryStrategyKeepsMilliseconds() {
+        BasicRetryStrategy strategy = new BasicRetryStrategy(
+            3, TimeValue.ofMilliseconds(1500), new ArrayList<>(), Collections.singletonList(503));
+        for (int i = 0; i < 100; i++) {
+            long delay = strategy.getRetryInterval(new BasicHttpResponse(503), 1, HttpClientContext.create()).toMilliseconds();
+            assertTrue(delay >= 1500 && delay <= 1620);
+        }
+    }
+}
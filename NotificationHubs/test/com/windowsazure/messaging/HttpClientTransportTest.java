@@ -0,0 +1,54 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HttpClientTransportTest {
+    private static final String CONNECTION_STRING = "Endpoint=sb://test-namespace.servicebus.windows.net/;SharedAccessKeyName=DefaultFullSharedAccessSignature;SharedAccessKey=JHadkDHkdhi74jaHdakhy/rZ6KEdfhasYdahO8JOx/1sZXTUlc=";
+    private static final String HUB_NAME = "test-hub";
+
+    @Test
+    public void testDefaultTransportIsShared() {
+        NotificationHub hub = new NotificationHub(CONNECTION_STRING, HUB_NAME);
+        assertSame(HttpClientTransport.shared(), hub.getTransport());
+        assertTrue(hub.getTransport().isShared());
+    }
+
+    @Test
+    public void testDedicatedTransportLifecycle() {
+        HttpClientTransport transport = HttpClientTransport.builder()
+            .setMaxConnectionsTotal(4)
+            .setMaxConnectionsPerRoute(2)
+            .setIoThreadCount(1)
+            .setConnectTimeout(1000)
+            .build();
+
+        NotificationHub hub = new NotificationHub(CONNECTION_STRING, HUB_NAME, transport);
+        NamespaceManager namespaceManager = new NamespaceManager(CONNECTION_STRING, transport);
+
+        assertSame(transport, hub.getTransport());
+        assertSame(transport, namespaceManager.getTransport());
+        assertFalse(transport.isShared());
+        // The client starts its I/O reactor on a background thread, so it may still be INACTIVE here.
+        assertNotEquals(IOReactorStatus.SHUT_DOWN, transport.getHttpAsyncClient().getStatus());
+
+        transport.close();
+        assertEquals(IOReactorStatus.SHUT_DOWN, transport.getHttpAsyncClient().getStatus());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullClientIsRejected() {
+        new HttpClientTransport(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPoolSize() {
+        HttpClientTransport.builder().setMaxConnectionsPerRoute(0);
+    }
+}
@@ -0,0 +1,111 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class HubRateLimiterTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void testRequestsAreSpacedAfterBurst() {
+        HubRateLimiter limiter = new HubRateLimiter(1, 100, clock::get);
+
+        // 100 milliseconds of burst at 10 milliseconds a request
+        for (int i = 0; i <= 10; i++) {
+            assertEquals(0, limiter.reserve());
+        }
+        assertEquals(10 * MILLI, limiter.reserve());
+        assertEquals(20 * MILLI, limiter.reserve());
+
+        clock.addAndGet(1000 * MILLI);
+        assertEquals(0, limiter.reserve());
+        assertEquals(14, limiter.getRequestCount());
+        assertEquals(2, limiter.getDelayedCount());
+    }
+
+    @Test
+    public void testThrottlingCutsRateOnceAndPauses() {
+        HubRateLimiter limiter = new HubRateLimiter(10, 100, clock::get);
+        HubRateLimiter.Admission first = limiter.admit();
+        HubRateLimiter.Admission second = limiter.admit();
+
+        clock.addAndGet(MILLI);
+        first.responded(429, Duration.ofSeconds(2));
+        second.responded(429, null);
+        assertEquals(75, limiter.getRate(), 1e-9);
+        assertEquals(2, limiter.getThrottledCount());
+        assertEquals(Duration.ofSeconds(2), limiter.getPauseRemaining());
+
+        // Requests wait out the pause and are spaced at the new rate after it
+        long pause = Duration.ofSeconds(2).toNanos();
+        assertEquals(pause, limiter.reserve());
+        assertEquals(pause + 1_000_000_000L / 75, limiter.reserve());
+
+        // Successes during the pause do not raise the rate
+        limiter.admit().responded(200, null);
+        assertEquals(75, limiter.getRate(), 1e-9);
+
+        clock.addAndGet(pause);
+        assertFalse(limiter.isPaused());
+        limiter.admit().responded(429, null);
+        assertEquals(56.25, limiter.getRate(), 1e-9);
+        for (int i = 0; i < 10; i++) {
+            limiter.admit().responded(429, null);
+        }
+        assertEquals(10, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    public void testRateGrowsBackToMax() {
+        HubRateLimiter limiter = new HubRateLimiter(1, 10, clock::get);
+        limiter.admit().responded(429, null);
+        assertEquals(7.5, limiter.getRate(), 1e-9);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.admit().responded(201, null);
+        }
+        assertEquals(8.5, limiter.getRate(), 1e-9);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.admit().responded(200, null);
+        }
+        assertEquals(10, limiter.getRate(), 1e-9);
+
+        limiter.admit().responded(500, null);
+        assertEquals(10, limiter.getRate(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> new HubRateLimiter(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new HubRateLimiter(10, 5));
+    }
+
+    @Test
+    public void testRetryAfterIsParsedInSecondsOrAsDate() {
+        BasicHttpResponse response = new BasicHttpResponse(429);
+        assertNull(HubRateLimiter.parseRetryAfter(response));
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, "3");
+        assertEquals(Duration.ofSeconds(3), HubRateLimiter.parseRetryAfter(response));
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, DateUtils.formatDate(new Date(System.currentTimeMillis() + 60_000)));
+        Duration retryAfter = HubRateLimiter.parseRetryAfter(response);
+        assertNotNull(retryAfter);
+        assertTrue(retryAfter.getSeconds() > 50 && retryAfter.getSeconds() <= 60);
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, DateUtils.formatDate(new Date(System.currentTimeMillis() - 60_000)));
+        assertNull(HubRateLimiter.parseRetryAfter(response));
+    }
+}
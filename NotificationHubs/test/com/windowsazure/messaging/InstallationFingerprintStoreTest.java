@@ -0,0 +1,104 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class InstallationFingerprintStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] fingerprint(int seed) {
+        byte[] fingerprint = new byte[32];
+        fingerprint[0] = (byte) seed;
+        fingerprint[31] = (byte) (seed >> 8);
+        return fingerprint;
+    }
+
+    @Test
+    public void testFingerprintIgnoresMapOrder() {
+        Installation first = new Installation("123", NotificationPlatform.FcmV1, "token");
+        first.addTemplate("a", new InstallationTemplate("{\"a\":1}"));
+        first.addTemplate("b", new InstallationTemplate("{\"b\":2}"));
+        Installation second = new Installation("123", NotificationPlatform.FcmV1, "token");
+        second.addTemplate("b", new InstallationTemplate("{\"b\":2}"));
+        second.addTemplate("a", new InstallationTemplate("{\"a\":1}"));
+
+        assertArrayEquals(InstallationFingerprints.of(first), InstallationFingerprints.of(second));
+
+        second.setUserId("user");
+        assertFalse(Arrays.equals(InstallationFingerprints.of(first), InstallationFingerprints.of(second)));
+    }
+
+    @Test
+    public void testInMemoryStoreEvictsLeastRecentlyUsedAndExpired() {
+        AtomicLong now = new AtomicLong();
+        InMemoryInstallationFingerprintStore store = new InMemoryInstallationFingerprintStore(2, Duration.ofSeconds(10), now::get);
+        store.put("a", fingerprint(1));
+        store.put("b", fingerprint(2));
+        assertArrayEquals(fingerprint(1), store.get("a"));
+        store.put("c", fingerprint(3));
+
+        assertNull(store.get("b"));
+        assertArrayEquals(fingerprint(1), store.get("a"));
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertNull(store.get("a"));
+        store.remove("c");
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testMappedFileStoreSurvivesReopen() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fingerprints");
+        try (MappedFileInstallationFingerprintStore store = new MappedFileInstallationFingerprintStore(file, 1024, null)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("installation-" + i, fingerprint(i));
+            }
+            store.remove("installation-7");
+        }
+
+        try (MappedFileInstallationFingerprintStore store = new MappedFileInstallationFingerprintStore(file, 1024, null)) {
+            assertArrayEquals(fingerprint(42), store.get("installation-42"));
+            assertNull(store.get("installation-7"));
+            assertNull(store.get("unknown"));
+        }
+
+        // A different capacity clears the file
+        try (MappedFileInstallationFingerprintStore store = new MappedFileInstallationFingerprintStore(file, 2048, null)) {
+            assertNull(store.get("installation-42"));
+        }
+    }
+
+    @Test
+    public void testMappedFileStoreReplacesOldestWhenFull() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        Path file = folder.getRoot().toPath().resolve("small");
+        try (MappedFileInstallationFingerprintStore store = new MappedFileInstallationFingerprintStore(file, 8, Duration.ofSeconds(60), now::get)) {
+            for (int i = 0; i < 8; i++) {
+                now.incrementAndGet();
+                store.put("installation-" + i, fingerprint(i));
+            }
+            now.incrementAndGet();
+            store.put("installation-8", fingerprint(8));
+
+            assertNull(store.get("installation-0"));
+            assertArrayEquals(fingerprint(1), store.get("installation-1"));
+            assertArrayEquals(fingerprint(8), store.get("installation-8"));
+
+            now.addAndGet(60 * 1000);
+            assertNull(store.get("installation-8"));
+        }
+    }
+}
@@ -4,6 +4,7 @@
 
 package com.windowsazure.messaging;
 
+import com.google.gson.GsonBuilder;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
@@ -12,11 +13,13 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class InstallationParseTest {
 
@@ -86,4 +89,30 @@ public class InstallationParseTest {
         assertEquals(expectedResultJson, actualResultJson);
     }
 
+    @Test
+    public void InstallationPlatformAfterFields() {
+        AppleInstallation installation = BaseInstallation.fromJson(
+            "{\"installationId\":\"123\",\"pushChannel\":\"token\",\"tags\":[\"a\"],\"unknown\":{\"x\":[1]},\"platform\":\"Apns\"}");
+        assertEquals("123", installation.getInstallationId());
+        assertEquals("token", installation.getPushChannel());
+        assertEquals(Collections.singletonList("a"), installation.getTags());
+        assertEquals(NotificationPlatform.Apns, installation.getPlatform());
+    }
+
+    @Test
+    public void InstallationToJsonMatchesReflectiveGson() throws IOException {
+        WindowsInstallation installation = BaseInstallation.fromJson(this.getClass().getResourceAsStream("InstallationWnsFull"));
+        installation.addSecondaryTile("tile1", new WnsSecondaryTile());
+        installation.setUserId("user<1>");
+
+        String expected = new GsonBuilder().disableHtmlEscaping().create().toJson(installation);
+        assertEquals(expected, installation.toJson());
+
+        WindowsInstallation roundTripped = BaseInstallation.fromJson(installation.toJson());
+        assertEquals(expected, roundTripped.toJson());
+        assertTrue(roundTripped.getSecondaryTiles().containsKey("tile1"));
+
+        FcmV1Installation fcm = new FcmV1Installation("456", "token", new String[] { "tag1", "tag2" });
+        assertEquals(new GsonBuilder().disableHtmlEscaping().create().toJson(fcm), fcm.toJson());
+    }
 }
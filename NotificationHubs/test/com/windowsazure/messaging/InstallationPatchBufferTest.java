@@ -0,0 +1,178 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class InstallationPatchBufferTest {
+    private final BlockingQueue<Patch> patches = new LinkedBlockingQueue<>();
+    private NotificationHubClient hub;
+
+    private static final class Patch {
+        private final String installationId;
+        private final List<PartialUpdateOperation> operations;
+        private final FutureCallback<Object> callback;
+
+        Patch(String installationId, List<PartialUpdateOperation> operations, FutureCallback<Object> callback) {
+            this.installationId = installationId;
+            this.operations = operations;
+            this.callback = callback;
+        }
+
+        String describe() {
+            return operations.stream()
+                .map(o -> o.getOperation() + " " + o.getPath() + (o.getValue() == null ? "" : " " + o.getValue()))
+                .collect(Collectors.joining(", "));
+        }
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        hub = mock(NotificationHubClient.class);
+        doAnswer(invocation -> {
+            patches.add(new Patch(invocation.getArgument(0), invocation.getArgument(1), (FutureCallback<Object>) invocation.getArguments()[2]));
+            return null;
+        }).when(hub).patchInstallationAsync(anyString(), anyList(), any());
+    }
+
+    private Patch nextPatch() throws InterruptedException {
+        Patch patch = patches.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Expected a patch", patch);
+        return patch;
+    }
+
+    @Test
+    public void testRedundantOperationsAreMerged() throws Exception {
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMinutes(1), 100);
+        CompletableFuture<Void> first = buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+        CompletableFuture<Void> second = buffer.patch("a",
+            new PartialUpdateOperation(UpdateOperationType.Remove, "/tags/x"),
+            new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "y"),
+            new PartialUpdateOperation(UpdateOperationType.Add, "/userId", "u1"),
+            new PartialUpdateOperation(UpdateOperationType.Replace, "/userId", "u2"));
+        buffer.patch("b", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+
+        CompletableFuture<Void> flushed = buffer.flush();
+        Patch patchA = nextPatch();
+        Patch patchB = nextPatch();
+        if (patchA.installationId.equals("b")) {
+            Patch swap = patchA;
+            patchA = patchB;
+            patchB = swap;
+        }
+        assertEquals("Remove /tags/x, Add /tags y, Add /userId u2", patchA.describe());
+        assertEquals("Add /tags x", patchB.describe());
+
+        patchA.callback.completed(null);
+        second.get(5, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+        assertFalse(flushed.isDone());
+
+        patchB.callback.completed(null);
+        flushed.get(5, TimeUnit.SECONDS);
+        assertEquals(0, buffer.getPendingInstallationCount());
+        buffer.close();
+    }
+
+    @Test
+    public void testFlushCompletesAfterPatchIsSettled() throws Exception {
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMinutes(1), 100);
+        buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+
+        // The callers' futures complete with the PATCH, but the flush waits for the buffer too
+        CompletableFuture<Integer> pendingWhenFlushed = buffer.flush()
+            .thenApply(ignored -> buffer.getPendingInstallationCount());
+        nextPatch().callback.completed(null);
+        assertEquals(Integer.valueOf(0), pendingWhenFlushed.get(5, TimeUnit.SECONDS));
+        buffer.close();
+    }
+
+    @Test
+    public void testOrderIsKeptAcrossRelatedPaths() throws Exception {
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMinutes(1), 100);
+        buffer.patch("a",
+            new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"),
+            new PartialUpdateOperation(UpdateOperationType.Replace, "/tags", "[]"),
+            new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+        buffer.flush();
+
+        assertEquals("Add /tags x, Replace /tags [], Add /tags x", nextPatch().describe());
+    }
+
+    @Test
+    public void testFlushesOnSizeAndLinger() throws Exception {
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMillis(50), 2);
+        buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"),
+            new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "y"));
+        assertEquals("Add /tags x, Add /tags y", patches.poll().describe());
+
+        buffer.patch("b", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "z"));
+        assertNull(patches.poll());
+        assertEquals("Add /tags z", nextPatch().describe());
+    }
+
+    @Test
+    public void testOnePatchInFlightPerInstallation() throws Exception {
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMinutes(1), 100);
+        buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+        buffer.flush();
+        Patch first = nextPatch();
+
+        CompletableFuture<Void> second = buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "y"));
+        CompletableFuture<Void> flushed = buffer.flush();
+        assertNull(patches.poll(100, TimeUnit.MILLISECONDS));
+
+        first.callback.completed(null);
+        Patch next = nextPatch();
+        assertEquals("Add /tags y", next.describe());
+
+        next.callback.failed(new NotificationHubsException("bad request", 400, false));
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("Expected the patch to fail");
+        } catch (ExecutionException e) {
+            assertEquals(400, ((NotificationHubsException) e.getCause()).httpStatusCode());
+        }
+        assertTrue(flushed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testCloseFlushesPendingOperations() throws Exception {
+        doAnswer(invocation -> {
+            ((FutureCallback<?>) invocation.getArguments()[2]).completed(null);
+            return null;
+        }).when(hub).patchInstallationAsync(anyString(), anyList(), any());
+
+        InstallationPatchBuffer buffer = new InstallationPatchBuffer(hub, Duration.ofMinutes(1), 100);
+        CompletableFuture<Void> future = buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "x"));
+        buffer.close();
+
+        assertTrue(future.isDone());
+        verify(hub).patchInstallationAsync(eq("a"), anyList(), any());
+        try {
+            buffer.patch("a", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "y"));
+            fail("Expected the closed buffer to reject operations");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import com.google.gson.GsonBuilder;
+import org.apache.hc.client5.http.entity.mime.FormBodyPart;
+import org.apache.hc.client5.http.entity.mime.FormBodyPartBuilder;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.entity.mime.StringBody;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MultipartBatchEntityProducerTest {
+
+    @Test
+    public void testMatchesMultipartEntityBuilder() throws IOException {
+        Notification notification = Notification.createFcmV1Notification("{\"message\":{\"data\":{\"text\":\"café\"}}}");
+        List<String> handles = new ArrayList<>(Arrays.asList(
+            "plain", "quote\"back\\slash", "tab\tnew\nline\u0001", "ünicode-中-😀", "sep <html>&'"));
+        for (int i = 0; i < 2000; i++) {
+            handles.add("handle-" + i);
+        }
+
+        MultipartBatchEntityProducer producer = new MultipartBatchEntityProducer(notification, handles);
+        byte[] expected = buildWithMultipartEntityBuilder(notification, handles);
+        byte[] actual = produce(producer, 100);
+
+        assertEquals(expected.length, producer.getContentLength());
+        assertArrayEquals(expected, actual);
+        assertEquals("multipart/mixed; boundary=nh-batch-multipart-boundary", producer.getContentType());
+    }
+
+    @Test
+    public void testIsRepeatable() throws IOException {
+        Notification notification = Notification.createFcmV1Notification("{}");
+        MultipartBatchEntityProducer producer = new MultipartBatchEntityProducer(notification, Arrays.asList("a", "b"));
+
+        byte[] first = produce(producer, 7);
+        producer.releaseResources();
+        byte[] second = produce(producer, 4096);
+
+        assertTrue(producer.isRepeatable());
+        assertArrayEquals(first, second);
+    }
+
+    private static byte[] buildWithMultipartEntityBuilder(Notification notification, List<String> handles) throws IOException {
+        FormBodyPart notificationPart = FormBodyPartBuilder.create()
+            .setName("notification")
+            .addField("Content-Disposition", "inline; name=notification")
+            .setBody(new StringBody(notification.getBody(), notification.getContentType()))
+            .build();
+
+        String deviceHandlesJson = new GsonBuilder().disableHtmlEscaping().create().toJson(handles);
+        FormBodyPart devicesPart = FormBodyPartBuilder.create()
+            .setName("devices")
+            .addField("Content-Disposition", "inline; name=devices")
+            .setBody(new StringBody(deviceHandlesJson, ContentType.APPLICATION_JSON))
+            .build();
+
+        HttpEntity entity = MultipartEntityBuilder.create()
+            .setMimeSubtype("mixed")
+            .setBoundary("nh-batch-multipart-boundary")
+            .addPart(notificationPart)
+            .addPart(devicesPart)
+            .build();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        entity.writeTo(stream);
+        return stream.toByteArray();
+    }
+
+    // Drains the producer through a channel that accepts at most writeSize bytes per call.
+    private static byte[] produce(MultipartBatchEntityProducer producer, int writeSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean[] ended = new boolean[1];
+        DataStreamChannel channel = new DataStreamChannel() {
+            @Override
+            public void requestOutput() {
+            }
+
+            @Override
+            public int write(ByteBuffer src) {
+                int count = Math.min(writeSize, src.remaining());
+                byte[] chunk = new byte[count];
+                src.get(chunk);
+                output.write(chunk, 0, count);
+                return count;
+            }
+
+            @Override
+            public void endStream() {
+                ended[0] = true;
+            }
+
+            @Override
+            public void endStream(List<? extends Header> trailers) {
+                ended[0] = true;
+            }
+        };
+
+        while (!ended[0]) {
+            producer.produce(channel);
+        }
+        return output.toByteArray();
+    }
+}
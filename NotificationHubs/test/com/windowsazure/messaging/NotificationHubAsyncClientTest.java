@@ -0,0 +1,136 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class NotificationHubAsyncClientTest {
+    private static final String EXECUTOR_THREAD = "continuations";
+
+    private final List<FutureCallback<NotificationOutcome>> pendingSends = new ArrayList<>();
+    private final List<FutureCallback<Object>> pendingDeletes = new ArrayList<>();
+    private NotificationHubClient hub;
+    private ExecutorService executor;
+    private NotificationHubAsyncClient client;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        hub = mock(NotificationHubClient.class);
+        doAnswer(invocation -> {
+            pendingSends.add((FutureCallback<NotificationOutcome>) invocation.getArguments()[2]);
+            return null;
+        }).when(hub).sendNotificationAsync(any(Notification.class), anyString(), any());
+        doAnswer(invocation -> {
+            pendingDeletes.add((FutureCallback<Object>) invocation.getArguments()[1]);
+            return null;
+        }).when(hub).deleteInstallationAsync(anyString(), any());
+
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, EXECUTOR_THREAD));
+        client = new NotificationHubAsyncClient(hub, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testContinuationsRunOnExecutor() throws Exception {
+        CompletableFuture<String> thread = client.sendNotification(Notification.createFcmV1Notification("{}"), "tag")
+            .thenApply(outcome -> Thread.currentThread().getName() + ":" + outcome.getNotificationId());
+        assertFalse(thread.isDone());
+
+        // Complete on this thread, as the I/O reactor would
+        pendingSends.get(0).completed(new NotificationOutcome("tracking", "id"));
+        assertEquals(EXECUTOR_THREAD + ":id", thread.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailurePropagatesException() throws Exception {
+        CompletableFuture<NotificationOutcome> future = client.sendNotification(Notification.createFcmV1Notification("{}"), "tag");
+        NotificationHubsException error = new NotificationHubsException("throttled", 429, true);
+        pendingSends.get(0).failed(error);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the future to fail");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test
+    public void testVoidOperationCompletesWithNull() throws Exception {
+        CompletableFuture<Void> future = client.deleteInstallation("installation-1");
+        pendingDeletes.get(0).completed("ignored");
+        assertNull(future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancellationCancelsFuture() throws Exception {
+        CompletableFuture<Void> future = client.deleteInstallation("installation-1");
+        pendingDeletes.get(0).cancelled();
+
+        executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testCancellingFutureCancelsOperation() throws Exception {
+        CompletableFuture<NotificationOutcome> future = client.sendNotification(Notification.createFcmV1Notification("{}"), "tag");
+        assertTrue(future.cancel(true));
+
+        CancellableCallback<NotificationOutcome> callback = (CancellableCallback<NotificationOutcome>) pendingSends.get(0);
+        assertTrue(callback.isDone());
+        assertFalse(callback.cancel());
+    }
+
+    @Test
+    public void testDeadlineFailsFuture() throws Exception {
+        CompletableFuture<Void> future = client.withDeadline(Duration.ofMillis(50)).deleteInstallation("installation-1");
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the future to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertNull(client.getDeadline());
+    }
+
+    @Test
+    public void testExceptionStartingOperationFailsFuture() {
+        IllegalArgumentException error = new IllegalArgumentException("installationId cannot be null");
+        doThrow(error).when(hub).getNotificationTelemetryAsync(any(), any());
+
+        CompletableFuture<NotificationTelemetry> future = client.getNotificationTelemetry(null);
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.join();
+            fail("Expected the future to fail");
+        } catch (RuntimeException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+}
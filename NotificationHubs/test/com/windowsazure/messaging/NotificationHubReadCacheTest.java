@@ -0,0 +1,78 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class NotificationHubReadCacheTest {
+    private static byte[] body(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEntriesExpireAndRevalidate() {
+        AtomicLong now = new AtomicLong();
+        NotificationHubReadCache cache = new NotificationHubReadCache(10, Duration.ofSeconds(10), now::get);
+        String key = NotificationHubReadCache.registrationKey("1");
+
+        NotificationHubReadCache.Lookup miss = cache.lookup(key);
+        assertFalse(miss.isFresh());
+        assertNull(miss.getBody());
+        cache.put(key, miss, body("a"), "1");
+
+        assertTrue(cache.lookup(key).isFresh());
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        NotificationHubReadCache.Lookup stale = cache.lookup(key);
+        assertFalse(stale.isFresh());
+        assertEquals("1", stale.getEtag());
+
+        cache.revalidated(key, stale);
+        NotificationHubReadCache.Lookup hit = cache.lookup(key);
+        assertTrue(hit.isFresh());
+        assertArrayEquals(body("a"), hit.getBody());
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        NotificationHubReadCache cache = new NotificationHubReadCache(2, Duration.ofHours(1));
+        for (String id : new String[] { "a", "b" }) {
+            String key = NotificationHubReadCache.installationKey(id);
+            cache.put(key, cache.lookup(key), body(id), null);
+        }
+        cache.lookup(NotificationHubReadCache.installationKey("a"));
+        String key = NotificationHubReadCache.installationKey("c");
+        cache.put(key, cache.lookup(key), body("c"), null);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.lookup(NotificationHubReadCache.installationKey("a")).isFresh());
+        assertFalse(cache.lookup(NotificationHubReadCache.installationKey("b")).isFresh());
+    }
+
+    @Test
+    public void testFetchStartedBeforeInvalidationIsNotStored() {
+        NotificationHubReadCache cache = new NotificationHubReadCache(10, Duration.ofHours(1));
+        String key = NotificationHubReadCache.installationKey("1");
+
+        NotificationHubReadCache.Lookup before = cache.lookup(key);
+        cache.invalidate(key);
+        cache.put(key, before, body("old"), null);
+        assertEquals(0, cache.size());
+
+        cache.put(key, cache.lookup(key), body("new"), null);
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
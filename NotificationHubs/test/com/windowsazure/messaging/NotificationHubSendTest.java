@@ -4,6 +4,8 @@ import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
 import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
@@ -14,11 +16,22 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -39,6 +52,12 @@ public class NotificationHubSendTest {
             consumer.accept(mock(SimpleHttpResponse.class));
             return invocationOnMock.getMock();
         }).when(hub).executeRequest(any(), any(), any(), any());
+        doAnswer(invocationOnMock -> {
+            Object[] args = invocationOnMock.getArguments();
+            Consumer<SimpleHttpResponse> consumer = (Consumer<SimpleHttpResponse>) args[4];
+            consumer.accept(mock(SimpleHttpResponse.class));
+            return invocationOnMock.getMock();
+        }).when(hub).executeRequest(any(), any(AsyncEntityProducer.class), any(), any(), any());
     }
 
     @Test
@@ -47,15 +66,132 @@ public class NotificationHubSendTest {
         NotificationOutcome o = hub.sendDirectNotification(n, Arrays.asList("Foo", "Bar"));
 
         ArgumentCaptor<SimpleHttpRequest> requestCaptor = ArgumentCaptor.forClass(SimpleHttpRequest.class);
-        verify(hub).executeRequest(requestCaptor.capture(), any(), any(), any());
+        ArgumentCaptor<AsyncEntityProducer> entityCaptor = ArgumentCaptor.forClass(AsyncEntityProducer.class);
+        verify(hub).executeRequest(requestCaptor.capture(), entityCaptor.capture(), any(), any(), any());
 
         SimpleHttpRequest request = requestCaptor.getValue();
         String uriPath = request.getUri().getPath();
         String method = request.getMethod();
-        String boundary = request.getContentType().getParameter("boundary");
+        String boundary = ContentType.parse(entityCaptor.getValue().getContentType()).getParameter("boundary");
 
         assertEquals("/" + HUB_NAME +"/messages/$batch", uriPath);
         assertEquals("POST", method);
         assertEquals("nh-batch-multipart-boundary", boundary);
     }
+
+    @Test
+    public void testDirectBatchSendIsChunked() throws NotificationHubsException {
+        List<String> handles = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            handles.add("handle" + i);
+        }
+
+        Notification n = Notification.createFcmNotification(GCMBODYTEMPLATE);
+        AggregateNotificationOutcome outcome = hub.sendDirectNotificationBatch(n, handles);
+
+        verify(hub, times(3)).executeRequest(any(), any(AsyncEntityProducer.class), any(), any(), any());
+        assertTrue(outcome.isSuccessful());
+        assertEquals(3, outcome.getParts().size());
+        assertEquals(1000, outcome.getParts().get(0).getSize());
+        assertEquals(1000, outcome.getParts().get(1).getSize());
+        assertEquals(500, outcome.getParts().get(2).getSize());
+        // Successful batches do not hold on to their handles
+        assertTrue(outcome.getParts().get(2).getTargets().isEmpty());
+        assertNull(outcome.getError());
+    }
+
+    @Test
+    public void testDirectBatchSendKeepsSentBatchesWhenHandlesFail() throws NotificationHubsException {
+        // The second batch fails, and the handles fail while the third is read
+        AtomicInteger requests = new AtomicInteger();
+        doAnswer(invocationOnMock -> {
+            Object[] args = invocationOnMock.getArguments();
+            FutureCallback<NotificationOutcome> callback = (FutureCallback<NotificationOutcome>) args[2];
+            if (requests.incrementAndGet() == 2) {
+                callback.failed(new NotificationHubsException("Service unavailable", 503, true));
+            } else {
+                ((Consumer<SimpleHttpResponse>) args[4]).accept(mock(SimpleHttpResponse.class));
+            }
+            return invocationOnMock.getMock();
+        }).when(hub).executeRequest(any(), any(AsyncEntityProducer.class), any(), any(), any());
+
+        Iterator<String> source = IntStream.range(0, 2500).mapToObj(i -> "handle" + i).iterator();
+        Iterable<String> handles = () -> new Iterator<String>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (++read > 2000) {
+                    throw new IllegalStateException("The handle store went away");
+                }
+                return source.next();
+            }
+        };
+
+        AggregateNotificationOutcome outcome = hub.sendDirectNotificationBatch(Notification.createFcmNotification(GCMBODYTEMPLATE), handles);
+
+        assertFalse(outcome.isSuccessful());
+        assertTrue(outcome.getError() instanceof IllegalStateException);
+        assertEquals(2, outcome.getParts().size());
+        assertEquals(1, outcome.getTrackingIds().size());
+        assertTrue(outcome.getParts().get(0).isSuccessful());
+        assertTrue(outcome.getParts().get(0).getTargets().isEmpty());
+
+        AggregateNotificationOutcome.Part failed = outcome.getFailures().get(0);
+        assertEquals(1, failed.getIndex());
+        assertEquals(1000, failed.getTargets().size());
+        assertEquals("handle1000", failed.getTargets().get(0));
+    }
+
+    @Test
+    public void testPreparedNotificationSendsSameRequest() throws NotificationHubsException {
+        Notification n = Notification.createAppleNotification("{\"aps\":{\"alert\":\"Caf\u00e9\"}}");
+        n.getHeaders().put("apns-priority", "5");
+        n.getHeaders().put("apns-push-type", "alert");
+        PreparedNotification prepared = n.prepare();
+        Date scheduledTime = new Date(1409587066778L);
+
+        hub.scheduleNotification(n, "sports && !football", scheduledTime);
+        hub.scheduleNotification(prepared, "sports && !football", scheduledTime);
+
+        ArgumentCaptor<SimpleHttpRequest> requestCaptor = ArgumentCaptor.forClass(SimpleHttpRequest.class);
+        verify(hub, times(2)).executeRequest(requestCaptor.capture(), any(), any(), any());
+        SimpleHttpRequest expected = requestCaptor.getAllValues().get(0);
+        SimpleHttpRequest actual = requestCaptor.getAllValues().get(1);
+
+        assertEquals("2014-09-01T15:57:46", actual.getFirstHeader("ServiceBusNotification-ScheduleTime").getValue());
+        assertEquals("sports && !football", actual.getFirstHeader("ServiceBusNotification-Tags").getValue());
+        assertEquals("5", actual.getFirstHeader("apns-priority").getValue());
+        assertEquals(expected.getHeaders().length, actual.getHeaders().length);
+        for (Header header : expected.getHeaders()) {
+            if (!"TrackingId".equals(header.getName())) {
+                assertEquals(header.getName(), header.getValue(), actual.getFirstHeader(header.getName()).getValue());
+            }
+        }
+        assertEquals(expected.getBody().getContentType().toString(), actual.getBody().getContentType().toString());
+        assertArrayEquals(expected.getBody().getBodyBytes(), actual.getBody().getBodyBytes());
+    }
+
+    @Test
+    public void testPreparedNotificationIsImmutable() {
+        Notification n = Notification.createFcmV1Notification(GCMBODYTEMPLATE);
+        PreparedNotification prepared = n.prepare();
+
+        n.setBody("changed");
+        n.getHeaders().put("X-Changed", "true");
+
+        assertEquals(GCMBODYTEMPLATE, prepared.getBody());
+        assertEquals(1, prepared.getHeaders().size());
+        assertEquals(prepared, prepared.prepare());
+        assertThrows(UnsupportedOperationException.class, () -> prepared.setBody("changed"));
+        assertThrows(UnsupportedOperationException.class, () -> prepared.getHeaders().put("X-Changed", "true"));
+
+        Notification raw = Notification.createWindowsRawNotification("caf\u00e9");
+        assertThrows(IllegalArgumentException.class, raw::prepare);
+    }
 }
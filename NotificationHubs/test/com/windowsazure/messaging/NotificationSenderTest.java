@@ -0,0 +1,87 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class NotificationSenderTest {
+    private final List<FutureCallback<NotificationOutcome>> pending = new ArrayList<>();
+    private NotificationHubClient hub;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        hub = mock(NotificationHubClient.class);
+        doAnswer(invocation -> {
+            pending.add((FutureCallback<NotificationOutcome>) invocation.getArguments()[3]);
+            return null;
+        }).when(hub).scheduleNotificationAsync(any(Notification.class), anyString(), any(), any());
+    }
+
+    @Test
+    public void testWindowRejectsWhenFull() throws InterruptedException {
+        NotificationSender sender = new NotificationSender(hub, 2);
+        Notification n = Notification.createFcmV1Notification("{}");
+        FutureCallback<NotificationOutcome> callback = mock(FutureCallback.class);
+
+        assertTrue(sender.trySubmit(n, "tag1", callback));
+        assertTrue(sender.trySubmit(n, "tag2", callback));
+        assertFalse(sender.trySubmit(n, "tag3", callback));
+        assertEquals(2, sender.getInFlightCount());
+
+        pending.get(0).completed(new NotificationOutcome("tracking", "id"));
+        assertEquals(1, sender.getInFlightCount());
+        assertTrue(sender.trySubmit(n, "tag3", callback));
+        verify(callback).completed(any());
+    }
+
+    @Test
+    public void testThrottlingShrinksWindowOncePerEpoch() throws InterruptedException {
+        NotificationSender sender = new NotificationSender(hub, 1, 8);
+        Notification n = Notification.createFcmV1Notification("{}");
+        FutureCallback<NotificationOutcome> callback = mock(FutureCallback.class);
+
+        for (int i = 0; i < 8; i++) {
+            sender.submit(n, "tag", callback);
+        }
+
+        pending.get(0).failed(new NotificationHubsException("throttled", 429, true));
+        pending.get(1).failed(new NotificationHubsException("throttled", 429, true));
+        assertEquals(4, sender.getConcurrencyLimit());
+        assertEquals(2, sender.getThrottledCount());
+
+        for (int i = 2; i < 8; i++) {
+            pending.get(i).completed(new NotificationOutcome("tracking", "id"));
+        }
+        assertEquals(5, sender.getConcurrencyLimit());
+        sender.awaitCompletion();
+        verify(callback, times(2)).failed(any());
+    }
+
+    @Test
+    public void testRetryAfterPausesSubmissions() throws InterruptedException {
+        NotificationSender sender = new NotificationSender(hub, 4);
+        Notification n = Notification.createFcmV1Notification("{}");
+        FutureCallback<NotificationOutcome> callback = mock(FutureCallback.class);
+
+        sender.submit(n, "tag", callback);
+        pending.get(0).failed(new NotificationHubsException("throttled", 429, true, Duration.ofSeconds(30)));
+
+        assertFalse(sender.trySubmit(n, "tag", null, 50, TimeUnit.MILLISECONDS, callback));
+        assertEquals(0, sender.getInFlightCount());
+    }
+}
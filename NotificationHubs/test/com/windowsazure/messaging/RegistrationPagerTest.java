@@ -0,0 +1,74 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class RegistrationPagerTest {
+
+    @Test
+    public void testFollowsContinuationTokensAndPrefetches() {
+        List<String> requestedTokens = new ArrayList<>();
+        RegistrationPager pager = new RegistrationPager((continuationToken, callback) -> {
+            requestedTokens.add(continuationToken);
+            if (continuationToken == null) {
+                callback.completed(page("page2", "r1", "r2"));
+            } else if (continuationToken.equals("page2")) {
+                callback.completed(page("page3"));
+            } else {
+                callback.completed(page(null, "r3"));
+            }
+        });
+
+        Iterator<Registration> iterator = pager.iterator();
+        assertTrue(iterator.hasNext());
+        assertEquals(Arrays.asList(null, "page2"), requestedTokens);
+
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(r -> ids.add(r.getRegistrationId()));
+        assertEquals(Arrays.asList("r1", "r2", "r3"), ids);
+        assertEquals(Arrays.asList(null, "page2", "page3"), requestedTokens);
+
+        assertEquals(3, pager.stream().map(Registration::getRegistrationId).collect(Collectors.toList()).size());
+    }
+
+    @Test
+    public void testFetchErrorIsThrownFromIterator() {
+        NotificationHubsException error = new NotificationHubsException("not found", 404, false);
+        RegistrationPager pager = new RegistrationPager((continuationToken, callback) -> {
+            if (continuationToken == null) {
+                callback.completed(page("page2", "r1"));
+            } else {
+                callback.failed(error);
+            }
+        });
+
+        Iterator<Registration> iterator = pager.iterator();
+        assertEquals("r1", iterator.next().getRegistrationId());
+        try {
+            iterator.hasNext();
+            fail("Expected the page error to be thrown");
+        } catch (RuntimeException e) {
+            assertSame(error, e.getCause());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    private static CollectionResult page(String continuationToken, String... registrationIds) {
+        List<Registration> registrations = new ArrayList<>();
+        for (String id : registrationIds) {
+            registrations.add(new FcmV1Registration(id, "token-" + id));
+        }
+        return new CollectionResult(registrations, continuationToken);
+    }
+}
@@ -352,4 +352,26 @@ public class RegistrationParseTest {
         assertEquals(4, coll.getRegistrations().size());
     }
 
+    @Test
+    public void testParseRegistrationFeedKeepsTypesAndHeaders() throws IOException, SAXException {
+        InputStream xml = this.getClass().getResourceAsStream("RegistrationCollection");
+
+        CollectionResult coll = Registration.parseRegistrations(xml);
+
+        assertEquals(WindowsRegistration.class, coll.getRegistrations().get(0).getClass());
+        WindowsTemplateRegistration template = (WindowsTemplateRegistration) coll.getRegistrations().get(1);
+        assertEquals(WNSBODYTEMPLATE, template.getBodyTemplate());
+        assertEquals(2, template.getHeaders().size());
+        assertEquals("wns/tile", template.getHeaders().get("X-WNS-Type"));
+        assertEquals(AppleRegistration.class, coll.getRegistrations().get(2).getClass());
+        assertEquals(DEVICETOKEN, ((AppleRegistration) coll.getRegistrations().get(2)).getDeviceToken());
+    }
+
+    @Test(expected = SAXException.class)
+    public void testParseUnknownRegistrationType() throws IOException, SAXException {
+        String xml = "<entry><content><RegistrationDescription i:type=\"UnknownRegistrationDescription\" "
+            + "xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\"><RegistrationId>1</RegistrationId>"
+            + "</RegistrationDescription></content></entry>";
+        Registration.parse(xml.getBytes("UTF-8"));
+    }
 }
@@ -0,0 +1,89 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class RegistrationXmlTest {
+    private static final URI CHANNELURI = URI.create("https://bn1.notify.windows.com/?token=AgYAAADYej13M9aml3liD9nlfJw6FEgGXDvYmKDOfOwcS2ekCUm7hIrsJhGqkvU35pmJHFmXVbeUKJawqNHQKCtNJaI4z3uf3Gn04nrdSMUgzFapd%2fXYwzREnjz6%2fk9Pl6cy%2bdI%3d");
+    private static final String WNSBODYTEMPLATE = "<toast><visual><binding template=\"ToastText01\"><text id=\"1\">$(message)</text></binding></visual></toast>";
+    private static final String DEVICETOKEN = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    @Test
+    public void testXmlBytesRoundTrip() throws IOException, SAXException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-WNS-Type", "wns/toast");
+        headers.put("X-WNS-TTL", "60");
+        WindowsTemplateRegistration registration = new WindowsTemplateRegistration(CHANNELURI, WNSBODYTEMPLATE, headers);
+        registration.getTags().add("myTag");
+        registration.getTags().add("myOtherTag");
+
+        byte[] xml = registration.getXmlBytes();
+        assertArrayEquals(registration.getXml().getBytes(StandardCharsets.UTF_8), xml);
+
+        WindowsTemplateRegistration parsed = Registration.parse(xml);
+        assertEquals(CHANNELURI, parsed.getChannelUri());
+        assertEquals(WNSBODYTEMPLATE, parsed.getBodyTemplate());
+        assertEquals(headers, parsed.getHeaders());
+        assertEquals(registration.getTags(), parsed.getTags());
+    }
+
+    @Test
+    public void testXmlBytesEncodeUnicode() throws IOException, SAXException {
+        String tag = "café_中文_😀";
+        String template = "{\"aps\":{\"alert\":\"¡Hola $(name)! 🎉\"}}";
+        AppleTemplateRegistration registration = new AppleTemplateRegistration(DEVICETOKEN, template);
+        registration.getTags().add(tag);
+
+        byte[] xml = registration.getXmlBytes();
+        assertArrayEquals(registration.getXml().getBytes(StandardCharsets.UTF_8), xml);
+
+        AppleTemplateRegistration parsed = Registration.parse(xml);
+        assertEquals(template, parsed.getBodyTemplate());
+        assertEquals(Collections.singleton(tag), parsed.getTags());
+
+        // An unpaired surrogate is replaced the same way String.getBytes replaces it
+        registration.getTags().clear();
+        registration.getTags().add("broken\ud83d");
+        assertArrayEquals(registration.getXml().getBytes(StandardCharsets.UTF_8), registration.getXmlBytes());
+    }
+
+    @Test
+    public void testWindowsTemplateWithoutHeadersIsWellFormed() throws IOException, SAXException {
+        WindowsTemplateRegistration registration = new WindowsTemplateRegistration(CHANNELURI, WNSBODYTEMPLATE, new HashMap<>());
+
+        String xml = registration.getXml();
+        assertFalse(xml.contains("WnsHeaders"));
+
+        WindowsTemplateRegistration parsed = Registration.parse(xml.getBytes(StandardCharsets.UTF_8));
+        assertEquals(WNSBODYTEMPLATE, parsed.getBodyTemplate());
+    }
+
+    @Test
+    public void testLargeRegistrationDoesNotLeakIntoNextOne() {
+        StringBuilder template = new StringBuilder("{\"data\":\"");
+        for (int i = 0; i < 100_000; i++) {
+            template.append('x');
+        }
+        template.append("\"}");
+
+        FcmV1TemplateRegistration large = new FcmV1TemplateRegistration(DEVICETOKEN, template.toString());
+        FcmV1Registration small = new FcmV1Registration(DEVICETOKEN);
+
+        assertArrayEquals(large.getXml().getBytes(StandardCharsets.UTF_8), large.getXmlBytes());
+        assertArrayEquals(small.getXml().getBytes(StandardCharsets.UTF_8), small.getXmlBytes());
+        assertTrue(small.getXmlBytes().length < 1024);
+    }
+}
@@ -0,0 +1,76 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class RequestInstrumentationTest {
+    @Test
+    public void testOperationNamesReplaceIds() {
+        assertEquals("PUT installations/{id}", NotificationHubsService.getOperation("PUT", "/myhub/installations/abc?api-version=2020-06"));
+        assertEquals("POST messages/$batch", NotificationHubsService.getOperation("POST", "/myhub/messages/$batch?direct"));
+        assertEquals("POST messages", NotificationHubsService.getOperation("POST", "/myhub/messages/?direct"));
+        assertEquals("GET tags/{id}/registrations", NotificationHubsService.getOperation("GET", "/myhub/tags/sports/registrations"));
+        assertEquals("DELETE hub", NotificationHubsService.getOperation("DELETE", "/myhub?api-version=2020-06"));
+        assertEquals("myhub", NotificationHubsService.getHubPath("/myhub/registrations"));
+        assertEquals("GET $Resources/NotificationHubs", NotificationHubsService.getOperation("GET", "/$Resources/NotificationHubs/?api-version=2020-06"));
+        assertNull(NotificationHubsService.getHubPath("/$Resources/NotificationHubs/?api-version=2020-06"));
+    }
+
+    @Test
+    public void testHistogramBucketsStayWithinTwoPercent() {
+        for (long micros = 0; micros < (1L << 32); micros = micros * 3 / 2 + 1) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            long highest = LatencyHistogram.highestMicros(index);
+            assertTrue(highest >= micros);
+            assertTrue(highest - micros <= Math.max(0, micros / 50));
+            assertEquals(index, LatencyHistogram.bucketIndex(highest));
+            assertEquals(index + 1, LatencyHistogram.bucketIndex(highest + 1));
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(Duration.ofMillis(i).toNanos());
+        }
+        histogram.record(-1);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(Duration.ofMillis(1000), histogram.getMax());
+        assertEquals(Duration.ofNanos(500_500_000), histogram.getMean());
+        assertWithin(Duration.ofMillis(500), histogram.getValueAtPercentile(50));
+        assertWithin(Duration.ofMillis(990), histogram.getValueAtPercentile(99));
+        assertEquals(Duration.ofMillis(1000), histogram.getValueAtPercentile(100));
+        assertEquals(Duration.ZERO, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testStatisticsSkipUnknownTimings() {
+        HistogramRequestInstrumentation instrumentation = new HistogramRequestInstrumentation();
+        instrumentation.requestCompleted(new RequestMetrics("GET installations/{id}", "hub", "id", 200, null,
+            1_000_000, -1, -1, -1, 0, 42, -1));
+        instrumentation.requestCompleted(new RequestMetrics("GET installations/{id}", "hub", "id", 0, new RuntimeException(),
+            2_000_000, -1, -1, -1, 0, 0, -1));
+
+        HistogramRequestInstrumentation.OperationStatistics statistics = instrumentation.getStatistics("GET installations/{id}");
+        assertEquals(2, statistics.getRequestCount());
+        assertEquals(1, statistics.getErrorCount());
+        assertEquals(0, statistics.getRetryCount());
+        assertEquals(42, statistics.getBytesReceived());
+        assertEquals(0, statistics.getQueueLatency().getCount());
+        assertEquals(2, statistics.getStatusCodeCounts().size());
+    }
+
+    private static void assertWithin(Duration expected, Duration actual) {
+        assertTrue(actual + " is below " + expected, actual.compareTo(expected) >= 0);
+        assertTrue(actual + " is too far above " + expected, actual.toNanos() <= expected.toNanos() * 51 / 50);
+    }
+}
@@ -0,0 +1,65 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SasTokenProviderTest {
+    private static final String KEY_NAME = "DefaultFullSharedAccessSignature";
+    private static final String KEY_VALUE = "JHadkDHkdhi74jaHdakhy/rZ6KEdfhasYdahO8JOx/1sZXTUlc=";
+
+    @Test
+    public void testAudienceIsHubScoped() throws URISyntaxException {
+        assertEquals("https://test-namespace.servicebus.windows.net/test-hub",
+            SasTokenProvider.getAudience(new URI("https://test-namespace.servicebus.windows.net/test-hub/messages?api-version=2020-06")));
+        assertEquals("https://test-namespace.servicebus.windows.net/test-hub",
+            SasTokenProvider.getAudience(new URI("https://test-namespace.servicebus.windows.net/test-hub?api-version=2014-09")));
+        assertEquals("https://test-namespace.servicebus.windows.net/",
+            SasTokenProvider.getAudience(new URI("https://test-namespace.servicebus.windows.net/")));
+    }
+
+    @Test
+    public void testTokenIsReusedForSameHub() throws URISyntaxException {
+        SasTokenProvider provider = new SasTokenProvider(KEY_NAME, KEY_VALUE);
+        String first = provider.getSasToken(new URI("https://test-namespace.servicebus.windows.net/test-hub/messages?api-version=2020-06"));
+        String second = provider.getSasToken(new URI("https://test-namespace.servicebus.windows.net/test-hub/registrations/1?api-version=2020-06"));
+        String other = provider.getSasToken(new URI("https://test-namespace.servicebus.windows.net/other-hub/messages?api-version=2020-06"));
+
+        assertSame(first, second);
+        assertNotEquals(first, other);
+        assertTrue(first.startsWith("SharedAccessSignature sr=https%3a%2f%2ftest-namespace.servicebus.windows.net%2ftest-hub&sig="));
+        assertTrue(first.endsWith("&skn=" + KEY_NAME));
+    }
+
+    @Test
+    public void testTokenIsRefreshedWithinMargin() throws URISyntaxException {
+        AtomicLong now = new AtomicLong(1_600_000_000_000L);
+        SasTokenProvider provider = new SasTokenProvider(KEY_NAME, KEY_VALUE, now::get);
+        URI uri = new URI("https://test-namespace.servicebus.windows.net/test-hub/messages?api-version=2020-06");
+
+        long lifetimeMillis = SdkGlobalSettings.getAuthorizationTokenExpirationInMinutes() * 60 * 1000L;
+        long marginMillis = SdkGlobalSettings.getAuthorizationTokenRefreshMarginInSeconds() * 1000L;
+
+        String first = provider.getSasToken(uri);
+        now.addAndGet(lifetimeMillis - marginMillis - 1);
+        assertSame(first, provider.getSasToken(uri));
+
+        now.addAndGet(1);
+        assertNotEquals(first, provider.getSasToken(uri));
+    }
+
+    @Test
+    public void testGenerateSasTokenIsScopedToFullUri() throws URISyntaxException {
+        SasTokenProvider provider = new SasTokenProvider(KEY_NAME, KEY_VALUE);
+        String token = provider.generateSasToken(new URI("https://test-namespace.servicebus.windows.net/test-hub/messages?api-version=2020-06"));
+        assertTrue(token.startsWith("SharedAccessSignature sr=https%3a%2f%2ftest-namespace.servicebus.windows.net%2ftest-hub%2fmessages%3fapi-version%3d2020-06&sig="));
+    }
+}
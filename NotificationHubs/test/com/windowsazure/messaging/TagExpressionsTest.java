@@ -0,0 +1,49 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TagExpressionsTest {
+    @Test
+    public void testSplitOr() {
+        assertEquals(Arrays.asList("a", "$UserId:b", "c_1"), TagExpressions.splitOr(" a||($UserId:b) || ((c_1)) "));
+        assertEquals(Collections.singletonList("a"), TagExpressions.splitOr("a"));
+
+        for (String expression : new String[] { "a && b", "a || !b", "(a || b) && c", "a ||", "", "a b" }) {
+            assertThrows(expression, IllegalArgumentException.class, () -> TagExpressions.splitOr(expression));
+        }
+    }
+
+    @Test
+    public void testShardSkipsRepeatedTags() {
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            tags.add("tag" + (i % 41));
+        }
+
+        List<List<String>> shards = new ArrayList<>();
+        for (Iterator<List<String>> iterator = TagExpressions.shard(tags, 20); iterator.hasNext(); ) {
+            shards.add(iterator.next());
+        }
+
+        assertEquals(3, shards.size());
+        assertEquals(20, shards.get(0).size());
+        assertEquals(20, shards.get(1).size());
+        assertEquals(Collections.singletonList("tag40"), shards.get(2));
+        assertEquals("tag0 || tag1", TagExpressions.joinOr(shards.get(0).subList(0, 2)));
+
+        Iterator<List<String>> withEmpty = TagExpressions.shard(Arrays.asList("a", ""), 20);
+        assertThrows(IllegalArgumentException.class, withEmpty::next);
+    }
+}
@@ -0,0 +1,71 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.hc.core5.http.ContentType;
+import org.junit.Test;
+
+public class TemplateNotificationTest {
+    private static final Type PROPERTIES_TYPE = new TypeToken<Map<String, String>>() { }.getType();
+
+    @Test
+    public void testPropertiesAreEscaped() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("message", "He said \"hi\"\nand left \\ at 5\t\u0001");
+        properties.put("na\"me", "café 😀 </script>");
+        properties.put("empty", "");
+
+        TemplateNotification notification = new TemplateNotification(properties);
+
+        assertEquals("{\"message\":\"He said \\\"hi\\\"\\nand left \\\\ at 5\\t\\u0001\",\"na\\\"me\":\"café 😀 </script>\",\"empty\":\"\"}",
+            notification.getBody());
+        assertEquals(properties, new Gson().fromJson(notification.getBody(), PROPERTIES_TYPE));
+        assertEquals(ContentType.APPLICATION_JSON, notification.getContentType());
+        assertEquals("template", notification.getHeaders().get("ServiceBusNotification-Format"));
+    }
+
+    @Test
+    public void testNullValuesAndNames() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("message", null);
+        assertEquals("{\"message\":null}", new TemplateNotification(properties).getBody());
+        assertEquals("{}", new TemplateNotification(Collections.emptyMap()).getBody());
+
+        properties.put(null, "value");
+        assertThrows(IllegalArgumentException.class, () -> new TemplateNotification(properties));
+        assertThrows(IllegalArgumentException.class, () -> TemplateNotification.builder().setProperty(null, "value"));
+    }
+
+    @Test
+    public void testBuilderIsReusable() {
+        TemplateNotification.Builder builder = TemplateNotification.builder()
+            .setProperty("user", "alice")
+            .setProperty("message", "Hello \"alice\"");
+
+        TemplateNotification first = builder.build();
+        TemplateNotification second = builder.setProperty("user", "bob").setProperty("message", "Hello\nbob").build();
+
+        assertEquals("{\"user\":\"alice\",\"message\":\"Hello \\\"alice\\\"\"}", first.getBody());
+        assertEquals("{\"user\":\"bob\",\"message\":\"Hello\\nbob\"}", second.getBody());
+        assertNotSame(first.getHeaders(), second.getHeaders());
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("user", "bob");
+        expected.put("message", "Hello\nbob");
+        assertEquals(new TemplateNotification(expected).getBody(), second.getBody());
+
+        assertEquals("{\"message\":\"Hello\\nbob\"}", builder.removeProperty("user").build().getBody());
+        assertEquals("{}", builder.clear().build().getBody());
+    }
+}
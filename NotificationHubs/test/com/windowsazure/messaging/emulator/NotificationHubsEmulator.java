@@ -0,0 +1,1073 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.emulator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.windowsazure.messaging.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for the Azure Notification Hubs REST API, for integration and load tests
+ * which cannot reach a live namespace. It serves the registration, installation, send, scheduled
+ * send, job and hub management calls made by {@link NotificationHub} and {@link NamespaceManager}
+ * from memory, checks the SAS token of every request, and records the notifications it accepts.
+ *
+ * Latency, throttling with 429 responses and the Retry-After header can be configured while the
+ * emulator is running, so that throughput and retry behavior can be exercised on one machine.
+ */
+public class NotificationHubsEmulator implements Closeable {
+    public static final String SAS_KEY_NAME = "DefaultFullSharedAccessSignature";
+    public static final String SAS_KEY_VALUE = "RW11bGF0b3JLZXlGb3JMb2NhbFRlc3RpbmdPbmx5MDA=";
+
+    private static final String NAMESPACE = "http://schemas.microsoft.com/netservices/2010/10/servicebus/connect";
+    private static final String ATOM_CONTENT_TYPE = "application/atom+xml;type=entry;charset=utf-8";
+    private static final String FEED_CONTENT_TYPE = "application/atom+xml;type=feed;charset=utf-8";
+    private static final String API_VERSION = "?api-version=2020-06";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final Pattern CHANNEL_FILTER = Pattern.compile("ChannelUri eq '(.*)'");
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, String> hubDescriptions = new ConcurrentHashMap<>();
+    private final Map<String, HubState> hubs = new ConcurrentHashMap<>();
+    private final List<ReceivedNotification> notifications = new CopyOnWriteArrayList<>();
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicInteger throttleNext = new AtomicInteger();
+    private final AtomicInteger dropNext = new AtomicInteger();
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double throttleRate;
+    private volatile Duration retryAfter;
+
+    /**
+     * Creates an emulator listening on an ephemeral loopback port.
+     * @throws IOException Thrown if the server socket cannot be bound.
+     */
+    public NotificationHubsEmulator() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Creates an emulator listening on the given loopback port.
+     * @param port The port to listen on, or zero for an ephemeral port.
+     * @throws IOException Thrown if the server socket cannot be bound.
+     */
+    public NotificationHubsEmulator(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "notification-hubs-emulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving requests.
+     * @return This emulator.
+     */
+    public NotificationHubsEmulator start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stops the server and its request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets the port the emulator is listening on.
+     * @return The port the emulator is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets a connection string for the emulator which can be passed to {@link NotificationHub} and
+     * {@link NamespaceManager}.
+     * @return The connection string for the emulator.
+     */
+    public String getConnectionString() {
+        return "Endpoint=http://localhost:" + getPort() + "/;SharedAccessKeyName=" + SAS_KEY_NAME
+            + ";SharedAccessKey=" + SAS_KEY_VALUE;
+    }
+
+    /**
+     * Sets a fixed delay before each request is answered.
+     * @param latency The delay before each request is answered.
+     */
+    public void setLatency(Duration latency) {
+        setLatency(latency, latency);
+    }
+
+    /**
+     * Sets a delay, chosen uniformly between the bounds, before each request is answered.
+     * @param min The shortest delay.
+     * @param max The longest delay.
+     */
+    public void setLatency(Duration min, Duration max) {
+        if (min.compareTo(max) > 0) {
+            throw new IllegalArgumentException("min cannot be greater than max");
+        }
+        minLatencyMillis = min.toMillis();
+        maxLatencyMillis = max.toMillis();
+    }
+
+    /**
+     * Sets the fraction of requests, between 0 and 1, which are answered with 429 Too Many Requests.
+     * @param rate The fraction of requests to throttle.
+     */
+    public void setThrottleRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+        throttleRate = rate;
+    }
+
+    /**
+     * Answers the next requests with 429 Too Many Requests, regardless of the throttle rate.
+     * @param count The number of requests to throttle.
+     */
+    public void throttleNextRequests(int count) {
+        throttleNext.set(count);
+    }
+
+    /**
+     * Closes the connection of the next requests without answering them or acting on them, as a
+     * connection reset would.
+     * @param count The number of requests to drop.
+     */
+    public void dropNextRequests(int count) {
+        dropNext.set(count);
+    }
+
+    /**
+     * Sets the Retry-After header sent with 429 responses, rounded up to whole seconds.
+     * @param value The delay to ask clients to wait, or null to send no Retry-After header.
+     */
+    public void setRetryAfter(Duration value) {
+        retryAfter = value;
+    }
+
+    /**
+     * Gets the number of requests received, including throttled ones.
+     * @return The number of requests received.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Gets the number of requests answered with 429 Too Many Requests.
+     * @return The number of throttled requests.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Gets the notifications accepted for sending or scheduling, in the order they were received.
+     * @return The notifications accepted so far.
+     */
+    public List<ReceivedNotification> getReceivedNotifications() {
+        return Collections.unmodifiableList(notifications);
+    }
+
+    /**
+     * Clears all hubs, registrations, installations, jobs and received notifications, and turns off
+     * latency and throttling.
+     */
+    public void reset() {
+        hubDescriptions.clear();
+        hubs.clear();
+        notifications.clear();
+        requestCount.set(0);
+        throttledCount.set(0);
+        throttleNext.set(0);
+        dropNext.set(0);
+        minLatencyMillis = 0;
+        maxLatencyMillis = 0;
+        throttleRate = 0;
+        retryAfter = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            delay();
+
+            if (takeOne(dropNext)) {
+                return;
+            }
+
+            if (shouldThrottle()) {
+                throttledCount.incrementAndGet();
+                Duration value = retryAfter;
+                if (value != null) {
+                    long seconds = (value.toMillis() + 999) / 1000;
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(seconds));
+                }
+                sendError(exchange, 429, "The request was throttled.");
+                return;
+            }
+
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                sendError(exchange, 401, "The SAS token is missing, expired or invalid.");
+                return;
+            }
+
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "The emulator is shutting down.");
+        } catch (Exception e) {
+            sendError(exchange, 400, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long min = minLatencyMillis;
+        long max = maxLatencyMillis;
+        long millis = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private boolean shouldThrottle() {
+        if (takeOne(throttleNext)) {
+            return true;
+        }
+        double rate = throttleRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static boolean takeOne(AtomicInteger counter) {
+        while (true) {
+            int remaining = counter.get();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (counter.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String[] segments = getSegments(exchange.getRequestURI().getRawPath());
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (segments.length == 2 && segments[0].equals("$Resources") && segments[1].equals("NotificationHubs")) {
+            if (method.equals("GET")) {
+                sendFeed(exchange, "Notification Hubs", new ArrayList<>(hubDescriptions.values()), null);
+                return;
+            }
+        } else if (segments.length == 1) {
+            handleHubDescription(exchange, method, segments[0]);
+            return;
+        } else if (segments.length > 1) {
+            HubState hub = hubs.computeIfAbsent(segments[0], path -> new HubState());
+            String collection = segments[1];
+            String id = segments.length > 2 ? decode(segments[2]) : null;
+
+            switch (collection) {
+                case "registrations":
+                    if (segments.length == 2) {
+                        handleRegistrations(exchange, method, hub, query);
+                    } else {
+                        handleRegistration(exchange, method, hub, id);
+                    }
+                    return;
+                case "registrationids":
+                    if (method.equals("POST") && segments.length == 2) {
+                        String location = getBaseUri(exchange) + segments[0] + "/registrationids/" + nextId() + API_VERSION;
+                        exchange.getResponseHeaders().set("Location", location);
+                        send(exchange, 201, null, null);
+                        return;
+                    }
+                    break;
+                case "tags":
+                    if (method.equals("GET") && segments.length == 4 && segments[3].equals("registrations")) {
+                        List<Registration> matching = new ArrayList<>();
+                        for (Registration registration : hub.snapshotRegistrations()) {
+                            if (registration.getTags().contains(id)) {
+                                matching.add(registration);
+                            }
+                        }
+                        sendRegistrationPage(exchange, matching, query);
+                        return;
+                    }
+                    break;
+                case "installations":
+                    if (id != null) {
+                        handleInstallation(exchange, method, hub, id);
+                        return;
+                    }
+                    break;
+                case "messages":
+                    if (method.equals("POST")) {
+                        boolean batch = id != null && id.equals("$batch");
+                        handleSend(exchange, segments[0], batch, query.containsKey("direct"), false);
+                        return;
+                    }
+                    if (method.equals("GET") && id != null) {
+                        handleTelemetry(exchange, id);
+                        return;
+                    }
+                    break;
+                case "schedulednotifications":
+                    if (method.equals("POST") && id == null) {
+                        handleSend(exchange, segments[0], false, false, true);
+                        return;
+                    }
+                    if (method.equals("DELETE") && id != null) {
+                        boolean removed = notifications.removeIf(n -> n.getScheduledTime() != null && id.equals(n.getNotificationId()));
+                        send(exchange, removed ? 200 : 404, null, null);
+                        return;
+                    }
+                    break;
+                case "jobs":
+                    handleJobs(exchange, method, hub, id);
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        sendError(exchange, 404, "No such resource.");
+    }
+
+    private void handleHubDescription(HttpExchange exchange, String method, String hubPath) throws IOException {
+        switch (method) {
+            case "GET":
+                String description = hubDescriptions.get(hubPath);
+                if (description == null) {
+                    sendError(exchange, 404, "No such hub.");
+                } else {
+                    send(exchange, 200, ATOM_CONTENT_TYPE, description);
+                }
+                return;
+            case "PUT":
+                boolean isUpdate = exchange.getRequestHeaders().containsKey("If-Match");
+                if (isUpdate != hubDescriptions.containsKey(hubPath)) {
+                    sendError(exchange, isUpdate ? 404 : 409, isUpdate ? "No such hub." : "The hub already exists.");
+                    return;
+                }
+
+                // The hub path is returned as the title of the Atom entry
+                String body = stripXmlDeclaration(readBody(exchange));
+                String entry = insertAfterStartTag(body, "entry", "<title type=\"text\">" + escape(hubPath) + "</title>");
+                hubDescriptions.put(hubPath, entry);
+                send(exchange, isUpdate ? 200 : 201, ATOM_CONTENT_TYPE, entry);
+                return;
+            case "DELETE":
+                boolean removed = hubDescriptions.remove(hubPath) != null;
+                hubs.remove(hubPath);
+                send(exchange, removed ? 200 : 404, null, null);
+                return;
+            default:
+                sendError(exchange, 405, "Method not allowed.");
+        }
+    }
+
+    private void handleRegistrations(HttpExchange exchange, String method, HubState hub, Map<String, String> query) throws Exception {
+        if (method.equals("POST")) {
+            Registration registration = Registration.parse(readBody(exchange).getBytes(StandardCharsets.UTF_8));
+            registration.setRegistrationId(nextId());
+            send(exchange, 200, ATOM_CONTENT_TYPE, registrationEntry(hub.put(registration)));
+            return;
+        }
+
+        if (method.equals("GET")) {
+            List<Registration> registrations = hub.snapshotRegistrations();
+            String filter = query.get("$filter");
+            if (filter != null) {
+                Matcher matcher = CHANNEL_FILTER.matcher(filter);
+                if (!matcher.matches()) {
+                    sendError(exchange, 400, "Unsupported filter: " + filter);
+                    return;
+                }
+
+                List<Registration> matching = new ArrayList<>();
+                for (Registration registration : registrations) {
+                    if (matcher.group(1).equals(registration.getPnsHandle())) {
+                        matching.add(registration);
+                    }
+                }
+                registrations = matching;
+            }
+            sendRegistrationPage(exchange, registrations, query);
+            return;
+        }
+
+        sendError(exchange, 405, "Method not allowed.");
+    }
+
+    private void handleRegistration(HttpExchange exchange, String method, HubState hub, String registrationId) throws Exception {
+        switch (method) {
+            case "GET": {
+                Registration registration = hub.getRegistration(registrationId);
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (registration == null) {
+                    sendError(exchange, 404, "No such registration.");
+                } else if (ifNoneMatch != null && ifNoneMatch.equals("W/\"" + registration.getEtag() + "\"")) {
+                    send(exchange, 304, null, null);
+                } else {
+                    send(exchange, 200, ATOM_CONTENT_TYPE, registrationEntry(registration));
+                }
+                return;
+            }
+            case "PUT": {
+                Registration registration = Registration.parse(readBody(exchange).getBytes(StandardCharsets.UTF_8));
+                registration.setRegistrationId(registrationId);
+                String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+                Registration updated = hub.put(registration, ifMatch);
+                if (updated == null) {
+                    sendError(exchange, hub.getRegistration(registrationId) == null ? 404 : 412,
+                        "The registration does not exist or its ETag does not match.");
+                } else {
+                    send(exchange, 200, ATOM_CONTENT_TYPE, registrationEntry(updated));
+                }
+                return;
+            }
+            case "DELETE":
+                send(exchange, hub.removeRegistration(registrationId) ? 200 : 404, null, null);
+                return;
+            default:
+                sendError(exchange, 405, "Method not allowed.");
+        }
+    }
+
+    private void handleInstallation(HttpExchange exchange, String method, HubState hub, String installationId) throws IOException {
+        switch (method) {
+            case "GET": {
+                JsonObject installation = hub.installations.get(installationId);
+                if (installation == null) {
+                    sendError(exchange, 404, "No such installation.");
+                } else {
+                    synchronized (installation) {
+                        send(exchange, 200, "application/json", installation.toString());
+                    }
+                }
+                return;
+            }
+            case "PUT": {
+                JsonObject installation = JsonParser.parseString(readBody(exchange)).getAsJsonObject();
+                installation.addProperty("installationId", installationId);
+                hub.installations.put(installationId, installation);
+                send(exchange, 200, null, null);
+                return;
+            }
+            case "PATCH": {
+                JsonObject installation = hub.installations.get(installationId);
+                if (installation == null) {
+                    sendError(exchange, 404, "No such installation.");
+                    return;
+                }
+                JsonArray operations = JsonParser.parseString(readBody(exchange)).getAsJsonArray();
+                synchronized (installation) {
+                    for (JsonElement operation : operations) {
+                        applyPatch(installation, operation.getAsJsonObject());
+                    }
+                }
+                send(exchange, 200, null, null);
+                return;
+            }
+            case "DELETE":
+                hub.installations.remove(installationId);
+                send(exchange, 204, null, null);
+                return;
+            default:
+                sendError(exchange, 405, "Method not allowed.");
+        }
+    }
+
+    // Applies one JSON Patch operation as the service does for the paths installations support:
+    // adding to or removing from /tags, and setting or removing any other property by path.
+    private static void applyPatch(JsonObject installation, JsonObject operation) {
+        String op = operation.get("op").getAsString();
+        String[] path = operation.get("path").getAsString().substring(1).split("/");
+        JsonElement value = operation.has("value") && !operation.get("value").isJsonNull()
+            ? toJsonValue(operation.get("value").getAsString())
+            : null;
+
+        if (path[0].equals("tags")) {
+            JsonArray tags = installation.has("tags") ? installation.getAsJsonArray("tags") : new JsonArray();
+            installation.add("tags", tags);
+            if (op.equals("remove")) {
+                if (path.length > 1) {
+                    tags.remove(new JsonPrimitive(path[1]));
+                } else {
+                    installation.remove("tags");
+                }
+            } else if (value != null) {
+                for (String tag : value.getAsString().split(",")) {
+                    JsonPrimitive element = new JsonPrimitive(tag.trim());
+                    if (!tags.contains(element)) {
+                        tags.add(element);
+                    }
+                }
+            }
+            return;
+        }
+
+        JsonObject parent = installation;
+        for (int i = 0; i < path.length - 1; i++) {
+            if (!parent.has(path[i]) || !parent.get(path[i]).isJsonObject()) {
+                if (op.equals("remove")) {
+                    return;
+                }
+                parent.add(path[i], new JsonObject());
+            }
+            parent = parent.getAsJsonObject(path[i]);
+        }
+
+        String name = path[path.length - 1];
+        if (op.equals("remove")) {
+            parent.remove(name);
+        } else {
+            parent.add(name, value);
+        }
+    }
+
+    private static JsonElement toJsonValue(String value) {
+        String trimmed = value.trim();
+        if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
+            return JsonParser.parseString(trimmed);
+        }
+        return new JsonPrimitive(value);
+    }
+
+    private void handleSend(HttpExchange exchange, String hubPath, boolean batch, boolean direct, boolean scheduled) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        String contentType = headers.getFirst("Content-Type");
+        String body = readBody(exchange);
+
+        List<String> deviceHandles = new ArrayList<>();
+        if (batch) {
+            Matcher boundary = contentType == null ? null : BOUNDARY.matcher(contentType);
+            if (boundary == null || !boundary.find()) {
+                sendError(exchange, 400, "A batch send must be multipart/mixed with a boundary.");
+                return;
+            }
+
+            MultipartBody parts = MultipartBody.parse(body, boundary.group(1));
+            body = parts.notification;
+            contentType = parts.notificationContentType;
+            for (JsonElement handle : JsonParser.parseString(parts.devices).getAsJsonArray()) {
+                deviceHandles.add(handle.getAsString());
+            }
+        } else if (direct) {
+            String handle = headers.getFirst("ServiceBusNotification-DeviceHandle");
+            if (handle == null) {
+                sendError(exchange, 400, "A direct send must have a ServiceBusNotification-DeviceHandle header.");
+                return;
+            }
+            deviceHandles.add(handle);
+        }
+
+        Date scheduledTime = null;
+        if (scheduled) {
+            String value = headers.getFirst("ServiceBusNotification-ScheduleTime");
+            if (value == null) {
+                sendError(exchange, 400, "A scheduled send must have a ServiceBusNotification-ScheduleTime header.");
+                return;
+            }
+            scheduledTime = javax.xml.bind.DatatypeConverter.parseDateTime(value.endsWith("Z") ? value : value + "Z").getTime();
+        }
+
+        // The service accepts 20 tags in an expression of only ORs, and 6 in any other expression
+        String tagExpression = headers.getFirst("ServiceBusNotification-Tags");
+        if (tagExpression != null) {
+            int tagCount = tagExpression.split("\\|\\||&&").length;
+            boolean onlyOr = !tagExpression.contains("&&") && !tagExpression.contains("!");
+            if (tagCount > (onlyOr ? 20 : 6)) {
+                sendError(exchange, 400, "The tag expression has too many tags.");
+                return;
+            }
+        }
+
+        Map<String, String> notificationHeaders = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().toLowerCase(Locale.ROOT).startsWith("servicebusnotification-") || header.getKey().toLowerCase(Locale.ROOT).startsWith("x-")) {
+                notificationHeaders.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+
+        String notificationId = nextId();
+        notifications.add(new ReceivedNotification(
+            hubPath,
+            notificationId,
+            headers.getFirst("TrackingId"),
+            contentType,
+            body,
+            tagExpression,
+            deviceHandles,
+            scheduledTime,
+            notificationHeaders));
+
+        String collection = scheduled ? "/schedulednotifications/" : "/messages/";
+        exchange.getResponseHeaders().set("Location", getBaseUri(exchange) + hubPath + collection + notificationId + API_VERSION);
+        send(exchange, 201, null, null);
+    }
+
+    private void handleTelemetry(HttpExchange exchange, String notificationId) throws IOException {
+        ReceivedNotification notification = null;
+        for (ReceivedNotification received : notifications) {
+            if (received.getNotificationId().equals(notificationId)) {
+                notification = received;
+            }
+        }
+        if (notification == null) {
+            sendError(exchange, 404, "No such notification.");
+            return;
+        }
+
+        String time = formatDate(notification.getReceivedAt());
+        String state = notification.getScheduledTime() != null && notification.getScheduledTime().after(new Date()) ? "Scheduled" : "Completed";
+        send(exchange, 200, "application/xml; charset=utf-8",
+            "<NotificationDetails xmlns=\"" + NAMESPACE + "\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<NotificationId>" + notificationId + "</NotificationId>"
+                + "<Location>" + escape(getBaseUri(exchange) + notification.getHubPath() + "/messages/" + notificationId + API_VERSION) + "</Location>"
+                + "<State>" + state + "</State>"
+                + "<EnqueueTime>" + time + "</EnqueueTime>"
+                + "<StartTime>" + time + "</StartTime>"
+                + "<EndTime>" + time + "</EndTime>"
+                + "</NotificationDetails>");
+    }
+
+    private void handleJobs(HttpExchange exchange, String method, HubState hub, String jobId) throws IOException {
+        if (method.equals("POST") && jobId == null) {
+            // Jobs complete as soon as they are submitted
+            String now = formatDate(new Date());
+            String job = insertAfterStartTag(stripXmlDeclaration(readBody(exchange)), "NotificationHubJob",
+                "<JobId>" + nextId() + "</JobId><Progress>100</Progress><Status>Completed</Status>"
+                    + "<CreatedAt>" + now + "</CreatedAt><UpdatedAt>" + now + "</UpdatedAt>");
+            hub.jobs.add(job);
+            send(exchange, 201, ATOM_CONTENT_TYPE, job);
+            return;
+        }
+
+        if (method.equals("GET")) {
+            if (jobId == null) {
+                sendFeed(exchange, "Jobs", new ArrayList<>(hub.jobs), null);
+                return;
+            }
+            for (String job : hub.jobs) {
+                if (job.contains("<JobId>" + jobId + "</JobId>")) {
+                    send(exchange, 200, ATOM_CONTENT_TYPE, job);
+                    return;
+                }
+            }
+            sendError(exchange, 404, "No such job.");
+            return;
+        }
+
+        sendError(exchange, 405, "Method not allowed.");
+    }
+
+    private void sendRegistrationPage(HttpExchange exchange, List<Registration> registrations, Map<String, String> query) throws IOException {
+        int top = query.containsKey("$top") ? Integer.parseInt(query.get("$top")) : DEFAULT_PAGE_SIZE;
+        int skip = query.containsKey("ContinuationToken") ? Integer.parseInt(query.get("ContinuationToken")) : 0;
+        int end = Math.min(registrations.size(), skip + top);
+
+        List<String> entries = new ArrayList<>();
+        for (Registration registration : registrations.subList(Math.min(skip, end), end)) {
+            entries.add(stripXmlDeclaration(registrationEntry(registration)));
+        }
+        sendFeed(exchange, "Registrations", entries, end < registrations.size() ? String.valueOf(end) : null);
+    }
+
+    private void sendFeed(HttpExchange exchange, String title, List<String> entries, String continuationToken) throws IOException {
+        StringBuilder feed = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+            .append("<feed xmlns=\"http://www.w3.org/2005/Atom\"><title type=\"text\">").append(title).append("</title>");
+        for (String entry : entries) {
+            feed.append(stripXmlDeclaration(entry));
+        }
+        feed.append("</feed>");
+
+        if (continuationToken != null) {
+            exchange.getResponseHeaders().set("X-MS-ContinuationToken", continuationToken);
+        }
+        send(exchange, 200, FEED_CONTENT_TYPE, feed.toString());
+    }
+
+    // Registration XML from the SDK carries only the writable properties, so add the read-only ones
+    private static String registrationEntry(Registration registration) {
+        String readOnly = "<RegistrationId>" + escape(registration.getRegistrationId()) + "</RegistrationId>"
+            + "<ETag>" + escape(registration.getEtag()) + "</ETag>"
+            + "<ExpirationTime>" + formatDate(registration.getExpirationTime()) + "</ExpirationTime>";
+        String xml = registration.getXml();
+        int start = xml.indexOf("RegistrationDescription");
+        int end = xml.indexOf('>', start) + 1;
+        return xml.substring(0, end) + readOnly + xml.substring(end);
+    }
+
+    // Verifies the signature, expiry and key name of a token made by SasTokenProvider
+    private static boolean isAuthorized(String authorization) {
+        String prefix = "SharedAccessSignature ";
+        if (authorization == null || !authorization.startsWith(prefix)) {
+            return false;
+        }
+
+        Map<String, String> token = new HashMap<>();
+        for (String pair : authorization.substring(prefix.length()).split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                token.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+
+        String resource = token.get("sr");
+        String signature = token.get("sig");
+        String expiry = token.get("se");
+        if (resource == null || signature == null || expiry == null || !SAS_KEY_NAME.equals(token.get("skn"))) {
+            return false;
+        }
+
+        try {
+            if (Long.parseLong(expiry) * 1000 < System.currentTimeMillis()) {
+                return false;
+            }
+
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SAS_KEY_VALUE.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] expected = mac.doFinal((resource + "\n" + expiry).getBytes(StandardCharsets.UTF_8));
+            byte[] actual = Base64.getDecoder().decode(URLDecoder.decode(signature, "UTF-8"));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String[] getSegments(String rawPath) {
+        String path = rawPath.startsWith("/") ? rawPath.substring(1) : rawPath;
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() ? new String[0] : path.split("/");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                query.put(decode(pair), "");
+            } else {
+                query.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(String value) throws UnsupportedEncodingException {
+        return URLDecoder.decode(value, "UTF-8");
+    }
+
+    private static String getBaseUri(HttpExchange exchange) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        return "http://" + (host != null ? host : "localhost:" + exchange.getLocalAddress().getPort()) + "/";
+    }
+
+    private static String stripXmlDeclaration(String xml) {
+        String trimmed = xml.trim();
+        return trimmed.startsWith("<?xml") ? trimmed.substring(trimmed.indexOf("?>") + 2) : trimmed;
+    }
+
+    private static String insertAfterStartTag(String xml, String element, String content) {
+        int start = xml.indexOf("<" + element);
+        if (start < 0) {
+            throw new IllegalArgumentException("The document has no " + element + " element.");
+        }
+        int end = xml.indexOf('>', start) + 1;
+        return xml.substring(0, end) + content + xml.substring(end);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String formatDate(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    private String nextId() {
+        return Long.toString(ids.incrementAndGet());
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = exchange.getRequestBody()) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String detail) throws IOException {
+        send(exchange, statusCode, "application/xml; charset=utf-8",
+            "<Error><Code>" + statusCode + "</Code><Detail>" + escape(detail) + "</Detail></Error>");
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        // The server only keeps a connection alive if the request body was read to the end
+        exchange.getRequestBody().close();
+
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * A notification accepted by the emulator for sending or scheduling.
+     */
+    public static class ReceivedNotification {
+        private final String hubPath;
+        private final String notificationId;
+        private final String trackingId;
+        private final String contentType;
+        private final String body;
+        private final String tagExpression;
+        private final List<String> deviceHandles;
+        private final Date scheduledTime;
+        private final Map<String, String> headers;
+        private final Date receivedAt = new Date();
+
+        ReceivedNotification(
+            String hubPath,
+            String notificationId,
+            String trackingId,
+            String contentType,
+            String body,
+            String tagExpression,
+            List<String> deviceHandles,
+            Date scheduledTime,
+            Map<String, String> headers) {
+            this.hubPath = hubPath;
+            this.notificationId = notificationId;
+            this.trackingId = trackingId;
+            this.contentType = contentType;
+            this.body = body;
+            this.tagExpression = tagExpression;
+            this.deviceHandles = Collections.unmodifiableList(deviceHandles);
+            this.scheduledTime = scheduledTime;
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        /**
+         * Gets the path of the hub the notification was sent to.
+         * @return The path of the hub the notification was sent to.
+         */
+        public String getHubPath() { return hubPath; }
+
+        /**
+         * Gets the notification ID returned to the client.
+         * @return The notification ID returned to the client.
+         */
+        public String getNotificationId() { return notificationId; }
+
+        /**
+         * Gets the tracking ID sent by the client.
+         * @return The tracking ID sent by the client.
+         */
+        public String getTrackingId() { return trackingId; }
+
+        /**
+         * Gets the content type of the notification body.
+         * @return The content type of the notification body.
+         */
+        public String getContentType() { return contentType; }
+
+        /**
+         * Gets the notification body.
+         * @return The notification body.
+         */
+        public String getBody() { return body; }
+
+        /**
+         * Gets the tag expression of the send, if any.
+         * @return The tag expression of the send, or null.
+         */
+        public String getTagExpression() { return tagExpression; }
+
+        /**
+         * Gets the device handles of a direct or batch send.
+         * @return The device handles of a direct or batch send, or an empty list.
+         */
+        public List<String> getDeviceHandles() { return deviceHandles; }
+
+        /**
+         * Gets the time a scheduled send is scheduled for.
+         * @return The scheduled time, or null for an immediate send.
+         */
+        public Date getScheduledTime() { return scheduledTime; }
+
+        /**
+         * Gets the ServiceBusNotification- and X- headers of the send.
+         * @return The notification headers of the send.
+         */
+        public Map<String, String> getHeaders() { return headers; }
+
+        /**
+         * Gets the time the emulator accepted the notification.
+         * @return The time the emulator accepted the notification.
+         */
+        public Date getReceivedAt() { return receivedAt; }
+    }
+
+    private static class HubState {
+        private final Map<String, Registration> registrations = new LinkedHashMap<>();
+        private final Map<String, JsonObject> installations = new ConcurrentHashMap<>();
+        private final List<String> jobs = new CopyOnWriteArrayList<>();
+        private long etags;
+
+        synchronized Registration put(Registration registration) {
+            registration.setEtag(Long.toString(++etags));
+            registration.setExpirationTime(new Date(System.currentTimeMillis() + 90L * 24 * 60 * 60 * 1000));
+            registrations.put(registration.getRegistrationId(), registration);
+            return registration;
+        }
+
+        // Updates with If-Match: * or a matching weak ETag, and upserts without If-Match
+        synchronized Registration put(Registration registration, String ifMatch) {
+            Registration existing = registrations.get(registration.getRegistrationId());
+            if (ifMatch != null) {
+                if (existing == null) {
+                    return null;
+                }
+                if (!ifMatch.equals("*") && !ifMatch.equals("W/\"" + existing.getEtag() + "\"")) {
+                    return null;
+                }
+            }
+            return put(registration);
+        }
+
+        synchronized Registration getRegistration(String registrationId) {
+            return registrations.get(registrationId);
+        }
+
+        synchronized boolean removeRegistration(String registrationId) {
+            return registrations.remove(registrationId) != null;
+        }
+
+        synchronized List<Registration> snapshotRegistrations() {
+            return new ArrayList<>(registrations.values());
+        }
+    }
+
+    private static class MultipartBody {
+        private String notification;
+        private String notificationContentType;
+        private String devices;
+
+        static MultipartBody parse(String body, String boundary) {
+            MultipartBody result = new MultipartBody();
+            for (String part : body.split("--" + Pattern.quote(boundary))) {
+                int headersEnd = part.indexOf("\r\n\r\n");
+                if (headersEnd < 0) {
+                    continue;
+                }
+
+                String partHeaders = part.substring(0, headersEnd);
+                String content = part.substring(headersEnd + 4);
+                if (content.endsWith("\r\n")) {
+                    content = content.substring(0, content.length() - 2);
+                }
+
+                if (partHeaders.contains("name=devices")) {
+                    result.devices = content;
+                } else if (partHeaders.contains("name=notification")) {
+                    result.notification = content;
+                    for (String header : partHeaders.split("\r\n")) {
+                        if (header.regionMatches(true, 0, "Content-Type:", 0, 13)) {
+                            result.notificationContentType = header.substring(13).trim();
+                        }
+                    }
+                }
+            }
+
+            if (result.notification == null || result.devices == null) {
+                throw new IllegalArgumentException("A batch send must have notification and devices parts.");
+            }
+            return result;
+        }
+    }
+}
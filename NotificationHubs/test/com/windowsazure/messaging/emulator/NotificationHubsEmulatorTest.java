@@ -0,0 +1,682 @@
+//----------------------------------------------------------------
+// Copyright (c) Microsoft Corporation. All rights reserved.
+//----------------------------------------------------------------
+
+package com.windowsazure.messaging.emulator;
+
+import com.windowsazure.messaging.*;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class NotificationHubsEmulatorTest {
+    private static final String HUB_PATH = "emulated-hub";
+    private static final String CHANNEL_URI = "https://bn1.notify.windows.com/?token=AgYAAADYej13M9aml3liD9nlfJw6FEgGXDvYmKDOfOwcS2ekCUm7hIrsJhGqkvU35pmJHFmXVbeUKJawqNHQKCtNJaI4z3uf3Gn04nrdSMUgzFapd%2fXYwzREnjz6%2fk9Pl6cy%2bdI%3d";
+
+    private NotificationHubsEmulator emulator;
+    private HttpClientTransport transport;
+    private NotificationHub hub;
+
+    @Before
+    public void setUp() throws Exception {
+        emulator = new NotificationHubsEmulator().start();
+        transport = HttpClientTransport.builder().build();
+        hub = new NotificationHub(emulator.getConnectionString(), HUB_PATH, transport);
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        emulator.close();
+    }
+
+    @Test
+    public void testRegistrationCruds() throws Exception {
+        WindowsRegistration created = hub.createRegistration(new WindowsRegistration(new URI(CHANNEL_URI)));
+        assertNotNull(created.getRegistrationId());
+        assertNotNull(created.getEtag());
+        assertNotNull(created.getExpirationTime());
+
+        created.getTags().add("myTag");
+        WindowsRegistration updated = hub.updateRegistration(created);
+        assertNotEquals(created.getEtag(), updated.getEtag());
+        assertEquals(Collections.singleton("myTag"), updated.getTags());
+
+        String registrationId = hub.createRegistrationId();
+        hub.upsertRegistration(new AppleRegistration(registrationId, "ABCDEF"));
+        assertEquals("ABCDEF", ((AppleRegistration) hub.getRegistration(registrationId)).getDeviceToken());
+
+        assertEquals(1, hub.getRegistrationsByTag("myTag").getRegistrations().size());
+        assertEquals(1, hub.getRegistrationsByChannel(CHANNEL_URI).getRegistrations().size());
+        assertEquals(2, hub.getRegistrations().getRegistrations().size());
+
+        hub.deleteRegistration(created);
+        assertEquals(1, hub.getRegistrations().getRegistrations().size());
+    }
+
+    @Test
+    public void testRegistrationPaging() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            hub.createRegistration(new FcmV1Registration("token" + i));
+        }
+
+        CollectionResult firstPage = hub.getRegistrations(2, null);
+        assertEquals(2, firstPage.getRegistrations().size());
+        assertNotNull(firstPage.getContinuationToken());
+
+        List<String> tokens = hub.iterateRegistrations(2).stream()
+            .map(Registration::getPnsHandle)
+            .collect(Collectors.toList());
+        assertEquals(Arrays.asList("token0", "token1", "token2", "token3", "token4"), tokens);
+    }
+
+    @Test
+    public void testInstallationCruds() throws Exception {
+        Installation installation = new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token", "tag1");
+        hub.createOrUpdateInstallation(installation);
+
+        hub.patchInstallation("installation-1",
+            new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag2"),
+            new PartialUpdateOperation(UpdateOperationType.Replace, "/userId", "alice"));
+
+        Installation patched = hub.getInstallation("installation-1");
+        assertEquals(Arrays.asList("tag1", "tag2"), patched.getTags());
+        assertEquals("alice", patched.getUserId());
+        assertEquals("fcm-token", patched.getPushChannel());
+
+        hub.deleteInstallation("installation-1");
+        try {
+            hub.getInstallation("installation-1");
+            fail("Expected the deleted installation to be missing");
+        } catch (NotificationHubsException e) {
+            assertEquals(404, e.httpStatusCode());
+        }
+    }
+
+    @Test
+    public void testUnchangedInstallationIsNotSentAgain() throws Exception {
+        hub.setInstallationFingerprintStore(new InMemoryInstallationFingerprintStore(100, Duration.ofHours(1)));
+        Installation installation = new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token", "tag1");
+
+        hub.createOrUpdateInstallation(installation);
+        hub.createOrUpdateInstallation(installation);
+        assertEquals(1, emulator.getRequestCount());
+
+        installation.addTag("tag2");
+        hub.createOrUpdateInstallation(installation);
+        assertEquals(2, emulator.getRequestCount());
+
+        hub.patchInstallation("installation-1", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag3"));
+        hub.createOrUpdateInstallation(installation);
+        assertEquals(4, emulator.getRequestCount());
+        assertEquals(Arrays.asList("tag1", "tag2"), hub.getInstallation("installation-1").getTags());
+    }
+
+    @Test
+    public void testReadCacheIsInvalidatedByWrites() throws Exception {
+        NotificationHubReadCache cache = new NotificationHubReadCache(100, Duration.ofHours(1));
+        hub.setReadCache(cache);
+        hub.createOrUpdateInstallation(new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token", "tag1"));
+        WindowsRegistration registration = hub.createRegistration(new WindowsRegistration(new URI(CHANNEL_URI)));
+        long requests = emulator.getRequestCount();
+
+        hub.getInstallation("installation-1");
+        Installation installation = hub.getInstallation("installation-1");
+        hub.getRegistration(registration.getRegistrationId());
+        WindowsRegistration cached = hub.getRegistration(registration.getRegistrationId());
+        assertEquals(requests + 2, emulator.getRequestCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Cached bodies are parsed for each caller
+        installation.addTag("local-only");
+        cached.getTags().add("myTag");
+        assertEquals(Collections.singletonList("tag1"), hub.getInstallation("installation-1").getTags());
+
+        hub.patchInstallation("installation-1", new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag2"));
+        assertEquals(Arrays.asList("tag1", "tag2"), hub.getInstallation("installation-1").getTags());
+
+        WindowsRegistration updated = hub.updateRegistration(cached);
+        assertEquals(updated.getEtag(), hub.<WindowsRegistration>getRegistration(registration.getRegistrationId()).getEtag());
+
+        hub.deleteRegistration(registration.getRegistrationId());
+        try {
+            hub.getRegistration(registration.getRegistrationId());
+            fail("Expected the deleted registration to be missing");
+        } catch (NotificationHubsException e) {
+            assertEquals(404, e.httpStatusCode());
+        }
+    }
+
+    @Test
+    public void testReadCacheDropsReadsServedBeforeWriteLands() throws Exception {
+        hub.setReadCache(new NotificationHubReadCache(100, Duration.ofHours(1)));
+        hub.createOrUpdateInstallation(new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token", "tag1"));
+
+        // The PATCH is throttled and lands after the read which started after it
+        emulator.throttleNextRequests(1);
+        emulator.setRetryAfter(Duration.ofSeconds(1));
+        SyncCallback<Object> patch = new SyncCallback<>();
+        hub.patchInstallationAsync("installation-1",
+            Collections.singletonList(new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag2")), patch);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (emulator.getThrottledCount() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList("tag1"), hub.getInstallation("installation-1").getTags());
+
+        patch.getResult();
+        assertEquals(Arrays.asList("tag1", "tag2"), hub.getInstallation("installation-1").getTags());
+    }
+
+    @Test
+    public void testReadCacheRevalidatesRegistrationsWithEtag() throws Exception {
+        NotificationHubReadCache cache = new NotificationHubReadCache(100, Duration.ZERO);
+        hub.setReadCache(cache);
+        WindowsRegistration registration = hub.createRegistration(new WindowsRegistration(new URI(CHANNEL_URI)));
+
+        hub.getRegistration(registration.getRegistrationId());
+        WindowsRegistration revalidated = hub.getRegistration(registration.getRegistrationId());
+        assertEquals(registration.getEtag(), revalidated.getEtag());
+        assertEquals(registration.getChannelUri(), revalidated.getChannelUri());
+        assertEquals(1, cache.getRevalidationCount());
+
+        // A change made by another client is picked up as the ETag no longer matches
+        NotificationHub other = new NotificationHub(emulator.getConnectionString(), HUB_PATH, transport);
+        revalidated.getTags().add("myTag");
+        WindowsRegistration updated = other.updateRegistration(revalidated);
+        WindowsRegistration fetched = hub.getRegistration(registration.getRegistrationId());
+        assertEquals(updated.getEtag(), fetched.getEtag());
+        assertEquals(Collections.singleton("myTag"), fetched.getTags());
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testRequestInstrumentationMeasuresEveryRequest() throws Exception {
+        HttpClientTransport retrying = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(2, TimeValue.ofMilliseconds(10), new ArrayList<>(), Collections.singletonList(429)))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, retrying);
+            HistogramRequestInstrumentation instrumentation = new HistogramRequestInstrumentation();
+            List<String> started = new ArrayList<>();
+            client.setRequestInstrumentation(new RequestInstrumentation() {
+                @Override
+                public void requestStarted(String operation, String hubPath, String trackingId) {
+                    assertEquals(HUB_PATH, hubPath);
+                    started.add(operation);
+                }
+
+                @Override
+                public void requestCompleted(RequestMetrics metrics) {
+                    assertNotNull(metrics.getTrackingId());
+                    assertTrue(metrics.getTotalNanos() >= metrics.getServerNanos());
+                    assertTrue(metrics.getQueueNanos() >= 0);
+                    assertTrue(metrics.getConnectNanos() >= 0);
+                    instrumentation.requestCompleted(metrics);
+                }
+            });
+
+            Installation installation = new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token");
+            client.createOrUpdateInstallation(installation);
+            emulator.throttleNextRequests(1);
+            client.getInstallation("installation-1");
+            try {
+                client.getInstallation("missing");
+                fail("Expected the installation to be missing");
+            } catch (NotificationHubsException e) {
+                assertEquals(404, e.httpStatusCode());
+            }
+
+            assertEquals(Arrays.asList("PUT installations/{id}", "GET installations/{id}", "GET installations/{id}"), started);
+            HistogramRequestInstrumentation.OperationStatistics put = instrumentation.getStatistics("PUT installations/{id}");
+            assertEquals(1, put.getRequestCount());
+            assertEquals(installation.toJson().length(), put.getBytesSent());
+            assertEquals(0, put.getRetryCount());
+
+            HistogramRequestInstrumentation.OperationStatistics get = instrumentation.getStatistics("GET installations/{id}");
+            assertEquals(2, get.getRequestCount());
+            assertEquals(1, get.getErrorCount());
+            assertEquals(1, get.getRetryCount());
+            assertTrue(get.getBytesReceived() > 0);
+            assertEquals(Long.valueOf(1), get.getStatusCodeCounts().get(200));
+            assertEquals(Long.valueOf(1), get.getStatusCodeCounts().get(404));
+            assertEquals(2, get.getServerLatency().getCount());
+            assertTrue(get.getTotalLatency().getValueAtPercentile(100).compareTo(get.getServerLatency().getMax()) >= 0);
+        } finally {
+            retrying.close();
+        }
+    }
+
+    @Test
+    public void testBulkInstallationUpsertWhileThrottled() throws Exception {
+        emulator.setThrottleRate(0.2);
+        HttpClientTransport noRetries = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(0, TimeValue.ofSeconds(1), new ArrayList<>(), new ArrayList<>()))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, noRetries);
+            Set<String> failedIds = ConcurrentHashMap.newKeySet();
+            BulkInstallationResult result = client.createOrUpdateInstallations(
+                IntStream.range(0, 200).mapToObj(i -> {
+                    Installation installation = new Installation("installation-" + (i % 20), NotificationPlatform.FcmV1, "token");
+                    installation.setUserId("version-" + i);
+                    return installation;
+                }),
+                8,
+                new InstallationResultSink() {
+                    @Override
+                    public void succeeded(BaseInstallation installation) {
+                    }
+
+                    @Override
+                    public void failed(BaseInstallation installation, Exception exception) {
+                        failedIds.add(installation.getInstallationId());
+                    }
+                });
+
+            assertEquals(200, result.getSucceededCount() + result.getFailedCount() + result.getSupersededCount());
+            assertTrue(result.getThrottledCount() > 0);
+
+            // Updates to an installation never overlap, so the last one that was not lost wins
+            emulator.setThrottleRate(0);
+            for (int i = 180; i < 200; i++) {
+                String installationId = "installation-" + (i % 20);
+                if (!failedIds.contains(installationId)) {
+                    assertEquals("version-" + i, hub.getInstallation(installationId).getUserId());
+                }
+            }
+        } finally {
+            noRetries.close();
+        }
+    }
+
+    @Test
+    public void testSendsAreRecorded() throws Exception {
+        Notification notification = Notification.createFcmV1Notification("{\"message\":{\"data\":{\"k\":\"v\"}}}");
+
+        NotificationOutcome outcome = hub.sendNotification(notification, "tag1 || tag2");
+        assertNotNull(outcome.getNotificationId());
+
+        Date scheduledTime = new Date(System.currentTimeMillis() + 60 * 60 * 1000);
+        NotificationOutcome scheduled = hub.scheduleNotification(notification, scheduledTime);
+        hub.sendDirectNotification(notification, Arrays.asList("handle1", "handle2"));
+
+        List<NotificationHubsEmulator.ReceivedNotification> received = emulator.getReceivedNotifications();
+        assertEquals(3, received.size());
+        assertEquals("tag1 || tag2", received.get(0).getTagExpression());
+        assertEquals(notification.getBody(), received.get(0).getBody());
+        assertEquals(scheduledTime.getTime() / 1000, received.get(1).getScheduledTime().getTime() / 1000);
+        assertEquals(Arrays.asList("handle1", "handle2"), received.get(2).getDeviceHandles());
+        assertEquals(notification.getBody(), received.get(2).getBody());
+
+        assertEquals(NotificationStatus.Completed, hub.getNotificationTelemetry(outcome.getNotificationId()).getNotificationStatus());
+
+        hub.cancelScheduledNotification(scheduled.getNotificationId());
+        assertEquals(2, emulator.getReceivedNotifications().size());
+    }
+
+    @Test
+    public void testLargeTagSetsAreSentAsSeveralExpressions() throws Exception {
+        Notification notification = Notification.createFcmV1Notification("{\"message\":{\"data\":{\"k\":\"v\"}}}");
+        List<String> tags = IntStream.range(0, 1000).mapToObj(i -> "$UserId:user" + i).collect(Collectors.toList());
+        Set<String> tagSet = new LinkedHashSet<>(tags);
+
+        try {
+            hub.sendNotification(notification, tagSet);
+            fail("The service rejects an expression of more than 20 tags");
+        } catch (NotificationHubsException e) {
+            assertEquals(400, e.httpStatusCode());
+        }
+
+        List<String> withRepeats = new ArrayList<>(tags);
+        withRepeats.addAll(tags.subList(0, 10));
+        AggregateNotificationOutcome outcome = hub.sendNotificationToTags(notification, withRepeats);
+
+        assertTrue(outcome.isSuccessful());
+        assertEquals(50, outcome.getParts().size());
+        assertEquals(50, new HashSet<>(outcome.getTrackingIds()).size());
+        assertEquals(20, outcome.getParts().get(0).getSize());
+
+        List<String> sent = new ArrayList<>();
+        for (NotificationHubsEmulator.ReceivedNotification received : emulator.getReceivedNotifications()) {
+            sent.addAll(TagExpressions.splitOr(received.getTagExpression()));
+        }
+        assertEquals(tagSet, new HashSet<>(sent));
+        assertEquals(tags.size(), sent.size());
+    }
+
+    @Test
+    public void testHubManagementAndJobs() throws Exception {
+        NamespaceManager namespaceManager = new NamespaceManager(emulator.getConnectionString(), transport);
+        namespaceManager.createNotificationHub(new NotificationHubDescription(HUB_PATH));
+        assertEquals(HUB_PATH, namespaceManager.getNotificationHub(HUB_PATH).getPath());
+        assertEquals(1, namespaceManager.getNotificationHubs().size());
+
+        NotificationHubJob job = new NotificationHubJob();
+        job.setJobType(NotificationHubJobType.ExportRegistrations);
+        job.setOutputContainerUri("https://test.blob.core.windows.net/container?sig=abc");
+        NotificationHubJob submitted = hub.submitNotificationHubJob(job);
+        assertEquals(NotificationHubJobStatus.Completed, submitted.getJobStatus());
+        assertEquals(NotificationHubJobType.ExportRegistrations, hub.getNotificationHubJob(submitted.getJobId()).getJobType());
+
+        namespaceManager.deleteNotificationHub(HUB_PATH);
+        assertTrue(namespaceManager.getNotificationHubs().isEmpty());
+    }
+
+    @Test
+    public void testThrottledRequestIsRetriedAfterRetryAfter() throws Exception {
+        emulator.throttleNextRequests(1);
+        emulator.setRetryAfter(Duration.ofSeconds(1));
+
+        long start = System.nanoTime();
+        hub.sendNotification(Notification.createFcmV1Notification("{}"));
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(900).toNanos());
+        assertEquals(2, emulator.getRequestCount());
+        assertEquals(1, emulator.getThrottledCount());
+        assertEquals(1, emulator.getReceivedNotifications().size());
+    }
+
+    @Test
+    public void testThrottledRequestWithoutRetries() throws Exception {
+        HttpClientTransport noRetries = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(0, TimeValue.ofSeconds(1), new ArrayList<>(), new ArrayList<>()))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, noRetries);
+            emulator.setThrottleRate(1);
+            emulator.setRetryAfter(Duration.ofSeconds(5));
+
+            client.sendNotification(Notification.createFcmV1Notification("{}"));
+            fail("Expected the send to be throttled");
+        } catch (NotificationHubsException e) {
+            assertEquals(429, e.httpStatusCode());
+            assertTrue(e.isTransient());
+            assertEquals(Duration.ofSeconds(5), e.retryAfter().orElse(null));
+        } finally {
+            noRetries.close();
+        }
+    }
+
+    @Test
+    public void testRateLimiterHoldsBackRequestsAfterThrottling() throws Exception {
+        HttpClientTransport noRetries = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(0, TimeValue.ofSeconds(1), new ArrayList<>(), new ArrayList<>()))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, noRetries);
+            NotificationHub other = new NotificationHub(emulator.getConnectionString(), HUB_PATH, transport);
+            HubRateLimiter limiter = new HubRateLimiter(1, 100);
+            client.setRateLimiter(limiter);
+            other.setRateLimiter(limiter);
+            emulator.throttleNextRequests(1);
+            emulator.setRetryAfter(Duration.ofSeconds(1));
+
+            try {
+                client.sendNotification(Notification.createFcmV1Notification("{}"));
+                fail("Expected the send to be throttled");
+            } catch (NotificationHubsException e) {
+                assertEquals(429, e.httpStatusCode());
+            }
+            assertEquals(75, limiter.getRate(), 1e-9);
+            assertEquals(1, limiter.getThrottledCount());
+
+            long start = System.nanoTime();
+            other.sendNotification(Notification.createFcmV1Notification("{}"));
+
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(900).toNanos());
+            assertEquals(1, limiter.getDelayedCount());
+            assertEquals(2, emulator.getRequestCount());
+            assertEquals(1, emulator.getReceivedNotifications().size());
+        } finally {
+            noRetries.close();
+        }
+    }
+
+    @Test
+    public void testRateLimiterCountsThrottledRetries() throws Exception {
+        HubRateLimiter limiter = new HubRateLimiter(1, 100);
+        hub.setRateLimiter(limiter);
+        emulator.throttleNextRequests(1);
+        emulator.setRetryAfter(Duration.ofSeconds(1));
+
+        hub.sendNotification(Notification.createFcmV1Notification("{}"));
+
+        assertEquals(1, limiter.getThrottledCount());
+        assertTrue(limiter.getRate() < 100);
+        assertEquals(2, emulator.getRequestCount());
+    }
+
+    @Test
+    public void testRateLimiterAdmitsRetries() throws Exception {
+        HubRateLimiter limiter = new HubRateLimiter(0.5, 0.5);
+        hub.setRateLimiter(limiter);
+        emulator.throttleNextRequests(1);
+
+        // The retry waits past its backoff for the next slot, two seconds after the first attempt
+        long start = System.nanoTime();
+        hub.sendNotification(Notification.createFcmV1Notification("{}"));
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(1800).toNanos());
+        assertEquals(2, limiter.getRequestCount());
+        assertEquals(1, limiter.getDelayedCount());
+        assertEquals(2, emulator.getRequestCount());
+    }
+
+    @Test
+    public void testAtLeastOnceSendsAreRepeatedAfterConnectionFailure() throws Exception {
+        emulator.dropNextRequests(1);
+        RuntimeException error = assertThrows(RuntimeException.class, () -> hub.sendNotification(Notification.createFcmV1Notification("{}")));
+        assertTrue(error.getCause() instanceof IOException);
+        assertTrue(emulator.getReceivedNotifications().isEmpty());
+
+        hub.setAtLeastOnceSends(true);
+        emulator.dropNextRequests(1);
+        NotificationOutcome outcome = hub.sendNotification(Notification.createFcmV1Notification("{}"), "tag");
+        assertNotNull(outcome.getNotificationId());
+        assertEquals(3, emulator.getRequestCount());
+        assertEquals(1, emulator.getReceivedNotifications().size());
+
+        emulator.dropNextRequests(1);
+        hub.sendDirectNotification(Notification.createFcmV1Notification("{}"), Arrays.asList("handle-1", "handle-2"));
+        assertEquals(2, emulator.getReceivedNotifications().size());
+    }
+
+    @Test
+    public void testInstallationPatchedDuringPutIsSentAgain() throws Exception {
+        hub.setInstallationFingerprintStore(new InMemoryInstallationFingerprintStore(100, Duration.ofHours(1)));
+        Installation installation = new Installation("installation-1", NotificationPlatform.FcmV1, "fcm-token", "tag1");
+
+        // The PUT lands first and completes while the PATCH is in flight
+        emulator.setLatency(Duration.ofMillis(300));
+        SyncCallback<Object> put = new SyncCallback<>();
+        SyncCallback<Object> patch = new SyncCallback<>();
+        hub.createOrUpdateInstallationAsync(installation, put);
+        Thread.sleep(100);
+        hub.patchInstallationAsync("installation-1",
+            Collections.singletonList(new PartialUpdateOperation(UpdateOperationType.Add, "/tags", "tag2")), patch);
+        put.getResult();
+        patch.getResult();
+        emulator.setLatency(Duration.ZERO);
+
+        hub.createOrUpdateInstallation(installation);
+        assertEquals(3, emulator.getRequestCount());
+        assertEquals(Collections.singletonList("tag1"), hub.getInstallation("installation-1").getTags());
+    }
+
+    @Test
+    public void testAtLeastOnceSendsWithTrackingIdAreSentOnce() throws Exception {
+        HttpClientTransport noRetries = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(0, TimeValue.ofSeconds(1), new ArrayList<>(), new ArrayList<>()))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, noRetries);
+            client.setAtLeastOnceSends(true);
+            Notification notification = Notification.createFcmV1Notification("{}");
+            notification.getHeaders().put("TrackingId", "campaign-42");
+
+            emulator.setLatency(Duration.ofMillis(200));
+            SyncCallback<NotificationOutcome> first = new SyncCallback<>();
+            SyncCallback<NotificationOutcome> second = new SyncCallback<>();
+            client.sendNotificationAsync(notification, "tag", first);
+            client.sendNotificationAsync(notification, "tag", second);
+            NotificationOutcome outcome = first.getResult();
+            assertSame(outcome, second.getResult());
+            assertSame(outcome, client.sendNotification(notification, "tag"));
+            assertEquals("campaign-42", outcome.getTrackingId());
+            assertEquals(1, emulator.getRequestCount());
+
+            // Another target is another send
+            emulator.setLatency(Duration.ZERO);
+            assertNotSame(outcome, client.sendNotification(notification, "other-tag"));
+            client.setAtLeastOnceSends(false);
+            client.sendNotification(notification, "tag");
+            assertEquals(3, emulator.getReceivedNotifications().size());
+
+            // A failed send is forgotten and sent again
+            client.setAtLeastOnceSends(true);
+            emulator.throttleNextRequests(1);
+            try {
+                client.sendNotification(notification, "tag");
+                fail("Expected the send to be throttled");
+            } catch (NotificationHubsException e) {
+                assertEquals(429, e.httpStatusCode());
+            }
+            client.sendNotification(notification, "tag");
+            assertEquals(4, emulator.getReceivedNotifications().size());
+        } finally {
+            noRetries.close();
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerFailsFastWhileEndpointIsDown() throws Exception {
+        HttpClientTransport noRetries = HttpClientTransport.builder()
+            .setRetryStrategy(new BasicRetryStrategy(0, TimeValue.ofSeconds(1), new ArrayList<>(), new ArrayList<>()))
+            .build();
+        try {
+            NotificationHub client = new NotificationHub(emulator.getConnectionString(), HUB_PATH, noRetries);
+            CircuitBreaker breaker = CircuitBreaker.builder()
+                .setMinimumCalls(3)
+                .setOpenDuration(Duration.ofMillis(300))
+                .setHalfOpenCalls(1)
+                .build();
+            List<CircuitBreaker.State> states = Collections.synchronizedList(new ArrayList<>());
+            breaker.addListener((endpoint, from, to) -> states.add(to));
+            client.setCircuitBreaker(breaker);
+            String endpoint = "localhost:" + emulator.getPort();
+
+            emulator.dropNextRequests(3);
+            for (int i = 0; i < 3; i++) {
+                assertThrows(RuntimeException.class, () -> client.getInstallation("installation-1"));
+            }
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(endpoint));
+
+            CircuitBreakerOpenException e = assertThrows(CircuitBreakerOpenException.class,
+                () -> client.sendNotification(Notification.createFcmV1Notification("{}")));
+            assertTrue(e.isTransient());
+            assertEquals(endpoint, e.getEndpoint());
+            assertEquals(3, emulator.getRequestCount());
+
+            Thread.sleep(400);
+            client.sendNotification(Notification.createFcmV1Notification("{}"));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(endpoint));
+            assertEquals(Arrays.asList(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), states);
+        } finally {
+            noRetries.close();
+        }
+    }
+
+    @Test
+    public void testDeadlineAndCancellationAbortPendingRetries() throws Exception {
+        NotificationHubAsyncClient client = new NotificationHubAsyncClient(hub, ForkJoinPool.commonPool(), Duration.ofMillis(300));
+        emulator.setRetryAfter(Duration.ofSeconds(1));
+
+        // The retry waiting for Retry-After is not sent once the deadline has passed
+        emulator.throttleNextRequests(1);
+        try {
+            client.sendNotification(Notification.createFcmV1Notification("{}")).get(5, TimeUnit.SECONDS);
+            fail("Expected the send to pass its deadline");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        // Nor once the future is cancelled
+        emulator.throttleNextRequests(1);
+        CompletableFuture<NotificationOutcome> cancelled = client.withDeadline(null)
+            .sendNotification(Notification.createFcmV1Notification("{}"));
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (emulator.getThrottledCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(cancelled.cancel(true));
+
+        Thread.sleep(1500);
+        assertEquals(2, emulator.getRequestCount());
+        assertEquals(2, emulator.getThrottledCount());
+        assertTrue(emulator.getReceivedNotifications().isEmpty());
+    }
+
+    @Test
+    public void testDeadlineAbortsAtLeastOnceSendWithTrackingId() throws Exception {
+        hub.setAtLeastOnceSends(true);
+        NotificationHubAsyncClient client = new NotificationHubAsyncClient(hub, ForkJoinPool.commonPool(), Duration.ofMillis(300));
+        emulator.setRetryAfter(Duration.ofSeconds(1));
+        Notification notification = Notification.createFcmV1Notification("{}");
+        notification.getHeaders().put("TrackingId", "campaign-42");
+
+        // The remembered send is aborted too, and forgotten so that it can be repeated
+        emulator.throttleNextRequests(1);
+        try {
+            client.sendNotification(notification).get(5, TimeUnit.SECONDS);
+            fail("Expected the send to pass its deadline");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        Thread.sleep(1500);
+        assertEquals(1, emulator.getRequestCount());
+        assertTrue(emulator.getReceivedNotifications().isEmpty());
+
+        client.sendNotification(notification).get(5, TimeUnit.SECONDS);
+        assertEquals(2, emulator.getRequestCount());
+        assertEquals(1, emulator.getReceivedNotifications().size());
+    }
+
+    @Test
+    public void testInvalidTokenIsRejected() throws Exception {
+        NotificationHub client = new NotificationHub(
+            emulator.getConnectionString().replace(NotificationHubsEmulator.SAS_KEY_VALUE, "d3JvbmcK"), HUB_PATH, transport);
+        try {
+            client.getRegistrations();
+            fail("Expected the request to be unauthorized");
+        } catch (NotificationHubsException e) {
+            assertEquals(401, e.httpStatusCode());
+        }
+    }
+}